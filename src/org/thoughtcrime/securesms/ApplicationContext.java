@@ -16,14 +16,13 @@
  */
 package org.thoughtcrime.securesms;
 
-import android.annotation.SuppressLint;
 import android.arch.lifecycle.DefaultLifecycleObserver;
 import android.arch.lifecycle.LifecycleOwner;
 import android.arch.lifecycle.ProcessLifecycleOwner;
 import android.content.Context;
 import android.database.ContentObserver;
-import android.os.AsyncTask;
 import android.os.Build;
+import android.os.Looper;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.multidex.MultiDexApplication;
@@ -46,7 +45,7 @@ import org.thoughtcrime.securesms.dependencies.SignalCommunicationModule;
 import org.thoughtcrime.securesms.groups.GroupManager;
 import org.thoughtcrime.securesms.jobmanager.DependencyInjector;
 import org.thoughtcrime.securesms.jobmanager.JobManager;
-import org.thoughtcrime.securesms.jobmanager.impl.JsonDataSerializer;
+import org.thoughtcrime.securesms.jobmanager.impl.BinaryDataSerializer;
 import org.thoughtcrime.securesms.jobs.CreateSignedPreKeyJob;
 import org.thoughtcrime.securesms.jobs.FastJobStorage;
 import org.thoughtcrime.securesms.jobs.FcmRefreshJob;
@@ -77,7 +76,11 @@ import org.thoughtcrime.securesms.service.LocalBackupListener;
 import org.thoughtcrime.securesms.service.RotateSenderCertificateListener;
 import org.thoughtcrime.securesms.service.RotateSignedPreKeyListener;
 import org.thoughtcrime.securesms.service.UpdateApkRefreshListener;
+import org.thoughtcrime.securesms.startup.StartupGraph;
+import org.thoughtcrime.securesms.startup.StartupGraph.Phase;
+import org.thoughtcrime.securesms.startup.StartupTrace;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 import org.thoughtcrime.securesms.util.dynamiclanguage.DynamicLanguageContextWrapper;
 import org.webrtc.PeerConnectionFactory;
 import org.webrtc.PeerConnectionFactory.InitializationOptions;
@@ -132,6 +135,7 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
   private IncomingMessageObserver incomingMessageObserver;
   private ObjectGraph             objectGraph;
   private PersistentLogger        persistentLogger;
+  private StartupGraph            startupGraph;
 
   // Loki
   private LokiLongPoller lokiLongPoller = null;
@@ -151,43 +155,55 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
   @Override
   public void onCreate() {
     super.onCreate();
-    startKovenant();
-    Log.i(TAG, "onCreate()");
-    initializeSecurityProvider();
-    initializeLogging();
-    initializeCrashHandling();
-    initializeDependencyInjection();
-    initializeJobManager();
-    initializeMessageRetrieval();
-    initializeExpiringMessageManager();
-    initializeTypingStatusRepository();
-    initializeTypingStatusSender();
-    initializeGcmCheck();
-    initializeSignedPreKeyCheck();
-    initializePeriodicTasks();
-    initializeCircumvention();
-    initializeWebRtc();
-    initializePendingMessages();
-    initializeUnidentifiedDeliveryAbilityRefresh();
-    initializeBlobProvider();
-    NotificationChannels.create(this);
-    ProcessLifecycleOwner.get().getLifecycle().addObserver(this);
-    // Loki - Set up P2P API if needed
-    setUpP2PAPI();
-    // Loki - Set up beta analytics
-    if (!BuildConfig.DEBUG) {
-      Fabric.with(this, new Crashlytics());
-    }
-    mixpanel = MixpanelAPI.getInstance(this, "59040b6707e5a1725f3fb6730fefca92");
-    Analytics.Companion.getShared().trackImplementation = (Function1<String, Unit>) event -> {
-      HashMap<String, Object> properties = new HashMap();
-      String configuration = BuildConfig.DEBUG ? "debug" : "production";
-      properties.put("configuration", configuration);
-      mixpanel.trackMap(event, properties);
-      return Unit.INSTANCE;
-    };
-    // Loki - Set up public chat manager
-    lokiPublicChatManager = new LokiPublicChatManager(this);
+
+    startupGraph = buildStartupGraph();
+    startupGraph.start(SignalExecutors.BOUNDED);
+
+    // The main thread first goes idle once the launching activity has drawn
+    Looper.myQueue().addIdleHandler(() -> {
+      startupGraph.startDeferred();
+      return false;
+    });
+  }
+
+  /**
+   * Everything the app needs before onCreate returns is critical. Work that only has to happen
+   * soon runs in the background, and anything that isn't needed until later waits for the first
+   * frame.
+   */
+  private @NonNull StartupGraph buildStartupGraph() {
+    return new StartupGraph.Builder()
+        // Loki - Crash reporting and analytics come first so nothing else in startup escapes them
+        .add("crashReporting", Phase.CRITICAL, this::initializeCrashReporting)
+        .add("analytics", Phase.CRITICAL, this::initializeAnalytics)
+        .add("kovenant", Phase.CRITICAL, () -> startKovenant())
+        .add("securityProvider", Phase.CRITICAL, this::initializeSecurityProvider)
+        .add("logging", Phase.CRITICAL, () -> {
+          initializeLogging();
+          Log.i(TAG, "onCreate()");
+        })
+        .add("crashHandling", Phase.CRITICAL, this::initializeCrashHandling, "logging")
+        .add("dependencyInjection", Phase.CRITICAL, this::initializeDependencyInjection, "securityProvider")
+        .add("jobManager", Phase.CRITICAL, this::initializeJobManager, "dependencyInjection")
+        .add("expiringMessageManager", Phase.CRITICAL, this::initializeExpiringMessageManager, "logging")
+        .add("typingStatusRepository", Phase.CRITICAL, this::initializeTypingStatusRepository)
+        .add("typingStatusSender", Phase.CRITICAL, this::initializeTypingStatusSender, "jobManager")
+        .add("notificationChannels", Phase.CRITICAL, () -> NotificationChannels.create(this), "logging")
+        .add("lifecycleObserver", Phase.CRITICAL, () -> ProcessLifecycleOwner.get().getLifecycle().addObserver(this))
+        // Loki - Set up public chat manager
+        .add("publicChatManager", Phase.CRITICAL, () -> lokiPublicChatManager = new LokiPublicChatManager(this), "kovenant", "jobManager")
+        .add("messageRetrieval", Phase.BACKGROUND, this::initializeMessageRetrieval, "jobManager")
+        .add("gcmCheck", Phase.BACKGROUND, this::initializeGcmCheck, "jobManager")
+        .add("signedPreKeyCheck", Phase.BACKGROUND, this::initializeSignedPreKeyCheck, "jobManager")
+        .add("pendingMessages", Phase.BACKGROUND, this::initializePendingMessages, "jobManager")
+        .add("unidentifiedDeliveryAbilityRefresh", Phase.BACKGROUND, this::initializeUnidentifiedDeliveryAbilityRefresh, "jobManager")
+        .add("circumvention", Phase.BACKGROUND, this::initializeCircumvention, "securityProvider")
+        .add("blobProvider", Phase.BACKGROUND, this::initializeBlobProvider, "logging")
+        .add("periodicTasks", Phase.DEFERRED, this::initializePeriodicTasks, "jobManager")
+        .add("webRtc", Phase.DEFERRED, this::initializeWebRtc, "logging")
+        // Loki - Set up P2P API if needed
+        .add("p2pApi", Phase.DEFERRED, this::setUpP2PAPI, "kovenant")
+        .build();
   }
 
   @Override
@@ -208,6 +224,7 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
     Log.i(TAG, "App is no longer visible.");
     KeyCachingService.onAppBackgrounded(this);
     MessageNotifier.setVisibleThread(-1);
+    SignalExecutors.BOUNDED.execute(() -> DatabaseFactory.checkpoint(this));
     // Loki - Stop long polling if needed
     if (lokiLongPoller != null) { lokiLongPoller.stopIfNeeded(); }
     if (lokiPublicChatManager != null) { lokiPublicChatManager.stopPollers(); }
@@ -303,7 +320,7 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
 
   private void initializeJobManager() {
     this.jobManager = new JobManager(this, new JobManager.Configuration.Builder()
-                                                                       .setDataSerializer(new JsonDataSerializer())
+                                                                       .setDataSerializer(new BinaryDataSerializer())
                                                                        .setJobFactories(JobManagerFactories.getJobFactories(this))
                                                                        .setConstraintFactories(JobManagerFactories.getConstraintFactories(this))
                                                                        .setConstraintObservers(JobManagerFactories.getConstraintObservers(this))
@@ -396,23 +413,14 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
     }
   }
 
-  @SuppressLint("StaticFieldLeak")
   private void initializeCircumvention() {
-    AsyncTask<Void, Void, Void> task = new AsyncTask<Void, Void, Void>() {
-      @Override
-      protected Void doInBackground(Void... params) {
-        if (new SignalServiceNetworkAccess(ApplicationContext.this).isCensored(ApplicationContext.this)) {
-          try {
-            ProviderInstaller.installIfNeeded(ApplicationContext.this);
-          } catch (Throwable t) {
-            Log.w(TAG, t);
-          }
-        }
-        return null;
+    if (new SignalServiceNetworkAccess(this).isCensored(this)) {
+      try {
+        ProviderInstaller.installIfNeeded(this);
+      } catch (Throwable t) {
+        Log.w(TAG, t);
       }
-    };
-
-    task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
   }
 
   private void executePendingContactSync() {
@@ -436,9 +444,28 @@ public class ApplicationContext extends MultiDexApplication implements Dependenc
   }
 
   private void initializeBlobProvider() {
-    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> {
-      BlobProvider.getInstance().onSessionStart(this);
-    });
+    BlobProvider.getInstance().onSessionStart(this);
+  }
+
+  private void initializeCrashReporting() {
+    if (!BuildConfig.DEBUG) {
+      Fabric.with(this, new Crashlytics());
+    }
+  }
+
+  private void initializeAnalytics() {
+    mixpanel = MixpanelAPI.getInstance(this, "59040b6707e5a1725f3fb6730fefca92");
+    Analytics.Companion.getShared().trackImplementation = (Function1<String, Unit>) event -> {
+      HashMap<String, Object> properties = new HashMap();
+      String configuration = BuildConfig.DEBUG ? "debug" : "production";
+      properties.put("configuration", configuration);
+      mixpanel.trackMap(event, properties);
+      return Unit.INSTANCE;
+    };
+  }
+
+  public @NonNull StartupTrace getStartupTrace() {
+    return startupGraph.getTrace();
   }
 
   @Override
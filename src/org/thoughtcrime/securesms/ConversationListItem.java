@@ -229,7 +229,11 @@ public class ConversationListItem extends RelativeLayout
     this.recipient.addListener(this);
 
     fromView.setText(recipient, true);
-    subjectView.setText(SearchUtil.getHighlightedSpan(locale, () -> new StyleSpan(Typeface.BOLD), messageResult.bodySnippet, highlightSubstring));
+    if (messageResult.bodyHighlights.isEmpty()) {
+      subjectView.setText(SearchUtil.getHighlightedSpan(locale, () -> new StyleSpan(Typeface.BOLD), messageResult.bodySnippet, highlightSubstring));
+    } else {
+      subjectView.setText(SearchUtil.getHighlightedSpan(() -> new StyleSpan(Typeface.BOLD), messageResult.bodySnippet, messageResult.bodyHighlights));
+    }
     dateView.setText(DateUtils.getBriefRelativeTimeSpanString(getContext(), locale, messageResult.receivedTimestampMs));
     archivedView.setVisibility(GONE);
     unreadIndicator.setVisibility(GONE);
@@ -52,6 +52,9 @@ class MediaGalleryAdapter extends StickyHeaderGridAdapter {
 
   private  BucketedThreadMedia media;
 
+  // When everything is selected, selected holds the records that were deselected since
+  private boolean allSelected;
+
   private static class ViewHolder extends StickyHeaderGridAdapter.ItemViewHolder {
     ThumbnailView imageView;
     View          selectedIndicator;
@@ -84,10 +87,14 @@ class MediaGalleryAdapter extends StickyHeaderGridAdapter {
     this.media             = media;
     this.itemClickListener = clickListener;
     this.selected          = new HashSet<>();
+
+    media.setPageLoadedListener(this::notifyAllSectionsDataSetChanged);
   }
 
   public void setMedia(BucketedThreadMedia media) {
+    this.media.setPageLoadedListener(null);
     this.media = media;
+    this.media.setPageLoadedListener(this::notifyAllSectionsDataSetChanged);
   }
 
   @Override
@@ -110,7 +117,16 @@ class MediaGalleryAdapter extends StickyHeaderGridAdapter {
     MediaRecord   mediaRecord       = media.get(section, offset);
     ThumbnailView thumbnailView     = ((ViewHolder)viewHolder).imageView;
     View          selectedIndicator = ((ViewHolder)viewHolder).selectedIndicator;
-    Slide         slide             = MediaUtil.getSlideForAttachment(context, mediaRecord.getAttachment());
+
+    if (mediaRecord == null) {
+      thumbnailView.clear(glideRequests);
+      thumbnailView.setOnClickListener(null);
+      thumbnailView.setOnLongClickListener(null);
+      selectedIndicator.setVisibility(View.GONE);
+      return;
+    }
+
+    Slide slide = MediaUtil.getSlideForAttachment(context, mediaRecord.getAttachment());
 
     if (slide != null) {
       thumbnailView.setImageResource(glideRequests, slide, false, false);
@@ -122,7 +138,7 @@ class MediaGalleryAdapter extends StickyHeaderGridAdapter {
       return true;
     });
 
-    selectedIndicator.setVisibility(selected.contains(mediaRecord) ? View.VISIBLE : View.GONE);
+    selectedIndicator.setVisibility(isSelected(mediaRecord) ? View.VISIBLE : View.GONE);
   }
 
   @Override
@@ -143,26 +159,45 @@ class MediaGalleryAdapter extends StickyHeaderGridAdapter {
   }
 
   public int getSelectedMediaCount() {
-    return selected.size();
+    return allSelected ? media.getTotalCount() - selected.size() : selected.size();
   }
 
-  @NonNull
-  public Collection<MediaRecord> getSelectedMedia() {
-    return new HashSet<>(selected);
+  /**
+   * Calls back on the main thread with the selection as it is now. If everything is selected, the
+   * records are only loaded here, when something is actually done with them.
+   */
+  public void getSelectedMedia(@NonNull BucketedThreadMedia.Callback<Collection<MediaRecord>> callback) {
+    Set<MediaRecord> records = new HashSet<>(selected);
+
+    if (!allSelected) {
+      callback.onComplete(records);
+      return;
+    }
+
+    media.loadAll(all -> {
+      Set<MediaRecord> selection = new HashSet<>(all);
+      selection.removeAll(records);
+      callback.onComplete(selection);
+    });
   }
 
   public void clearSelection() {
+    allSelected = false;
     selected.clear();
     notifyDataSetChanged();
   }
 
+  /**
+   * Selects everything from the section counts alone, without loading any records.
+   */
   void selectAllMedia() {
-    for (int section = 0; section < media.getSectionCount(); section++) {
-      for (int item = 0; item < media.getSectionItemCount(section); item++) {
-        selected.add(media.get(section, item));
-      }
-    }
-    this.notifyDataSetChanged();
+    allSelected = true;
+    selected.clear();
+    notifyDataSetChanged();
+  }
+
+  private boolean isSelected(@NonNull MediaRecord mediaRecord) {
+    return allSelected != selected.contains(mediaRecord);
   }
 
   interface ItemClickListener {
@@ -415,7 +415,10 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity {
 
     private void handleSelectAllMedia() {
       getListAdapter().selectAllMedia();
-      actionMode.setTitle(String.valueOf(getListAdapter().getSelectedMediaCount()));
+
+      if (actionMode != null) {
+        actionMode.setTitle(String.valueOf(getListAdapter().getSelectedMediaCount()));
+      }
     }
 
     private MediaGalleryAdapter getListAdapter() {
@@ -453,10 +456,14 @@ public class MediaOverviewActivity extends PassphraseRequiredActionBarActivity {
       public boolean onActionItemClicked(ActionMode mode, MenuItem menuItem) {
         switch (menuItem.getItemId()) {
           case R.id.save:
-            handleSaveMedia(getListAdapter().getSelectedMedia());
+            getListAdapter().getSelectedMedia(media -> {
+              if (isAdded()) handleSaveMedia(media);
+            });
             return true;
           case R.id.delete:
-            handleDeleteMedia(getListAdapter().getSelectedMedia());
+            getListAdapter().getSelectedMedia(media -> {
+              if (isAdded()) handleDeleteMedia(media);
+            });
             actionMode.finish();
             return true;
           case R.id.select_all:
@@ -21,6 +21,7 @@ import org.thoughtcrime.securesms.crypto.IdentityKeyUtil;
 import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.database.GroupReceiptDatabase;
+import org.thoughtcrime.securesms.database.LinkPreviewDatabase;
 import org.thoughtcrime.securesms.database.MmsDatabase;
 import org.thoughtcrime.securesms.database.MmsSmsColumns;
 import org.thoughtcrime.securesms.database.OneTimePreKeyDatabase;
@@ -86,6 +87,7 @@ public class FullBackupExporter extends FullBackupBase {
       } else if (!table.equals(SignedPreKeyDatabase.TABLE_NAME)       &&
                  !table.equals(OneTimePreKeyDatabase.TABLE_NAME)      &&
                  !table.equals(SessionDatabase.TABLE_NAME)            &&
+                 !table.equals(LinkPreviewDatabase.TABLE_NAME)        &&
                  !table.startsWith(SearchDatabase.SMS_FTS_TABLE_NAME) &&
                  !table.startsWith(SearchDatabase.MMS_FTS_TABLE_NAME) &&
                  !table.startsWith("sqlite_"))
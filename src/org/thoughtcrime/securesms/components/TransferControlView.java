@@ -18,6 +18,7 @@ import org.greenrobot.eventbus.Subscribe;
 import org.greenrobot.eventbus.ThreadMode;
 import org.thoughtcrime.securesms.attachments.Attachment;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
+import org.thoughtcrime.securesms.events.AlbumProgressEvent;
 import org.thoughtcrime.securesms.events.PartProgressEvent;
 import org.thoughtcrime.securesms.mms.Slide;
 import org.thoughtcrime.securesms.util.ViewUtil;
@@ -223,4 +224,20 @@ public class TransferControlView extends FrameLayout {
       progressWheel.setInstantProgress(calculateProgress(downloadProgress));
     }
   }
+
+  @Subscribe(sticky = true, threadMode = ThreadMode.MAIN)
+  public void onEventAsync(final AlbumProgressEvent event) {
+    boolean updated = false;
+
+    for (Map.Entry<Attachment, Float> entry : event.attachmentProgress.entrySet()) {
+      if (downloadProgress.containsKey(entry.getKey())) {
+        downloadProgress.put(entry.getKey(), entry.getValue());
+        updated = true;
+      }
+    }
+
+    if (updated) {
+      progressWheel.setInstantProgress(calculateProgress(downloadProgress));
+    }
+  }
 }
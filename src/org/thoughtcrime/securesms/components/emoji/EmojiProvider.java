@@ -24,6 +24,7 @@ import org.thoughtcrime.securesms.components.emoji.parsing.EmojiParser;
 import org.thoughtcrime.securesms.components.emoji.parsing.EmojiTree;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.util.FutureTaskListener;
+import org.thoughtcrime.securesms.util.LRUCache;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.util.Pair;
 
@@ -36,13 +37,17 @@ class EmojiProvider {
   private static volatile EmojiProvider instance = null;
   private static final    Paint         paint    = new Paint(Paint.FILTER_BITMAP_FLAG | Paint.ANTI_ALIAS_FLAG);
 
-  private final EmojiTree emojiTree = new EmojiTree();
+  private final EmojiTree                                  emojiTree      = new EmojiTree();
+  private final LRUCache<String, EmojiParser.CandidateList> candidateCache = new LRUCache<>(CANDIDATE_CACHE_SIZE);
 
   private static final int EMOJI_RAW_HEIGHT = 64;
   private static final int EMOJI_RAW_WIDTH  = 64;
   private static final int EMOJI_VERT_PAD   = 0;
   private static final int EMOJI_PER_ROW    = 32;
 
+  private static final int CANDIDATE_CACHE_SIZE      = 500;
+  private static final int MAX_CACHED_CANDIDATE_TEXT = 2048;
+
   private final float decodeScale;
   private final float verticalPad;
 
@@ -77,9 +82,31 @@ class EmojiProvider {
     }
   }
 
+  /**
+   * Parsed candidates are cached by the source string, so re-binding the same message while
+   * scrolling doesn't parse it again.
+   */
   @Nullable EmojiParser.CandidateList getCandidates(@Nullable CharSequence text) {
     if (text == null) return null;
-    return new EmojiParser(emojiTree).findCandidates(text);
+
+    if (text.length() > MAX_CACHED_CANDIDATE_TEXT) {
+      return new EmojiParser(emojiTree).findCandidates(text);
+    }
+
+    String key = text.toString();
+
+    synchronized (candidateCache) {
+      EmojiParser.CandidateList cached = candidateCache.get(key);
+      if (cached != null) return cached;
+    }
+
+    EmojiParser.CandidateList candidates = new EmojiParser(emojiTree).findCandidates(key);
+
+    synchronized (candidateCache) {
+      candidateCache.put(key, candidates);
+    }
+
+    return candidates;
   }
 
   @Nullable Spannable emojify(@Nullable CharSequence text, @NonNull TextView tv) {
@@ -24,8 +24,9 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -40,9 +41,9 @@ public class EmojiParser {
   }
 
   public @NonNull CandidateList findCandidates(@Nullable CharSequence text) {
-    List<Candidate> results = new LinkedList<>();
+    if (text == null) return new CandidateList(Collections.emptyList(), false);
 
-    if (text == null) return new CandidateList(results, false);
+    List<Candidate> results = null;
 
     boolean allEmojis = text.length() > 0;
 
@@ -58,6 +59,7 @@ public class EmojiParser {
           }
         }
 
+        if (results == null) results = new ArrayList<>();
         results.add(new Candidate(i, emojiEnd, drawInfo));
 
         i = emojiEnd - 1;
@@ -66,23 +68,11 @@ public class EmojiParser {
       }
     }
 
-    return new CandidateList(results, allEmojis);
+    return new CandidateList(results != null ? results : Collections.emptyList(), allEmojis);
   }
 
   private int getEmojiEndPos(CharSequence text, int startPos) {
-    int best = -1;
-
-    for (int j = startPos + 1; j <= text.length(); j++) {
-      EmojiTree.Matches status = emojiTree.isEmoji(text, startPos, j);
-
-      if (status.exactMatch()) {
-        best = j;
-      } else if (status.impossibleMatch()) {
-        return best;
-      }
-    }
-
-    return best;
+    return emojiTree.findEmojiEnd(text, startPos);
   }
 
   public static class Candidate {
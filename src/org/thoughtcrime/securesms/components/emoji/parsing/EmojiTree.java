@@ -22,11 +22,13 @@ package org.thoughtcrime.securesms.components.emoji.parsing;
 
 import android.support.annotation.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 /**
  * Based in part on code from emoji-java
+ * <p>
+ * Each node keeps its children in a pair of parallel arrays sorted by character, so lookups are a
+ * binary search over primitive chars rather than a boxed {@code HashMap} probe.
  */
 public class EmojiTree {
 
@@ -37,12 +39,8 @@ public class EmojiTree {
   public void add(String emojiEncoding, EmojiDrawInfo emoji) {
     EmojiTreeNode tree = root;
 
-    for (char c: emojiEncoding.toCharArray()) {
-      if (!tree.hasChild(c)) {
-        tree.addChild(c);
-      }
-
-      tree = tree.getChild(c);
+    for (int i = 0; i < emojiEncoding.length(); i++) {
+      tree = tree.getOrAddChild(emojiEncoding.charAt(i));
     }
 
     tree.setEmoji(emoji);
@@ -53,38 +51,48 @@ public class EmojiTree {
       return Matches.POSSIBLY;
     }
 
-    EmojiTreeNode tree = root;
-
-    for (int i=startPosition; i<endPosition; i++) {
-      char character = sequence.charAt(i);
-
-      if (!tree.hasChild(character)) {
-        return Matches.IMPOSSIBLE;
-      }
-
-      tree = tree.getChild(character);
-    }
+    EmojiTreeNode tree = find(sequence, startPosition, endPosition);
 
-    if (tree.isEndOfEmoji()) {
-      return Matches.EXACTLY;
-    } else if (sequence.charAt(endPosition-1) != TERMINATOR && tree.hasChild(TERMINATOR) && tree.getChild(TERMINATOR).isEndOfEmoji()) {
+    if (tree == null) {
+      return Matches.IMPOSSIBLE;
+    } else if (isExactMatch(tree, sequence, endPosition)) {
       return Matches.EXACTLY;
     } else {
       return Matches.POSSIBLY;
     }
   }
 
-  public @Nullable EmojiDrawInfo getEmoji(CharSequence unicode, int startPosition, int endPostiion) {
+  /**
+   * Walks the tree once from {@code startPosition}.
+   *
+   * @return The end of the longest emoji starting at {@code startPosition}, or -1 if there is none.
+   *         This is the same as checking {@link #isEmoji(CharSequence, int, int)} for every end
+   *         position until the match becomes impossible.
+   */
+  public int findEmojiEnd(CharSequence sequence, int startPosition) {
     EmojiTreeNode tree = root;
+    int           best = -1;
 
-    for (int i=startPosition; i<endPostiion; i++) {
-      char character = unicode.charAt(i);
+    for (int i = startPosition; i < sequence.length(); i++) {
+      tree = tree.getChild(sequence.charAt(i));
 
-      if (!tree.hasChild(character)) {
-        return null;
+      if (tree == null) {
+        return best;
       }
 
-      tree = tree.getChild(character);
+      if (isExactMatch(tree, sequence, i + 1)) {
+        best = i + 1;
+      }
+    }
+
+    return best;
+  }
+
+  public @Nullable EmojiDrawInfo getEmoji(CharSequence unicode, int startPosition, int endPostiion) {
+    EmojiTreeNode tree = find(unicode, startPosition, endPostiion);
+
+    if (tree == null) {
+      return null;
     }
 
     if      (tree.getEmoji() != null)                                                  return tree.getEmoji();
@@ -92,11 +100,37 @@ public class EmojiTree {
     else    return null;
   }
 
+  private @Nullable EmojiTreeNode find(CharSequence sequence, int startPosition, int endPosition) {
+    EmojiTreeNode tree = root;
+
+    for (int i = startPosition; i < endPosition && tree != null; i++) {
+      tree = tree.getChild(sequence.charAt(i));
+    }
+
+    return tree;
+  }
+
+  private static boolean isExactMatch(EmojiTreeNode tree, CharSequence sequence, int endPosition) {
+    if (tree.isEndOfEmoji()) {
+      return true;
+    }
+
+    if (sequence.charAt(endPosition - 1) == TERMINATOR) {
+      return false;
+    }
+
+    EmojiTreeNode terminated = tree.getChild(TERMINATOR);
+    return terminated != null && terminated.isEndOfEmoji();
+  }
 
   private static class EmojiTreeNode {
 
-    private Map<Character, EmojiTreeNode> children = new HashMap<>();
-    private EmojiDrawInfo emoji;
+    private static final char[]          NO_KEYS     = new char[0];
+    private static final EmojiTreeNode[] NO_CHILDREN = new EmojiTreeNode[0];
+
+    private char[]          keys     = NO_KEYS;
+    private EmojiTreeNode[] children = NO_CHILDREN;
+    private EmojiDrawInfo   emoji;
 
     public void setEmoji(EmojiDrawInfo emoji) {
       this.emoji = emoji;
@@ -107,15 +141,38 @@ public class EmojiTree {
     }
 
     boolean hasChild(char child) {
-      return children.containsKey(child);
+      return Arrays.binarySearch(keys, child) >= 0;
     }
 
-    void addChild(char child) {
-      children.put(child, new EmojiTreeNode());
+    @Nullable EmojiTreeNode getChild(char child) {
+      int index = Arrays.binarySearch(keys, child);
+      return index >= 0 ? children[index] : null;
     }
 
-    EmojiTreeNode getChild(char child) {
-      return children.get(child);
+    EmojiTreeNode getOrAddChild(char child) {
+      int index = Arrays.binarySearch(keys, child);
+
+      if (index >= 0) {
+        return children[index];
+      }
+
+      int             insertion   = -index - 1;
+      char[]          newKeys     = new char[keys.length + 1];
+      EmojiTreeNode[] newChildren = new EmojiTreeNode[children.length + 1];
+      EmojiTreeNode   node        = new EmojiTreeNode();
+
+      System.arraycopy(keys, 0, newKeys, 0, insertion);
+      System.arraycopy(keys, insertion, newKeys, insertion + 1, keys.length - insertion);
+      System.arraycopy(children, 0, newChildren, 0, insertion);
+      System.arraycopy(children, insertion, newChildren, insertion + 1, children.length - insertion);
+
+      newKeys[insertion]     = child;
+      newChildren[insertion] = node;
+
+      keys     = newKeys;
+      children = newChildren;
+
+      return node;
     }
 
     boolean isEndOfEmoji() {
@@ -161,6 +161,7 @@ import org.thoughtcrime.securesms.loki.LokiThreadDatabase;
 import org.thoughtcrime.securesms.loki.LokiThreadDatabaseDelegate;
 import org.thoughtcrime.securesms.loki.LokiUserDatabase;
 import org.thoughtcrime.securesms.loki.MentionCandidateSelectionView;
+import org.thoughtcrime.securesms.loki.MentionUtilities;
 import org.thoughtcrime.securesms.mediasend.Media;
 import org.thoughtcrime.securesms.mediasend.MediaSendActivity;
 import org.thoughtcrime.securesms.mms.AttachmentManager;
@@ -1661,6 +1662,8 @@ public class ConversationActivity extends PassphraseRequiredActionBarActivity
     glideRequests    = GlideApp.with(this);
 
     recipient.addListener(this);
+
+    if (threadId != -1) MentionUtilities.prefetchDisplayNames(threadId, this);
   }
 
   private void initializeLinkPreviewObserver() {
@@ -10,28 +10,29 @@ import android.os.Handler;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
-import org.thoughtcrime.securesms.database.CursorList;
 import org.thoughtcrime.securesms.database.DatabaseContentProviders;
 import org.thoughtcrime.securesms.database.model.StickerRecord;
 import org.thoughtcrime.securesms.stickers.StickerSearchRepository;
-import org.thoughtcrime.securesms.util.CloseableLiveData;
 import org.thoughtcrime.securesms.util.Throttler;
 
+import java.util.Collections;
+import java.util.List;
+
 class ConversationStickerViewModel extends ViewModel {
 
   private static final int SEARCH_LIMIT = 10;
 
-  private final Application                                  application;
-  private final StickerSearchRepository                      repository;
-  private final CloseableLiveData<CursorList<StickerRecord>> stickers;
-  private final MutableLiveData<Boolean>                     stickersAvailable;
-  private final Throttler                                    availabilityThrottler;
-  private final ContentObserver                              packObserver;
+  private final Application                          application;
+  private final StickerSearchRepository              repository;
+  private final MutableLiveData<List<StickerRecord>> stickers;
+  private final MutableLiveData<Boolean>             stickersAvailable;
+  private final Throttler                            availabilityThrottler;
+  private final ContentObserver                      packObserver;
 
   private ConversationStickerViewModel(@NonNull Application application, @NonNull StickerSearchRepository repository) {
     this.application           = application;
     this.repository            = repository;
-    this.stickers              = new CloseableLiveData<>();
+    this.stickers              = new MutableLiveData<>();
     this.stickersAvailable     = new MutableLiveData<>();
     this.availabilityThrottler = new Throttler(500);
     this.packObserver          = new ContentObserver(new Handler()) {
@@ -44,7 +45,7 @@ class ConversationStickerViewModel extends ViewModel {
     application.getContentResolver().registerContentObserver(DatabaseContentProviders.StickerPack.CONTENT_URI, true, packObserver);
   }
 
-  @NonNull LiveData<CursorList<StickerRecord>> getStickerResults() {
+  @NonNull LiveData<List<StickerRecord>> getStickerResults() {
     return stickers;
   }
 
@@ -55,7 +56,7 @@ class ConversationStickerViewModel extends ViewModel {
 
   void onInputTextUpdated(@NonNull String text) {
     if (TextUtils.isEmpty(text) || text.length() > SEARCH_LIMIT) {
-      stickers.setValue(CursorList.emptyList());
+      stickers.setValue(Collections.emptyList());
     } else {
       repository.searchByEmoji(text, stickers::postValue);
     }
@@ -63,7 +64,6 @@ class ConversationStickerViewModel extends ViewModel {
 
   @Override
   protected void onCleared() {
-    stickers.close();
     application.getContentResolver().unregisterContentObserver(packObserver);
   }
 
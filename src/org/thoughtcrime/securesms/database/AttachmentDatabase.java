@@ -46,6 +46,7 @@ import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.mms.MediaStream;
+import org.thoughtcrime.securesms.mms.MediaTranscoder;
 import org.thoughtcrime.securesms.mms.MmsException;
 import org.thoughtcrime.securesms.mms.PartAuthority;
 import org.thoughtcrime.securesms.stickers.StickerLocator;
@@ -104,6 +105,7 @@ public class AttachmentDatabase extends Database {
           static final String HEIGHT                 = "height";
           static final String CAPTION                = "caption";
   public  static final String URL                    = "url";
+          static final String TRANSCODED             = "transcoded";
   public  static final String DIRECTORY              = "parts";
 
   public static final int TRANSFER_PROGRESS_DONE    = 0;
@@ -133,7 +135,8 @@ public class AttachmentDatabase extends Database {
     VOICE_NOTE + " INTEGER DEFAULT 0, " + DATA_RANDOM + " BLOB, " + THUMBNAIL_RANDOM + " BLOB, " +
     QUOTE + " INTEGER DEFAULT 0, " + WIDTH + " INTEGER DEFAULT 0, " + HEIGHT + " INTEGER DEFAULT 0, " +
     CAPTION + " TEXT DEFAULT NULL, " + URL + " TEXT, " + STICKER_PACK_ID + " TEXT DEFAULT NULL, " +
-    STICKER_PACK_KEY + " DEFAULT NULL, " + STICKER_ID + " INTEGER DEFAULT -1);";
+    STICKER_PACK_KEY + " DEFAULT NULL, " + STICKER_ID + " INTEGER DEFAULT -1, " +
+    TRANSCODED + " INTEGER DEFAULT 0);";
 
   public static final String[] CREATE_INDEXS = {
     "CREATE INDEX IF NOT EXISTS part_mms_id_index ON " + TABLE_NAME + " (" + MMS_ID + ");",
@@ -225,6 +228,18 @@ public class AttachmentDatabase extends Database {
     }
   }
 
+  /**
+   * @return True if the attachment's data has already been resized and re-encoded for sending, either
+   *         by the {@link MediaTranscoder} before it was inserted or by a previous upload attempt.
+   */
+  public boolean isTranscoded(@NonNull AttachmentId attachmentId) {
+    SQLiteDatabase database = databaseHelper.getReadableDatabase();
+
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {TRANSCODED}, PART_ID_WHERE, attachmentId.toStrings(), null, null, null)) {
+      return cursor != null && cursor.moveToFirst() && cursor.getInt(0) == 1;
+    }
+  }
+
   public @NonNull List<DatabaseAttachment> getAttachmentsForMessage(long mmsId) {
     SQLiteDatabase           database = databaseHelper.getReadableDatabase();
     List<DatabaseAttachment> results  = new LinkedList<>();
@@ -432,6 +447,7 @@ public class AttachmentDatabase extends Database {
     contentValues.put(WIDTH, mediaStream.getWidth());
     contentValues.put(HEIGHT, mediaStream.getHeight());
     contentValues.put(DATA_RANDOM, dataInfo.random);
+    contentValues.put(TRANSCODED, 1);
 
     database.update(TABLE_NAME, contentValues, PART_ID_WHERE, databaseAttachment.getAttachmentId().toStrings());
 
@@ -724,6 +740,7 @@ public class AttachmentDatabase extends Database {
     contentValues.put(QUOTE, quote);
     contentValues.put(CAPTION, attachment.getCaption());
     contentValues.put(URL, attachment.getUrl());
+    contentValues.put(TRANSCODED, MediaTranscoder.isTranscoded(attachment.getDataUri()) ? 1 : 0);
 
     if (attachment.isSticker()) {
       contentValues.put(STICKER_PACK_ID, attachment.getSticker().getPackId());
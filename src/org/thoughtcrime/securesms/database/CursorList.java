@@ -3,6 +3,7 @@ package org.thoughtcrime.securesms.database;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.database.MatrixCursor;
+import android.database.MergeCursor;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
@@ -26,6 +27,8 @@ public class CursorList<T> implements List<T>, ObservableContent {
   private final Cursor          cursor;
   private final ModelBuilder<T> modelBuilder;
 
+  private boolean released;
+
   public CursorList(@NonNull Cursor cursor, @NonNull ModelBuilder<T> modelBuilder) {
     this.cursor       = cursor;
     this.modelBuilder = modelBuilder;
@@ -38,6 +41,15 @@ public class CursorList<T> implements List<T>, ObservableContent {
     return (CursorList<T>) new CursorList(emptyCursor(), null);
   }
 
+  /**
+   * @return A list of these items followed by the items in {@code next}. The new list takes over
+   *         this list's cursor, so closing this list afterwards has no effect.
+   */
+  public synchronized CursorList<T> append(@NonNull Cursor next) {
+    released = true;
+    return new CursorList<>(new MergeCursor(new Cursor[] { cursor, next }), modelBuilder);
+  }
+
   private static Cursor emptyCursor() {
     return new MatrixCursor(new String[] { "a" }, 0);
   }
@@ -177,8 +189,8 @@ public class CursorList<T> implements List<T>, ObservableContent {
   }
 
   @Override
-  public void close() {
-    if (!cursor.isClosed()) {
+  public synchronized void close() {
+    if (!released && !cursor.isClosed()) {
       cursor.close();
     }
   }
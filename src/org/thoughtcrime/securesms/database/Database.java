@@ -38,24 +38,23 @@ public abstract class Database {
   }
 
   protected void notifyConversationListeners(Set<Long> threadIds) {
-    for (long threadId : threadIds)
-      notifyConversationListeners(threadId);
+    DatabaseFactory.getChangeNotifier(context).notifyThreads(threadIds);
   }
 
   protected void notifyConversationListeners(long threadId) {
-    context.getContentResolver().notifyChange(DatabaseContentProviders.Conversation.getUriForThread(threadId), null);
+    DatabaseFactory.getChangeNotifier(context).notifyThread(threadId);
   }
 
   protected void notifyConversationListListeners() {
-    context.getContentResolver().notifyChange(DatabaseContentProviders.ConversationList.CONTENT_URI, null);
+    DatabaseFactory.getChangeNotifier(context).notifyConversationList();
   }
 
   protected void notifyStickerListeners() {
-    context.getContentResolver().notifyChange(DatabaseContentProviders.Sticker.CONTENT_URI, null);
+    DatabaseFactory.getChangeNotifier(context).notifyStickers();
   }
 
   protected void notifyStickerPackListeners() {
-    context.getContentResolver().notifyChange(DatabaseContentProviders.StickerPack.CONTENT_URI, null);
+    DatabaseFactory.getChangeNotifier(context).notifyStickerPacks();
   }
 
   protected void setNotifyConverationListeners(Cursor cursor, long threadId) {
@@ -81,7 +80,7 @@ public abstract class Database {
   }
 
   protected void notifyAttachmentListeners() {
-    context.getContentResolver().notifyChange(DatabaseContentProviders.Attachment.CONTENT_URI, null);
+    DatabaseFactory.getChangeNotifier(context).notifyAttachments();
   }
 
   public void reset(SQLCipherOpenHelper databaseHelper) {
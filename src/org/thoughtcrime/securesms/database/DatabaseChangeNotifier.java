@@ -0,0 +1,204 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.annotation.NonNull;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Collects database change notifications and delivers them in batches, so a burst of writes makes
+ * observers re-query once instead of once per row.
+ *
+ * Changes are held for a short window after the first one arrives. If a write transaction is
+ * still open when the window ends, they are held until it closes, so everything a transaction
+ * touched goes out together. Each batch is delivered to listeners as a single {@link ChangeSet}.
+ */
+public class DatabaseChangeNotifier {
+
+  private static final long WINDOW_MS     = 100;
+  private static final int  MAX_DEFERRALS = 10;
+
+  private final Scheduler      scheduler;
+  private final WriteState     writeState;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+  private Set<Long> threadIds = new HashSet<>();
+  private boolean   conversationList;
+  private boolean   attachments;
+  private boolean   stickers;
+  private boolean   stickerPacks;
+  private boolean   scheduled;
+  private int       deferrals;
+
+  DatabaseChangeNotifier(@NonNull Scheduler scheduler, @NonNull WriteState writeState) {
+    this.scheduler  = scheduler;
+    this.writeState = writeState;
+  }
+
+  static @NonNull DatabaseChangeNotifier create(@NonNull Context context, @NonNull WriteState writeState) {
+    HandlerThread thread = new HandlerThread("DatabaseChangeNotifier");
+    thread.start();
+
+    Handler                handler  = new Handler(thread.getLooper());
+    DatabaseChangeNotifier notifier = new DatabaseChangeNotifier(handler::postDelayed, writeState);
+
+    notifier.addListener(new ContentResolverListener(context.getContentResolver()));
+    return notifier;
+  }
+
+  public void addListener(@NonNull Listener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeListener(@NonNull Listener listener) {
+    listeners.remove(listener);
+  }
+
+  public synchronized void notifyThread(long threadId) {
+    threadIds.add(threadId);
+    schedule();
+  }
+
+  public synchronized void notifyThreads(@NonNull Set<Long> threadIds) {
+    this.threadIds.addAll(threadIds);
+    schedule();
+  }
+
+  public synchronized void notifyConversationList() {
+    conversationList = true;
+    schedule();
+  }
+
+  public synchronized void notifyAttachments() {
+    attachments = true;
+    schedule();
+  }
+
+  public synchronized void notifyStickers() {
+    stickers = true;
+    schedule();
+  }
+
+  public synchronized void notifyStickerPacks() {
+    stickerPacks = true;
+    schedule();
+  }
+
+  private void schedule() {
+    if (!scheduled) {
+      scheduled = true;
+      scheduler.schedule(this::deliver, WINDOW_MS);
+    }
+  }
+
+  private void deliver() {
+    ChangeSet changes;
+
+    synchronized (this) {
+      if (writeState.isWriting() && deferrals < MAX_DEFERRALS) {
+        deferrals++;
+        scheduler.schedule(this::deliver, WINDOW_MS);
+        return;
+      }
+
+      changes          = new ChangeSet(threadIds, conversationList, attachments, stickers, stickerPacks);
+      threadIds        = new HashSet<>();
+      conversationList = false;
+      attachments      = false;
+      stickers         = false;
+      stickerPacks     = false;
+      scheduled        = false;
+      deferrals        = 0;
+    }
+
+    for (Listener listener : listeners) {
+      listener.onChanged(changes);
+    }
+  }
+
+  /**
+   * Everything that changed during one batch.
+   */
+  public static class ChangeSet {
+
+    private final Set<Long> threadIds;
+    private final boolean   conversationList;
+    private final boolean   attachments;
+    private final boolean   stickers;
+    private final boolean   stickerPacks;
+
+    ChangeSet(@NonNull Set<Long> threadIds, boolean conversationList, boolean attachments, boolean stickers, boolean stickerPacks) {
+      this.threadIds        = Collections.unmodifiableSet(threadIds);
+      this.conversationList = conversationList;
+      this.attachments      = attachments;
+      this.stickers         = stickers;
+      this.stickerPacks     = stickerPacks;
+    }
+
+    public @NonNull Set<Long> getThreadIds() {
+      return threadIds;
+    }
+
+    public boolean isConversationListChanged() {
+      return conversationList;
+    }
+
+    public boolean isAttachmentsChanged() {
+      return attachments;
+    }
+
+    public boolean isStickersChanged() {
+      return stickers;
+    }
+
+    public boolean isStickerPacksChanged() {
+      return stickerPacks;
+    }
+  }
+
+  /**
+   * Forwards each batch to the content URIs that cursors and loaders observe.
+   */
+  private static class ContentResolverListener implements Listener {
+
+    private final ContentResolver contentResolver;
+
+    ContentResolverListener(@NonNull ContentResolver contentResolver) {
+      this.contentResolver = contentResolver;
+    }
+
+    @Override
+    public void onChanged(@NonNull ChangeSet changes) {
+      for (long threadId : changes.getThreadIds()) {
+        contentResolver.notifyChange(DatabaseContentProviders.Conversation.getUriForThread(threadId), null);
+      }
+
+      if (changes.isConversationListChanged()) contentResolver.notifyChange(DatabaseContentProviders.ConversationList.CONTENT_URI, null);
+      if (changes.isAttachmentsChanged())      contentResolver.notifyChange(DatabaseContentProviders.Attachment.CONTENT_URI, null);
+      if (changes.isStickersChanged())         contentResolver.notifyChange(DatabaseContentProviders.Sticker.CONTENT_URI, null);
+      if (changes.isStickerPacksChanged())     contentResolver.notifyChange(DatabaseContentProviders.StickerPack.CONTENT_URI, null);
+    }
+  }
+
+  public interface Listener {
+    void onChanged(@NonNull ChangeSet changes);
+  }
+
+  interface Scheduler {
+    void schedule(@NonNull Runnable runnable, long delayMs);
+  }
+
+  interface WriteState {
+    /**
+     * @return True if a write transaction is open on another thread.
+     */
+    boolean isWriting();
+  }
+}
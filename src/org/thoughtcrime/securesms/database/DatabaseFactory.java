@@ -60,6 +60,9 @@ public class DatabaseFactory {
   private final SearchDatabase        searchDatabase;
   private final JobDatabase           jobDatabase;
   private final StickerDatabase       stickerDatabase;
+  private final LinkPreviewDatabase   linkPreviewDatabase;
+
+  private final DatabaseChangeNotifier changeNotifier;
 
   // Loki
   private final LokiAPIDatabase lokiAPIDatabase;
@@ -154,8 +157,20 @@ public class DatabaseFactory {
     return getInstance(context).stickerDatabase;
   }
 
+  public static LinkPreviewDatabase getLinkPreviewDatabase(Context context) {
+    return getInstance(context).linkPreviewDatabase;
+  }
+
+  public static DatabaseChangeNotifier getChangeNotifier(Context context) {
+    return getInstance(context).changeNotifier;
+  }
+
   public static SQLiteDatabase getBackupDatabase(Context context) {
-    return getInstance(context).databaseHelper.getReadableDatabase();
+    return getInstance(context).databaseHelper.getWritableDatabase();
+  }
+
+  public static void checkpoint(Context context) {
+    getInstance(context).databaseHelper.checkpoint();
   }
 
   // region Loki
@@ -196,6 +211,7 @@ public class DatabaseFactory {
     AttachmentSecret    attachmentSecret = AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret();
 
     this.databaseHelper       = new SQLCipherOpenHelper(context, databaseSecret);
+    this.changeNotifier       = DatabaseChangeNotifier.create(context, () -> databaseHelper.getWritableDatabase().isDbLockedByOtherThreads());
     this.sms                  = new SmsDatabase(context, databaseHelper);
     this.mms                  = new MmsDatabase(context, databaseHelper);
     this.attachments          = new AttachmentDatabase(context, databaseHelper, attachmentSecret);
@@ -215,6 +231,7 @@ public class DatabaseFactory {
     this.searchDatabase       = new SearchDatabase(context, databaseHelper);
     this.jobDatabase          = new JobDatabase(context, databaseHelper);
     this.stickerDatabase      = new StickerDatabase(context, databaseHelper, attachmentSecret);
+    this.linkPreviewDatabase  = new LinkPreviewDatabase(context, databaseHelper, attachmentSecret);
     this.lokiAPIDatabase = new LokiAPIDatabase(context, databaseHelper);
     this.lokiContactPreKeyDatabase = new LokiPreKeyRecordDatabase(context, databaseHelper);
     this.lokiPreKeyBundleDatabase = new LokiPreKeyBundleDatabase(context, databaseHelper);
@@ -13,6 +13,7 @@ import android.text.TextUtils;
 import com.annimon.stream.Stream;
 
 import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
 
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 import org.thoughtcrime.securesms.recipients.Recipient;
@@ -74,6 +75,24 @@ public class GroupDatabase extends Database {
       "CREATE UNIQUE INDEX IF NOT EXISTS group_id_index ON " + TABLE_NAME + " (" + GROUP_ID + ");",
   };
 
+  /**
+   * One row per group member. {@link #MEMBERS} is still written as a snapshot for
+   * {@link GroupRecord}, but membership lookups go through this table.
+   */
+  private static final String MEMBERSHIP_TABLE_NAME = "group_membership";
+  private static final String MEMBERSHIP_GROUP_ID   = "group_id";
+  private static final String MEMBERSHIP_ADDRESS    = "address";
+
+  public static final String CREATE_MEMBERSHIP_TABLE =
+      "CREATE TABLE " + MEMBERSHIP_TABLE_NAME +
+          " (" + MEMBERSHIP_GROUP_ID + " TEXT NOT NULL, " +
+          MEMBERSHIP_ADDRESS + " TEXT NOT NULL, " +
+          "UNIQUE(" + MEMBERSHIP_GROUP_ID + ", " + MEMBERSHIP_ADDRESS + ") ON CONFLICT IGNORE);";
+
+  public static final String[] CREATE_MEMBERSHIP_INDEXES = {
+      "CREATE INDEX IF NOT EXISTS group_membership_address_index ON " + MEMBERSHIP_TABLE_NAME + " (" + MEMBERSHIP_ADDRESS + ");",
+  };
+
   private static final String[] GROUP_PROJECTION = {
       GROUP_ID, TITLE, MEMBERS, AVATAR, AVATAR_ID, AVATAR_KEY, AVATAR_CONTENT_TYPE, AVATAR_RELAY, AVATAR_DIGEST,
       TIMESTAMP, ACTIVE, MMS, AVATAR_URL
@@ -142,6 +161,29 @@ public class GroupDatabase extends Database {
     return new Reader(cursor);
   }
 
+  /**
+   * @return The groups that the given address is a member of.
+   */
+  public Reader getGroupsContaining(@NonNull Address member) {
+    String query = "SELECT " + Util.join(TYPED_GROUP_PROJECTION, ",") + " FROM " + TABLE_NAME +
+                   " INNER JOIN " + MEMBERSHIP_TABLE_NAME +
+                   " ON " + TABLE_NAME + "." + GROUP_ID + " = " + MEMBERSHIP_TABLE_NAME + "." + MEMBERSHIP_GROUP_ID +
+                   " WHERE " + MEMBERSHIP_TABLE_NAME + "." + MEMBERSHIP_ADDRESS + " = ?";
+
+    @SuppressLint("Recycle")
+    Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, new String[] {member.serialize()});
+    return new Reader(cursor);
+  }
+
+  public boolean isMember(@NonNull String groupId, @NonNull Address member) {
+    String   query = MEMBERSHIP_GROUP_ID + " = ? AND " + MEMBERSHIP_ADDRESS + " = ?";
+    String[] args  = new String[] {groupId, member.serialize()};
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(MEMBERSHIP_TABLE_NAME, new String[] {MEMBERSHIP_ADDRESS}, query, args, null, null, null, "1")) {
+      return cursor != null && cursor.moveToFirst();
+    }
+  }
+
   public @NonNull List<Recipient> getGroupMembers(String groupId, boolean includeSelf) {
     List<Address>   members     = getCurrentMembers(groupId);
     List<Recipient> recipients  = new LinkedList<>();
@@ -179,7 +221,16 @@ public class GroupDatabase extends Database {
     contentValues.put(ACTIVE, 1);
     contentValues.put(MMS, GroupUtil.isMmsGroup(groupId));
 
-    databaseHelper.getWritableDatabase().insert(TABLE_NAME, null, contentValues);
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      db.insert(TABLE_NAME, null, contentValues);
+      setMembers(db, groupId, members);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
       recipient.setName(title);
@@ -252,8 +303,16 @@ public class GroupDatabase extends Database {
     contents.put(MEMBERS, Address.toSerializedList(members, ','));
     contents.put(ACTIVE, 1);
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?",
-                                                new String[] {groupId});
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      db.update(TABLE_NAME, contents, GROUP_ID + " = ?", new String[] {groupId});
+      setMembers(db, groupId, members);
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
       recipient.setParticipants(Stream.of(members).map(a -> Recipient.from(context, a, false)).toList());
@@ -261,14 +320,22 @@ public class GroupDatabase extends Database {
   }
 
   public void remove(String groupId, Address source) {
-    List<Address> currentMembers = getCurrentMembers(groupId);
-    currentMembers.remove(source);
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
 
-    ContentValues contents = new ContentValues();
-    contents.put(MEMBERS, Address.toSerializedList(currentMembers, ','));
+    db.beginTransaction();
+    try {
+      List<Address> currentMembers = getCurrentMembers(groupId);
+      currentMembers.remove(source);
 
-    databaseHelper.getWritableDatabase().update(TABLE_NAME, contents, GROUP_ID + " = ?",
-                                                new String[] {groupId});
+      ContentValues contents = new ContentValues();
+      contents.put(MEMBERS, Address.toSerializedList(currentMembers, ','));
+
+      db.update(TABLE_NAME, contents, GROUP_ID + " = ?", new String[] {groupId});
+      db.delete(MEMBERSHIP_TABLE_NAME, MEMBERSHIP_GROUP_ID + " = ? AND " + MEMBERSHIP_ADDRESS + " = ?", new String[] {groupId, source.serialize()});
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     Recipient.applyCached(Address.fromSerialized(groupId), recipient -> {
       List<Recipient> current = recipient.getParticipants();
@@ -279,24 +346,55 @@ public class GroupDatabase extends Database {
     });
   }
 
+  /**
+   * Members come back in the order they were written in, since {@link #setMembers} inserts them
+   * in list order.
+   */
   private List<Address> getCurrentMembers(String groupId) {
-    Cursor cursor = null;
+    List<Address> members = new LinkedList<>();
 
-    try {
-      cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, new String[] {MEMBERS},
-                                                          GROUP_ID + " = ?",
-                                                          new String[] {groupId},
-                                                          null, null, null);
-
-      if (cursor != null && cursor.moveToFirst()) {
-        String serializedMembers = cursor.getString(cursor.getColumnIndexOrThrow(MEMBERS));
-        return Address.fromSerializedList(serializedMembers, ',');
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(MEMBERSHIP_TABLE_NAME, new String[] {MEMBERSHIP_ADDRESS},
+                                                                    MEMBERSHIP_GROUP_ID + " = ?",
+                                                                    new String[] {groupId},
+                                                                    null, null, "rowid"))
+    {
+      while (cursor != null && cursor.moveToNext()) {
+        members.add(Address.fromSerialized(cursor.getString(0)));
       }
+    }
 
-      return new LinkedList<>();
+    return members;
+  }
+
+  private static void setMembers(@NonNull SQLiteDatabase db, @NonNull String groupId, @NonNull List<Address> members) {
+    db.delete(MEMBERSHIP_TABLE_NAME, MEMBERSHIP_GROUP_ID + " = ?", new String[] {groupId});
+
+    SQLiteStatement statement = db.compileStatement("INSERT INTO " + MEMBERSHIP_TABLE_NAME + " (" + MEMBERSHIP_GROUP_ID + ", " + MEMBERSHIP_ADDRESS + ") VALUES (?, ?)");
+
+    try {
+      for (Address member : members) {
+        statement.bindString(1, groupId);
+        statement.bindString(2, member.serialize());
+        statement.executeInsert();
+      }
     } finally {
-      if (cursor != null)
-        cursor.close();
+      statement.close();
+    }
+  }
+
+  /**
+   * Fills the membership table from the serialized member lists of existing groups.
+   */
+  public static void migrateMembership(@NonNull SQLiteDatabase db) {
+    try (Cursor cursor = db.query(TABLE_NAME, new String[] {GROUP_ID, MEMBERS}, null, null, null, null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        String groupId = cursor.getString(0);
+        String members = cursor.getString(1);
+
+        if (groupId != null && !TextUtils.isEmpty(members)) {
+          setMembers(db, groupId, Address.fromSerializedList(members, ','));
+        }
+      }
     }
   }
 
@@ -7,9 +7,13 @@ import android.database.Cursor;
 import android.support.annotation.NonNull;
 
 import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteStatement;
 
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
+import org.whispersystems.libsignal.util.Pair;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -33,45 +37,100 @@ public class GroupReceiptDatabase extends Database {
       MMS_ID + " INTEGER, " + ADDRESS + " TEXT, " + STATUS + " INTEGER, " + TIMESTAMP + " INTEGER, " + UNIDENTIFIED + " INTEGER DEFAULT 0);";
 
   public static final String[] CREATE_INDEXES = {
-      "CREATE INDEX IF NOT EXISTS group_receipt_mms_id_index ON " + TABLE_NAME + " (" + MMS_ID + ");",
+      "CREATE INDEX IF NOT EXISTS group_receipt_mms_id_address_index ON " + TABLE_NAME + " (" + MMS_ID + ", " + ADDRESS + ");",
   };
 
   public GroupReceiptDatabase(Context context, SQLCipherOpenHelper databaseHelper) {
     super(context, databaseHelper);
   }
 
-  public void insert(List<Address> addresses, long mmsId, int status, long timestamp) {
-    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+  public void insert(Collection<Address> addresses, long mmsId, int status, long timestamp) {
+    insert(databaseHelper.getWritableDatabase(), addresses, mmsId, status, timestamp);
+  }
+
+  public void update(Address address, long mmsId, int status, long timestamp) {
+    update(Collections.singletonList(address), mmsId, status, timestamp);
+  }
 
-    for (Address address : addresses) {
-      ContentValues values = new ContentValues(4);
-      values.put(MMS_ID, mmsId);
-      values.put(ADDRESS, address.serialize());
-      values.put(STATUS, status);
-      values.put(TIMESTAMP, timestamp);
+  /**
+   * Moves each member's receipt forward to the status, leaving any that are already past it.
+   */
+  public void update(Collection<Address> addresses, long mmsId, int status, long timestamp) {
+    update(databaseHelper.getWritableDatabase(), addresses, mmsId, status, timestamp);
+  }
+
+  public void setUnidentified(Address address, long mmsId, boolean unidentified) {
+    setUnidentified(Collections.singletonList(new Pair<>(address, unidentified)), mmsId);
+  }
 
-      db.insert(TABLE_NAME, null, values);
+  public void setUnidentified(Collection<Pair<Address, Boolean>> results, long mmsId) {
+    SQLiteDatabase  db        = databaseHelper.getWritableDatabase();
+    SQLiteStatement statement = db.compileStatement("UPDATE " + TABLE_NAME + " SET " + UNIDENTIFIED + " = ? WHERE " + MMS_ID + " = ? AND " + ADDRESS + " = ?");
+
+    db.beginTransaction();
+    try {
+      for (Pair<Address, Boolean> result : results) {
+        statement.bindLong(1, result.second() ? 1 : 0);
+        statement.bindLong(2, mmsId);
+        statement.bindString(3, result.first().serialize());
+        statement.execute();
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      statement.close();
+      db.endTransaction();
     }
   }
 
-  public void update(Address address, long mmsId, int status, long timestamp) {
-    SQLiteDatabase db     = databaseHelper.getWritableDatabase();
-    ContentValues  values = new ContentValues(2);
-    values.put(STATUS, status);
-    values.put(TIMESTAMP, timestamp);
+  static void insert(@NonNull SQLiteDatabase db, @NonNull Collection<Address> addresses, long mmsId, int status, long timestamp) {
+    SQLiteStatement statement = db.compileStatement("INSERT INTO " + TABLE_NAME + " (" + MMS_ID + ", " + ADDRESS + ", " + STATUS + ", " + TIMESTAMP + ") VALUES (?, ?, ?, ?)");
+
+    db.beginTransaction();
+    try {
+      for (Address address : addresses) {
+        statement.bindLong(1, mmsId);
+        statement.bindString(2, address.serialize());
+        statement.bindLong(3, status);
+        statement.bindLong(4, timestamp);
+        statement.executeInsert();
+      }
 
-    db.update(TABLE_NAME, values, MMS_ID + " = ? AND " + ADDRESS + " = ? AND " + STATUS + " < ?",
-              new String[] {String.valueOf(mmsId), address.serialize(), String.valueOf(status)});
+      db.setTransactionSuccessful();
+    } finally {
+      statement.close();
+      db.endTransaction();
+    }
   }
 
-  public void setUnidentified(Address address, long mmsId, boolean unidentified) {
-    SQLiteDatabase db     = databaseHelper.getWritableDatabase();
-    ContentValues  values = new ContentValues(1);
-    values.put(UNIDENTIFIED, unidentified ? 1 : 0);
+  /**
+   * @return The number of receipts that moved forward.
+   */
+  static int update(@NonNull SQLiteDatabase db, @NonNull Collection<Address> addresses, long mmsId, int status, long timestamp) {
+    if (addresses.isEmpty()) return 0;
+
+    SQLiteStatement statement = db.compileStatement("UPDATE " + TABLE_NAME + " SET " + STATUS + " = ?, " + TIMESTAMP + " = ? " +
+                                                    "WHERE " + MMS_ID + " = ? AND " + ADDRESS + " = ? AND " + STATUS + " < ?");
+    int             updated   = 0;
+
+    db.beginTransaction();
+    try {
+      for (Address address : addresses) {
+        statement.bindLong(1, status);
+        statement.bindLong(2, timestamp);
+        statement.bindLong(3, mmsId);
+        statement.bindString(4, address.serialize());
+        statement.bindLong(5, status);
+        updated += statement.executeUpdateDelete();
+      }
 
-    db.update(TABLE_NAME, values, MMS_ID + " = ? AND " + ADDRESS + " = ?",
-              new String[] {String.valueOf(mmsId), address.serialize()});
+      db.setTransactionSuccessful();
+    } finally {
+      statement.close();
+      db.endTransaction();
+    }
 
+    return updated;
   }
 
   public @NonNull List<GroupReceiptInfo> getGroupReceiptInfo(long mmsId) {
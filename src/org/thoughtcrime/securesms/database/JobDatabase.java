@@ -141,6 +141,16 @@ public class JobDatabase extends Database {
     databaseHelper.getWritableDatabase().update(Jobs.TABLE_NAME, contentValues, null, null);
   }
 
+  public synchronized void updateJobData(@NonNull String id, @NonNull String serializedData) {
+    ContentValues contentValues = new ContentValues();
+    contentValues.put(Jobs.SERIALIZED_DATA, serializedData);
+
+    String   query = Jobs.JOB_SPEC_ID + " = ?";
+    String[] args  = new String[]{ id };
+
+    databaseHelper.getWritableDatabase().update(Jobs.TABLE_NAME, contentValues, query, args);
+  }
+
   public synchronized void deleteJobs(@NonNull List<String> jobIds) {
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
 
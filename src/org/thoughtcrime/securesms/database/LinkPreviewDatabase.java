@@ -0,0 +1,254 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Pair;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.thoughtcrime.securesms.crypto.AttachmentSecret;
+import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
+import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream;
+import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.util.Util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Caches fetched link previews, including URLs that had no usable preview, so the same link is
+ * not fetched again for every message it appears in. Thumbnails are kept in encrypted files, like
+ * stickers, rather than in the row.
+ */
+public class LinkPreviewDatabase extends Database {
+
+  private static final String TAG = LinkPreviewDatabase.class.getSimpleName();
+
+  public  static final String TABLE_NAME       = "link_preview_cache";
+  private static final String URL              = "url";
+  private static final String TITLE            = "title";
+  private static final String THUMBNAIL_PATH   = "thumbnail_path";
+  private static final String THUMBNAIL_RANDOM = "thumbnail_random";
+  private static final String THUMBNAIL_TYPE   = "thumbnail_content_type";
+  private static final String THUMBNAIL_WIDTH  = "thumbnail_width";
+  private static final String THUMBNAIL_HEIGHT = "thumbnail_height";
+  private static final String FETCHED          = "fetched";
+  private static final String EXPIRES          = "expires";
+
+  public static final String CREATE_TABLE = "CREATE TABLE " + TABLE_NAME + " (" + URL              + " TEXT PRIMARY KEY, " +
+                                                                                  TITLE            + " TEXT, " +
+                                                                                  THUMBNAIL_PATH   + " TEXT, " +
+                                                                                  THUMBNAIL_RANDOM + " BLOB, " +
+                                                                                  THUMBNAIL_TYPE   + " TEXT, " +
+                                                                                  THUMBNAIL_WIDTH  + " INTEGER DEFAULT 0, " +
+                                                                                  THUMBNAIL_HEIGHT + " INTEGER DEFAULT 0, " +
+                                                                                  FETCHED          + " INTEGER NOT NULL, " +
+                                                                                  EXPIRES          + " INTEGER NOT NULL);";
+
+  public static final String[] CREATE_INDEXES = {
+      "CREATE INDEX IF NOT EXISTS link_preview_cache_fetched_index ON " + TABLE_NAME + " (" + FETCHED + ");"
+  };
+
+  private static final int MAX_ENTRIES = 500;
+
+  private static final String DIRECTORY = "link_previews";
+
+  private final AttachmentSecret attachmentSecret;
+
+  public LinkPreviewDatabase(Context context, SQLCipherOpenHelper databaseHelper, AttachmentSecret attachmentSecret) {
+    super(context, databaseHelper);
+    this.attachmentSecret = attachmentSecret;
+  }
+
+  /**
+   * @return The cached entry for the URL, or null if there is none, it has expired, or its
+   *         thumbnail can no longer be read.
+   */
+  public @Nullable CachedLinkPreview get(@NonNull String url) {
+    SQLiteDatabase db    = databaseHelper.getReadableDatabase();
+    String         query = URL + " = ? AND " + EXPIRES + " > ?";
+    String[]       args  = new String[] { url, String.valueOf(System.currentTimeMillis()) };
+
+    try (Cursor cursor = db.query(TABLE_NAME, null, query, args, null, null, null)) {
+      if (cursor != null && cursor.moveToFirst()) {
+        String path      = cursor.getString(cursor.getColumnIndexOrThrow(THUMBNAIL_PATH));
+        byte[] thumbnail = null;
+
+        if (path != null) {
+          try (InputStream in = ModernDecryptingPartInputStream.createFor(attachmentSecret, cursor.getBlob(cursor.getColumnIndexOrThrow(THUMBNAIL_RANDOM)), new File(path), 0)) {
+            thumbnail = Util.readFully(in);
+          } catch (IOException e) {
+            Log.w(TAG, "Failed to read cached thumbnail.", e);
+            return null;
+          }
+        }
+
+        return new CachedLinkPreview(cursor.getString(cursor.getColumnIndexOrThrow(TITLE)),
+                                     thumbnail,
+                                     cursor.getString(cursor.getColumnIndexOrThrow(THUMBNAIL_TYPE)),
+                                     cursor.getInt(cursor.getColumnIndexOrThrow(THUMBNAIL_WIDTH)),
+                                     cursor.getInt(cursor.getColumnIndexOrThrow(THUMBNAIL_HEIGHT)));
+      }
+    }
+
+    return null;
+  }
+
+  public void insert(@NonNull String url, @NonNull CachedLinkPreview preview, long ttl) {
+    SQLiteDatabase db  = databaseHelper.getWritableDatabase();
+    long           now = System.currentTimeMillis();
+
+    ContentValues values = new ContentValues(9);
+    values.put(URL, url);
+    values.put(TITLE, preview.getTitle());
+    values.put(THUMBNAIL_TYPE, preview.getThumbnailContentType());
+    values.put(THUMBNAIL_WIDTH, preview.getThumbnailWidth());
+    values.put(THUMBNAIL_HEIGHT, preview.getThumbnailHeight());
+    values.put(FETCHED, now);
+    values.put(EXPIRES, now + ttl);
+
+    if (preview.getThumbnail() != null) {
+      try {
+        ThumbnailFile file = saveThumbnail(preview.getThumbnail());
+        values.put(THUMBNAIL_PATH, file.file.getAbsolutePath());
+        values.put(THUMBNAIL_RANDOM, file.random);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to save thumbnail, not caching the preview.", e);
+        return;
+      }
+    }
+
+    List<String> staleFiles = new LinkedList<>();
+
+    db.beginTransaction();
+    try {
+      staleFiles.addAll(getThumbnailPaths(db, URL + " = ?", new String[] { url }));
+      db.replace(TABLE_NAME, null, values);
+      staleFiles.addAll(trim(db, now));
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+
+    for (String path : staleFiles) {
+      new File(path).delete();
+    }
+  }
+
+  /**
+   * @return The thumbnail files of the trimmed entries, to be deleted once the trim commits.
+   */
+  private @NonNull List<String> trim(@NonNull SQLiteDatabase db, long now) {
+    String   expired     = EXPIRES + " <= ?";
+    String[] expiredArgs = new String[] { String.valueOf(now) };
+    String   overflow    = URL + " IN (SELECT " + URL + " FROM " + TABLE_NAME + " ORDER BY " + FETCHED + " DESC LIMIT -1 OFFSET " + MAX_ENTRIES + ")";
+
+    List<String> paths = new LinkedList<>();
+
+    paths.addAll(getThumbnailPaths(db, expired, expiredArgs));
+    db.delete(TABLE_NAME, expired, expiredArgs);
+
+    paths.addAll(getThumbnailPaths(db, overflow, null));
+    db.delete(TABLE_NAME, overflow, null);
+
+    return paths;
+  }
+
+  private static @NonNull List<String> getThumbnailPaths(@NonNull SQLiteDatabase db, @NonNull String selection, @Nullable String[] args) {
+    List<String> paths = new LinkedList<>();
+
+    try (Cursor cursor = db.query(TABLE_NAME, new String[] { THUMBNAIL_PATH }, selection + " AND " + THUMBNAIL_PATH + " IS NOT NULL", args, null, null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        paths.add(cursor.getString(0));
+      }
+    }
+
+    return paths;
+  }
+
+  private @NonNull ThumbnailFile saveThumbnail(@NonNull byte[] thumbnail) throws IOException {
+    File                       directory = context.getDir(DIRECTORY, Context.MODE_PRIVATE);
+    File                       file      = File.createTempFile("preview", ".mms", directory);
+    Pair<byte[], OutputStream> out       = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, false);
+
+    try (OutputStream outputStream = out.second) {
+      outputStream.write(thumbnail);
+    } catch (IOException e) {
+      file.delete();
+      throw e;
+    }
+
+    return new ThumbnailFile(file, out.first);
+  }
+
+  private static final class ThumbnailFile {
+    private final File   file;
+    private final byte[] random;
+
+    private ThumbnailFile(@NonNull File file, @NonNull byte[] random) {
+      this.file   = file;
+      this.random = random;
+    }
+  }
+
+  public static class CachedLinkPreview {
+
+    private final String title;
+    private final byte[] thumbnail;
+    private final String thumbnailContentType;
+    private final int    thumbnailWidth;
+    private final int    thumbnailHeight;
+
+    public CachedLinkPreview(@Nullable String title,
+                             @Nullable byte[] thumbnail,
+                             @Nullable String thumbnailContentType,
+                             int thumbnailWidth,
+                             int thumbnailHeight)
+    {
+      this.title                = title;
+      this.thumbnail            = thumbnail;
+      this.thumbnailContentType = thumbnailContentType;
+      this.thumbnailWidth       = thumbnailWidth;
+      this.thumbnailHeight      = thumbnailHeight;
+    }
+
+    public static CachedLinkPreview absent() {
+      return new CachedLinkPreview(null, null, null, 0, 0);
+    }
+
+    /**
+     * @return True if this entry records that the URL had no usable preview.
+     */
+    public boolean isAbsent() {
+      return title == null && thumbnail == null;
+    }
+
+    public @Nullable String getTitle() {
+      return title;
+    }
+
+    public @Nullable byte[] getThumbnail() {
+      return thumbnail;
+    }
+
+    public @Nullable String getThumbnailContentType() {
+      return thumbnailContentType;
+    }
+
+    public int getThumbnailWidth() {
+      return thumbnailWidth;
+    }
+
+    public int getThumbnailHeight() {
+      return thumbnailHeight;
+    }
+  }
+}
@@ -11,11 +11,18 @@ import net.sqlcipher.database.SQLiteDatabase;
 import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 
+import java.util.Calendar;
 import java.util.List;
 
 public class MediaDatabase extends Database {
 
-    private static final String BASE_MEDIA_QUERY = "SELECT " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " AS " + AttachmentDatabase.ROW_ID + ", "
+  public static final int RANGE_TODAY      = 0;
+  public static final int RANGE_YESTERDAY  = 1;
+  public static final int RANGE_THIS_WEEK  = 2;
+  public static final int RANGE_THIS_MONTH = 3;
+  public static final int RANGE_OLDER      = 4;
+
+    private static final String MEDIA_PROJECTION = AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " AS " + AttachmentDatabase.ROW_ID + ", "
         + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.CONTENT_TYPE + ", "
         + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.THUMBNAIL_ASPECT_RATIO + ", "
         + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.UNIQUE_ID + ", "
@@ -41,18 +48,65 @@ public class MediaDatabase extends Database {
         + MmsDatabase.TABLE_NAME + "." + MmsDatabase.MESSAGE_BOX + ", "
         + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + ", "
         + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + ", "
-        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ADDRESS + " "
-        + "FROM " + AttachmentDatabase.TABLE_NAME + " LEFT JOIN " + MmsDatabase.TABLE_NAME
+        + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ADDRESS + " ";
+
+    private static final String MEDIA_SOURCE = "FROM " + AttachmentDatabase.TABLE_NAME + " LEFT JOIN " + MmsDatabase.TABLE_NAME
         + " ON " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.MMS_ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " "
         + "WHERE " + AttachmentDatabase.MMS_ID + " IN (SELECT " + MmsSmsColumns.ID
         + " FROM " + MmsDatabase.TABLE_NAME
         + " WHERE " + MmsDatabase.THREAD_ID + " = ?) AND (%s) AND "
         + AttachmentDatabase.DATA + " IS NOT NULL AND "
         + AttachmentDatabase.QUOTE + " = 0 AND "
-        + AttachmentDatabase.STICKER_PACK_ID + " IS NULL "
+        + AttachmentDatabase.STICKER_PACK_ID + " IS NULL ";
+
+    private static final String BASE_MEDIA_QUERY = "SELECT " + MEDIA_PROJECTION + MEDIA_SOURCE
         + "ORDER BY " + AttachmentDatabase.TABLE_NAME + "." + AttachmentDatabase.ROW_ID + " DESC";
 
-  private static final String GALLERY_MEDIA_QUERY  = String.format(BASE_MEDIA_QUERY, AttachmentDatabase.CONTENT_TYPE + " LIKE 'image/%' OR " + AttachmentDatabase.CONTENT_TYPE + " LIKE 'video/%'");
+  private static final String GALLERY_FILTER = AttachmentDatabase.CONTENT_TYPE + " LIKE 'image/%' OR " + AttachmentDatabase.CONTENT_TYPE + " LIKE 'video/%'";
+
+  private static final String MEDIA_DATE = "(CASE WHEN (" + MmsDatabase.TABLE_NAME + "." + MmsDatabase.MESSAGE_BOX + " & " + MmsSmsColumns.Types.PUSH_MESSAGE_BIT + ") != 0 "
+      + "THEN " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_SENT + " "
+      + "ELSE " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + " END)";
+
+  // The boundaries are bound as the first four arguments, ahead of the thread id
+  private static final String MEDIA_RANGE = "CASE WHEN " + MEDIA_DATE + " > ? THEN " + RANGE_TODAY + " "
+      + "WHEN " + MEDIA_DATE + " > ? THEN " + RANGE_YESTERDAY + " "
+      + "WHEN " + MEDIA_DATE + " > ? THEN " + RANGE_THIS_WEEK + " "
+      + "WHEN " + MEDIA_DATE + " > ? THEN " + RANGE_THIS_MONTH + " "
+      + "ELSE " + RANGE_OLDER + " END";
+
+  private static final String MEDIA_MONTH = "CAST(strftime('%Y%m', " + MEDIA_DATE + " / 1000, 'unixepoch', 'localtime') AS INTEGER)";
+
+  private static final String SECTION_RANGE = "section_range";
+  private static final String SECTION_MONTH = "section_month";
+  private static final String SECTION_COUNT = "section_count";
+
+  public static final String MEDIA_DATE_COLUMN = "media_date";
+
+  private static final String SECTIONED_GALLERY_MEDIA = "SELECT " + MEDIA_PROJECTION.trim() + ", "
+      + MEDIA_RANGE + " AS " + SECTION_RANGE + ", "
+      + MEDIA_MONTH + " AS " + SECTION_MONTH + " "
+      + String.format(MEDIA_SOURCE, GALLERY_FILTER);
+
+  // Only older media is split by month, everything more recent is one section per range
+  private static final String GALLERY_SECTIONS_QUERY = "SELECT " + SECTION_RANGE + ", "
+      + "CASE WHEN " + SECTION_RANGE + " = " + RANGE_OLDER + " THEN " + SECTION_MONTH + " ELSE 0 END AS " + SECTION_MONTH + ", "
+      + "COUNT(*) AS " + SECTION_COUNT + " "
+      + "FROM (" + SECTIONED_GALLERY_MEDIA + ") "
+      + "GROUP BY 1, 2 "
+      + "ORDER BY 1 ASC, 2 DESC";
+
+  // A section is a span of dates, so a page is the next rows below the last (date, id) seen in it
+  private static final String GALLERY_SECTION_PAGE_QUERY = "SELECT * FROM ("
+      + "SELECT " + MEDIA_PROJECTION.trim() + ", " + MEDIA_DATE + " AS " + MEDIA_DATE_COLUMN + " "
+      + String.format(MEDIA_SOURCE, GALLERY_FILTER)
+      + ") "
+      + "WHERE " + MEDIA_DATE_COLUMN + " > ? AND " + MEDIA_DATE_COLUMN + " <= ? "
+      + "AND (" + MEDIA_DATE_COLUMN + " < ? OR (" + MEDIA_DATE_COLUMN + " = ? AND " + AttachmentDatabase.ROW_ID + " < ?)) "
+      + "ORDER BY " + MEDIA_DATE_COLUMN + " DESC, " + AttachmentDatabase.ROW_ID + " DESC "
+      + "LIMIT ?";
+
+  private static final String GALLERY_MEDIA_QUERY  = String.format(BASE_MEDIA_QUERY, GALLERY_FILTER);
   private static final String DOCUMENT_MEDIA_QUERY = String.format(BASE_MEDIA_QUERY, AttachmentDatabase.CONTENT_TYPE + " NOT LIKE 'image/%' AND " +
                                                                                      AttachmentDatabase.CONTENT_TYPE + " NOT LIKE 'video/%' AND " +
                                                                                      AttachmentDatabase.CONTENT_TYPE + " NOT LIKE 'audio/%' AND " +
@@ -63,12 +117,77 @@ public class MediaDatabase extends Database {
   }
 
   public Cursor getGalleryMediaForThread(long threadId) {
-    SQLiteDatabase database = databaseHelper.getReadableDatabase();
-    Cursor cursor = database.rawQuery(GALLERY_MEDIA_QUERY, new String[]{threadId+""});
+    Cursor cursor = getGalleryMedia(databaseHelper.getReadableDatabase(), threadId);
     setNotifyConverationListeners(cursor, threadId);
     return cursor;
   }
 
+  static Cursor getGalleryMedia(@NonNull SQLiteDatabase database, long threadId) {
+    return database.rawQuery(GALLERY_MEDIA_QUERY, new String[]{threadId+""});
+  }
+
+  /**
+   * @return One row per non-empty gallery section, newest first, with the columns range, month
+   *         (yyyyMM for {@link #RANGE_OLDER}, otherwise 0) and count.
+   */
+  public Cursor getGallerySectionsForThread(long threadId, long now) {
+    return getGallerySections(databaseHelper.getReadableDatabase(), threadId, now);
+  }
+
+  /**
+   * @return Up to limit records of the given section, newest first, that come after the given
+   *         date and attachment id. Use {@link Long#MAX_VALUE} for both to start at the top. Rows
+   *         also have a {@link #MEDIA_DATE_COLUMN} to continue from.
+   */
+  public Cursor getGallerySectionPageForThread(long threadId, long now, int range, int month, long beforeDate, long beforeAttachmentId, int limit) {
+    return getGallerySectionPage(databaseHelper.getReadableDatabase(), threadId, now, range, month, beforeDate, beforeAttachmentId, limit);
+  }
+
+  static Cursor getGallerySections(@NonNull SQLiteDatabase database, long threadId, long now) {
+    return database.rawQuery(GALLERY_SECTIONS_QUERY, getSectionArgs(threadId, now));
+  }
+
+  static Cursor getGallerySectionPage(@NonNull SQLiteDatabase database, long threadId, long now, int range, int month, long beforeDate, long beforeAttachmentId, int limit) {
+    long[] bounds = getSectionBounds(now, range, month);
+
+    return database.rawQuery(GALLERY_SECTION_PAGE_QUERY, new Object[] { threadId, bounds[0], bounds[1], beforeDate, beforeDate, beforeAttachmentId, limit });
+  }
+
+  // Bound as numbers, since a date compared with a text argument never matches
+  private static Object[] getSectionArgs(long threadId, long now) {
+    return new Object[] { daysBefore(now, 1), daysBefore(now, 2), daysBefore(now, 7), daysBefore(now, 30), threadId };
+  }
+
+  /**
+   * @return The dates a section covers, as {after, upTo}, matching how {@link #MEDIA_RANGE} and
+   *         {@link #MEDIA_MONTH} assign them.
+   */
+  private static long[] getSectionBounds(long now, int range, int month) {
+    switch (range) {
+      case RANGE_TODAY:      return new long[] { daysBefore(now, 1),  Long.MAX_VALUE };
+      case RANGE_YESTERDAY:  return new long[] { daysBefore(now, 2),  daysBefore(now, 1) };
+      case RANGE_THIS_WEEK:  return new long[] { daysBefore(now, 7),  daysBefore(now, 2) };
+      case RANGE_THIS_MONTH: return new long[] { daysBefore(now, 30), daysBefore(now, 7) };
+    }
+
+    Calendar calendar = Calendar.getInstance();
+    calendar.clear();
+    calendar.set(month / 100, month % 100 - 1, 1);
+
+    long monthStart = calendar.getTimeInMillis();
+
+    calendar.add(Calendar.MONTH, 1);
+
+    return new long[] { monthStart - 1, Math.min(daysBefore(now, 30), calendar.getTimeInMillis() - 1) };
+  }
+
+  private static long daysBefore(long now, int days) {
+    Calendar calendar = Calendar.getInstance();
+    calendar.setTimeInMillis(now);
+    calendar.add(Calendar.DAY_OF_YEAR, -days);
+    return calendar.getTimeInMillis();
+  }
+
   public void subscribeToMediaChanges(@NonNull ContentObserver observer) {
     registerAttachmentListeners(observer);
   }
@@ -135,6 +135,8 @@ public class MmsDatabase extends MessagingDatabase {
     "CREATE INDEX IF NOT EXISTS mms_message_box_index ON " + TABLE_NAME + " (" + MESSAGE_BOX + ");",
     "CREATE INDEX IF NOT EXISTS mms_date_sent_index ON " + TABLE_NAME + " (" + DATE_SENT + ");",
     "CREATE INDEX IF NOT EXISTS mms_thread_date_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + DATE_RECEIVED + ");",
+    "CREATE INDEX IF NOT EXISTS mms_thread_address_index ON " + TABLE_NAME + " (" + THREAD_ID + ", " + ADDRESS + ");",
+    "CREATE INDEX IF NOT EXISTS mms_expire_started_index ON " + TABLE_NAME + " (" + EXPIRE_STARTED + ", " + EXPIRES_IN + ");",
   };
 
   private static final String[] MMS_PROJECTION = new String[] {
@@ -329,11 +331,6 @@ public class MmsDatabase extends MessagingDatabase {
     return cursor;
   }
 
-  public Reader getExpireStartedMessages() {
-    String where = EXPIRE_STARTED + " > 0";
-    return readerFor(rawQuery(where, null));
-  }
-
   private void updateMailboxBitmask(long id, long maskOff, long maskOn, Optional<Long> threadId) {
     SQLiteDatabase db = databaseHelper.getWritableDatabase();
     db.execSQL("UPDATE " + TABLE_NAME +
@@ -994,8 +991,8 @@ public class MmsDatabase extends MessagingDatabase {
       receiptDatabase.insert(Stream.of(members).map(Recipient::getAddress).toList(),
                              messageId, GroupReceiptDatabase.STATUS_UNDELIVERED, message.getSentTimeMillis());
 
-      for (Address address : earlyDeliveryReceipts.keySet()) receiptDatabase.update(address, messageId, GroupReceiptDatabase.STATUS_DELIVERED, -1);
-      for (Address address : earlyReadReceipts.keySet())     receiptDatabase.update(address, messageId, GroupReceiptDatabase.STATUS_READ, -1);
+      receiptDatabase.update(earlyDeliveryReceipts.keySet(), messageId, GroupReceiptDatabase.STATUS_DELIVERED, -1);
+      receiptDatabase.update(earlyReadReceipts.keySet(), messageId, GroupReceiptDatabase.STATUS_READ, -1);
     }
 
     DatabaseFactory.getThreadDatabase(context).setLastSeen(threadId);
@@ -1040,7 +1037,7 @@ public class MmsDatabase extends MessagingDatabase {
         ContentValues contactValues = new ContentValues();
         contactValues.put(SHARED_CONTACTS, serializedContacts);
 
-        SQLiteDatabase database = databaseHelper.getReadableDatabase();
+        SQLiteDatabase database = databaseHelper.getWritableDatabase();
         int rows = database.update(TABLE_NAME, contactValues, ID + " = ?", new String[]{ String.valueOf(messageId) });
 
         if (rows <= 0) {
@@ -1052,7 +1049,7 @@ public class MmsDatabase extends MessagingDatabase {
         ContentValues contactValues = new ContentValues();
         contactValues.put(LINK_PREVIEWS, serializedPreviews);
 
-        SQLiteDatabase database = databaseHelper.getReadableDatabase();
+        SQLiteDatabase database = databaseHelper.getWritableDatabase();
         int rows = database.update(TABLE_NAME, contactValues, ID + " = ?", new String[]{ String.valueOf(messageId) });
 
         if (rows <= 0) {
@@ -1193,32 +1190,6 @@ public class MmsDatabase extends MessagingDatabase {
     }
   }
 
-  /*package*/void deleteMessagesInThreadBeforeDate(long threadId, long date) {
-    Cursor cursor = null;
-
-    try {
-      SQLiteDatabase db = databaseHelper.getReadableDatabase();
-      String where      = THREAD_ID + " = ? AND (CASE (" + MESSAGE_BOX + " & " + Types.BASE_TYPE_MASK + ") ";
-
-      for (long outgoingType : Types.OUTGOING_MESSAGE_TYPES) {
-        where += " WHEN " + outgoingType + " THEN " + DATE_SENT + " < " + date;
-      }
-
-      where += (" ELSE " + DATE_RECEIVED + " < " + date + " END)");
-
-      cursor = db.query(TABLE_NAME, new String[] {ID}, where, new String[] {threadId+""}, null, null, null);
-
-      while (cursor != null && cursor.moveToNext()) {
-        Log.i("MmsDatabase", "Trimming: " + cursor.getLong(0));
-        delete(cursor.getLong(0));
-      }
-
-    } finally {
-      if (cursor != null)
-        cursor.close();
-    }
-  }
-
 
   public void deleteAllThreads() {
     DatabaseFactory.getAttachmentDatabase(context).deleteAllAttachments();
@@ -21,6 +21,8 @@ import android.database.Cursor;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
+import com.annimon.stream.Stream;
+
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteQueryBuilder;
 
@@ -29,7 +31,12 @@ import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 import org.thoughtcrime.securesms.database.model.MessageRecord;
 import org.thoughtcrime.securesms.util.Util;
 
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 public class MmsSmsDatabase extends Database {
@@ -40,6 +47,7 @@ public class MmsSmsDatabase extends Database {
   public static final String TRANSPORT     = "transport_type";
   public static final String MMS_TRANSPORT = "mms";
   public static final String SMS_TRANSPORT = "sms";
+  public static final String EXPIRES_AT    = "expires_at";
 
   private static final String[] PROJECTION = {MmsSmsColumns.ID, MmsSmsColumns.UNIQUE_ROW_ID,
                                               SmsDatabase.BODY, SmsDatabase.TYPE,
@@ -146,6 +154,116 @@ public class MmsSmsDatabase extends Database {
     }
   }
 
+  /**
+   * @return The distinct addresses of every message in the thread, answered from the
+   *         (thread_id, address) indexes without reading the messages themselves.
+   */
+  public @NonNull Set<String> getParticipantAddresses(long threadId) {
+    return getParticipantAddresses(databaseHelper.getReadableDatabase(), threadId);
+  }
+
+  static @NonNull Set<String> getParticipantAddresses(@NonNull SQLiteDatabase db, long threadId) {
+    String   query = "SELECT " + MmsSmsColumns.ADDRESS + " FROM " + SmsDatabase.TABLE_NAME + " WHERE " + MmsSmsColumns.THREAD_ID + " = ? AND " + MmsSmsColumns.ADDRESS + " IS NOT NULL" +
+                     " UNION " +
+                     "SELECT " + MmsSmsColumns.ADDRESS + " FROM " + MmsDatabase.TABLE_NAME + " WHERE " + MmsSmsColumns.THREAD_ID + " = ? AND " + MmsSmsColumns.ADDRESS + " IS NOT NULL";
+    String[] args  = new String[] { String.valueOf(threadId), String.valueOf(threadId) };
+
+    Set<String> addresses = new HashSet<>();
+
+    try (Cursor cursor = db.rawQuery(query, args)) {
+      while (cursor != null && cursor.moveToNext()) {
+        addresses.add(cursor.getString(0));
+      }
+    }
+
+    return addresses;
+  }
+
+  /**
+   * @return The {@link MmsSmsColumns#ID}, {@link #TRANSPORT} and {@link #EXPIRES_AT} of every
+   *         message whose expiration timer has started, read from the expire_started indexes.
+   */
+  public Cursor getExpirationStartedMessages() {
+    String query = "SELECT " + MmsSmsColumns.ID + ", '" + SMS_TRANSPORT + "' AS " + TRANSPORT + ", " + MmsSmsColumns.EXPIRE_STARTED + " + " + MmsSmsColumns.EXPIRES_IN + " AS " + EXPIRES_AT +
+                   " FROM " + SmsDatabase.TABLE_NAME + " WHERE " + MmsSmsColumns.EXPIRE_STARTED + " > 0" +
+                   " UNION ALL " +
+                   "SELECT " + MmsSmsColumns.ID + ", '" + MMS_TRANSPORT + "' AS " + TRANSPORT + ", " + MmsSmsColumns.EXPIRE_STARTED + " + " + MmsSmsColumns.EXPIRES_IN + " AS " + EXPIRES_AT +
+                   " FROM " + MmsDatabase.TABLE_NAME + " WHERE " + MmsSmsColumns.EXPIRE_STARTED + " > 0";
+
+    return databaseHelper.getReadableDatabase().rawQuery(query, null);
+  }
+
+  /**
+   * Deletes a batch of messages with one transaction per thread, so each thread is updated and
+   * observers are notified once for the batch rather than once per message.
+   */
+  public void deleteMessages(@NonNull Collection<Long> smsIds, @NonNull Collection<Long> mmsIds) {
+    SQLiteDatabase        db          = databaseHelper.getWritableDatabase();
+    Map<Long, List<Long>> smsByThread = groupByThread(db, SmsDatabase.TABLE_NAME, smsIds);
+    Map<Long, List<Long>> mmsByThread = groupByThread(db, MmsDatabase.TABLE_NAME, mmsIds);
+    Set<Long>             threadIds   = new HashSet<>(smsByThread.keySet());
+
+    threadIds.addAll(mmsByThread.keySet());
+
+    AttachmentDatabase   attachmentDatabase   = DatabaseFactory.getAttachmentDatabase(context);
+    GroupReceiptDatabase groupReceiptDatabase = DatabaseFactory.getGroupReceiptDatabase(context);
+    ThreadDatabase       threadDatabase       = DatabaseFactory.getThreadDatabase(context);
+
+    for (long threadId : threadIds) {
+      db.beginTransaction();
+      try {
+        for (long id : getOrEmpty(smsByThread, threadId)) {
+          db.delete(SmsDatabase.TABLE_NAME, ID_WHERE, new String[] { String.valueOf(id) });
+        }
+
+        for (long id : getOrEmpty(mmsByThread, threadId)) {
+          attachmentDatabase.deleteAttachmentsForMessage(id);
+          groupReceiptDatabase.deleteRowsForMessage(id);
+          db.delete(MmsDatabase.TABLE_NAME, ID_WHERE, new String[] { String.valueOf(id) });
+        }
+
+        threadDatabase.update(threadId, false);
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+    }
+
+    if (threadIds.isEmpty()) return;
+
+    notifyConversationListeners(threadIds);
+
+    if (!mmsByThread.isEmpty()) {
+      notifyStickerListeners();
+      notifyStickerPackListeners();
+    }
+  }
+
+  private static @NonNull Map<Long, List<Long>> groupByThread(@NonNull SQLiteDatabase db, @NonNull String table, @NonNull Collection<Long> ids) {
+    Map<Long, List<Long>> byThread = new HashMap<>();
+
+    if (ids.isEmpty()) return byThread;
+
+    String query = "SELECT " + MmsSmsColumns.ID + ", " + MmsSmsColumns.THREAD_ID + " FROM " + table +
+                   " WHERE " + MmsSmsColumns.ID + " IN (" + Util.join(Stream.of(ids).map(String::valueOf).toList(), ",") + ")";
+
+    try (Cursor cursor = db.rawQuery(query, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        long threadId = cursor.getLong(1);
+
+        if (!byThread.containsKey(threadId)) byThread.put(threadId, new LinkedList<>());
+        byThread.get(threadId).add(cursor.getLong(0));
+      }
+    }
+
+    return byThread;
+  }
+
+  private static @NonNull List<Long> getOrEmpty(@NonNull Map<Long, List<Long>> map, long key) {
+    List<Long> values = map.get(key);
+    return values != null ? values : new LinkedList<>();
+  }
+
   public int getConversationCount(long threadId) {
     int count = DatabaseFactory.getSmsDatabase(context).getMessageCountForThread(threadId);
     count    += DatabaseFactory.getMmsDatabase(context).getMessageCountForThread(threadId);
@@ -163,6 +281,33 @@ public class MmsSmsDatabase extends Database {
     DatabaseFactory.getMmsDatabase(context).incrementReceiptCount(syncMessageId, timestamp, false, true);
   }
 
+  /**
+   * Applies all the receipts from one receipt message in a single transaction.
+   */
+  public void incrementDeliveryReceiptCounts(@NonNull List<SyncMessageId> syncMessageIds, long timestamp) {
+    incrementReceiptCounts(syncMessageIds, timestamp, true);
+  }
+
+  public void incrementReadReceiptCounts(@NonNull List<SyncMessageId> syncMessageIds, long timestamp) {
+    incrementReceiptCounts(syncMessageIds, timestamp, false);
+  }
+
+  private void incrementReceiptCounts(@NonNull List<SyncMessageId> syncMessageIds, long timestamp, boolean deliveryReceipt) {
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+    db.beginTransaction();
+    try {
+      for (SyncMessageId syncMessageId : syncMessageIds) {
+        if (deliveryReceipt) incrementDeliveryReceiptCount(syncMessageId, timestamp);
+        else                 incrementReadReceiptCount(syncMessageId, timestamp);
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
+  }
+
   public int getQuotedMessagePosition(long threadId, long quoteId, @NonNull Address address) {
     String order     = MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC";
     String selection = MmsSmsColumns.THREAD_ID + " = " + threadId;
@@ -16,17 +16,22 @@ import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.util.Base64;
+import org.thoughtcrime.securesms.util.Hex;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.function.Consumer;
 
 public class RecipientDatabase extends Database {
@@ -249,19 +254,86 @@ public class RecipientDatabase extends Database {
                                              forceSmsSelection));
   }
 
-  public BulkOperationsHandle resetAllSystemContactInfo() {
-    SQLiteDatabase database = databaseHelper.getWritableDatabase();
+  /**
+   * Brings each recipient's system contact info in line with the given address book snapshot.
+   * Only recipients whose info changed are written, and only their cached {@link Recipient}s are
+   * updated. Recipients that are no longer in the address book have their info cleared.
+   *
+   * @return The addresses whose system contact info changed.
+   */
+  public @NonNull Set<Address> setSystemContactInfo(@NonNull Map<Address, SystemContactInfo> contacts) {
+    SQLiteDatabase                  database = databaseHelper.getWritableDatabase();
+    Map<Address, SystemContactInfo> changes;
+
     database.beginTransaction();
+    try {
+      changes = diffSystemContactInfo(getSystemContactInfo(database), contacts);
 
-    ContentValues contentValues = new ContentValues(1);
-    contentValues.put(SYSTEM_DISPLAY_NAME, (String)null);
-    contentValues.put(SYSTEM_PHOTO_URI, (String)null);
-    contentValues.put(SYSTEM_PHONE_LABEL, (String)null);
-    contentValues.put(SYSTEM_CONTACT_URI, (String)null);
+      for (Map.Entry<Address, SystemContactInfo> entry : changes.entrySet()) {
+        ContentValues contentValues = new ContentValues(4);
+        contentValues.put(SYSTEM_DISPLAY_NAME, entry.getValue().displayName);
+        contentValues.put(SYSTEM_PHOTO_URI, entry.getValue().photoUri);
+        contentValues.put(SYSTEM_PHONE_LABEL, entry.getValue().phoneLabel);
+        contentValues.put(SYSTEM_CONTACT_URI, entry.getValue().contactUri);
+
+        updateOrInsert(entry.getKey(), contentValues);
+      }
+
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+
+    Stream.of(changes.entrySet())
+          .forEach(entry -> Recipient.applyCached(entry.getKey(), recipient -> {
+            recipient.setName(entry.getValue().displayName);
+            recipient.setSystemContactPhoto(Util.uri(entry.getValue().photoUri));
+            recipient.setCustomLabel(entry.getValue().phoneLabel);
+            recipient.setContactUri(Util.uri(entry.getValue().contactUri));
+          }));
+
+    return changes.keySet();
+  }
+
+  private static @NonNull Map<Address, SystemContactInfo> getSystemContactInfo(@NonNull SQLiteDatabase database) {
+    Map<Address, SystemContactInfo> results = new HashMap<>();
+    String                          where   = SYSTEM_DISPLAY_NAME + " NOT NULL OR " + SYSTEM_PHOTO_URI + " NOT NULL OR " +
+                                              SYSTEM_PHONE_LABEL + " NOT NULL OR " + SYSTEM_CONTACT_URI + " NOT NULL";
 
-    database.update(TABLE_NAME, contentValues, null, null);
+    try (Cursor cursor = database.query(TABLE_NAME, new String[] {ADDRESS, SYSTEM_DISPLAY_NAME, SYSTEM_PHOTO_URI, SYSTEM_PHONE_LABEL, SYSTEM_CONTACT_URI},
+                                        where, null, null, null, null))
+    {
+      while (cursor != null && cursor.moveToNext()) {
+        results.put(Address.fromSerialized(cursor.getString(0)),
+                    new SystemContactInfo(cursor.getString(1), cursor.getString(2), cursor.getString(3), cursor.getString(4)));
+      }
+    }
+
+    return results;
+  }
+
+  /**
+   * @return The info to write for every address whose stored info differs from the latest
+   *         snapshot, with {@link SystemContactInfo#EMPTY} for addresses no longer present.
+   */
+  static @NonNull Map<Address, SystemContactInfo> diffSystemContactInfo(@NonNull Map<Address, SystemContactInfo> current,
+                                                                        @NonNull Map<Address, SystemContactInfo> latest)
+  {
+    Map<Address, SystemContactInfo> changes = new HashMap<>();
+
+    for (Map.Entry<Address, SystemContactInfo> entry : latest.entrySet()) {
+      if (!entry.getValue().equals(current.get(entry.getKey()))) {
+        changes.put(entry.getKey(), entry.getValue());
+      }
+    }
+
+    for (Address address : current.keySet()) {
+      if (!latest.containsKey(address)) {
+        changes.put(address, SystemContactInfo.EMPTY);
+      }
+    }
 
-    return new BulkOperationsHandle(database);
+    return changes;
   }
 
   public void setColor(@NonNull Recipient recipient, @NonNull MaterialColor color) {
@@ -452,7 +524,7 @@ public class RecipientDatabase extends Database {
   }
 
   public void updateSystemContactColors(@NonNull ColorUpdater updater) {
-    SQLiteDatabase              db      = databaseHelper.getReadableDatabase();
+    SQLiteDatabase              db      = databaseHelper.getWritableDatabase();
     Map<Address, MaterialColor> updates = new HashMap<>();
 
     db.beginTransaction();
@@ -507,41 +579,6 @@ public class RecipientDatabase extends Database {
     database.endTransaction();
   }
 
-  public class BulkOperationsHandle {
-
-    private final SQLiteDatabase database;
-
-    private final Map<Address, PendingContactInfo> pendingContactInfoMap = new HashMap<>();
-
-    BulkOperationsHandle(SQLiteDatabase database) {
-      this.database = database;
-    }
-
-    public void setSystemContactInfo(@NonNull Address address, @Nullable String displayName, @Nullable String photoUri, @Nullable String systemPhoneLabel, @Nullable String systemContactUri) {
-      ContentValues contentValues = new ContentValues(1);
-      contentValues.put(SYSTEM_DISPLAY_NAME, displayName);
-      contentValues.put(SYSTEM_PHOTO_URI, photoUri);
-      contentValues.put(SYSTEM_PHONE_LABEL, systemPhoneLabel);
-      contentValues.put(SYSTEM_CONTACT_URI, systemContactUri);
-
-      updateOrInsert(address, contentValues);
-      pendingContactInfoMap.put(address, new PendingContactInfo(displayName, photoUri, systemPhoneLabel, systemContactUri));
-    }
-
-    public void finish() {
-      database.setTransactionSuccessful();
-      database.endTransaction();
-
-      Stream.of(pendingContactInfoMap.entrySet())
-            .forEach(entry -> Recipient.applyCached(entry.getKey(), recipient -> {
-              recipient.setName(entry.getValue().displayName);
-              recipient.setSystemContactPhoto(Util.uri(entry.getValue().photoUri));
-              recipient.setCustomLabel(entry.getValue().phoneLabel);
-              recipient.setContactUri(Util.uri(entry.getValue().contactUri));
-            }));
-    }
-  }
-
   public interface ColorUpdater {
     MaterialColor update(@NonNull String name, @Nullable String color);
   }
@@ -733,19 +770,70 @@ public class RecipientDatabase extends Database {
     }
   }
 
-  private static class PendingContactInfo {
+  public static class SystemContactInfo {
+
+    static final SystemContactInfo EMPTY = new SystemContactInfo(null, null, null, null);
 
     private final String displayName;
     private final String photoUri;
     private final String phoneLabel;
     private final String contactUri;
 
-    private PendingContactInfo(String displayName, String photoUri, String phoneLabel, String contactUri) {
+    public SystemContactInfo(@Nullable String displayName, @Nullable String photoUri, @Nullable String phoneLabel, @Nullable String contactUri) {
       this.displayName = displayName;
       this.photoUri    = photoUri;
       this.phoneLabel  = phoneLabel;
       this.contactUri  = contactUri;
     }
+
+    /**
+     * @return A digest of the whole snapshot that doesn't depend on iteration order, so an
+     *         unchanged address book can be recognized without reading the recipient table.
+     */
+    public static @NonNull String fingerprint(@NonNull Map<Address, SystemContactInfo> contacts) {
+      try {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+
+        for (Map.Entry<Address, SystemContactInfo> entry : new TreeMap<>(contacts).entrySet()) {
+          update(digest, entry.getKey().serialize());
+          update(digest, entry.getValue().displayName);
+          update(digest, entry.getValue().photoUri);
+          update(digest, entry.getValue().phoneLabel);
+          update(digest, entry.getValue().contactUri);
+        }
+
+        return Hex.toStringCondensed(digest.digest());
+      } catch (NoSuchAlgorithmException e) {
+        throw new AssertionError(e);
+      }
+    }
+
+    private static void update(@NonNull MessageDigest digest, @Nullable String value) {
+      if (value == null) {
+        digest.update((byte) 0);
+      } else {
+        digest.update((byte) 1);
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+      }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+      if (!(other instanceof SystemContactInfo)) return false;
+
+      SystemContactInfo that = (SystemContactInfo) other;
+
+      return Util.equals(displayName, that.displayName) &&
+             Util.equals(photoUri, that.photoUri)       &&
+             Util.equals(phoneLabel, that.phoneLabel)   &&
+             Util.equals(contactUri, that.contactUri);
+    }
+
+    @Override
+    public int hashCode() {
+      return Util.hashCode(displayName, photoUri, phoneLabel, contactUri);
+    }
   }
 
 }
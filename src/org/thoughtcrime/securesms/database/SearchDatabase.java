@@ -2,6 +2,7 @@ package org.thoughtcrime.securesms.database;
 
 import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import com.annimon.stream.Stream;
 
@@ -11,6 +12,9 @@ import net.sqlcipher.database.SQLiteDatabase;
 import org.thoughtcrime.securesms.database.helpers.SQLCipherOpenHelper;
 import org.thoughtcrime.securesms.util.Util;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -27,6 +31,9 @@ public class SearchDatabase extends Database {
   public static final String SNIPPET              = "snippet";
   public static final String CONVERSATION_ADDRESS = "conversation_address";
   public static final String MESSAGE_ADDRESS      = "message_address";
+  public static final String MESSAGE_ID           = "message_id";
+  public static final String IS_MMS               = "is_mms";
+  public static final String RANK                 = "rank";
 
   public static final String[] CREATE_TABLE = {
       "CREATE VIRTUAL TABLE " + SMS_FTS_TABLE_NAME + " USING fts5(" + BODY + ", " + THREAD_ID + " UNINDEXED, content=" + SmsDatabase.TABLE_NAME + ", content_rowid=" + SmsDatabase.ID + ");",
@@ -57,30 +64,62 @@ public class SearchDatabase extends Database {
           "END;"
   };
 
-  private static final String MESSAGES_QUERY =
+  public static final int PAGE_SIZE = 100;
+
+  /**
+   * Matched terms in {@link #SNIPPET} are wrapped in these characters.
+   */
+  public static final char HIGHLIGHT_START = '\u0002';
+  public static final char HIGHLIGHT_END   = '\u0003';
+
+  /**
+   * Ranks every match by bm25 (lower is better) and then by id. Only ids are read, no message data
+   * or snippets. This runs once per query, and later pages are sliced from its result.
+   */
+  private static final String MESSAGE_RANK_QUERY =
+      "SELECT " + MESSAGE_ID + ", " + IS_MMS + " FROM (" +
+        "SELECT " + ID + " AS " + MESSAGE_ID + ", 0 AS " + IS_MMS + ", bm25(" + SMS_FTS_TABLE_NAME + ") AS " + RANK + " " +
+        "FROM " + SMS_FTS_TABLE_NAME + " WHERE " + SMS_FTS_TABLE_NAME + " MATCH ?1 " +
+        "UNION ALL " +
+        "SELECT " + ID + " AS " + MESSAGE_ID + ", 1 AS " + IS_MMS + ", bm25(" + MMS_FTS_TABLE_NAME + ") AS " + RANK + " " +
+        "FROM " + MMS_FTS_TABLE_NAME + " WHERE " + MMS_FTS_TABLE_NAME + " MATCH ?1" +
+      ") ORDER BY " + RANK + ", " + IS_MMS + ", " + MESSAGE_ID;
+
+  /**
+   * Reads the results for a known set of matching messages, including a highlighted snippet, in
+   * the same order as {@link #MESSAGE_RANK_QUERY}.
+   */
+  private static String buildMessagesQuery(@NonNull String smsFilter, @NonNull String mmsFilter) {
+    return
       "SELECT " +
         ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " AS " + CONVERSATION_ADDRESS + ", " +
         MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
-        "snippet(" + SMS_FTS_TABLE_NAME + ", -1, '', '', '...', 7) AS " + SNIPPET + ", " +
+        "snippet(" + SMS_FTS_TABLE_NAME + ", -1, char(2), char(3), '...', 7) AS " + SNIPPET + ", " +
         SmsDatabase.TABLE_NAME + "." + SmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
-        SMS_FTS_TABLE_NAME + "."  + THREAD_ID + " " +
+        SMS_FTS_TABLE_NAME + "."  + THREAD_ID + ", " +
+        SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " AS " + MESSAGE_ID + ", " +
+        "0 AS " + IS_MMS + ", " +
+        "bm25(" + SMS_FTS_TABLE_NAME + ") AS " + RANK + " " +
       "FROM " + SmsDatabase.TABLE_NAME + " " +
       "INNER JOIN " + SMS_FTS_TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + ID + " = " + SmsDatabase.TABLE_NAME + "." + SmsDatabase.ID + " " +
       "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + SMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-      "WHERE " + SMS_FTS_TABLE_NAME + " MATCH ? " +
+      "WHERE " + SMS_FTS_TABLE_NAME + " MATCH ? " + smsFilter +
       "UNION ALL " +
       "SELECT " +
         ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ADDRESS + " AS " + CONVERSATION_ADDRESS + ", " +
         MmsSmsColumns.ADDRESS + " AS " + MESSAGE_ADDRESS + ", " +
-        "snippet(" + MMS_FTS_TABLE_NAME + ", -1, '', '', '...', 7) AS " + SNIPPET + ", " +
+        "snippet(" + MMS_FTS_TABLE_NAME + ", -1, char(2), char(3), '...', 7) AS " + SNIPPET + ", " +
         MmsDatabase.TABLE_NAME + "." + MmsDatabase.DATE_RECEIVED + " AS " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + ", " +
-        MMS_FTS_TABLE_NAME + "." + THREAD_ID + " " +
+        MMS_FTS_TABLE_NAME + "." + THREAD_ID + ", " +
+        MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " AS " + MESSAGE_ID + ", " +
+        "1 AS " + IS_MMS + ", " +
+        "bm25(" + MMS_FTS_TABLE_NAME + ") AS " + RANK + " " +
       "FROM " + MmsDatabase.TABLE_NAME + " " +
       "INNER JOIN " + MMS_FTS_TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + ID + " = " + MmsDatabase.TABLE_NAME + "." + MmsDatabase.ID + " " +
       "INNER JOIN " + ThreadDatabase.TABLE_NAME + " ON " + MMS_FTS_TABLE_NAME + "." + THREAD_ID + " = " + ThreadDatabase.TABLE_NAME + "." + ThreadDatabase.ID + " " +
-      "WHERE " + MMS_FTS_TABLE_NAME + " MATCH ? " +
-      "ORDER BY " + MmsSmsColumns.NORMALIZED_DATE_RECEIVED + " DESC " +
-      "LIMIT 500";
+      "WHERE " + MMS_FTS_TABLE_NAME + " MATCH ? " + mmsFilter +
+      "ORDER BY " + RANK + ", " + IS_MMS + ", " + MESSAGE_ID;
+  }
 
   private static final String MESSAGES_FOR_THREAD_QUERY =
       "SELECT " +
@@ -111,15 +150,73 @@ public class SearchDatabase extends Database {
     super(context, databaseHelper);
   }
 
-  public Cursor queryMessages(@NonNull String query) {
-    SQLiteDatabase db          = databaseHelper.getReadableDatabase();
-    String         prefixQuery = adjustQuery(query);
+  /**
+   * @return The first page of matches for the query, best matches first.
+   */
+  public @NonNull MessagePage queryMessages(@NonNull String query) {
+    return queryMessages(query, MessagePosition.START);
+  }
+
+  /**
+   * @return The page of matches that follows {@code after}, best matches first.
+   */
+  public @NonNull MessagePage queryMessages(@NonNull String query, @NonNull MessagePosition after) {
+    MessagePage page = queryMessages(databaseHelper.getReadableDatabase(), adjustQuery(query), after, PAGE_SIZE);
+    setNotifyConverationListListeners(page.getCursor());
+    return page;
+  }
 
-    Cursor cursor = db.rawQuery(MESSAGES_QUERY, new String[] { prefixQuery, prefixQuery });
+  /**
+   * Runs a query that is known to only match a subset of the given messages, such as one that
+   * extends the prefix of an earlier query, by checking just those rows against the index.
+   */
+  public Cursor queryMessages(@NonNull String query, @NonNull Collection<Long> smsIds, @NonNull Collection<Long> mmsIds) {
+    Cursor cursor = queryMessages(databaseHelper.getReadableDatabase(), adjustQuery(query), smsIds, mmsIds);
     setNotifyConverationListListeners(cursor);
     return cursor;
   }
 
+  /**
+   * The first page ranks every match once and keeps the ranked ids in the returned position, so
+   * each later page only reads its own rows. Those pages reflect the index as it was when the
+   * first page was loaded.
+   */
+  static @NonNull MessagePage queryMessages(@NonNull SQLiteDatabase db, @NonNull String prefixQuery, @NonNull MessagePosition after, int limit) {
+    RankedMatches matches = after.matches != null ? after.matches : rankMatches(db, prefixQuery);
+    int           end     = Math.min(matches.size, after.offset + limit);
+    List<Long>    smsIds  = new LinkedList<>();
+    List<Long>    mmsIds  = new LinkedList<>();
+
+    for (int i = after.offset; i < end; i++) {
+      if (matches.isMms[i]) mmsIds.add(matches.ids[i]);
+      else                  smsIds.add(matches.ids[i]);
+    }
+
+    Cursor          cursor = queryMessages(db, prefixQuery, smsIds, mmsIds);
+    MessagePosition next   = end < matches.size ? new MessagePosition(matches, end) : null;
+
+    return new MessagePage(cursor, next);
+  }
+
+  private static @NonNull RankedMatches rankMatches(@NonNull SQLiteDatabase db, @NonNull String prefixQuery) {
+    RankedMatches matches = new RankedMatches();
+
+    try (Cursor cursor = db.rawQuery(MESSAGE_RANK_QUERY, new String[] { prefixQuery })) {
+      while (cursor != null && cursor.moveToNext()) {
+        matches.add(cursor.getLong(0), cursor.getInt(1) == 1);
+      }
+    }
+
+    return matches;
+  }
+
+  static @NonNull Cursor queryMessages(@NonNull SQLiteDatabase db, @NonNull String prefixQuery, @NonNull Collection<Long> smsIds, @NonNull Collection<Long> mmsIds) {
+    String smsFilter = "AND " + SMS_FTS_TABLE_NAME + "." + ID + " IN (" + Util.join(Stream.of(smsIds).map(String::valueOf).toList(), ",") + ") ";
+    String mmsFilter = "AND " + MMS_FTS_TABLE_NAME + "." + ID + " IN (" + Util.join(Stream.of(mmsIds).map(String::valueOf).toList(), ",") + ") ";
+
+    return db.rawQuery(buildMessagesQuery(smsFilter, mmsFilter), new String[] { prefixQuery, prefixQuery });
+  }
+
   public Cursor queryMessages(@NonNull String query, long threadId) {
     SQLiteDatabase db          = databaseHelper.getReadableDatabase();
     String         prefixQuery = adjustQuery(query);
@@ -130,7 +227,7 @@ public class SearchDatabase extends Database {
 
   }
 
-  private String adjustQuery(@NonNull String query) {
+  static String adjustQuery(@NonNull String query) {
     List<String> tokens      = Stream.of(query.split(" ")).filter(s -> s.trim().length() > 0).toList();
     String       prefixQuery = Util.join(tokens, "* ");
 
@@ -138,5 +235,63 @@ public class SearchDatabase extends Database {
 
     return prefixQuery;
   }
-}
 
+  /**
+   * A position in the ranked list of matches, used to fetch the page after it.
+   */
+  public static class MessagePosition {
+
+    static final MessagePosition START = new MessagePosition(null, 0);
+
+    private final @Nullable RankedMatches matches;
+    private final int                     offset;
+
+    private MessagePosition(@Nullable RankedMatches matches, int offset) {
+      this.matches = matches;
+      this.offset  = offset;
+    }
+  }
+
+  /**
+   * The ids of every match for a query, best first.
+   */
+  private static class RankedMatches {
+
+    private long[]    ids   = new long[PAGE_SIZE];
+    private boolean[] isMms = new boolean[PAGE_SIZE];
+    private int       size;
+
+    private void add(long id, boolean mms) {
+      if (size == ids.length) {
+        ids   = Arrays.copyOf(ids, size * 2);
+        isMms = Arrays.copyOf(isMms, size * 2);
+      }
+
+      ids[size]   = id;
+      isMms[size] = mms;
+      size++;
+    }
+  }
+
+  public static class MessagePage {
+
+    private final Cursor          cursor;
+    private final MessagePosition next;
+
+    MessagePage(@NonNull Cursor cursor, @Nullable MessagePosition next) {
+      this.cursor = cursor;
+      this.next   = next;
+    }
+
+    public @NonNull Cursor getCursor() {
+      return cursor;
+    }
+
+    /**
+     * @return The position to continue from, or null if this was the last page.
+     */
+    public @Nullable MessagePosition getNext() {
+      return next;
+    }
+  }
+}
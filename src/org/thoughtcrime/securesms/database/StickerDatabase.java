@@ -21,6 +21,7 @@ import org.thoughtcrime.securesms.database.model.StickerRecord;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.mms.DecryptableStreamUriLoader.DecryptableUri;
 import org.thoughtcrime.securesms.stickers.BlessedPacks;
+import org.thoughtcrime.securesms.stickers.StickerEmojiTokenizer;
 import org.thoughtcrime.securesms.stickers.StickerPackInstallEvent;
 import org.thoughtcrime.securesms.util.Util;
 
@@ -29,6 +30,13 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class StickerDatabase extends Database {
 
@@ -69,6 +77,33 @@ public class StickerDatabase extends Database {
       "CREATE INDEX IF NOT EXISTS sticker_sticker_id_index ON " + TABLE_NAME + " (" + STICKER_ID + ");"
   };
 
+  private static final String EMOJI_TABLE_NAME     = "sticker_emoji";
+  private static final String EMOJI_STICKER_ROW_ID = "sticker_row_id";
+  private static final String EMOJI_PACK_ID        = "pack_id";
+  private static final String EMOJI_TOKEN          = "emoji";
+
+  /**
+   * One row per emoji per sticker, as split by {@link StickerEmojiTokenizer}. Covers aren't
+   * indexed, since they never show up as suggestions.
+   */
+  public static final String CREATE_EMOJI_TABLE =
+      "CREATE TABLE " + EMOJI_TABLE_NAME +
+          " (" + EMOJI_STICKER_ROW_ID + " INTEGER NOT NULL, " +
+          EMOJI_PACK_ID + " TEXT NOT NULL, " +
+          EMOJI_TOKEN + " TEXT NOT NULL, " +
+          "UNIQUE(" + EMOJI_STICKER_ROW_ID + ", " + EMOJI_TOKEN + ") ON CONFLICT IGNORE);";
+
+  public static final String[] CREATE_EMOJI_INDEXES = {
+      "CREATE INDEX IF NOT EXISTS sticker_emoji_emoji_index ON " + EMOJI_TABLE_NAME + " (" + EMOJI_TOKEN + ");",
+      "CREATE INDEX IF NOT EXISTS sticker_emoji_pack_id_index ON " + EMOJI_TABLE_NAME + " (" + EMOJI_PACK_ID + ");"
+  };
+
+  /**
+   * Bumped after every committed change to the emoji index, so in-memory copies of it can tell
+   * when they're stale. Static so it survives the database being reopened.
+   */
+  private static final AtomicLong emojiIndexVersion = new AtomicLong();
+
   private static final String DIRECTORY = "stickers";
 
   private final AttachmentSecret attachmentSecret;
@@ -94,9 +129,25 @@ public class StickerDatabase extends Database {
     contentValues.put(FILE_LENGTH, fileInfo.getLength());
     contentValues.put(FILE_RANDOM, fileInfo.getRandom());
 
-    long id = databaseHelper.getWritableDatabase().insert(TABLE_NAME, null, contentValues);
+    SQLiteDatabase db = databaseHelper.getWritableDatabase();
+    long           id;
+
+    db.beginTransaction();
+    try {
+      id = db.insert(TABLE_NAME, null, contentValues);
+
+      if (id > 0 && !sticker.isCover()) {
+        insertEmojiIndex(db, id, sticker.getPackId(), sticker.getEmoji());
+      }
+
+      db.setTransactionSuccessful();
+    } finally {
+      db.endTransaction();
+    }
 
     if (id > 0) {
+      if (!sticker.isCover()) emojiIndexVersion.incrementAndGet();
+
       notifyStickerListeners();
 
       if (sticker.isCover()) {
@@ -136,16 +187,83 @@ public class StickerDatabase extends Database {
     return cursor;
   }
 
+  /**
+   * @return The stickers tagged with every emoji in the text, found through the emoji index, or
+   *         null if the text holds no emoji.
+   */
   public @Nullable Cursor getStickersByEmoji(@NonNull String emoji) {
-    String   selection = EMOJI + " LIKE ? AND " + COVER + " = ?";
-    String[] args      = new String[] { "%"+emoji+"%", "0" };
+    Set<String> tokens = StickerEmojiTokenizer.tokenize(emoji);
 
-    Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, null, selection, args, null, null, null);
+    if (tokens.isEmpty()) return null;
+
+    String query = "SELECT " + TABLE_NAME + ".* FROM " + TABLE_NAME +
+                   " INNER JOIN " + EMOJI_TABLE_NAME + " ON " + TABLE_NAME + "." + _ID + " = " + EMOJI_TABLE_NAME + "." + EMOJI_STICKER_ROW_ID +
+                   " WHERE " + EMOJI_TABLE_NAME + "." + EMOJI_TOKEN + " IN (" + Util.join(Collections.nCopies(tokens.size(), "?"), ", ") + ")" +
+                   " GROUP BY " + TABLE_NAME + "." + _ID +
+                   " HAVING COUNT(*) = " + tokens.size() +
+                   " ORDER BY " + TABLE_NAME + "." + _ID;
+
+    Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, tokens.toArray(new String[0]));
     setNotifyStickerListeners(cursor);
 
     return cursor;
   }
 
+  /**
+   * @return Every indexed emoji mapped to the stickers tagged with it, in insertion order.
+   */
+  public @NonNull Map<String, List<StickerRecord>> getEmojiIndex() {
+    Map<String, List<StickerRecord>> index   = new HashMap<>();
+    Map<Long, StickerRecord>         records = new HashMap<>();
+
+    String query = "SELECT " + TABLE_NAME + ".*, " + EMOJI_TABLE_NAME + "." + EMOJI_TOKEN + " AS token FROM " + TABLE_NAME +
+                   " INNER JOIN " + EMOJI_TABLE_NAME + " ON " + TABLE_NAME + "." + _ID + " = " + EMOJI_TABLE_NAME + "." + EMOJI_STICKER_ROW_ID +
+                   " ORDER BY " + TABLE_NAME + "." + _ID;
+
+    try (Cursor cursor = databaseHelper.getReadableDatabase().rawQuery(query, null)) {
+      StickerRecordReader reader = new StickerRecordReader(cursor);
+
+      while (cursor != null && cursor.moveToNext()) {
+        long          rowId  = cursor.getLong(cursor.getColumnIndexOrThrow(_ID));
+        String        token  = cursor.getString(cursor.getColumnIndexOrThrow("token"));
+        StickerRecord record = records.get(rowId);
+
+        if (record == null) {
+          record = reader.getCurrent();
+          records.put(rowId, record);
+        }
+
+        List<StickerRecord> stickers = index.get(token);
+
+        if (stickers == null) {
+          stickers = new ArrayList<>();
+          index.put(token, stickers);
+        }
+
+        stickers.add(record);
+      }
+    }
+
+    return index;
+  }
+
+  public static long getEmojiIndexVersion() {
+    return emojiIndexVersion.get();
+  }
+
+  /**
+   * Builds the emoji index for stickers that were stored before it existed.
+   */
+  public static void migrateEmojiIndex(@NonNull SQLiteDatabase db) {
+    String[] projection = new String[] { _ID, PACK_ID, EMOJI };
+
+    try (Cursor cursor = db.query(TABLE_NAME, projection, COVER + " = ?", new String[] { "0" }, null, null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        insertEmojiIndex(db, cursor.getLong(0), cursor.getString(1), cursor.getString(2));
+      }
+    }
+  }
+
   public @Nullable Cursor getAllStickerPacks() {
     return getAllStickerPacks(null);
   }
@@ -265,6 +383,8 @@ public class StickerDatabase extends Database {
     } finally {
       db.endTransaction();
     }
+
+    emojiIndexVersion.incrementAndGet();
   }
 
   public void uninstallPack(@NonNull String packId) {
@@ -282,6 +402,8 @@ public class StickerDatabase extends Database {
     } finally {
       db.endTransaction();
     }
+
+    emojiIndexVersion.incrementAndGet();
   }
 
   private void updatePackInstalled(@NonNull SQLiteDatabase db, @NonNull String packId, boolean installed) {
@@ -317,6 +439,7 @@ public class StickerDatabase extends Database {
     String[] args      = new String[] { String.valueOf(rowId) };
 
     db.delete(TABLE_NAME, selection, args);
+    db.delete(EMOJI_TABLE_NAME, EMOJI_STICKER_ROW_ID + " = ?", args);
 
     if (!TextUtils.isEmpty(filePath)) {
       new File(filePath).delete();
@@ -328,6 +451,7 @@ public class StickerDatabase extends Database {
     String[] args      = new String[] { packId };
 
     db.delete(TABLE_NAME, selection, args);
+    db.delete(EMOJI_TABLE_NAME, EMOJI_PACK_ID + " = ?", args);
 
     deleteStickersInPack(db, packId);
   }
@@ -378,6 +502,18 @@ public class StickerDatabase extends Database {
     }
   }
 
+  private static void insertEmojiIndex(@NonNull SQLiteDatabase db, long rowId, @NonNull String packId, @Nullable String emoji) {
+    ContentValues values = new ContentValues(3);
+
+    for (String token : StickerEmojiTokenizer.tokenize(emoji)) {
+      values.put(EMOJI_STICKER_ROW_ID, rowId);
+      values.put(EMOJI_PACK_ID, packId);
+      values.put(EMOJI_TOKEN, token);
+
+      db.insert(EMOJI_TABLE_NAME, null, values);
+    }
+  }
+
   private void broadcastInstallEvent(@NonNull String packId) {
     StickerPackRecord pack = getStickerPack(packId);
 
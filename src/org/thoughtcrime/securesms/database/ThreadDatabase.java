@@ -50,6 +50,7 @@ import org.whispersystems.libsignal.util.Pair;
 import org.whispersystems.libsignal.util.guava.Optional;
 
 import java.io.Closeable;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
@@ -201,52 +202,57 @@ public class ThreadDatabase extends Database {
   }
 
   public void trimAllThreads(int length, ProgressListener listener) {
-    Cursor cursor   = null;
-    int threadCount = 0;
-    int complete    = 0;
-
-    try {
-      cursor = this.getConversationList();
-
-      if (cursor != null)
-        threadCount = cursor.getCount();
+    List<Long> threadIds = new LinkedList<>();
 
+    try (Cursor cursor = databaseHelper.getReadableDatabase().query(TABLE_NAME, new String[] { ID },
+                                                                      ARCHIVED + " = 0 AND " + MESSAGE_COUNT + " > ?",
+                                                                      new String[] { String.valueOf(length) },
+                                                                      null, null, null))
+    {
       while (cursor != null && cursor.moveToNext()) {
-        long threadId = cursor.getLong(cursor.getColumnIndexOrThrow(ID));
-        trimThread(threadId, length);
-
-        listener.onProgress(++complete, threadCount);
+        threadIds.add(cursor.getLong(0));
       }
-    } finally {
-      if (cursor != null)
-        cursor.close();
     }
+
+    trimThreads(threadIds, length, listener);
   }
 
   public void trimThread(long threadId, int length) {
-    Log.i("ThreadDatabase", "Trimming thread: " + threadId + " to: " + length);
-    Cursor cursor = null;
+    trimThreads(Collections.singletonList(threadId), length, null);
+  }
 
-    try {
-      cursor = DatabaseFactory.getMmsSmsDatabase(context).getConversation(threadId);
+  private void trimThreads(@NonNull List<Long> threadIds, int length, @Nullable ProgressListener listener) {
+    AttachmentDatabase   attachmentDatabase   = DatabaseFactory.getAttachmentDatabase(context);
+    GroupReceiptDatabase groupReceiptDatabase = DatabaseFactory.getGroupReceiptDatabase(context);
+    SQLiteDatabase       db                   = databaseHelper.getWritableDatabase();
 
-      if (cursor != null && length > 0 && cursor.getCount() > length) {
-        Log.w("ThreadDatabase", "Cursor count is greater than length!");
-        cursor.moveToPosition(length - 1);
+    ThreadTrimmer trimmer = new ThreadTrimmer(db, mmsId -> {
+      attachmentDatabase.deleteAttachmentsForMessage(mmsId);
+      groupReceiptDatabase.deleteRowsForMessage(mmsId);
+    });
 
-        long lastTweetDate = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.NORMALIZED_DATE_RECEIVED));
+    ThreadTrimmer.Result result = trimmer.trim(threadIds, length, listener);
 
-        Log.i("ThreadDatabase", "Cut off tweet date: " + lastTweetDate);
+    if (result.getTrimmedThreadIds().isEmpty()) return;
 
-        DatabaseFactory.getSmsDatabase(context).deleteMessagesInThreadBeforeDate(threadId, lastTweetDate);
-        DatabaseFactory.getMmsDatabase(context).deleteMessagesInThreadBeforeDate(threadId, lastTweetDate);
+    Log.i(TAG, "Trimmed " + result.getDeletedCount() + " messages from " + result.getTrimmedThreadIds().size() + " threads in " + result.getTransactionCount() + " transactions.");
 
+    db.beginTransaction();
+    try {
+      for (long threadId : result.getTrimmedThreadIds()) {
         update(threadId, false);
-        notifyConversationListeners(threadId);
       }
+      db.setTransactionSuccessful();
     } finally {
-      if (cursor != null)
-        cursor.close();
+      db.endTransaction();
+    }
+
+    notifyConversationListeners(result.getTrimmedThreadIds());
+
+    // Deleting mms messages can remove the last use of a sticker, as MmsDatabase.delete() reports
+    if (result.getDeletedMmsCount() > 0) {
+      notifyStickerListeners();
+      notifyStickerPackListeners();
     }
   }
 
@@ -0,0 +1,182 @@
+package org.thoughtcrime.securesms.database;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.thoughtcrime.securesms.database.ThreadDatabase.ProgressListener;
+import org.thoughtcrime.securesms.util.Util;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Trims threads down to their newest messages.
+ *
+ * The cutoff for each thread is found from the (thread_id, date_received) indexes, reading at most
+ * one more date than the thread length from each table. Messages older than the cutoff are then
+ * deleted across all threads in transactions of at most {@link #BATCH_SIZE} rows, so a pass over
+ * many threads takes a few short write locks rather than one per thread or one for everything.
+ */
+class ThreadTrimmer {
+
+  static final int BATCH_SIZE = 500;
+
+  private static final String CUTOFF_QUERY =
+      "SELECT date_received FROM (SELECT " + SmsDatabase.DATE_RECEIVED + " AS date_received FROM " + SmsDatabase.TABLE_NAME +
+      " WHERE " + MmsSmsColumns.THREAD_ID + " = ? ORDER BY " + SmsDatabase.DATE_RECEIVED + " DESC LIMIT ?)" +
+      " UNION ALL " +
+      "SELECT date_received FROM (SELECT " + MmsDatabase.DATE_RECEIVED + " AS date_received FROM " + MmsDatabase.TABLE_NAME +
+      " WHERE " + MmsSmsColumns.THREAD_ID + " = ? ORDER BY " + MmsDatabase.DATE_RECEIVED + " DESC LIMIT ?)" +
+      " ORDER BY date_received DESC LIMIT 2 OFFSET ?";
+
+  private final SQLiteDatabase db;
+  private final MmsCleanup     mmsCleanup;
+
+  ThreadTrimmer(@NonNull SQLiteDatabase db, @NonNull MmsCleanup mmsCleanup) {
+    this.db         = db;
+    this.mmsCleanup = mmsCleanup;
+  }
+
+  /**
+   * @return The date received of the thread's length-th newest message, or -1 if the thread has
+   *         no more than length messages.
+   */
+  long getCutoff(long threadId, int length) {
+    String   limit = String.valueOf(length + 1);
+    String[] args  = new String[] { String.valueOf(threadId), limit, String.valueOf(threadId), limit, String.valueOf(length - 1) };
+
+    try (Cursor cursor = db.rawQuery(CUTOFF_QUERY, args)) {
+      if (cursor != null && cursor.getCount() == 2 && cursor.moveToFirst()) {
+        return cursor.getLong(0);
+      }
+    }
+
+    return -1;
+  }
+
+  @NonNull Result trim(@NonNull List<Long> threadIds, int length, @Nullable ProgressListener listener) {
+    Map<Long, Long> cutoffs  = new LinkedHashMap<>();
+    int             complete = 0;
+
+    if (length <= 0) return new Result(new HashSet<>(), 0, 0, 0);
+
+    for (long threadId : threadIds) {
+      long cutoff = getCutoff(threadId, length);
+
+      if (cutoff != -1) cutoffs.put(threadId, cutoff);
+      else if (listener != null) listener.onProgress(++complete, threadIds.size());
+    }
+
+    Iterator<Map.Entry<Long, Long>> remaining    = cutoffs.entrySet().iterator();
+    Map.Entry<Long, Long>           current      = remaining.hasNext() ? remaining.next() : null;
+    int                             deleted      = 0;
+    int                             deletedMms   = 0;
+    int                             transactions = 0;
+
+    while (current != null) {
+      int budget = BATCH_SIZE;
+
+      db.beginTransaction();
+      transactions++;
+
+      try {
+        while (current != null && budget > 0) {
+          budget -= deleteSms(current.getKey(), current.getValue(), budget);
+
+          if (budget > 0) {
+            int mms = deleteMms(current.getKey(), current.getValue(), budget);
+
+            budget     -= mms;
+            deletedMms += mms;
+          }
+
+          if (budget > 0) {
+            current = remaining.hasNext() ? remaining.next() : null;
+            if (listener != null) listener.onProgress(++complete, threadIds.size());
+          }
+        }
+
+        db.setTransactionSuccessful();
+      } finally {
+        db.endTransaction();
+      }
+
+      deleted += BATCH_SIZE - budget;
+    }
+
+    return new Result(cutoffs.keySet(), deleted, deletedMms, transactions);
+  }
+
+  private int deleteSms(long threadId, long cutoff, int limit) {
+    String where = MmsSmsColumns.ID + " IN (SELECT " + MmsSmsColumns.ID + " FROM " + SmsDatabase.TABLE_NAME +
+                   " WHERE " + MmsSmsColumns.THREAD_ID + " = ? AND " + SmsDatabase.DATE_RECEIVED + " < ? LIMIT " + limit + ")";
+
+    return db.delete(SmsDatabase.TABLE_NAME, where, new String[] { String.valueOf(threadId), String.valueOf(cutoff) });
+  }
+
+  private int deleteMms(long threadId, long cutoff, int limit) {
+    List<String> ids = new LinkedList<>();
+
+    try (Cursor cursor = db.query(MmsDatabase.TABLE_NAME, new String[] { MmsSmsColumns.ID },
+                                  MmsSmsColumns.THREAD_ID + " = ? AND " + MmsDatabase.DATE_RECEIVED + " < ?",
+                                  new String[] { String.valueOf(threadId), String.valueOf(cutoff) },
+                                  null, null, null, String.valueOf(limit)))
+    {
+      while (cursor != null && cursor.moveToNext()) {
+        mmsCleanup.onDeleting(cursor.getLong(0));
+        ids.add(cursor.getString(0));
+      }
+    }
+
+    if (ids.isEmpty()) return 0;
+
+    return db.delete(MmsDatabase.TABLE_NAME, MmsSmsColumns.ID + " IN (" + Util.join(ids, ",") + ")", null);
+  }
+
+  static class Result {
+
+    private final Set<Long> trimmedThreadIds;
+    private final int       deletedCount;
+    private final int       deletedMmsCount;
+    private final int       transactionCount;
+
+    Result(@NonNull Set<Long> trimmedThreadIds, int deletedCount, int deletedMmsCount, int transactionCount) {
+      this.trimmedThreadIds = trimmedThreadIds;
+      this.deletedCount     = deletedCount;
+      this.deletedMmsCount  = deletedMmsCount;
+      this.transactionCount = transactionCount;
+    }
+
+    @NonNull Set<Long> getTrimmedThreadIds() {
+      return trimmedThreadIds;
+    }
+
+    int getDeletedCount() {
+      return deletedCount;
+    }
+
+    int getDeletedMmsCount() {
+      return deletedMmsCount;
+    }
+
+    int getTransactionCount() {
+      return transactionCount;
+    }
+  }
+
+  interface MmsCleanup {
+    /**
+     * Removes whatever else belongs to an mms message, such as its attachments, before the
+     * message itself is deleted in the same transaction.
+     */
+    void onDeleting(long mmsId);
+  }
+}
@@ -0,0 +1,64 @@
+package org.thoughtcrime.securesms.database.helpers;
+
+import android.support.annotation.NonNull;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteDatabaseHook;
+
+import java.io.File;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of read-only connections to a database in write-ahead logging mode. Each connection
+ * has its own lock, so reads through the pool don't wait for a write transaction on the main
+ * connection, or for each other.
+ *
+ * Connections are shared rather than checked out, since cursors outlive the calls that create
+ * them. They are opened lazily and handed out round-robin, skipping any that are busy.
+ */
+class ReaderConnectionPool {
+
+  private final File               path;
+  private final String             password;
+  private final SQLiteDatabaseHook hook;
+  private final SQLiteDatabase[]   connections;
+  private final AtomicInteger      next = new AtomicInteger();
+
+  ReaderConnectionPool(@NonNull File path, @NonNull String password, @NonNull SQLiteDatabaseHook hook, int size) {
+    this.path        = path;
+    this.password    = password;
+    this.hook        = hook;
+    this.connections = new SQLiteDatabase[size];
+  }
+
+  @NonNull SQLiteDatabase get() {
+    int start = next.getAndIncrement() & Integer.MAX_VALUE;
+
+    for (int i = 0; i < connections.length; i++) {
+      SQLiteDatabase connection = getConnection((start + i) % connections.length);
+
+      if (!connection.isDbLockedByOtherThreads()) {
+        return connection;
+      }
+    }
+
+    return getConnection(start % connections.length);
+  }
+
+  synchronized void close() {
+    for (int i = 0; i < connections.length; i++) {
+      if (connections[i] != null) {
+        connections[i].close();
+        connections[i] = null;
+      }
+    }
+  }
+
+  private synchronized @NonNull SQLiteDatabase getConnection(int index) {
+    if (connections[index] == null || !connections[index].isOpen()) {
+      connections[index] = SQLiteDatabase.openDatabase(path.getAbsolutePath(), password, null, SQLiteDatabase.OPEN_READONLY, hook);
+    }
+
+    return connections[index];
+  }
+}
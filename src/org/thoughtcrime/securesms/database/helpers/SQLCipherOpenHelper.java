@@ -11,6 +11,7 @@ import android.text.TextUtils;
 
 import net.sqlcipher.database.SQLiteDatabase;
 import net.sqlcipher.database.SQLiteDatabaseHook;
+import net.sqlcipher.database.SQLiteException;
 import net.sqlcipher.database.SQLiteOpenHelper;
 
 import org.thoughtcrime.securesms.ApplicationContext;
@@ -23,6 +24,7 @@ import org.thoughtcrime.securesms.database.GroupDatabase;
 import org.thoughtcrime.securesms.database.GroupReceiptDatabase;
 import org.thoughtcrime.securesms.database.IdentityDatabase;
 import org.thoughtcrime.securesms.database.JobDatabase;
+import org.thoughtcrime.securesms.database.LinkPreviewDatabase;
 import org.thoughtcrime.securesms.database.MmsDatabase;
 import org.thoughtcrime.securesms.database.OneTimePreKeyDatabase;
 import org.thoughtcrime.securesms.database.PushDatabase;
@@ -33,6 +35,8 @@ import org.thoughtcrime.securesms.database.SignedPreKeyDatabase;
 import org.thoughtcrime.securesms.database.SmsDatabase;
 import org.thoughtcrime.securesms.database.StickerDatabase;
 import org.thoughtcrime.securesms.database.ThreadDatabase;
+import org.thoughtcrime.securesms.jobmanager.impl.BinaryDataSerializer;
+import org.thoughtcrime.securesms.jobmanager.impl.JsonDataSerializer;
 import org.thoughtcrime.securesms.jobs.RefreshPreKeysJob;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.loki.*;
@@ -70,25 +74,59 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
   private static final int lokiV1                           = 22;
   private static final int lokiV2                           = 23;
   private static final int lokiV3                           = 24;
-
-  private static final int    DATABASE_VERSION = lokiV3; // Loki - onUpgrade(...) must be updated to use Loki version numbers if Signal makes any database changes
+  private static final int lokiV4                           = 25;
+  private static final int lokiV5                           = 26;
+  private static final int lokiV6                           = 27;
+  private static final int lokiV7                           = 28;
+  private static final int lokiV8                           = 29;
+  private static final int lokiV9                           = 30;
+  private static final int lokiV10                          = 31;
+  private static final int lokiV11                          = 32;
+  private static final int lokiV12                          = 33;
+
+  private static final int    DATABASE_VERSION = lokiV12; // Loki - onUpgrade(...) must be updated to use Loki version numbers if Signal makes any database changes
   private static final String DATABASE_NAME    = "signal.db";
 
+  private static final int READER_CONNECTIONS = 3;
+
+  /**
+   * Past this size the write-ahead log is truncated whenever a checkpoint resets it, so a burst of
+   * writes doesn't leave a large log behind.
+   */
+  private static final long WAL_SIZE_LIMIT = 4 * 1024 * 1024;
+
+  private static final SQLiteDatabaseHook CIPHER_HOOK = new SQLiteDatabaseHook() {
+    @Override
+    public void preKey(SQLiteDatabase db) {
+      db.rawExecSQL("PRAGMA cipher_default_kdf_iter = 1;");
+      db.rawExecSQL("PRAGMA cipher_default_page_size = 4096;");
+    }
+
+    @Override
+    public void postKey(SQLiteDatabase db) {
+      db.rawExecSQL("PRAGMA kdf_iter = '1';");
+      db.rawExecSQL("PRAGMA cipher_page_size = 4096;");
+    }
+  };
+
   private final Context        context;
   private final DatabaseSecret databaseSecret;
 
+  private ReaderConnectionPool readers;
+
   public SQLCipherOpenHelper(@NonNull Context context, @NonNull DatabaseSecret databaseSecret) {
     super(context, DATABASE_NAME, null, DATABASE_VERSION, new SQLiteDatabaseHook() {
       @Override
       public void preKey(SQLiteDatabase db) {
-        db.rawExecSQL("PRAGMA cipher_default_kdf_iter = 1;");
-        db.rawExecSQL("PRAGMA cipher_default_page_size = 4096;");
+        CIPHER_HOOK.preKey(db);
       }
 
       @Override
       public void postKey(SQLiteDatabase db) {
-        db.rawExecSQL("PRAGMA kdf_iter = '1';");
-        db.rawExecSQL("PRAGMA cipher_page_size = 4096;");
+        CIPHER_HOOK.postKey(db);
+        db.rawExecSQL("PRAGMA journal_mode = WAL;");
+        db.rawExecSQL("PRAGMA synchronous = NORMAL;");
+        db.rawExecSQL("PRAGMA journal_size_limit = " + WAL_SIZE_LIMIT + ";");
       }
     });
 
@@ -106,6 +144,7 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     db.execSQL(DraftDatabase.CREATE_TABLE);
     db.execSQL(PushDatabase.CREATE_TABLE);
     db.execSQL(GroupDatabase.CREATE_TABLE);
+    db.execSQL(GroupDatabase.CREATE_MEMBERSHIP_TABLE);
     db.execSQL(RecipientDatabase.CREATE_TABLE);
     db.execSQL(GroupReceiptDatabase.CREATE_TABLE);
     db.execSQL(OneTimePreKeyDatabase.CREATE_TABLE);
@@ -118,6 +157,8 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
       db.execSQL(sql);
     }
     db.execSQL(StickerDatabase.CREATE_TABLE);
+    db.execSQL(StickerDatabase.CREATE_EMOJI_TABLE);
+    db.execSQL(LinkPreviewDatabase.CREATE_TABLE);
 
     db.execSQL(LokiAPIDatabase.getCreateSwarmCacheTableCommand());
     db.execSQL(LokiAPIDatabase.getCreateLastMessageHashValueTableCommand());
@@ -141,8 +182,11 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     executeStatements(db, ThreadDatabase.CREATE_INDEXS);
     executeStatements(db, DraftDatabase.CREATE_INDEXS);
     executeStatements(db, GroupDatabase.CREATE_INDEXS);
+    executeStatements(db, GroupDatabase.CREATE_MEMBERSHIP_INDEXES);
     executeStatements(db, GroupReceiptDatabase.CREATE_INDEXES);
     executeStatements(db, StickerDatabase.CREATE_INDEXES);
+    executeStatements(db, StickerDatabase.CREATE_EMOJI_INDEXES);
+    executeStatements(db, LinkPreviewDatabase.CREATE_INDEXES);
 
     if (context.getDatabasePath(ClassicOpenHelper.NAME).exists()) {
       ClassicOpenHelper                      legacyHelper = new ClassicOpenHelper(context);
@@ -504,6 +548,72 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
         db.execSQL("ALTER TABLE part ADD COLUMN url TEXT");
       }
 
+      if (oldVersion < lokiV4) {
+        db.execSQL("ALTER TABLE part ADD COLUMN transcoded INTEGER DEFAULT 0");
+      }
+
+      if (oldVersion < lokiV5) {
+        db.execSQL(LinkPreviewDatabase.CREATE_TABLE);
+        executeStatements(db, LinkPreviewDatabase.CREATE_INDEXES);
+      }
+
+      if (oldVersion < lokiV6) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS sms_thread_address_index ON sms (thread_id, address)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS mms_thread_address_index ON mms (thread_id, address)");
+      }
+
+      if (oldVersion < lokiV7) {
+        JsonDataSerializer   jsonSerializer   = new JsonDataSerializer();
+        BinaryDataSerializer binarySerializer = new BinaryDataSerializer();
+
+        try (Cursor cursor = db.rawQuery("SELECT _id, serialized_data FROM job_spec WHERE serialized_data LIKE '{%'", null)) {
+          while (cursor != null && cursor.moveToNext()) {
+            String binary;
+
+            try {
+              binary = binarySerializer.serialize(jsonSerializer.deserialize(cursor.getString(1)));
+            } catch (AssertionError | RuntimeException e) {
+              // The binary serializer still reads JSON, so the row can stay as it is
+              Log.w(TAG, "Leaving job " + cursor.getString(0) + " as JSON, it couldn't be converted.", e);
+              continue;
+            }
+
+            ContentValues values = new ContentValues(1);
+            values.put("serialized_data", binary);
+            db.update("job_spec", values, "_id = ?", new String[] { cursor.getString(0) });
+          }
+        }
+      }
+
+      if (oldVersion < lokiV8) {
+        db.execSQL("CREATE TABLE group_membership (group_id TEXT NOT NULL, address TEXT NOT NULL, UNIQUE(group_id, address) ON CONFLICT IGNORE)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS group_membership_address_index ON group_membership (address)");
+        GroupDatabase.migrateMembership(db);
+      }
+
+      if (oldVersion < lokiV9) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS sms_expire_started_index ON sms (expire_started, expires_in)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS mms_expire_started_index ON mms (expire_started, expires_in)");
+      }
+
+      if (oldVersion < lokiV10) {
+        db.execSQL("CREATE TABLE sticker_emoji (sticker_row_id INTEGER NOT NULL, pack_id TEXT NOT NULL, emoji TEXT NOT NULL, UNIQUE(sticker_row_id, emoji) ON CONFLICT IGNORE)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS sticker_emoji_emoji_index ON sticker_emoji (emoji)");
+        db.execSQL("CREATE INDEX IF NOT EXISTS sticker_emoji_pack_id_index ON sticker_emoji (pack_id)");
+        StickerDatabase.migrateEmojiIndex(db);
+      }
+
+      if (oldVersion < lokiV11) {
+        db.execSQL("DROP INDEX IF EXISTS group_receipt_mms_id_index");
+        db.execSQL("CREATE INDEX IF NOT EXISTS group_receipt_mms_id_address_index ON group_receipts (mms_id, address)");
+      }
+
+      if (oldVersion < lokiV12) {
+        db.execSQL("DROP TABLE IF EXISTS link_preview_cache");
+        db.execSQL(LinkPreviewDatabase.CREATE_TABLE);
+        executeStatements(db, LinkPreviewDatabase.CREATE_INDEXES);
+      }
+
       db.setTransactionSuccessful();
     } finally {
       db.endTransaction();
@@ -514,14 +624,61 @@ public class SQLCipherOpenHelper extends SQLiteOpenHelper {
     }
   }
 
+  /**
+   * Returns one of a small pool of read-only connections, so reads don't wait behind writes on
+   * {@link #getWritableDatabase()}. A thread that is inside a write transaction gets the writable
+   * connection instead, so that it sees its own uncommitted changes.
+   *
+   * Reads through the pool see the last committed state, so anything that needs to read and then
+   * write based on what it read must do both on the writable connection.
+   */
   public SQLiteDatabase getReadableDatabase() {
-    return getReadableDatabase(databaseSecret.asString());
+    SQLiteDatabase writer = getWritableDatabase();
+
+    if (writer.inTransaction() && writer.isDbLockedByCurrentThread()) {
+      return writer;
+    }
+
+    return getReaders().get();
   }
 
   public SQLiteDatabase getWritableDatabase() {
     return getWritableDatabase(databaseSecret.asString());
   }
 
+  /**
+   * SQLite checkpoints the write-ahead log automatically as it grows, but only passively, which
+   * can't finish while readers are active. This runs a full checkpoint and truncates the log, and
+   * is meant to be called when the app is idle, e.g. when it goes to the background.
+   */
+  public void checkpoint() {
+    try {
+      long start = SystemClock.elapsedRealtime();
+      getWritableDatabase().rawExecSQL("PRAGMA wal_checkpoint(TRUNCATE);");
+      Log.i(TAG, "Checkpointed the write-ahead log in " + (SystemClock.elapsedRealtime() - start) + " ms.");
+    } catch (SQLiteException e) {
+      Log.w(TAG, "Failed to checkpoint the write-ahead log.", e);
+    }
+  }
+
+  @Override
+  public synchronized void close() {
+    if (readers != null) {
+      readers.close();
+      readers = null;
+    }
+
+    super.close();
+  }
+
+  private synchronized @NonNull ReaderConnectionPool getReaders() {
+    if (readers == null) {
+      readers = new ReaderConnectionPool(context.getDatabasePath(DATABASE_NAME), databaseSecret.asString(), CIPHER_HOOK, READER_CONNECTIONS);
+    }
+
+    return readers;
+  }
+
   public void markCurrent(SQLiteDatabase db) {
     db.setVersion(DATABASE_VERSION);
   }
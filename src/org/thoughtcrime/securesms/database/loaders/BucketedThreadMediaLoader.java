@@ -5,27 +5,27 @@ import android.content.Context;
 import android.database.ContentObserver;
 import android.database.Cursor;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.support.v4.content.AsyncTaskLoader;
 
-import com.annimon.stream.Stream;
-
 import network.loki.messenger.R;
 import org.thoughtcrime.securesms.database.Address;
-import org.thoughtcrime.securesms.database.Database;
+import org.thoughtcrime.securesms.database.AttachmentDatabase;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.MediaDatabase;
 import org.thoughtcrime.securesms.recipients.Recipient;
+import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.Set;
 
 public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMediaLoader.BucketedThreadMedia> {
 
@@ -62,168 +62,243 @@ public class BucketedThreadMediaLoader extends AsyncTaskLoader<BucketedThreadMed
 
   @Override
   public BucketedThreadMedia loadInBackground() {
-    BucketedThreadMedia result   = new BucketedThreadMedia(getContext());
-    long                threadId = DatabaseFactory.getThreadDatabase(getContext()).getThreadIdFor(Recipient.from(getContext(), address, true));
+    long                              threadId = DatabaseFactory.getThreadDatabase(getContext()).getThreadIdFor(Recipient.from(getContext(), address, true));
+    long                              now      = System.currentTimeMillis();
+    List<BucketedThreadMedia.Section> sections = new ArrayList<>();
 
     DatabaseFactory.getMediaDatabase(getContext()).subscribeToMediaChanges(observer);
-    try (Cursor cursor = DatabaseFactory.getMediaDatabase(getContext()).getGalleryMediaForThread(threadId)) {
+    try (Cursor cursor = DatabaseFactory.getMediaDatabase(getContext()).getGallerySectionsForThread(threadId, now)) {
       while (cursor != null && cursor.moveToNext()) {
-        result.add(MediaDatabase.MediaRecord.from(getContext(), cursor));
+        sections.add(new BucketedThreadMedia.Section(cursor.getInt(0), cursor.getInt(1), cursor.getInt(2)));
       }
     }
 
+    BucketedThreadMedia result = new BucketedThreadMedia(getContext(), threadId, now, sections);
+
+    if (!sections.isEmpty()) {
+      result.loadPage(0, 0);
+    }
+
     return result;
   }
 
+  /**
+   * The gallery media for a thread, split into date sections. The sections and their sizes are
+   * known up front, but records are only read a page at a time as they're asked for.
+   */
   public static class BucketedThreadMedia {
 
-    private final TimeBucket   TODAY;
-    private final TimeBucket   YESTERDAY;
-    private final TimeBucket   THIS_WEEK;
-    private final TimeBucket   THIS_MONTH;
-    private final MonthBuckets OLDER;
+    private static final int PAGE_SIZE = 60;
+
+    private final Context       context;
+    private final long          threadId;
+    private final long          now;
+    private final List<Section> sections;
+    private final Set<Long>     requestedPages;
+    private final Set<Long>     loadedPages;
+    private final Object        loadLock = new Object();
 
-    private final TimeBucket[] TIME_SECTIONS;
+    private @Nullable Runnable pageLoadedListener;
 
     public BucketedThreadMedia(@NonNull Context context) {
-      this.TODAY         = new TimeBucket(context.getString(R.string.BucketedThreadMedia_Today), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -1), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, 1000));
-      this.YESTERDAY     = new TimeBucket(context.getString(R.string.BucketedThreadMedia_Yesterday), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -2), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -1));
-      this.THIS_WEEK     = new TimeBucket(context.getString(R.string.BucketedThreadMedia_This_week), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -7), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -2));
-      this.THIS_MONTH    = new TimeBucket(context.getString(R.string.BucketedThreadMedia_This_month), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -30), TimeBucket.addToCalendar(Calendar.DAY_OF_YEAR, -7));
-      this.TIME_SECTIONS = new TimeBucket[]{TODAY, YESTERDAY, THIS_WEEK, THIS_MONTH};
-      this.OLDER         = new MonthBuckets();
+      this(context, -1, 0, Collections.emptyList());
     }
 
+    BucketedThreadMedia(@NonNull Context context, long threadId, long now, @NonNull List<Section> sections) {
+      this.context        = context.getApplicationContext();
+      this.threadId       = threadId;
+      this.now            = now;
+      this.sections       = sections;
+      this.requestedPages = new HashSet<>();
+      this.loadedPages    = new HashSet<>();
+    }
 
-    public void add(MediaDatabase.MediaRecord mediaRecord) {
-      for (TimeBucket timeSection : TIME_SECTIONS) {
-        if (timeSection.inRange(mediaRecord.getDate())) {
-          timeSection.add(mediaRecord);
-          return;
-        }
-      }
-
-      OLDER.add(mediaRecord);
+    /**
+     * Called on the main thread whenever records that were missing from {@link #get(int, int)}
+     * have been loaded.
+     */
+    public void setPageLoadedListener(@Nullable Runnable listener) {
+      this.pageLoadedListener = listener;
     }
 
     public int getSectionCount() {
-      return (int)Stream.of(TIME_SECTIONS)
-                        .filter(timeBucket -> !timeBucket.isEmpty())
-                        .count() +
-             OLDER.getSectionCount();
+      return sections.size();
     }
 
     public int getSectionItemCount(int section) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
-
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getItemCount();
-      else                                    return OLDER.getSectionItemCount(section - activeTimeBuckets.size());
+      return sections.get(section).records.length;
     }
 
-    public MediaDatabase.MediaRecord get(int section, int item) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
+    /**
+     * @return The number of records in every section, without loading any of them.
+     */
+    public int getTotalCount() {
+      int total = 0;
 
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getItem(item);
-      else                                    return OLDER.getItem(section - activeTimeBuckets.size(), item);
+      for (Section section : sections) {
+        total += section.records.length;
+      }
+
+      return total;
     }
 
-    public String getName(int section, Locale locale) {
-      List<TimeBucket> activeTimeBuckets = Stream.of(TIME_SECTIONS).filter(timeBucket -> !timeBucket.isEmpty()).toList();
+    /**
+     * @return The record, or null if its page hasn't been loaded yet. The page is then loaded in
+     *         the background and the listener is told when it's there.
+     */
+    public @Nullable MediaDatabase.MediaRecord get(int section, int item) {
+      MediaDatabase.MediaRecord record;
 
-      if (section < activeTimeBuckets.size()) return activeTimeBuckets.get(section).getName();
-      else                                    return OLDER.getName(section - activeTimeBuckets.size(), locale);
-    }
+      synchronized (this) {
+        record = sections.get(section).records[item];
+      }
 
-    private static class TimeBucket {
+      if (record == null) {
+        requestPage(section, item / PAGE_SIZE);
+      }
 
-      private final List<MediaDatabase.MediaRecord> records = new LinkedList<>();
+      return record;
+    }
 
-      private final long   startTime;
-      private final long   endtime;
-      private final String name;
+    public String getName(int section, Locale locale) {
+      Section bucket = sections.get(section);
 
-      TimeBucket(String name, long startTime, long endtime) {
-        this.name      = name;
-        this.startTime = startTime;
-        this.endtime   = endtime;
+      switch (bucket.range) {
+        case MediaDatabase.RANGE_TODAY:      return context.getString(R.string.BucketedThreadMedia_Today);
+        case MediaDatabase.RANGE_YESTERDAY:  return context.getString(R.string.BucketedThreadMedia_Yesterday);
+        case MediaDatabase.RANGE_THIS_WEEK:  return context.getString(R.string.BucketedThreadMedia_This_week);
+        case MediaDatabase.RANGE_THIS_MONTH: return context.getString(R.string.BucketedThreadMedia_This_month);
       }
 
-      void add(MediaDatabase.MediaRecord record) {
-        this.records.add(record);
-      }
+      Calendar calendar = Calendar.getInstance();
+      calendar.clear();
+      calendar.set(bucket.month / 100, bucket.month % 100 - 1, 1);
 
-      boolean inRange(long timestamp) {
-        return timestamp > startTime && timestamp <= endtime;
-      }
+      return new SimpleDateFormat("MMMM, yyyy", locale).format(calendar.getTime());
+    }
 
-      boolean isEmpty() {
-        return records.isEmpty();
-      }
+    /**
+     * Loads every page that's still missing in the background, then calls back on the main thread
+     * with all of the records. Only meant for acting on every record, not for selecting them.
+     */
+    public void loadAll(@NonNull Callback<List<MediaDatabase.MediaRecord>> callback) {
+      SignalExecutors.BOUNDED.execute(() -> {
+        List<MediaDatabase.MediaRecord> records = new ArrayList<>();
+
+        for (int section = 0; section < sections.size(); section++) {
+          MediaDatabase.MediaRecord[] sectionRecords = sections.get(section).records;
+
+          for (int page = 0; page * PAGE_SIZE < sectionRecords.length; page++) {
+            loadPage(section, page);
+          }
+
+          synchronized (this) {
+            for (MediaDatabase.MediaRecord record : sectionRecords) {
+              if (record != null) records.add(record);
+            }
+          }
+        }
 
-      int getItemCount() {
-        return records.size();
-      }
+        Util.runOnMain(() -> callback.onComplete(records));
+      });
+    }
 
-      MediaDatabase.MediaRecord getItem(int position) {
-        return records.get(position);
+    private void requestPage(int section, int page) {
+      synchronized (this) {
+        // Each page is only asked for once, so a section that shrank can't keep rebinding forever
+        if (!requestedPages.add(getPageKey(section, page))) return;
       }
 
-      String getName() {
-        return name;
-      }
+      SignalExecutors.BOUNDED.execute(() -> {
+        loadPage(section, page);
 
-      static long addToCalendar(int field, int amount) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.add(field, amount);
-        return calendar.getTimeInMillis();
-      }
+        Util.runOnMain(() -> {
+          if (pageLoadedListener != null) pageLoadedListener.run();
+        });
+      });
     }
 
-    private static class MonthBuckets {
-
-      private final Map<Date, List<MediaDatabase.MediaRecord>> months = new HashMap<>();
+    /**
+     * Pages are read by keyset, continuing from the last row of the page before, so any earlier
+     * pages that are still missing are loaded first.
+     */
+    @WorkerThread
+    void loadPage(int section, int page) {
+      for (int previous = 0; previous < page; previous++) {
+        loadPageAfterPrevious(section, previous);
+      }
 
-      void add(MediaDatabase.MediaRecord record) {
-        Calendar calendar = Calendar.getInstance();
-        calendar.setTimeInMillis(record.getDate());
+      loadPageAfterPrevious(section, page);
+    }
 
-        int  year  = calendar.get(Calendar.YEAR) - 1900;
-        int  month = calendar.get(Calendar.MONTH);
-        Date date  = new Date(year, month, 1);
+    @WorkerThread
+    private void loadPageAfterPrevious(int section, int page) {
+      Section                         bucket  = sections.get(section);
+      int                             offset  = page * PAGE_SIZE;
+      List<MediaDatabase.MediaRecord> records = new ArrayList<>(PAGE_SIZE);
+      long[]                          start;
+      long[]                          last    = null;
+
+      synchronized (loadLock) {
+        synchronized (this) {
+          if (loadedPages.contains(getPageKey(section, page))) return;
+
+          start = bucket.pageStarts[page];
+
+          // A section that shrank since it was counted ends early
+          if (start == null) {
+            loadedPages.add(getPageKey(section, page));
+            return;
+          }
+        }
 
-        if (months.containsKey(date)) {
-          months.get(date).add(record);
-        } else {
-          List<MediaDatabase.MediaRecord> list = new LinkedList<>();
-          list.add(record);
-          months.put(date, list);
+        try (Cursor cursor = DatabaseFactory.getMediaDatabase(context).getGallerySectionPageForThread(threadId, now, bucket.range, bucket.month, start[0], start[1], PAGE_SIZE)) {
+          while (cursor != null && cursor.moveToNext()) {
+            records.add(MediaDatabase.MediaRecord.from(context, cursor));
+            last = new long[] { cursor.getLong(cursor.getColumnIndexOrThrow(MediaDatabase.MEDIA_DATE_COLUMN)),
+                                cursor.getLong(cursor.getColumnIndexOrThrow(AttachmentDatabase.ROW_ID)) };
+          }
         }
-      }
 
-      int getSectionCount() {
-        return months.size();
-      }
+        synchronized (this) {
+          for (int i = 0; i < records.size() && offset + i < bucket.records.length; i++) {
+            if (bucket.records[offset + i] == null) {
+              bucket.records[offset + i] = records.get(i);
+            }
+          }
 
-      int getSectionItemCount(int section) {
-        return months.get(getSection(section)).size();
-      }
+          if (records.size() == PAGE_SIZE && page + 1 < bucket.pageStarts.length) {
+            bucket.pageStarts[page + 1] = last;
+          }
 
-      MediaDatabase.MediaRecord getItem(int section, int position) {
-        return months.get(getSection(section)).get(position);
+          loadedPages.add(getPageKey(section, page));
+        }
       }
+    }
 
-      Date getSection(int section) {
-        ArrayList<Date> keys = new ArrayList<>(months.keySet());
-        Collections.sort(keys, Collections.reverseOrder());
+    private static long getPageKey(int section, int page) {
+      return ((long) section << 32) | page;
+    }
 
-        return keys.get(section);
-      }
+    static class Section {
+      private final int                         range;
+      private final int                         month;
+      private final MediaDatabase.MediaRecord[] records;
+      private final long[][]                    pageStarts;
 
-      String getName(int section, Locale locale) {
-        Date sectionDate = getSection(section);
+      Section(int range, int month, int count) {
+        this.range      = range;
+        this.month      = month;
+        this.records    = new MediaDatabase.MediaRecord[count];
+        this.pageStarts = new long[Math.max(1, (count + PAGE_SIZE - 1) / PAGE_SIZE)][];
 
-        return new SimpleDateFormat("MMMM, yyyy", locale).format(sectionDate);
+        // The (date, attachment id) each page continues after, known once the page before it loads
+        this.pageStarts[0] = new long[] { Long.MAX_VALUE, Long.MAX_VALUE };
       }
     }
+
+    public interface Callback<T> {
+      void onComplete(T result);
+    }
   }
 }
@@ -10,6 +10,7 @@ import org.thoughtcrime.securesms.crypto.storage.TextSecureSessionStore;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.events.ReminderUpdateEvent;
 import org.thoughtcrime.securesms.gcm.FcmService;
+import org.thoughtcrime.securesms.jobs.AttachmentAlbumUploadJob;
 import org.thoughtcrime.securesms.jobs.AttachmentDownloadJob;
 import org.thoughtcrime.securesms.jobs.AttachmentUploadJob;
 import org.thoughtcrime.securesms.jobs.AvatarDownloadJob;
@@ -105,6 +106,7 @@ import network.loki.messenger.BuildConfig;
                                      RefreshUnidentifiedDeliveryAbilityJob.class,
                                      TypingSendJob.class,
                                      AttachmentUploadJob.class,
+                                     AttachmentAlbumUploadJob.class,
                                      PushDecryptJob.class,
                                      StickerDownloadJob.class,
                                      StickerPackPreviewRepository.class,
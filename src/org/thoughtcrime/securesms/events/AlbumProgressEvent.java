@@ -0,0 +1,26 @@
+package org.thoughtcrime.securesms.events;
+
+
+import android.support.annotation.NonNull;
+
+import org.thoughtcrime.securesms.attachments.Attachment;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Upload progress of every attachment in a multi-attachment message, posted alongside the
+ * {@link PartProgressEvent}s of the individual attachments.
+ */
+public class AlbumProgressEvent {
+
+  public final Map<Attachment, Float> attachmentProgress;
+  public final long                   total;
+  public final long                   progress;
+
+  public AlbumProgressEvent(@NonNull Map<Attachment, Float> attachmentProgress, long total, long progress) {
+    this.attachmentProgress = Collections.unmodifiableMap(attachmentProgress);
+    this.total              = total;
+    this.progress           = progress;
+  }
+}
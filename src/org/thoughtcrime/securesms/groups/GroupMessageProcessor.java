@@ -163,7 +163,7 @@ public class GroupMessageProcessor {
                                              @NonNull SignalServiceGroup group,
                                              @NonNull GroupRecord record)
   {
-    if (record.getMembers().contains(Address.fromExternal(context, content.getSender()))) {
+    if (DatabaseFactory.getGroupDatabase(context).isMember(record.getEncodedId(), Address.fromExternal(context, content.getSender()))) {
       ApplicationContext.getInstance(context)
                         .getJobManager()
                         .add(new PushGroupUpdateJob(content.getSender(), group.getGroupId()));
@@ -9,6 +9,7 @@ import android.support.annotation.Nullable;
 import org.thoughtcrime.securesms.imageeditor.Renderer;
 import org.thoughtcrime.securesms.imageeditor.RendererContext;
 
+import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
@@ -67,6 +68,13 @@ public final class EditorElement implements Parcelable {
     in.readTypedList(children, EditorElement.CREATOR);
   }
 
+  private EditorElement(@NonNull UUID id, int flags, @NonNull Matrix localMatrix, @Nullable Renderer renderer) {
+    this.id       = id;
+    this.flags    = new EditorFlags(flags);
+    this.renderer = renderer;
+    this.localMatrix.set(localMatrix);
+  }
+
   UUID getId() {
     return id;
   }
@@ -305,6 +313,63 @@ public final class EditorElement implements Parcelable {
     animationMatrix.stop();
   }
 
+  /**
+   * Writes the persisted state of this element alone, followed by the ids of its children rather
+   * than the children themselves. Lets {@link ElementState} store each element of a tree separately.
+   */
+  void writeNodeToParcel(@NonNull Parcel dest) {
+    ParcelUtils.writeUUID(dest, id);
+    dest.writeInt(this.flags.asInt());
+    ParcelUtils.writeMatrix(dest, localMatrix);
+    dest.writeParcelable(renderer, 0);
+    dest.writeInt(children.size());
+    for (EditorElement child : children) {
+      ParcelUtils.writeUUID(dest, child.id);
+    }
+  }
+
+  /**
+   * Rebuilds the tree rooted at the supplied id from nodes written by {@link #writeNodeToParcel(Parcel)}.
+   */
+  static @NonNull EditorElement fromNodes(@NonNull UUID id, @NonNull Map<UUID, byte[]> nodes) {
+    byte[] node = nodes.get(id);
+
+    if (node == null) {
+      throw new IllegalStateException("Missing node " + id);
+    }
+
+    EditorElement element;
+    List<UUID>    childIds;
+    Parcel        parcel = Parcel.obtain();
+
+    try {
+      parcel.unmarshall(node, 0, node.length);
+      parcel.setDataPosition(0);
+
+      UUID     nodeId      = ParcelUtils.readUUID(parcel);
+      int      flags       = parcel.readInt();
+      Matrix   localMatrix = new Matrix();
+      ParcelUtils.readMatrix(localMatrix, parcel);
+      Renderer renderer    = parcel.readParcelable(Renderer.class.getClassLoader());
+      int      childCount  = parcel.readInt();
+
+      element  = new EditorElement(nodeId, flags, localMatrix, renderer);
+      childIds = new ArrayList<>(childCount);
+
+      for (int i = 0; i < childCount; i++) {
+        childIds.add(ParcelUtils.readUUID(parcel));
+      }
+    } finally {
+      parcel.recycle();
+    }
+
+    for (UUID childId : childIds) {
+      element.children.add(fromNodes(childId, nodes));
+    }
+
+    return element;
+  }
+
   public static final Creator<EditorElement> CREATOR = new Creator<EditorElement>() {
     @Override
     public EditorElement createFromParcel(Parcel in) {
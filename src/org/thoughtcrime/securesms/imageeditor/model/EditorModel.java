@@ -503,11 +503,20 @@ public final class EditorModel implements Parcelable, RendererContext.Ready {
    */
   @WorkerThread
   public Bitmap render(@NonNull Context context) {
+    return render(context, Bitmap::createBitmap);
+  }
+
+  /**
+   * Blocking render of the model, with the output bitmap obtained from the supplied allocator. The
+   * allocator must supply a cleared bitmap of exactly the requested size, e.g. from a bitmap pool.
+   */
+  @WorkerThread
+  public Bitmap render(@NonNull Context context, @NonNull BitmapAllocator allocator) {
     EditorElement image      = editorElementHierarchy.getFlipRotate();
     RectF         cropRect   = editorElementHierarchy.getCropRect();
     Point         outputSize = getOutputSize();
 
-    Bitmap bitmap = Bitmap.createBitmap(outputSize.x, outputSize.y, Bitmap.Config.ARGB_8888);
+    Bitmap bitmap = allocator.allocate(outputSize.x, outputSize.y, Bitmap.Config.ARGB_8888);
     try {
       Canvas canvas = new Canvas(bitmap);
       RendererContext rendererContext = new RendererContext(context, canvas, RendererContext.Ready.NULL, RendererContext.Invalidate.NULL);
@@ -538,6 +547,18 @@ public final class EditorModel implements Parcelable, RendererContext.Ready {
     return bitmap;
   }
 
+  /**
+   * @return The number of bytes the bitmap produced by {@link #render(Context)} will occupy.
+   */
+  public long getRenderByteCount() {
+    Point outputSize = getOutputSize();
+    return (long) outputSize.x * outputSize.y * 4;
+  }
+
+  public interface BitmapAllocator {
+    @NonNull Bitmap allocate(int width, int height, @NonNull Bitmap.Config config);
+  }
+
   @NonNull
   private Point getOutputSize() {
     PointF outputSize = editorElementHierarchy.getOutputSize(size);
@@ -5,38 +5,56 @@ import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import java.util.Arrays;
-import java.util.Stack;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Contains a stack of elements for undo and redo stacks.
  * <p>
- * Elements are mutable, so this stack serializes the element and keeps a stack of serialized data.
+ * Elements are mutable, so this stack keeps a stack of {@link ElementState} snapshots. Each snapshot
+ * shares the data of unchanged elements with the one below it, so a push only costs the elements
+ * that actually changed.
  * <p>
- * The stack has a {@link #limit} and if it exceeds that limit during a push the second to earliest item
- * is removed so that it can always go back to the first state. Effectively collapsing the history for
- * the start of the stack.
+ * The stack has a {@link #limit} and a {@link #byteBudget}. If either is exceeded during a push the
+ * second to earliest item is removed so that it can always go back to the first state. Effectively
+ * collapsing the history for the start of the stack.
+ * <p>
+ * When parceled, every {@link #CHECKPOINT_INTERVAL}th state is written in full and the states between
+ * as deltas against the state before them.
  */
 final class ElementStack implements Parcelable {
 
-  private final int           limit;
-  private final Stack<byte[]> stack = new Stack<>();
+  private static final int  CHECKPOINT_INTERVAL = 10;
+  private static final long DEFAULT_BYTE_BUDGET = 8 * 1024 * 1024;
+
+  private final int                limit;
+  private final long               byteBudget;
+  private final List<ElementState> stack = new ArrayList<>();
+
+  private final Map<byte[], Integer> referenceCounts = ElementState.newReferenceCounts();
+  private       long                 retainedBytes;
 
   ElementStack(int limit) {
-    this.limit = limit;
+    this(limit, DEFAULT_BYTE_BUDGET);
+  }
+
+  ElementStack(int limit, long byteBudget) {
+    this.limit      = limit;
+    this.byteBudget = byteBudget;
   }
 
   private ElementStack(@NonNull Parcel in) {
-    this(in.readInt());
+    this(in.readInt(), in.readLong());
     final int count = in.readInt();
     for (int i = 0; i < count; i++) {
-      stack.add(i, in.createByteArray());
+      add(ElementState.readFromParcel(in, getBase(i)));
     }
   }
 
   /**
-   * Pushes an element to the stack iff the element's serialized value is different to any found at
-   * the top of the stack.
+   * Pushes an element to the stack iff the element's state is different to the state found at the
+   * top of the stack.
    * <p>
    * Removes the second to earliest item if it is overflowing.
    *
@@ -44,61 +62,78 @@ final class ElementStack implements Parcelable {
    * @return true iff the pushed item was different to the top item.
    */
   boolean tryPush(@NonNull EditorElement element) {
-    byte[]  bytes = getBytes(element);
-    boolean push  = stack.isEmpty() || !Arrays.equals(bytes, stack.peek());
+    ElementState top   = peek();
+    ElementState state = ElementState.capture(element, top);
+    boolean      push  = top == null || !state.isSameAs(top);
 
     if (push) {
-      stack.push(bytes);
+      add(state);
       if (stack.size() > limit) {
-        stack.remove(1);
+        remove(1);
       }
+      trimToBudget();
     }
     return push;
   }
 
-  static byte[] getBytes(@NonNull Parcelable parcelable) {
-    Parcel parcel = Parcel.obtain();
-    byte[] bytes;
-    try {
-      parcel.writeParcelable(parcelable, 0);
-      bytes = parcel.marshall();
-    } finally {
-      parcel.recycle();
-    }
-    return bytes;
-  }
-
   /**
    * Pops the first different state from the supplied element.
    */
   @Nullable EditorElement pop(@NonNull EditorElement element) {
-    if (stack.empty()) return null;
+    if (stack.isEmpty()) return null;
 
-    byte[] elementBytes = getBytes(element);
-    byte[] stackData    = null;
+    ElementState elementState = ElementState.capture(element, peek());
+    ElementState stackState   = null;
 
-    while (!stack.empty() && stackData == null) {
-      byte[] topData = stack.pop();
+    while (!stack.isEmpty() && stackState == null) {
+      ElementState topState = remove(stack.size() - 1);
 
-      if (!Arrays.equals(topData, elementBytes)) {
-        stackData = topData;
+      if (!topState.isSameAs(elementState)) {
+        stackState = topState;
       }
     }
 
-    if (stackData == null) return null;
+    if (stackState == null) return null;
 
-    Parcel parcel = Parcel.obtain();
-    try {
-      parcel.unmarshall(stackData, 0, stackData.length);
-      parcel.setDataPosition(0);
-      return parcel.readParcelable(EditorElement.class.getClassLoader());
-    } finally {
-      parcel.recycle();
-    }
+    return stackState.restore();
+  }
+
+  @Nullable ElementState peek() {
+    return stack.isEmpty() ? null : stack.get(stack.size() - 1);
   }
 
   void clear() {
     stack.clear();
+    referenceCounts.clear();
+    retainedBytes = 0;
+  }
+
+  /**
+   * @return The number of bytes retained by the stack, counting data shared between states once.
+   */
+  long getRetainedBytes() {
+    return retainedBytes;
+  }
+
+  private void trimToBudget() {
+    while (stack.size() > 2 && retainedBytes > byteBudget) {
+      remove(1);
+    }
+  }
+
+  private void add(@NonNull ElementState state) {
+    stack.add(state);
+    retainedBytes += state.retain(referenceCounts);
+  }
+
+  private @NonNull ElementState remove(int index) {
+    ElementState state = stack.remove(index);
+    retainedBytes -= state.release(referenceCounts);
+    return state;
+  }
+
+  private @Nullable ElementState getBase(int index) {
+    return index % CHECKPOINT_INTERVAL == 0 ? null : stack.get(index - 1);
   }
 
   public static final Creator<ElementStack> CREATOR = new Creator<ElementStack>() {
@@ -121,20 +156,21 @@ final class ElementStack implements Parcelable {
   @Override
   public void writeToParcel(Parcel dest, int flags) {
     dest.writeInt(limit);
+    dest.writeLong(byteBudget);
     final int count = stack.size();
     dest.writeInt(count);
     for (int i = 0; i < count; i++) {
-      dest.writeByteArray(stack.get(i));
+      stack.get(i).writeToParcel(dest, getBase(i));
     }
   }
 
   boolean stackContainsStateDifferentFrom(@NonNull EditorElement element) {
     if (stack.isEmpty()) return false;
 
-    byte[] currentStateBytes = getBytes(element);
+    ElementState currentState = ElementState.capture(element, peek());
 
-    for (byte[] item : stack) {
-      if (!Arrays.equals(item, currentStateBytes)) {
+    for (ElementState item : stack) {
+      if (!item.isSameAs(currentState)) {
         return true;
       }
     }
@@ -0,0 +1,175 @@
+package org.thoughtcrime.securesms.imageeditor.model;
+
+import android.os.Parcel;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * An immutable snapshot of an {@link EditorElement} tree, stored as one serialized node per element.
+ * <p>
+ * When a state is captured relative to a previous state, the node data of every element that has not
+ * changed is shared with the previous state rather than copied. Adding a stroke to a large drawing
+ * therefore only costs the bytes of the new stroke, not of the whole tree.
+ * <p>
+ * The same sharing is used when parceling, a state can be written as a delta against the state
+ * before it, see {@link #writeToParcel(Parcel, ElementState)}.
+ */
+final class ElementState {
+
+  private final UUID              rootId;
+  private final Map<UUID, byte[]> nodes;
+
+  private ElementState(@NonNull UUID rootId, @NonNull Map<UUID, byte[]> nodes) {
+    this.rootId = rootId;
+    this.nodes  = Collections.unmodifiableMap(nodes);
+  }
+
+  /**
+   * Captures the current state of the tree.
+   *
+   * @param previous A state to share unchanged node data with, may be null.
+   */
+  static @NonNull ElementState capture(@NonNull EditorElement root, @Nullable ElementState previous) {
+    Map<UUID, EditorElement> elements = new LinkedHashMap<>();
+    Map<UUID, byte[]>        nodes    = new LinkedHashMap<>();
+
+    root.buildMap(elements);
+
+    for (EditorElement element : elements.values()) {
+      byte[] bytes         = getNodeBytes(element);
+      byte[] previousBytes = previous != null ? previous.nodes.get(element.getId()) : null;
+
+      nodes.put(element.getId(), previousBytes != null && Arrays.equals(bytes, previousBytes) ? previousBytes : bytes);
+    }
+
+    return new ElementState(root.getId(), nodes);
+  }
+
+  @NonNull EditorElement restore() {
+    return EditorElement.fromNodes(rootId, nodes);
+  }
+
+  boolean isSameAs(@NonNull ElementState other) {
+    if (!rootId.equals(other.rootId) || nodes.size() != other.nodes.size()) {
+      return false;
+    }
+
+    for (Map.Entry<UUID, byte[]> entry : nodes.entrySet()) {
+      byte[] otherBytes = other.nodes.get(entry.getKey());
+
+      if (otherBytes != entry.getValue() && (otherBytes == null || !Arrays.equals(otherBytes, entry.getValue()))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Counts a reference to each node this state holds.
+   *
+   * @return The number of bytes of node data that were not already referenced.
+   */
+  long retain(@NonNull Map<byte[], Integer> referenceCounts) {
+    long added = 0;
+    for (byte[] node : nodes.values()) {
+      Integer count = referenceCounts.get(node);
+      if (count == null) {
+        referenceCounts.put(node, 1);
+        added += node.length;
+      } else {
+        referenceCounts.put(node, count + 1);
+      }
+    }
+    return added;
+  }
+
+  /**
+   * Removes a reference to each node this state holds.
+   *
+   * @return The number of bytes of node data that are no longer referenced.
+   */
+  long release(@NonNull Map<byte[], Integer> referenceCounts) {
+    long removed = 0;
+    for (byte[] node : nodes.values()) {
+      int count = referenceCounts.get(node);
+      if (count == 1) {
+        referenceCounts.remove(node);
+        removed += node.length;
+      } else {
+        referenceCounts.put(node, count - 1);
+      }
+    }
+    return removed;
+  }
+
+  /**
+   * @return A map for {@link #retain} and {@link #release} that counts node data by identity, so
+   * data shared between states is only counted once.
+   */
+  static @NonNull Map<byte[], Integer> newReferenceCounts() {
+    return new IdentityHashMap<>();
+  }
+
+  /**
+   * Writes the state, only including the data of nodes that differ from those in base.
+   *
+   * @param base The state that will be supplied to {@link #readFromParcel(Parcel, ElementState)}, or
+   *             null to write a self contained checkpoint.
+   */
+  void writeToParcel(@NonNull Parcel dest, @Nullable ElementState base) {
+    ParcelUtils.writeUUID(dest, rootId);
+    dest.writeInt(nodes.size());
+
+    for (Map.Entry<UUID, byte[]> entry : nodes.entrySet()) {
+      byte[] baseBytes = base != null ? base.nodes.get(entry.getKey()) : null;
+
+      ParcelUtils.writeUUID(dest, entry.getKey());
+
+      if (baseBytes != null && (baseBytes == entry.getValue() || Arrays.equals(baseBytes, entry.getValue()))) {
+        dest.writeInt(0);
+      } else {
+        dest.writeInt(1);
+        dest.writeByteArray(entry.getValue());
+      }
+    }
+  }
+
+  static @NonNull ElementState readFromParcel(@NonNull Parcel in, @Nullable ElementState base) {
+    UUID              rootId = ParcelUtils.readUUID(in);
+    int               count  = in.readInt();
+    Map<UUID, byte[]> nodes  = new LinkedHashMap<>(count);
+
+    for (int i = 0; i < count; i++) {
+      UUID id = ParcelUtils.readUUID(in);
+
+      if (in.readInt() == 0) {
+        if (base == null || !base.nodes.containsKey(id)) {
+          throw new IllegalStateException("Delta refers to a node missing from its base.");
+        }
+        nodes.put(id, base.nodes.get(id));
+      } else {
+        nodes.put(id, in.createByteArray());
+      }
+    }
+
+    return new ElementState(rootId, nodes);
+  }
+
+  private static byte[] getNodeBytes(@NonNull EditorElement element) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      element.writeNodeToParcel(parcel);
+      return parcel.marshall();
+    } finally {
+      parcel.recycle();
+    }
+  }
+}
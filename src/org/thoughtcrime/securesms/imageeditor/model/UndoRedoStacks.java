@@ -5,24 +5,22 @@ import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 
-import java.util.Arrays;
-
 final class UndoRedoStacks implements Parcelable {
 
   private final ElementStack undoStack;
   private final ElementStack redoStack;
 
-  @NonNull
-  private byte[] unchangedState;
+  @Nullable
+  private ElementState unchangedState;
 
   UndoRedoStacks(int limit) {
     this(new ElementStack(limit), new ElementStack(limit), null);
   }
 
-  private UndoRedoStacks(ElementStack undoStack, ElementStack redoStack, @Nullable byte[] unchangedState) {
+  private UndoRedoStacks(ElementStack undoStack, ElementStack redoStack, @Nullable ElementState unchangedState) {
     this.undoStack = undoStack;
     this.redoStack = redoStack;
-    this.unchangedState = unchangedState != null ? unchangedState : new byte[0];
+    this.unchangedState = unchangedState;
   }
 
   public static final Creator<UndoRedoStacks> CREATOR = new Creator<UndoRedoStacks>() {
@@ -31,7 +29,7 @@ final class UndoRedoStacks implements Parcelable {
       return new UndoRedoStacks(
       in.readParcelable(ElementStack.class.getClassLoader()),
       in.readParcelable(ElementStack.class.getClassLoader()),
-      in.createByteArray()
+      in.readInt() == 1 ? ElementState.readFromParcel(in, null) : null
       );
     }
 
@@ -45,7 +43,10 @@ final class UndoRedoStacks implements Parcelable {
   public void writeToParcel(Parcel dest, int flags) {
     dest.writeParcelable(undoStack, flags);
     dest.writeParcelable(redoStack, flags);
-    dest.writeByteArray(unchangedState);
+    dest.writeInt(unchangedState != null ? 1 : 0);
+    if (unchangedState != null) {
+      unchangedState.writeToParcel(dest, null);
+    }
   }
 
   @Override
@@ -70,11 +71,11 @@ final class UndoRedoStacks implements Parcelable {
   void clear(@NonNull EditorElement element) {
     undoStack.clear();
     redoStack.clear();
-    unchangedState = ElementStack.getBytes(element);
+    unchangedState = ElementState.capture(element, null);
   }
 
   boolean isChanged(@NonNull EditorElement element) {
-    return !Arrays.equals(ElementStack.getBytes(element), unchangedState);
+    return unchangedState == null || !ElementState.capture(element, unchangedState).isSameAs(unchangedState);
   }
 
   /**
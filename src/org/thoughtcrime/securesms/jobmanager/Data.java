@@ -201,6 +201,58 @@ public class Data {
     return booleanArrays.get(key);
   }
 
+  /*
+   * Whole-map accessors for serializers. Jackson maps these to the same properties as the fields.
+   */
+
+  public @NonNull Map<String, String> getStrings() {
+    return strings;
+  }
+
+  public @NonNull Map<String, String[]> getStringArrays() {
+    return stringArrays;
+  }
+
+  public @NonNull Map<String, Integer> getIntegers() {
+    return integers;
+  }
+
+  public @NonNull Map<String, int[]> getIntegerArrays() {
+    return integerArrays;
+  }
+
+  public @NonNull Map<String, Long> getLongs() {
+    return longs;
+  }
+
+  public @NonNull Map<String, long[]> getLongArrays() {
+    return longArrays;
+  }
+
+  public @NonNull Map<String, Float> getFloats() {
+    return floats;
+  }
+
+  public @NonNull Map<String, float[]> getFloatArrays() {
+    return floatArrays;
+  }
+
+  public @NonNull Map<String, Double> getDoubles() {
+    return doubles;
+  }
+
+  public @NonNull Map<String, double[]> getDoubleArrays() {
+    return doubleArrays;
+  }
+
+  public @NonNull Map<String, Boolean> getBooleans() {
+    return booleans;
+  }
+
+  public @NonNull Map<String, boolean[]> getBooleanArrays() {
+    return booleanArrays;
+  }
+
 
   private void throwIfAbsent(@NonNull Map map, @NonNull String key) {
     if (!map.containsKey(key)) {
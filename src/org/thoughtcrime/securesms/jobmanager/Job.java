@@ -125,6 +125,19 @@ public abstract class Job {
     @NonNull T create(@NonNull Parameters parameters, @NonNull Data data);
   }
 
+  /**
+   * Implemented by jobs that can be folded into a queued instance of themselves, so a burst of
+   * submissions runs once. When one is submitted on its own, it's offered the data of the newest
+   * instance in its queue that hasn't started yet.
+   */
+  public interface Coalescing {
+    /**
+     * @return The data the queued instance should run with instead, or null if this job has to be
+     *         queued separately.
+     */
+    @Nullable Data coalesce(@NonNull Data queued);
+  }
+
   public enum Result {
     SUCCESS, FAILURE, RETRY
   }
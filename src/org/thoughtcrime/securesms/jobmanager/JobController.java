@@ -5,6 +5,7 @@ import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.WorkerThread;
 
+import com.annimon.stream.Collectors;
 import com.annimon.stream.Stream;
 
 import org.thoughtcrime.securesms.jobmanager.persistence.ConstraintSpec;
@@ -14,6 +15,7 @@ import org.thoughtcrime.securesms.jobmanager.persistence.JobSpec;
 import org.thoughtcrime.securesms.jobmanager.persistence.JobStorage;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.util.Debouncer;
+import org.thoughtcrime.securesms.util.Util;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -84,6 +86,10 @@ class JobController {
       return;
     }
 
+    if (coalesceIntoQueuedJob(chain)) {
+      return;
+    }
+
     if (chainExceedsMaximumInstances(chain)) {
       Job solo = chain.get(0).get(0);
       Log.w(TAG, JobLogger.format(solo, "Already at the max instance count of " + solo.getParameters().getMaxInstances() + ". Skipping."));
@@ -217,6 +223,45 @@ class JobController {
     return info.toString();
   }
 
+  /**
+   * Folds a solo {@link Job.Coalescing} job into a queued instance of it that hasn't been attempted
+   * yet and has no dependencies, trying the newest first. Anything that has started already read
+   * the state it syncs, so it can't absorb later changes.
+   */
+  @WorkerThread
+  private boolean coalesceIntoQueuedJob(@NonNull List<List<Job>> chain) {
+    if (chain.size() != 1 || chain.get(0).size() != 1 || !(chain.get(0).get(0) instanceof Job.Coalescing)) {
+      return false;
+    }
+
+    Job           solo      = chain.get(0).get(0);
+    Set<String>   dependent = Stream.of(jobStorage.getAllDependencySpecs()).map(DependencySpec::getJobId).collect(Collectors.toSet());
+    List<JobSpec> queued    = Stream.of(jobStorage.getAllJobSpecs())
+                                    .filter(j -> j.getFactoryKey().equals(solo.getFactoryKey()))
+                                    .filter(j -> Util.equals(j.getQueueKey(), solo.getParameters().getQueue()))
+                                    .filter(j -> !j.isRunning() && j.getRunAttempt() == 0)
+                                    .filterNot(j -> runningJobs.contains(j.getId()) || dependent.contains(j.getId()))
+                                    .sorted((j1, j2) -> Long.compare(j2.getCreateTime(), j1.getCreateTime()))
+                                    .toList();
+
+    for (JobSpec jobSpec : queued) {
+      Data merged = ((Job.Coalescing) solo).coalesce(dataSerializer.deserialize(jobSpec.getSerializedData()));
+
+      if (merged != null) {
+        String serialized = dataSerializer.serialize(merged);
+
+        if (!serialized.equals(jobSpec.getSerializedData())) {
+          jobStorage.updateJobData(jobSpec.getId(), serialized);
+        }
+
+        Log.i(TAG, JobLogger.format(solo, "Coalesced into queued job " + jobSpec.getId() + "."));
+        return true;
+      }
+    }
+
+    return false;
+  }
+
   @WorkerThread
   private boolean chainExceedsMaximumInstances(@NonNull List<List<Job>> chain) {
     if (chain.size() == 1 && chain.get(0).size() == 1) {
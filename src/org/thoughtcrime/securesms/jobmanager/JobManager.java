@@ -5,8 +5,8 @@ import android.content.Intent;
 import android.os.Build;
 import android.support.annotation.NonNull;
 
+import org.thoughtcrime.securesms.jobmanager.impl.BinaryDataSerializer;
 import org.thoughtcrime.securesms.jobmanager.impl.DefaultExecutorFactory;
-import org.thoughtcrime.securesms.jobmanager.impl.JsonDataSerializer;
 import org.thoughtcrime.securesms.jobmanager.migration.WorkManagerMigrator;
 import org.thoughtcrime.securesms.jobmanager.persistence.JobStorage;
 import org.thoughtcrime.securesms.logging.Log;
@@ -269,7 +269,7 @@ public class JobManager implements ConstraintObserver.Notifier {
       private Map<String, Job.Factory>        jobFactories        = new HashMap<>();
       private Map<String, Constraint.Factory> constraintFactories = new HashMap<>();
       private List<ConstraintObserver>        constraintObservers = new ArrayList<>();
-      private Data.Serializer                 dataSerializer      = new JsonDataSerializer();
+      private Data.Serializer                 dataSerializer      = new BinaryDataSerializer();
       private JobStorage                      jobStorage          = null;
       private DependencyInjector              dependencyInjector  = o -> { /*noop*/ };
 
@@ -0,0 +1,383 @@
+package org.thoughtcrime.securesms.jobmanager.impl;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.thoughtcrime.securesms.jobmanager.Data;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.util.Base64;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Serializes {@link Data} to a compact binary form, stored Base64-encoded since job data is kept
+ * as text. The first byte of the binary form is the format version.
+ *
+ * Each non-empty map is written as a type tag, an entry count, and its entries. Integers are
+ * written as zig-zag varints and strings as a length followed by UTF-8 bytes, so there are no
+ * field names or quoting to pay for.
+ *
+ * Data serialized by {@link JsonDataSerializer} is still read, so jobs persisted before the
+ * switch keep working.
+ */
+public class BinaryDataSerializer implements Data.Serializer {
+
+  private static final String TAG = Log.tag(BinaryDataSerializer.class);
+
+  private static final byte VERSION = 1;
+
+  private static final int END            = 0;
+  private static final int STRINGS        = 1;
+  private static final int STRING_ARRAYS  = 2;
+  private static final int INTEGERS       = 3;
+  private static final int INTEGER_ARRAYS = 4;
+  private static final int LONGS          = 5;
+  private static final int LONG_ARRAYS    = 6;
+  private static final int FLOATS         = 7;
+  private static final int FLOAT_ARRAYS   = 8;
+  private static final int DOUBLES        = 9;
+  private static final int DOUBLE_ARRAYS  = 10;
+  private static final int BOOLEANS       = 11;
+  private static final int BOOLEAN_ARRAYS = 12;
+
+  private final JsonDataSerializer legacySerializer = new JsonDataSerializer();
+
+  @Override
+  public @NonNull String serialize(@NonNull Data data) {
+    Writer writer = new Writer();
+
+    writer.writeByte(VERSION);
+
+    if (!data.getStrings().isEmpty()) {
+      writer.writeHeader(STRINGS, data.getStrings().size());
+      for (Map.Entry<String, String> entry : data.getStrings().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeString(entry.getValue());
+      }
+    }
+
+    if (!data.getStringArrays().isEmpty()) {
+      writer.writeHeader(STRING_ARRAYS, data.getStringArrays().size());
+      for (Map.Entry<String, String[]> entry : data.getStringArrays().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeVarint(entry.getValue().length);
+        for (String value : entry.getValue()) writer.writeString(value);
+      }
+    }
+
+    if (!data.getIntegers().isEmpty()) {
+      writer.writeHeader(INTEGERS, data.getIntegers().size());
+      for (Map.Entry<String, Integer> entry : data.getIntegers().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeSignedVarint(entry.getValue());
+      }
+    }
+
+    if (!data.getIntegerArrays().isEmpty()) {
+      writer.writeHeader(INTEGER_ARRAYS, data.getIntegerArrays().size());
+      for (Map.Entry<String, int[]> entry : data.getIntegerArrays().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeVarint(entry.getValue().length);
+        for (int value : entry.getValue()) writer.writeSignedVarint(value);
+      }
+    }
+
+    if (!data.getLongs().isEmpty()) {
+      writer.writeHeader(LONGS, data.getLongs().size());
+      for (Map.Entry<String, Long> entry : data.getLongs().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeSignedVarint(entry.getValue());
+      }
+    }
+
+    if (!data.getLongArrays().isEmpty()) {
+      writer.writeHeader(LONG_ARRAYS, data.getLongArrays().size());
+      for (Map.Entry<String, long[]> entry : data.getLongArrays().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeVarint(entry.getValue().length);
+        for (long value : entry.getValue()) writer.writeSignedVarint(value);
+      }
+    }
+
+    if (!data.getFloats().isEmpty()) {
+      writer.writeHeader(FLOATS, data.getFloats().size());
+      for (Map.Entry<String, Float> entry : data.getFloats().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeFixed32(Float.floatToIntBits(entry.getValue()));
+      }
+    }
+
+    if (!data.getFloatArrays().isEmpty()) {
+      writer.writeHeader(FLOAT_ARRAYS, data.getFloatArrays().size());
+      for (Map.Entry<String, float[]> entry : data.getFloatArrays().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeVarint(entry.getValue().length);
+        for (float value : entry.getValue()) writer.writeFixed32(Float.floatToIntBits(value));
+      }
+    }
+
+    if (!data.getDoubles().isEmpty()) {
+      writer.writeHeader(DOUBLES, data.getDoubles().size());
+      for (Map.Entry<String, Double> entry : data.getDoubles().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeFixed64(Double.doubleToLongBits(entry.getValue()));
+      }
+    }
+
+    if (!data.getDoubleArrays().isEmpty()) {
+      writer.writeHeader(DOUBLE_ARRAYS, data.getDoubleArrays().size());
+      for (Map.Entry<String, double[]> entry : data.getDoubleArrays().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeVarint(entry.getValue().length);
+        for (double value : entry.getValue()) writer.writeFixed64(Double.doubleToLongBits(value));
+      }
+    }
+
+    if (!data.getBooleans().isEmpty()) {
+      writer.writeHeader(BOOLEANS, data.getBooleans().size());
+      for (Map.Entry<String, Boolean> entry : data.getBooleans().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeByte(entry.getValue() ? 1 : 0);
+      }
+    }
+
+    if (!data.getBooleanArrays().isEmpty()) {
+      writer.writeHeader(BOOLEAN_ARRAYS, data.getBooleanArrays().size());
+      for (Map.Entry<String, boolean[]> entry : data.getBooleanArrays().entrySet()) {
+        writer.writeString(entry.getKey());
+        writer.writeVarint(entry.getValue().length);
+        for (boolean value : entry.getValue()) writer.writeByte(value ? 1 : 0);
+      }
+    }
+
+    writer.writeByte(END);
+
+    return Base64.encodeBytes(writer.toByteArray());
+  }
+
+  @Override
+  public @NonNull Data deserialize(@NonNull String serialized) {
+    if (isJson(serialized)) {
+      return legacySerializer.deserialize(serialized);
+    }
+
+    try {
+      return read(new Reader(Base64.decode(serialized)));
+    } catch (IOException | IndexOutOfBoundsException e) {
+      Log.e(TAG, "Failed to deserialize binary data.", e);
+      throw new AssertionError(e);
+    }
+  }
+
+  /**
+   * @return True if the data was written by {@link JsonDataSerializer}. Base64 never contains '{'.
+   */
+  public static boolean isJson(@NonNull String serialized) {
+    return serialized.startsWith("{");
+  }
+
+  private static @NonNull Data read(@NonNull Reader reader) throws IOException {
+    int version = reader.readByte();
+
+    if (version != VERSION) {
+      throw new IOException("Unknown version: " + version);
+    }
+
+    Data.Builder builder = new Data.Builder();
+
+    for (int type = reader.readByte(); type != END; type = reader.readByte()) {
+      int count = reader.readVarint();
+
+      for (int i = 0; i < count; i++) {
+        String key = reader.readString();
+
+        switch (type) {
+          case STRINGS:
+            builder.putString(key, reader.readString());
+            break;
+          case STRING_ARRAYS:
+            String[] strings = new String[reader.readVarint()];
+            for (int j = 0; j < strings.length; j++) strings[j] = reader.readString();
+            builder.putStringArray(key, strings);
+            break;
+          case INTEGERS:
+            builder.putInt(key, (int) reader.readSignedVarint());
+            break;
+          case INTEGER_ARRAYS:
+            int[] ints = new int[reader.readVarint()];
+            for (int j = 0; j < ints.length; j++) ints[j] = (int) reader.readSignedVarint();
+            builder.putIntArray(key, ints);
+            break;
+          case LONGS:
+            builder.putLong(key, reader.readSignedVarint());
+            break;
+          case LONG_ARRAYS:
+            long[] longs = new long[reader.readVarint()];
+            for (int j = 0; j < longs.length; j++) longs[j] = reader.readSignedVarint();
+            builder.putLongArray(key, longs);
+            break;
+          case FLOATS:
+            builder.putFloat(key, Float.intBitsToFloat(reader.readFixed32()));
+            break;
+          case FLOAT_ARRAYS:
+            float[] floats = new float[reader.readVarint()];
+            for (int j = 0; j < floats.length; j++) floats[j] = Float.intBitsToFloat(reader.readFixed32());
+            builder.putFloatArray(key, floats);
+            break;
+          case DOUBLES:
+            builder.putDouble(key, Double.longBitsToDouble(reader.readFixed64()));
+            break;
+          case DOUBLE_ARRAYS:
+            double[] doubles = new double[reader.readVarint()];
+            for (int j = 0; j < doubles.length; j++) doubles[j] = Double.longBitsToDouble(reader.readFixed64());
+            builder.putDoubleArray(key, doubles);
+            break;
+          case BOOLEANS:
+            builder.putBoolean(key, reader.readByte() != 0);
+            break;
+          case BOOLEAN_ARRAYS:
+            boolean[] booleans = new boolean[reader.readVarint()];
+            for (int j = 0; j < booleans.length; j++) booleans[j] = reader.readByte() != 0;
+            builder.putBooleanArray(key, booleans);
+            break;
+          default:
+            throw new IOException("Unknown type: " + type);
+        }
+      }
+    }
+
+    return builder.build();
+  }
+
+  private static class Writer {
+
+    private final ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+
+    void writeByte(int value) {
+      out.write(value);
+    }
+
+    void writeHeader(int type, int count) {
+      writeByte(type);
+      writeVarint(count);
+    }
+
+    void writeVarint(long value) {
+      while ((value & ~0x7FL) != 0) {
+        out.write((int) ((value & 0x7F) | 0x80));
+        value >>>= 7;
+      }
+      out.write((int) value);
+    }
+
+    void writeSignedVarint(long value) {
+      writeVarint((value << 1) ^ (value >> 63));
+    }
+
+    void writeFixed32(int value) {
+      for (int i = 0; i < 4; i++) {
+        out.write(value >>> (i * 8));
+      }
+    }
+
+    void writeFixed64(long value) {
+      for (int i = 0; i < 8; i++) {
+        out.write((int) (value >>> (i * 8)));
+      }
+    }
+
+    /**
+     * Written as the byte length plus one, so that zero can stand for null.
+     */
+    void writeString(@Nullable String value) {
+      if (value == null) {
+        writeVarint(0);
+        return;
+      }
+
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      writeVarint(bytes.length + 1);
+      out.write(bytes, 0, bytes.length);
+    }
+
+    byte[] toByteArray() {
+      return out.toByteArray();
+    }
+  }
+
+  private static class Reader {
+
+    private final byte[] in;
+
+    private int position;
+
+    Reader(@NonNull byte[] in) {
+      this.in = in;
+    }
+
+    int readByte() {
+      return in[position++] & 0xFF;
+    }
+
+    int readVarint() throws IOException {
+      long value = readVarintLong();
+
+      if (value < 0 || value > Integer.MAX_VALUE) {
+        throw new IOException("Length out of range: " + value);
+      }
+
+      return (int) value;
+    }
+
+    long readSignedVarint() throws IOException {
+      long value = readVarintLong();
+      return (value >>> 1) ^ -(value & 1);
+    }
+
+    int readFixed32() {
+      int value = 0;
+      for (int i = 0; i < 4; i++) {
+        value |= readByte() << (i * 8);
+      }
+      return value;
+    }
+
+    long readFixed64() {
+      long value = 0;
+      for (int i = 0; i < 8; i++) {
+        value |= ((long) readByte()) << (i * 8);
+      }
+      return value;
+    }
+
+    @Nullable String readString() throws IOException {
+      int length = readVarint();
+
+      if (length == 0) {
+        return null;
+      }
+
+      String value = new String(in, position, length - 1, StandardCharsets.UTF_8);
+      position += length - 1;
+      return value;
+    }
+
+    private long readVarintLong() throws IOException {
+      long value = 0;
+
+      for (int shift = 0; shift < 64; shift += 7) {
+        int b = readByte();
+        value |= (long) (b & 0x7F) << shift;
+
+        if ((b & 0x80) == 0) {
+          return value;
+        }
+      }
+
+      throw new IOException("Malformed varint.");
+    }
+  }
+}
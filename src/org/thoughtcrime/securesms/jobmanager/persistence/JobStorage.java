@@ -35,6 +35,9 @@ public interface JobStorage {
   @WorkerThread
   void updateAllJobsToBePending();
 
+  @WorkerThread
+  void updateJobData(@NonNull String id, @NonNull String serializedData);
+
   @WorkerThread
   void deleteJob(@NonNull String id);
 
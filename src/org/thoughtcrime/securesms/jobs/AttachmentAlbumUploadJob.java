@@ -0,0 +1,238 @@
+package org.thoughtcrime.securesms.jobs;
+
+import android.support.annotation.NonNull;
+
+import org.greenrobot.eventbus.EventBus;
+import org.thoughtcrime.securesms.attachments.Attachment;
+import org.thoughtcrime.securesms.attachments.AttachmentId;
+import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
+import org.thoughtcrime.securesms.database.Address;
+import org.thoughtcrime.securesms.database.AttachmentDatabase;
+import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.dependencies.InjectableType;
+import org.thoughtcrime.securesms.events.AlbumProgressEvent;
+import org.thoughtcrime.securesms.jobmanager.Data;
+import org.thoughtcrime.securesms.jobmanager.Job;
+import org.thoughtcrime.securesms.jobmanager.impl.NetworkConstraint;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.transport.UndeliverableMessageException;
+import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
+import org.whispersystems.signalservice.api.SignalServiceMessageSender;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+/**
+ * Uploads every attachment of a multi-attachment message as a single job, resizing and uploading
+ * up to {@link #MAX_PARALLEL_UPLOADS} of them at once. The send job for the message is chained
+ * after this one, exactly as it is after a set of {@link AttachmentUploadJob}s.
+ *
+ * Concurrent uploads share a byte budget so that a handful of large videos can't all be resized
+ * and buffered at the same time. Attachments that were already uploaded by a previous attempt are
+ * skipped when the job is retried. If the job is interrupted, or an attachment can't be sent at
+ * all, the uploads still in flight are cancelled.
+ *
+ * Progress of the whole album is posted as an {@link AlbumProgressEvent}.
+ */
+public class AttachmentAlbumUploadJob extends BaseJob implements InjectableType {
+
+  public static final String KEY = "AttachmentAlbumUploadJob";
+
+  private static final String TAG = AttachmentAlbumUploadJob.class.getSimpleName();
+
+  private static final String KEY_ROW_IDS     = "row_ids";
+  private static final String KEY_UNIQUE_IDS  = "unique_ids";
+  private static final String KEY_DESTINATION = "destination";
+
+  static final int MAX_PARALLEL_UPLOADS = 3;
+
+  private static final int KB_BUDGET = 20 * 1024;
+
+  private static final ExecutorService UPLOAD_EXECUTOR = SignalExecutors.newCachedBoundedExecutor("signal-attachment-upload", MAX_PARALLEL_UPLOADS);
+  private static final Semaphore       BYTE_BUDGET     = new Semaphore(KB_BUDGET, true);
+
+  private final List<AttachmentId> attachmentIds;
+  private final Address            destination;
+
+  @Inject SignalServiceMessageSender messageSender;
+
+  public AttachmentAlbumUploadJob(@NonNull List<AttachmentId> attachmentIds, @NonNull Address destination) {
+    this(new Job.Parameters.Builder()
+                           .addConstraint(NetworkConstraint.KEY)
+                           .setLifespan(TimeUnit.DAYS.toMillis(1))
+                           .setMaxAttempts(3)
+                           .build(),
+         attachmentIds, destination);
+  }
+
+  private AttachmentAlbumUploadJob(@NonNull Job.Parameters parameters, @NonNull List<AttachmentId> attachmentIds, @NonNull Address destination) {
+    super(parameters);
+    this.attachmentIds = attachmentIds;
+    this.destination   = destination;
+  }
+
+  @Override
+  public @NonNull Data serialize() {
+    long[] rowIds    = new long[attachmentIds.size()];
+    long[] uniqueIds = new long[attachmentIds.size()];
+
+    for (int i = 0; i < attachmentIds.size(); i++) {
+      rowIds[i]    = attachmentIds.get(i).getRowId();
+      uniqueIds[i] = attachmentIds.get(i).getUniqueId();
+    }
+
+    return new Data.Builder().putLongArray(KEY_ROW_IDS, rowIds)
+                             .putLongArray(KEY_UNIQUE_IDS, uniqueIds)
+                             .putString(KEY_DESTINATION, destination.serialize())
+                             .build();
+  }
+
+  @Override
+  public @NonNull String getFactoryKey() {
+    return KEY;
+  }
+
+  @Override
+  public void onRun() throws Exception {
+    AttachmentDatabase database = DatabaseFactory.getAttachmentDatabase(context);
+    List<Future<Void>> uploads  = new ArrayList<>(attachmentIds.size());
+    AlbumProgress      progress = new AlbumProgress();
+
+    for (AttachmentId attachmentId : attachmentIds) {
+      DatabaseAttachment attachment = database.getAttachment(attachmentId);
+
+      if (attachment == null) {
+        throw new IllegalStateException("Cannot find the specified attachment.");
+      }
+
+      if (isUploaded(attachment)) {
+        Log.i(TAG, "Attachment " + attachmentId + " was already uploaded, skipping.");
+        progress.add(attachment, attachment.getSize(), attachment.getSize());
+        continue;
+      }
+
+      int permits = Util.clamp((int) Math.min(Integer.MAX_VALUE, attachment.getSize() / 1024 + 1), 1, KB_BUDGET);
+
+      progress.add(attachment, attachment.getSize(), 0);
+
+      uploads.add(UPLOAD_EXECUTOR.submit(() -> {
+        BYTE_BUDGET.acquire(permits);
+        try {
+          AttachmentUploadJob.upload(context, messageSender, attachmentId, destination,
+                                     (total, sent) -> progress.update(attachment, total, sent));
+          return null;
+        } finally {
+          BYTE_BUDGET.release(permits);
+        }
+      }));
+    }
+
+    Log.i(TAG, "Uploading " + uploads.size() + " of " + attachmentIds.size() + " attachments.");
+
+    progress.post();
+
+    Exception failure = null;
+
+    try {
+      for (Future<Void> upload : uploads) {
+        try {
+          upload.get();
+        } catch (ExecutionException e) {
+          Throwable cause = e.getCause();
+
+          if (failure == null || cause instanceof UndeliverableMessageException) {
+            failure = cause instanceof Exception ? (Exception) cause : new IOException(cause);
+          }
+
+          if (cause instanceof UndeliverableMessageException) {
+            Log.w(TAG, "Attachment can't be sent, cancelling the remaining uploads.");
+            break;
+          }
+        }
+      }
+    } finally {
+      for (Future<Void> upload : uploads) {
+        upload.cancel(true);
+      }
+    }
+
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  @Override
+  public void onCanceled() { }
+
+  @Override
+  protected boolean onShouldRetry(@NonNull Exception exception) {
+    return exception instanceof IOException;
+  }
+
+  private static boolean isUploaded(@NonNull DatabaseAttachment attachment) {
+    return attachment.getTransferState() == AttachmentDatabase.TRANSFER_PROGRESS_DONE &&
+           attachment.getLocation() != null;
+  }
+
+  /**
+   * Collects the progress of each upload so the album can be reported as a whole.
+   */
+  private static final class AlbumProgress {
+
+    private final Map<Attachment, long[]> parts = new LinkedHashMap<>();
+
+    synchronized void add(@NonNull Attachment attachment, long total, long progress) {
+      parts.put(attachment, new long[] { total, progress });
+    }
+
+    synchronized void update(@NonNull Attachment attachment, long total, long progress) {
+      add(attachment, total, progress);
+      post();
+    }
+
+    synchronized void post() {
+      Map<Attachment, Float> attachmentProgress = new HashMap<>(parts.size());
+      long                   total              = 0;
+      long                   progress           = 0;
+
+      for (Map.Entry<Attachment, long[]> part : parts.entrySet()) {
+        long partTotal    = part.getValue()[0];
+        long partProgress = part.getValue()[1];
+
+        attachmentProgress.put(part.getKey(), partTotal > 0 ? (float) partProgress / partTotal : 0f);
+        total    += partTotal;
+        progress += partProgress;
+      }
+
+      EventBus.getDefault().postSticky(new AlbumProgressEvent(attachmentProgress, total, progress));
+    }
+  }
+
+  public static final class Factory implements Job.Factory<AttachmentAlbumUploadJob> {
+    @Override
+    public @NonNull AttachmentAlbumUploadJob create(@NonNull Parameters parameters, @NonNull Data data) {
+      long[]             rowIds        = data.getLongArray(KEY_ROW_IDS);
+      long[]             uniqueIds     = data.getLongArray(KEY_UNIQUE_IDS);
+      List<AttachmentId> attachmentIds = new LinkedList<>();
+
+      for (int i = 0; i < rowIds.length; i++) {
+        attachmentIds.add(new AttachmentId(rowIds[i], uniqueIds[i]));
+      }
+
+      return new AttachmentAlbumUploadJob(parameters, attachmentIds, Address.fromSerialized(data.getString(KEY_DESTINATION)));
+    }
+  }
+}
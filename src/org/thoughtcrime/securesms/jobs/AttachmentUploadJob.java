@@ -1,6 +1,8 @@
 package org.thoughtcrime.securesms.jobs;
 
+import android.content.Context;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.greenrobot.eventbus.EventBus;
 import org.thoughtcrime.securesms.attachments.Attachment;
@@ -30,6 +32,7 @@ import org.whispersystems.signalservice.api.push.SignalServiceAddress;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -78,6 +81,31 @@ public class AttachmentUploadJob extends BaseJob implements InjectableType {
 
   @Override
   public void onRun() throws Exception {
+    upload(context, messageSender, attachmentId, destination, null);
+  }
+
+  @Override
+  public void onCanceled() { }
+
+  @Override
+  protected boolean onShouldRetry(@NonNull Exception exception) {
+    return exception instanceof IOException;
+  }
+
+  /**
+   * Scales, strips and uploads a single attachment, recording the resulting pointer in the
+   * {@link AttachmentDatabase}. Shared with {@link AttachmentAlbumUploadJob}, which runs several of
+   * these concurrently and interrupts them when it is stopped.
+   *
+   * @param listener Notified of upload progress in addition to the {@link PartProgressEvent}s.
+   */
+  static void upload(@NonNull Context context,
+                     @NonNull SignalServiceMessageSender messageSender,
+                     @NonNull AttachmentId attachmentId,
+                     @NonNull Address destination,
+                     @Nullable SignalServiceAttachment.ProgressListener listener)
+      throws IOException, UndeliverableMessageException
+  {
     AttachmentDatabase database           = DatabaseFactory.getAttachmentDatabase(context);
     DatabaseAttachment databaseAttachment = database.getAttachment(attachmentId);
 
@@ -86,23 +114,20 @@ public class AttachmentUploadJob extends BaseJob implements InjectableType {
     }
 
     MediaConstraints               mediaConstraints = MediaConstraints.getPushMediaConstraints();
-    Attachment                     scaledAttachment = scaleAndStripExif(database, mediaConstraints, databaseAttachment);
-    SignalServiceAttachment        localAttachment  = getAttachmentFor(scaledAttachment);
+    Attachment                     scaledAttachment = scaleAndStripExif(context, database, mediaConstraints, databaseAttachment);
+    SignalServiceAttachment        localAttachment  = getAttachmentFor(context, scaledAttachment, listener);
+
+    if (Thread.currentThread().isInterrupted()) {
+      throw new InterruptedIOException("Upload of " + attachmentId + " was interrupted.");
+    }
+
     SignalServiceAttachmentPointer remoteAttachment = messageSender.uploadAttachment(localAttachment.asStream(), databaseAttachment.isSticker(), new SignalServiceAddress(destination.serialize()));
     Attachment                     attachment       = PointerAttachment.forPointer(Optional.of(remoteAttachment), null, databaseAttachment.getFastPreflightId()).get();
 
     database.updateAttachmentAfterUpload(databaseAttachment.getAttachmentId(), attachment);
   }
 
-  @Override
-  public void onCanceled() { }
-
-  @Override
-  protected boolean onShouldRetry(@NonNull Exception exception) {
-    return exception instanceof IOException;
-  }
-
-  private SignalServiceAttachment getAttachmentFor(Attachment attachment) {
+  private static SignalServiceAttachment getAttachmentFor(@NonNull Context context, Attachment attachment, @Nullable SignalServiceAttachment.ProgressListener listener) {
     try {
       if (attachment.getDataUri() == null || attachment.getSize() == 0) throw new IOException("Assertion failed, outgoing attachment has no data!");
       InputStream is = PartAuthority.getAttachmentStream(context, attachment.getDataUri());
@@ -115,7 +140,10 @@ public class AttachmentUploadJob extends BaseJob implements InjectableType {
                                     .withWidth(attachment.getWidth())
                                     .withHeight(attachment.getHeight())
                                     .withCaption(attachment.getCaption())
-                                    .withListener((total, progress) -> EventBus.getDefault().postSticky(new PartProgressEvent(attachment, total, progress)))
+                                    .withListener((total, progress) -> {
+                                      EventBus.getDefault().postSticky(new PartProgressEvent(attachment, total, progress));
+                                      if (listener != null) listener.onAttachmentProgress(total, progress);
+                                    })
                                     .build();
     } catch (IOException ioe) {
       Log.w(TAG, "Couldn't open attachment", ioe);
@@ -123,14 +151,18 @@ public class AttachmentUploadJob extends BaseJob implements InjectableType {
     return null;
   }
 
-  private Attachment scaleAndStripExif(@NonNull AttachmentDatabase attachmentDatabase,
-                                       @NonNull MediaConstraints constraints,
-                                       @NonNull Attachment attachment)
+  private static Attachment scaleAndStripExif(@NonNull Context context,
+                                              @NonNull AttachmentDatabase attachmentDatabase,
+                                              @NonNull MediaConstraints constraints,
+                                              @NonNull Attachment attachment)
       throws UndeliverableMessageException
   {
     try {
       if (constraints.isSatisfied(context, attachment)) {
-        if (MediaUtil.isJpeg(attachment)) {
+        if (attachmentDatabase.isTranscoded(((DatabaseAttachment) attachment).getAttachmentId())) {
+          Log.i(TAG, "Attachment was already transcoded, sending as-is.");
+          return attachment;
+        } else if (MediaUtil.isJpeg(attachment)) {
           MediaStream stripped = constraints.getResizedMedia(context, attachment);
           return attachmentDatabase.updateAttachmentData(attachment, stripped);
         } else {
@@ -193,6 +193,32 @@ public class FastJobStorage implements JobStorage {
     }
   }
 
+  @Override
+  public synchronized void updateJobData(@NonNull String id, @NonNull String serializedData) {
+    jobDatabase.updateJobData(id, serializedData);
+
+    ListIterator<JobSpec> iter = jobs.listIterator();
+
+    while (iter.hasNext()) {
+      JobSpec existing = iter.next();
+      if (existing.getId().equals(id)) {
+        JobSpec updated = new JobSpec(existing.getId(),
+                                      existing.getFactoryKey(),
+                                      existing.getQueueKey(),
+                                      existing.getCreateTime(),
+                                      existing.getNextRunAttemptTime(),
+                                      existing.getRunAttempt(),
+                                      existing.getMaxAttempts(),
+                                      existing.getMaxBackoff(),
+                                      existing.getLifespan(),
+                                      existing.getMaxInstances(),
+                                      serializedData,
+                                      existing.isRunning());
+        iter.set(updated);
+      }
+    }
+  }
+
   @Override
   public synchronized void deleteJob(@NonNull String jobId) {
     deleteJobs(Collections.singletonList(jobId));
@@ -1,6 +1,7 @@
 package org.thoughtcrime.securesms.jobs;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.thoughtcrime.securesms.crypto.UnidentifiedAccessUtil;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
@@ -27,7 +28,7 @@ import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
-public class MultiDeviceBlockedUpdateJob extends BaseJob implements InjectableType {
+public class MultiDeviceBlockedUpdateJob extends BaseJob implements InjectableType, Job.Coalescing {
 
   public static final String KEY = "MultiDeviceBlockedUpdateJob";
 
@@ -54,6 +55,14 @@ public class MultiDeviceBlockedUpdateJob extends BaseJob implements InjectableTy
     return Data.EMPTY;
   }
 
+  /**
+   * The blocked list is read when the job runs, so one queued update is enough.
+   */
+  @Override
+  public @Nullable Data coalesce(@NonNull Data queued) {
+    return queued;
+  }
+
   @Override
   public @NonNull String getFactoryKey() {
     return KEY;
@@ -2,6 +2,7 @@ package org.thoughtcrime.securesms.jobs;
 
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.thoughtcrime.securesms.crypto.UnidentifiedAccessUtil;
 import org.thoughtcrime.securesms.dependencies.InjectableType;
@@ -21,7 +22,7 @@ import java.io.IOException;
 
 import javax.inject.Inject;
 
-public class MultiDeviceConfigurationUpdateJob extends BaseJob implements InjectableType {
+public class MultiDeviceConfigurationUpdateJob extends BaseJob implements InjectableType, Job.Coalescing {
 
   public static final String KEY = "MultiDeviceConfigurationUpdateJob";
 
@@ -79,6 +80,14 @@ public class MultiDeviceConfigurationUpdateJob extends BaseJob implements Inject
                              .build();
   }
 
+  /**
+   * Only the newest settings need to reach linked devices.
+   */
+  @Override
+  public @Nullable Data coalesce(@NonNull Data queued) {
+    return serialize();
+  }
+
   @Override
   public @NonNull String getFactoryKey() {
     return KEY;
@@ -44,12 +44,21 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
-public class MultiDeviceContactUpdateJob extends BaseJob implements InjectableType {
+/**
+ * Syncs contacts to linked devices, either in full or for a set of addresses. Address updates that
+ * queue up behind each other are merged into one incremental payload, and repeated full syncs
+ * collapse into one, see {@link #coalesce(Data)}.
+ */
+public class MultiDeviceContactUpdateJob extends BaseJob implements InjectableType, Job.Coalescing {
 
   public static final String KEY = "MultiDeviceContactUpdateJob";
 
@@ -58,11 +67,12 @@ public class MultiDeviceContactUpdateJob extends BaseJob implements InjectableTy
   private static final long FULL_SYNC_TIME = TimeUnit.HOURS.toMillis(6);
 
   private static final String KEY_ADDRESS    = "address";
+  private static final String KEY_ADDRESSES  = "addresses";
   private static final String KEY_FORCE_SYNC = "force_sync";
 
   @Inject SignalServiceMessageSender messageSender;
 
-  private @Nullable String address;
+  private final Set<String> addresses;
 
   private boolean forceSync;
 
@@ -85,26 +95,44 @@ public class MultiDeviceContactUpdateJob extends BaseJob implements InjectableTy
                            .setLifespan(TimeUnit.DAYS.toMillis(1))
                            .setMaxAttempts(Parameters.UNLIMITED)
                            .build(),
-         address,
+         address != null ? Collections.singleton(address.serialize()) : Collections.emptySet(),
          forceSync);
   }
 
-  private MultiDeviceContactUpdateJob(@NonNull Job.Parameters parameters, @Nullable Address address, boolean forceSync) {
+  private MultiDeviceContactUpdateJob(@NonNull Job.Parameters parameters, @NonNull Set<String> addresses, boolean forceSync) {
     super(parameters);
 
+    this.addresses = new LinkedHashSet<>(addresses);
     this.forceSync = forceSync;
-
-    if (address != null) this.address = address.serialize();
-    else                 this.address = null;
   }
 
   @Override
   public @NonNull Data serialize() {
-    return new Data.Builder().putString(KEY_ADDRESS, address)
+    return new Data.Builder().putStringArray(KEY_ADDRESSES, addresses.toArray(new String[0]))
                              .putBoolean(KEY_FORCE_SYNC, forceSync)
                              .build();
   }
 
+  /**
+   * A full sync absorbs another full sync, and address updates absorb each other. A full sync only
+   * covers system contacts, so it can't stand in for an address update.
+   */
+  @Override
+  public @Nullable Data coalesce(@NonNull Data queued) {
+    Set<String> queuedAddresses = getAddresses(queued);
+
+    if (queuedAddresses.isEmpty() != addresses.isEmpty()) {
+      return null;
+    }
+
+    Set<String> merged = new LinkedHashSet<>(queuedAddresses);
+    merged.addAll(addresses);
+
+    return new Data.Builder().putStringArray(KEY_ADDRESSES, merged.toArray(new String[0]))
+                             .putBoolean(KEY_FORCE_SYNC, forceSync || queued.getBoolean(KEY_FORCE_SYNC))
+                             .build();
+  }
+
   @Override
   public @NonNull String getFactoryKey() {
     return KEY;
@@ -119,37 +147,44 @@ public class MultiDeviceContactUpdateJob extends BaseJob implements InjectableTy
       return;
     }
 
-    if (address == null) generateFullContactUpdate();
-    else                 generateSingleContactUpdate(Address.fromSerialized(address));
+    if (addresses.isEmpty()) generateFullContactUpdate();
+    else                     generateContactUpdate(addresses);
   }
 
-  private void generateSingleContactUpdate(@NonNull Address address)
+  private void generateContactUpdate(@NonNull Set<String> addresses)
       throws IOException, UntrustedIdentityException, NetworkException
   {
     File contactDataFile = createTempFile("multidevice-contact-update");
 
     try {
-      DeviceContactsOutputStream                out             = new DeviceContactsOutputStream(new FileOutputStream(contactDataFile));
-      Recipient                                 recipient       = Recipient.from(context, address, false);
-      Optional<IdentityDatabase.IdentityRecord> identityRecord  = DatabaseFactory.getIdentityDatabase(context).getIdentity(address);
-      Optional<VerifiedMessage>                 verifiedMessage = getVerifiedMessage(recipient, identityRecord);
-
-      out.write(new DeviceContact(address.toPhoneString(),
-                                  Optional.fromNullable(recipient.getName()),
-                                  getAvatar(recipient.getContactUri()),
-                                  Optional.fromNullable(recipient.getColor().serialize()),
-                                  verifiedMessage,
-                                  Optional.fromNullable(recipient.getProfileKey()),
-                                  recipient.isBlocked(),
-                                  recipient.getExpireMessages() > 0 ?
-                                      Optional.of(recipient.getExpireMessages()) :
-                                      Optional.absent()));
+      DeviceContactsOutputStream out = new DeviceContactsOutputStream(new FileOutputStream(contactDataFile));
+
+      for (String serialized : addresses) {
+        try {
+          Address                                   address         = Address.fromSerialized(serialized);
+          Recipient                                 recipient       = Recipient.from(context, address, false);
+          Optional<IdentityDatabase.IdentityRecord> identityRecord  = DatabaseFactory.getIdentityDatabase(context).getIdentity(address);
+          Optional<VerifiedMessage>                 verifiedMessage = getVerifiedMessage(recipient, identityRecord);
+
+          out.write(new DeviceContact(address.toPhoneString(),
+                                      Optional.fromNullable(recipient.getName()),
+                                      getAvatar(recipient.getContactUri()),
+                                      Optional.fromNullable(recipient.getColor().serialize()),
+                                      verifiedMessage,
+                                      Optional.fromNullable(recipient.getProfileKey()),
+                                      recipient.isBlocked(),
+                                      recipient.getExpireMessages() > 0 ?
+                                          Optional.of(recipient.getExpireMessages()) :
+                                          Optional.absent()));
+        } catch (InvalidNumberException e) {
+          Log.w(TAG, e);
+        }
+      }
 
       out.close();
-      sendUpdate(messageSender, contactDataFile, false);
 
-    } catch(InvalidNumberException e) {
-      Log.w(TAG, e);
+      Log.i(TAG, "Sending an update for " + addresses.size() + " contacts.");
+      sendUpdate(messageSender, contactDataFile, false);
     } finally {
       if (contactDataFile != null) contactDataFile.delete();
     }
@@ -339,10 +374,20 @@ public class MultiDeviceContactUpdateJob extends BaseJob implements InjectableTy
   public static final class Factory implements Job.Factory<MultiDeviceContactUpdateJob> {
     @Override
     public @NonNull MultiDeviceContactUpdateJob create(@NonNull Parameters parameters, @NonNull Data data) {
-      String  serialized = data.getString(KEY_ADDRESS);
-      Address address    = serialized != null ? Address.fromSerialized(serialized) : null;
+      return new MultiDeviceContactUpdateJob(parameters, getAddresses(data), data.getBoolean(KEY_FORCE_SYNC));
+    }
+  }
 
-      return new MultiDeviceContactUpdateJob(parameters, address, data.getBoolean(KEY_FORCE_SYNC));
+  /**
+   * Jobs queued before updates were merged hold a single, possibly null, address instead.
+   */
+  private static @NonNull Set<String> getAddresses(@NonNull Data data) {
+    if (data.hasStringArray(KEY_ADDRESSES)) {
+      return new LinkedHashSet<>(Arrays.asList(data.getStringArray(KEY_ADDRESSES)));
     }
+
+    String address = data.getStringOrDefault(KEY_ADDRESS, null);
+
+    return address != null ? Collections.singleton(address) : Collections.emptySet();
   }
 }
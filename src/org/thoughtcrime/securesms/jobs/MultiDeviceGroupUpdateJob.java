@@ -36,7 +36,7 @@ import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
-public class MultiDeviceGroupUpdateJob extends BaseJob implements InjectableType {
+public class MultiDeviceGroupUpdateJob extends BaseJob implements InjectableType, Job.Coalescing {
 
   public static final String KEY = "MultiDeviceGroupUpdateJob";
 
@@ -57,6 +57,14 @@ public class MultiDeviceGroupUpdateJob extends BaseJob implements InjectableType
     super(parameters);
   }
 
+  /**
+   * Groups are read when the job runs, so a queued update already covers this one.
+   */
+  @Override
+  public @Nullable Data coalesce(@NonNull Data queued) {
+    return queued;
+  }
+
   @Override
   public @NonNull String getFactoryKey() {
     return KEY;
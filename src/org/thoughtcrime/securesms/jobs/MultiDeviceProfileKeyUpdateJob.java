@@ -2,6 +2,7 @@ package org.thoughtcrime.securesms.jobs;
 
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.thoughtcrime.securesms.jobmanager.Data;
 import org.thoughtcrime.securesms.jobmanager.Job;
@@ -30,7 +31,7 @@ import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
-public class MultiDeviceProfileKeyUpdateJob extends BaseJob implements InjectableType {
+public class MultiDeviceProfileKeyUpdateJob extends BaseJob implements InjectableType, Job.Coalescing {
 
   public static String KEY = "MultiDeviceProfileKeyUpdateJob";
 
@@ -56,6 +57,14 @@ public class MultiDeviceProfileKeyUpdateJob extends BaseJob implements Injectabl
     return Data.EMPTY;
   }
 
+  /**
+   * The profile key is read when the job runs, so a queued update will send the latest one.
+   */
+  @Override
+  public @Nullable Data coalesce(@NonNull Data queued) {
+    return queued;
+  }
+
   @Override
   public @NonNull String getFactoryKey() {
     return KEY;
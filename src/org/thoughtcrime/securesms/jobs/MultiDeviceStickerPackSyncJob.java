@@ -1,6 +1,7 @@
 package org.thoughtcrime.securesms.jobs;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.thoughtcrime.securesms.crypto.UnidentifiedAccessUtil;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
@@ -27,7 +28,7 @@ import javax.inject.Inject;
 /**
  * Tells a linked desktop about all installed sticker packs.
  */
-public class MultiDeviceStickerPackSyncJob extends BaseJob implements InjectableType {
+public class MultiDeviceStickerPackSyncJob extends BaseJob implements InjectableType, Job.Coalescing {
 
   private static final String TAG = Log.tag(MultiDeviceStickerPackSyncJob.class);
 
@@ -52,6 +53,14 @@ public class MultiDeviceStickerPackSyncJob extends BaseJob implements Injectable
     return Data.EMPTY;
   }
 
+  /**
+   * Installed packs are read when the job runs, so one queued sync is enough.
+   */
+  @Override
+  public @Nullable Data coalesce(@NonNull Data queued) {
+    return queued;
+  }
+
   @Override
   public @NonNull String getFactoryKey() {
     return KEY;
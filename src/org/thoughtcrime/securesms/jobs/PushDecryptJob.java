@@ -862,9 +862,10 @@ public class PushDecryptJob extends BaseJob implements InjectableType {
         GroupReceiptDatabase receiptDatabase = DatabaseFactory.getGroupReceiptDatabase(context);
         List<Recipient>      members         = DatabaseFactory.getGroupDatabase(context).getGroupMembers(recipients.getAddress().toGroupString(), false);
 
-        for (Recipient member : members) {
-          receiptDatabase.setUnidentified(member.getAddress(), messageId, message.isUnidentified(member.getAddress().serialize()));
-        }
+        receiptDatabase.setUnidentified(Stream.of(members)
+                                              .map(member -> new org.whispersystems.libsignal.util.Pair<>(member.getAddress(), message.isUnidentified(member.getAddress().serialize())))
+                                              .toList(),
+                                        messageId);
       }
 
       database.markAsSent(messageId, true);
@@ -1169,9 +1170,10 @@ public class PushDecryptJob extends BaseJob implements InjectableType {
       GroupReceiptDatabase receiptDatabase = DatabaseFactory.getGroupReceiptDatabase(context);
       List<Recipient>      members         = DatabaseFactory.getGroupDatabase(context).getGroupMembers(recipient.getAddress().toGroupString(), false);
 
-      for (Recipient member : members) {
-        receiptDatabase.setUnidentified(member.getAddress(), messageId, message.isUnidentified(member.getAddress().serialize()));
-      }
+      receiptDatabase.setUnidentified(Stream.of(members)
+                                            .map(member -> new org.whispersystems.libsignal.util.Pair<>(member.getAddress(), message.isUnidentified(member.getAddress().serialize())))
+                                            .toList(),
+                                      messageId);
     } else {
       OutgoingTextMessage outgoingTextMessage = new OutgoingEncryptedMessage(recipient, body, expiresInMillis);
 
@@ -1308,11 +1310,14 @@ public class PushDecryptJob extends BaseJob implements InjectableType {
   private void handleDeliveryReceipt(@NonNull SignalServiceContent content,
                                      @NonNull SignalServiceReceiptMessage message)
   {
+    List<SyncMessageId> messageIds = new ArrayList<>(message.getTimestamps().size());
+
     for (long timestamp : message.getTimestamps()) {
       Log.i(TAG, String.format("Received encrypted delivery receipt: (XXXXX, %d)", timestamp));
-      DatabaseFactory.getMmsSmsDatabase(context)
-                     .incrementDeliveryReceiptCount(new SyncMessageId(Address.fromSerialized(content.getSender()), timestamp), System.currentTimeMillis());
+      messageIds.add(new SyncMessageId(Address.fromSerialized(content.getSender()), timestamp));
     }
+
+    DatabaseFactory.getMmsSmsDatabase(context).incrementDeliveryReceiptCounts(messageIds, System.currentTimeMillis());
   }
 
   @SuppressLint("DefaultLocale")
@@ -1320,12 +1325,14 @@ public class PushDecryptJob extends BaseJob implements InjectableType {
                                  @NonNull SignalServiceReceiptMessage message)
   {
     if (TextSecurePreferences.isReadReceiptsEnabled(context)) {
+      List<SyncMessageId> messageIds = new ArrayList<>(message.getTimestamps().size());
+
       for (long timestamp : message.getTimestamps()) {
         Log.i(TAG, String.format("Received encrypted read receipt: (XXXXX, %d)", timestamp));
-
-        DatabaseFactory.getMmsSmsDatabase(context)
-                       .incrementReadReceiptCount(new SyncMessageId(Address.fromSerialized(content.getSender()), timestamp), content.getTimestamp());
+        messageIds.add(new SyncMessageId(Address.fromSerialized(content.getSender()), timestamp));
       }
+
+      DatabaseFactory.getMmsSmsDatabase(context).incrementReadReceiptCounts(messageIds, content.getTimestamp());
     }
   }
 
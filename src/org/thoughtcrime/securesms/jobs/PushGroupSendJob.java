@@ -10,7 +10,6 @@ import com.annimon.stream.Stream;
 
 import org.thoughtcrime.securesms.ApplicationContext;
 import org.thoughtcrime.securesms.attachments.Attachment;
-import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.crypto.UnidentifiedAccessUtil;
 import org.thoughtcrime.securesms.database.Address;
 import org.thoughtcrime.securesms.database.DatabaseFactory;
@@ -32,6 +31,7 @@ import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.transport.RetryLaterException;
 import org.thoughtcrime.securesms.transport.UndeliverableMessageException;
 import org.thoughtcrime.securesms.util.GroupUtil;
+import org.whispersystems.libsignal.util.Pair;
 import org.whispersystems.libsignal.util.guava.Optional;
 import org.whispersystems.signalservice.api.SignalServiceMessageSender;
 import org.whispersystems.signalservice.api.crypto.UnidentifiedAccessPair;
@@ -100,7 +100,7 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
       attachments.addAll(Stream.of(message.getLinkPreviews()).filter(p -> p.getThumbnail().isPresent()).map(p -> p.getThumbnail().get()).toList());
       attachments.addAll(Stream.of(message.getSharedContacts()).filter(c -> c.getAvatar() != null).map(c -> c.getAvatar().getAttachment()).withoutNulls().toList());
 
-      List<AttachmentUploadJob> attachmentJobs = Stream.of(attachments).map(a -> new AttachmentUploadJob(((DatabaseAttachment) a).getAttachmentId(), destination)).toList();
+      List<Job> attachmentJobs = createAttachmentUploadJobs(attachments, destination);
 
       if (attachmentJobs.isEmpty()) {
         jobManager.add(new PushGroupSendJob(messageId, destination, filterAddress));
@@ -183,11 +183,11 @@ public class PushGroupSendJob extends PushSendJob implements InjectableType {
         database.addMismatchedIdentity(messageId, mismatch.getAddress(), mismatch.getIdentityKey());
       }
 
-      for (SendMessageResult success : successes) {
-        DatabaseFactory.getGroupReceiptDatabase(context).setUnidentified(Address.fromSerialized(success.getAddress().getNumber()),
-                                                                         messageId,
-                                                                         success.getSuccess().isUnidentified());
-      }
+      DatabaseFactory.getGroupReceiptDatabase(context).setUnidentified(Stream.of(successes)
+                                                                             .map(result -> new Pair<>(Address.fromSerialized(result.getAddress().getNumber()),
+                                                                                                       result.getSuccess().isUnidentified()))
+                                                                             .toList(),
+                                                                       messageId);
 
       if (existingNetworkFailures.isEmpty() && networkFailures.isEmpty() && identityMismatches.isEmpty() && existingIdentityMismatches.isEmpty()) {
         database.markAsSent(messageId, true);
@@ -14,6 +14,8 @@ import org.signal.libsignal.metadata.certificate.SenderCertificate;
 import org.thoughtcrime.securesms.ApplicationContext;
 import org.thoughtcrime.securesms.TextSecureExpiredException;
 import org.thoughtcrime.securesms.attachments.Attachment;
+import org.thoughtcrime.securesms.attachments.AttachmentId;
+import org.thoughtcrime.securesms.attachments.DatabaseAttachment;
 import org.thoughtcrime.securesms.contactshare.Contact;
 import org.thoughtcrime.securesms.contactshare.ContactModelMapper;
 import org.thoughtcrime.securesms.crypto.ProfileKeyUtil;
@@ -72,6 +74,23 @@ public abstract class PushSendJob extends SendJob {
                          .build();
   }
 
+  /**
+   * Builds the upload jobs that a media send depends on. A message with more than one attachment
+   * gets a single {@link AttachmentAlbumUploadJob} that uploads them concurrently, otherwise a plain
+   * {@link AttachmentUploadJob} is used.
+   */
+  protected static @NonNull List<Job> createAttachmentUploadJobs(@NonNull List<Attachment> attachments, @NonNull Address destination) {
+    List<AttachmentId> attachmentIds = Stream.of(attachments).map(a -> ((DatabaseAttachment) a).getAttachmentId()).toList();
+
+    if (attachmentIds.isEmpty()) {
+      return Collections.emptyList();
+    } else if (attachmentIds.size() == 1) {
+      return Collections.singletonList(new AttachmentUploadJob(attachmentIds.get(0), destination));
+    } else {
+      return Collections.singletonList(new AttachmentAlbumUploadJob(attachmentIds, destination));
+    }
+  }
+
   @Override
   protected final void onSend() throws Exception {
     if (TextSecurePreferences.getSignedPreKeyFailureCount(context) > 5) {
@@ -16,6 +16,8 @@ import org.thoughtcrime.securesms.ApplicationContext;
 import org.thoughtcrime.securesms.attachments.Attachment;
 import org.thoughtcrime.securesms.attachments.UriAttachment;
 import org.thoughtcrime.securesms.database.AttachmentDatabase;
+import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.database.LinkPreviewDatabase.CachedLinkPreview;
 import org.thoughtcrime.securesms.dependencies.InjectableType;
 import org.thoughtcrime.securesms.giph.model.ChunkedImageUrl;
 import org.thoughtcrime.securesms.logging.Log;
@@ -40,8 +42,13 @@ import org.whispersystems.signalservice.api.messages.SignalServiceStickerManifes
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -59,6 +66,12 @@ public class LinkPreviewRepository implements InjectableType {
 
   private static final CacheControl NO_CACHE = new CacheControl.Builder().noCache().build();
 
+  private static final long PREVIEW_TTL   = TimeUnit.DAYS.toMillis(1);
+  private static final long NEGATIVE_TTL  = TimeUnit.HOURS.toMillis(1);
+  private static final long TRANSIENT_TTL = TimeUnit.MINUTES.toMillis(5);
+
+  private static final Map<String, InFlightRequest> IN_FLIGHT = new HashMap<>();
+
   private final OkHttpClient client;
 
   @Inject SignalServiceMessageReceiver messageReceiver;
@@ -74,44 +87,155 @@ public class LinkPreviewRepository implements InjectableType {
   }
 
   public RequestController getLinkPreview(@NonNull Context context, @NonNull String url, @NonNull Callback<Optional<LinkPreview>> callback) {
-    CompositeRequestController compositeController = new CompositeRequestController();
-
     if (!LinkPreviewUtil.isWhitelistedLinkUrl(url)) {
       Log.w(TAG, "Tried to get a link preview for a non-whitelisted domain.");
       callback.onComplete(Optional.absent());
-      return compositeController;
+      return new CompositeRequestController();
     }
 
-    RequestController metadataController;
-
     if (StickerUrl.isValidShareLink(url)) {
-      metadataController = fetchStickerPackLinkPreview(context, url, callback);
-    } else {
-      metadataController = fetchMetadata(url, metadata -> {
-        if (metadata.isEmpty()) {
-          callback.onComplete(Optional.absent());
-          return;
-        }
+      return fetchStickerPackLinkPreview(context, url, callback);
+    }
 
-        if (!metadata.getImageUrl().isPresent()) {
-          callback.onComplete(Optional.of(new LinkPreview(url, metadata.getTitle().get(), Optional.absent())));
-          return;
-        }
+    String          cacheKey = LinkPreviewUtil.normalizeUrl(url);
+    PendingRequest  pending  = new PendingRequest(url, callback);
+    InFlightRequest request;
+    boolean         isNew    = false;
+
+    synchronized (IN_FLIGHT) {
+      request = IN_FLIGHT.get(cacheKey);
+
+      if (request == null) {
+        request = new InFlightRequest();
+        isNew   = true;
+        IN_FLIGHT.put(cacheKey, request);
+      }
+
+      request.pending.add(pending);
+    }
+
+    if (isNew) {
+      InFlightRequest newRequest = request;
+      SignalExecutors.BOUNDED.execute(() -> loadLinkPreview(context, cacheKey, url, newRequest));
+    }
+
+    InFlightRequest joinedRequest = request;
+    return () -> cancel(cacheKey, joinedRequest, pending);
+  }
 
-        RequestController imageController = fetchThumbnail(context, metadata.getImageUrl().get(), attachment -> {
-          if (!metadata.getTitle().isPresent() && !attachment.isPresent()) {
-            callback.onComplete(Optional.absent());
-          } else {
-            callback.onComplete(Optional.of(new LinkPreview(url, metadata.getTitle().or(""), attachment)));
-          }
-        });
+  private void loadLinkPreview(@NonNull Context context, @NonNull String cacheKey, @NonNull String url, @NonNull InFlightRequest request) {
+    CachedLinkPreview cached = DatabaseFactory.getLinkPreviewDatabase(context).get(cacheKey);
 
-        compositeController.addController(imageController);
+    if (cached != null) {
+      Log.i(TAG, "Using cached link preview.");
+      complete(cacheKey, request, cached);
+      return;
+    }
+
+    RequestController metadataController = fetchMetadata(url, metadata -> {
+      if (metadata.isFailed()) {
+        cacheAndComplete(context, cacheKey, request, CachedLinkPreview.absent(), TRANSIENT_TTL);
+        return;
+      }
+
+      if (metadata.isEmpty()) {
+        cacheAndComplete(context, cacheKey, request, CachedLinkPreview.absent(), NEGATIVE_TTL);
+        return;
+      }
+
+      if (!metadata.getImageUrl().isPresent()) {
+        cacheAndComplete(context, cacheKey, request, new CachedLinkPreview(metadata.getTitle().get(), null, null, 0, 0), PREVIEW_TTL);
+        return;
+      }
+
+      RequestController imageController = fetchThumbnail(context, metadata.getImageUrl().get(), thumbnail -> {
+        if (!metadata.getTitle().isPresent() && !thumbnail.isPresent()) {
+          cacheAndComplete(context, cacheKey, request, CachedLinkPreview.absent(), TRANSIENT_TTL);
+        } else if (!thumbnail.isPresent()) {
+          cacheAndComplete(context, cacheKey, request, new CachedLinkPreview(metadata.getTitle().get(), null, null, 0, 0), TRANSIENT_TTL);
+        } else {
+          CachedLinkPreview preview = new CachedLinkPreview(metadata.getTitle().orNull(),
+                                                            thumbnail.get().data,
+                                                            MediaUtil.IMAGE_JPEG,
+                                                            thumbnail.get().width,
+                                                            thumbnail.get().height);
+          cacheAndComplete(context, cacheKey, request, preview, PREVIEW_TTL);
+        }
       });
+
+      request.controller.addController(imageController);
+    });
+
+    request.controller.addController(metadataController);
+  }
+
+  private void cacheAndComplete(@NonNull Context context, @NonNull String cacheKey, @NonNull InFlightRequest request, @NonNull CachedLinkPreview preview, long ttl) {
+    if (request.controller.isCanceled()) {
+      return;
+    }
+
+    DatabaseFactory.getLinkPreviewDatabase(context).insert(cacheKey, preview, ttl);
+    complete(cacheKey, request, preview);
+  }
+
+  private void complete(@NonNull String cacheKey, @NonNull InFlightRequest request, @NonNull CachedLinkPreview preview) {
+    List<PendingRequest> pending;
+
+    synchronized (IN_FLIGHT) {
+      if (IN_FLIGHT.get(cacheKey) == request) {
+        IN_FLIGHT.remove(cacheKey);
+      }
+
+      pending = new ArrayList<>(request.pending);
+      request.pending.clear();
     }
 
-    compositeController.addController(metadataController);
-    return compositeController;
+    for (PendingRequest caller : pending) {
+      caller.callback.onComplete(toLinkPreview(caller.url, preview));
+    }
+  }
+
+  private void cancel(@NonNull String cacheKey, @NonNull InFlightRequest request, @NonNull PendingRequest pending) {
+    synchronized (IN_FLIGHT) {
+      if (!request.pending.remove(pending) || !request.pending.isEmpty()) {
+        return;
+      }
+
+      if (IN_FLIGHT.get(cacheKey) == request) {
+        IN_FLIGHT.remove(cacheKey);
+      }
+    }
+
+    request.controller.cancel();
+  }
+
+  private static @NonNull Optional<LinkPreview> toLinkPreview(@NonNull String url, @NonNull CachedLinkPreview preview) {
+    if (preview.isAbsent()) {
+      return Optional.absent();
+    }
+
+    Optional<Attachment> thumbnail = Optional.absent();
+
+    if (preview.getThumbnail() != null && preview.getThumbnailContentType() != null) {
+      byte[] bytes = preview.getThumbnail();
+      Uri    uri   = BlobProvider.getInstance().forData(bytes).createForSingleSessionInMemory();
+
+      thumbnail = Optional.of(new UriAttachment(uri,
+                                                uri,
+                                                preview.getThumbnailContentType(),
+                                                AttachmentDatabase.TRANSFER_PROGRESS_STARTED,
+                                                bytes.length,
+                                                preview.getThumbnailWidth(),
+                                                preview.getThumbnailHeight(),
+                                                null,
+                                                null,
+                                                false,
+                                                false,
+                                                null,
+                                                null));
+    }
+
+    return Optional.of(new LinkPreview(url, preview.getTitle() != null ? preview.getTitle() : "", thumbnail));
   }
 
   private @NonNull RequestController fetchMetadata(@NonNull String url, Callback<Metadata> callback) {
@@ -121,14 +245,14 @@ public class LinkPreviewRepository implements InjectableType {
       @Override
       public void onFailure(@NonNull Call call, @NonNull IOException e) {
         Log.w(TAG, "Request failed.", e);
-        callback.onComplete(Metadata.empty());
+        callback.onComplete(Metadata.failed());
       }
 
       @Override
       public void onResponse(@NonNull Call call, @NonNull Response response) throws IOException {
         if (!response.isSuccessful()) {
           Log.w(TAG, "Non-successful response. Code: " + response.code());
-          callback.onComplete(Metadata.empty());
+          callback.onComplete(isTransientFailure(response.code()) ? Metadata.failed() : Metadata.empty());
           return;
         } else if (response.body() == null) {
           Log.w(TAG, "No response body.");
@@ -152,6 +276,14 @@ public class LinkPreviewRepository implements InjectableType {
     return new CallRequestController(call);
   }
 
+  /**
+   * Server errors, timeouts and rate limiting may well succeed on a retry, unlike other client
+   * errors such as a 404.
+   */
+  private static boolean isTransientFailure(int code) {
+    return code >= 500 || code == 408 || code == 429;
+  }
+
   public @NonNull RequestController fetchGIF(@NonNull Context context, @NonNull String url, @NonNull Callback<Optional<Attachment>> callback) {
     FutureTarget<GifDrawable> future = GlideApp.with(context).asGif().load(new ChunkedImageUrl(url)).skipMemoryCache(true).diskCacheStrategy(DiskCacheStrategy.NONE)
       .centerInside().submit(1024, 1024);
@@ -174,7 +306,7 @@ public class LinkPreviewRepository implements InjectableType {
     return () -> future.cancel(true);
   }
 
-  private @NonNull RequestController fetchThumbnail(@NonNull Context context, @NonNull String imageUrl, @NonNull Callback<Optional<Attachment>> callback) {
+  private @NonNull RequestController fetchThumbnail(@NonNull Context context, @NonNull String imageUrl, @NonNull Callback<Optional<Thumbnail>> callback) {
     FutureTarget<Bitmap> bitmapFuture = GlideApp.with(context).asBitmap()
                                                               .load(new ChunkedImageUrl(imageUrl))
                                                               .skipMemoryCache(true)
@@ -191,23 +323,7 @@ public class LinkPreviewRepository implements InjectableType {
 
         bitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
 
-        byte[]               bytes     = baos.toByteArray();
-        Uri                  uri       = BlobProvider.getInstance().forData(bytes).createForSingleSessionInMemory();
-        Optional<Attachment> thumbnail = Optional.of(new UriAttachment(uri,
-                                                                       uri,
-                                                                       MediaUtil.IMAGE_JPEG,
-                                                                       AttachmentDatabase.TRANSFER_PROGRESS_STARTED,
-                                                                       bytes.length,
-                                                                       bitmap.getWidth(),
-                                                                       bitmap.getHeight(),
-                                                                       null,
-                                                                       null,
-                                                                       false,
-                                                                       false,
-                                                                       null,
-                                                                       null));
-
-        callback.onComplete(thumbnail);
+        callback.onComplete(Optional.of(new Thumbnail(baos.toByteArray(), bitmap.getWidth(), bitmap.getHeight())));
       } catch (CancellationException | ExecutionException | InterruptedException e) {
         controller.cancel();
         callback.onComplete(Optional.absent());
@@ -291,19 +407,62 @@ public class LinkPreviewRepository implements InjectableType {
     return () -> Log.i(TAG, "Cancelled sticker pack link preview fetch -- no effect.");
   }
 
+  private static class InFlightRequest {
+    private final List<PendingRequest>       pending    = new ArrayList<>();
+    private final CompositeRequestController controller = new CompositeRequestController();
+  }
+
+  private static class PendingRequest {
+    private final String                          url;
+    private final Callback<Optional<LinkPreview>> callback;
+
+    PendingRequest(@NonNull String url, @NonNull Callback<Optional<LinkPreview>> callback) {
+      this.url      = url;
+      this.callback = callback;
+    }
+  }
+
+  private static class Thumbnail {
+    private final byte[] data;
+    private final int    width;
+    private final int    height;
+
+    Thumbnail(@NonNull byte[] data, int width, int height) {
+      this.data   = data;
+      this.width  = width;
+      this.height = height;
+    }
+  }
+
   private static class Metadata {
     private final Optional<String> title;
     private final Optional<String> imageUrl;
+    private final boolean          failed;
 
     Metadata(Optional<String> title, Optional<String> imageUrl) {
+      this(title, imageUrl, false);
+    }
+
+    private Metadata(Optional<String> title, Optional<String> imageUrl, boolean failed) {
       this.title    = title;
       this.imageUrl = imageUrl;
+      this.failed   = failed;
     }
 
+    /**
+     * The page was fetched but has nothing to preview.
+     */
     static Metadata empty() {
       return new Metadata(Optional.absent(), Optional.absent());
     }
 
+    /**
+     * The page couldn't be fetched this time, so trying again later may still give a preview.
+     */
+    static Metadata failed() {
+      return new Metadata(Optional.absent(), Optional.absent(), true);
+    }
+
     Optional<String> getTitle() {
       return title;
     }
@@ -315,6 +474,10 @@ public class LinkPreviewRepository implements InjectableType {
     boolean isEmpty() {
       return !title.isPresent() && !imageUrl.isPresent();
     }
+
+    boolean isFailed() {
+      return failed;
+    }
   }
 
   public interface Callback<T> {
@@ -71,6 +71,20 @@ public final class LinkPreviewUtil {
            isLegalUrl(mediaUrl);
   }
 
+  /**
+   * @return The URL in a canonical form suitable for use as a cache key. The scheme and host are
+   *         lower-cased and the fragment, which never reaches the server, is dropped.
+   */
+  public static @NonNull String normalizeUrl(@NonNull String linkUrl) {
+    HttpUrl url = HttpUrl.parse(linkUrl);
+
+    if (url == null) {
+      return linkUrl;
+    }
+
+    return url.newBuilder().fragment(null).build().toString();
+  }
+
   public static boolean isLegalUrl(@NonNull String url) {
     Matcher matcher = DOMAIN_PATTERN.matcher(url);
 
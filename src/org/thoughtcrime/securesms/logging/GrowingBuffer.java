@@ -10,4 +10,8 @@ public class GrowingBuffer {
     }
     return buffer;
   }
+
+  public int capacity() {
+    return buffer != null ? buffer.length : 0;
+  }
 }
@@ -1,23 +1,25 @@
 package org.thoughtcrime.securesms.logging;
 
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.thoughtcrime.securesms.util.Conversions;
 import org.thoughtcrime.securesms.util.Util;
 
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
+import java.io.Closeable;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PushbackInputStream;
 import java.io.RandomAccessFile;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.Arrays;
 
 import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
@@ -81,7 +83,25 @@ class LogFile {
     }
   }
 
-  static class Reader {
+  /**
+   * A source of decrypted entries, one at a time.
+   */
+  interface EntryReader extends Closeable {
+    /**
+     * @return The next entry, or null once there are no more.
+     */
+    @Nullable String readEntry() throws IOException;
+
+    /**
+     * @return The bytes this reader holds on to between entries.
+     */
+    int getRetainedSize();
+  }
+
+  /**
+   * Reads a file's entries from oldest to newest.
+   */
+  static class Reader implements EntryReader {
 
     private final byte[]        ivBuffer         = new byte[16];
     private final byte[]        intBuffer        = new byte[4];
@@ -93,47 +113,129 @@ class LogFile {
 
     Reader(@NonNull byte[] secret, @NonNull File file) throws IOException {
       this.secret      = secret;
-      this.inputStream = new BufferedInputStream(new FileInputStream(file));
+      this.cipher      = newCipher();
+      this.inputStream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+    }
 
+    @Override
+    public @Nullable String readEntry() throws IOException {
       try {
-        this.cipher = Cipher.getInstance("AES/CBC/PKCS5Padding");
-      } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
-        throw new AssertionError(e);
+        Util.readFully(inputStream, ivBuffer);
+        Util.readFully(inputStream, intBuffer);
+
+        int    length     = Conversions.byteArrayToInt(intBuffer);
+        byte[] ciphertext = ciphertextBuffer.get(length);
+
+        Util.readFully(inputStream, ciphertext, length);
+
+        return decrypt(cipher, secret, ivBuffer, ciphertext, length);
+      } catch (EOFException e) {
+        return null;
       }
     }
 
-    String readAll() throws IOException {
-      StringBuilder builder = new StringBuilder();
+    @Override
+    public int getRetainedSize() {
+      return ivBuffer.length + intBuffer.length + ciphertextBuffer.capacity() + BUFFER_SIZE;
+    }
 
-      String entry;
-      while ((entry = readEntry()) != null) {
-        builder.append(entry).append('\n');
-      }
+    @Override
+    public void close() {
+      Util.close(inputStream);
+    }
+  }
+
+  /**
+   * Reads a file's entries from newest to oldest. Entry offsets are found by walking the length
+   * headers, so only entries that are actually read get decrypted.
+   */
+  static class ReverseReader implements EntryReader {
+
+    private final byte[]        ivBuffer         = new byte[16];
+    private final byte[]        intBuffer        = new byte[4];
+    private final GrowingBuffer ciphertextBuffer = new GrowingBuffer();
+
+    private final byte[]           secret;
+    private final Cipher           cipher;
+    private final RandomAccessFile file;
+
+    private long[] offsets = new long[256];
+    private int    remaining;
+
+    ReverseReader(@NonNull byte[] secret, @NonNull File file) throws IOException {
+      this.secret = secret;
+      this.cipher = newCipher();
+      this.file   = new RandomAccessFile(file, "r");
 
-      return builder.toString();
+      indexEntries();
     }
 
-    private String readEntry() throws IOException {
-      try {
-        Util.readFully(inputStream, ivBuffer);
-        Util.readFully(inputStream, intBuffer);
+    private void indexEntries() throws IOException {
+      long length   = file.length();
+      long position = 0;
 
-        int    length     = Conversions.byteArrayToInt(intBuffer);
-        byte[] ciphertext = ciphertextBuffer.get(length);
+      while (position + ivBuffer.length + intBuffer.length <= length) {
+        file.seek(position + ivBuffer.length);
+        file.readFully(intBuffer);
 
-        Util.readFully(inputStream, ciphertext, length);
+        long next = position + ivBuffer.length + intBuffer.length + Conversions.byteArrayToInt(intBuffer);
 
-        try {
-          cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(secret, "AES"), new IvParameterSpec(ivBuffer));
-          byte[] plaintext = cipher.doFinal(ciphertext, 0, length);
+        if (next > length) break;
 
-          return new String(plaintext);
-        } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
-          throw new AssertionError(e);
+        if (remaining == offsets.length) {
+          offsets = Arrays.copyOf(offsets, offsets.length * 2);
         }
-      } catch (EOFException e) {
-        return null;
+
+        offsets[remaining++] = position;
+        position             = next;
       }
     }
+
+    @Override
+    public @Nullable String readEntry() throws IOException {
+      if (remaining == 0) return null;
+
+      file.seek(offsets[--remaining]);
+      file.readFully(ivBuffer);
+      file.readFully(intBuffer);
+
+      int    length     = Conversions.byteArrayToInt(intBuffer);
+      byte[] ciphertext = ciphertextBuffer.get(length);
+
+      file.readFully(ciphertext, 0, length);
+
+      return decrypt(cipher, secret, ivBuffer, ciphertext, length);
+    }
+
+    @Override
+    public int getRetainedSize() {
+      return ivBuffer.length + intBuffer.length + ciphertextBuffer.capacity() + offsets.length * 8;
+    }
+
+    @Override
+    public void close() {
+      Util.close(file);
+    }
+  }
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private static @NonNull Cipher newCipher() {
+    try {
+      return Cipher.getInstance("AES/CBC/PKCS5Padding");
+    } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static @NonNull String decrypt(@NonNull Cipher cipher, @NonNull byte[] secret, @NonNull byte[] iv, @NonNull byte[] ciphertext, int length) {
+    try {
+      cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(secret, "AES"), new IvParameterSpec(iv));
+      byte[] plaintext = cipher.doFinal(ciphertext, 0, length);
+
+      return new String(plaintext);
+    } catch (InvalidKeyException | InvalidAlgorithmParameterException | IllegalBlockSizeException | BadPaddingException e) {
+      throw new AssertionError(e);
+    }
   }
 }
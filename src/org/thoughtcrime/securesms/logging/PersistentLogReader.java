@@ -0,0 +1,251 @@
+package org.thoughtcrime.securesms.logging;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Streams the entries written by {@link PersistentLogger}, decrypting each one only when it is
+ * read, so an export never needs more than one entry in memory at a time.
+ *
+ * Entries can be read oldest first, which suits exports, or newest first, which lets a viewer show
+ * the most recent page without touching the rest of the log.
+ */
+@WorkerThread
+public class PersistentLogReader implements Closeable {
+
+  private static final String TAG = PersistentLogReader.class.getSimpleName();
+
+  private final byte[]     secret;
+  private final List<File> files;
+  private final Order      order;
+  private final Filter     filter;
+
+  private final @Nullable UnreadableFileListener unreadableFileListener;
+
+  private LogFile.EntryReader current;
+  private File                currentFile;
+  private int                 nextFile;
+
+  /**
+   * @param files The log files, oldest first.
+   */
+  PersistentLogReader(@NonNull byte[] secret, @NonNull List<File> files, @NonNull Order order, @NonNull Filter filter) {
+    this(secret, files, order, filter, null);
+  }
+
+  /**
+   * @param files                  The log files, oldest first.
+   * @param unreadableFileListener Told about files that can't be opened or read to the end.
+   */
+  PersistentLogReader(@NonNull byte[] secret,
+                      @NonNull List<File> files,
+                      @NonNull Order order,
+                      @NonNull Filter filter,
+                      @Nullable UnreadableFileListener unreadableFileListener)
+  {
+    this.secret                 = secret;
+    this.order                  = order;
+    this.filter                 = filter;
+    this.files                  = new ArrayList<>(files);
+    this.unreadableFileListener = unreadableFileListener;
+
+    if (order == Order.NEWEST_FIRST) {
+      Collections.reverse(this.files);
+    }
+  }
+
+  /**
+   * @return The next entry that passes the filter, or null once the log is exhausted.
+   */
+  public @Nullable String next() throws IOException {
+    while (true) {
+      if (current == null && !openNextFile()) {
+        return null;
+      }
+
+      String entry;
+
+      try {
+        entry = current.readEntry();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to read log " + currentFile.getName() + ". Skipping the rest of it.", e);
+        notifyUnreadable(currentFile);
+        entry = null;
+      }
+
+      if (entry == null) {
+        current.close();
+        current = null;
+      } else if (filter.matches(entry)) {
+        return entry;
+      }
+    }
+  }
+
+  /**
+   * @return Up to size entries. Fewer than size means the log is exhausted.
+   */
+  public @NonNull List<String> nextPage(int size) throws IOException {
+    List<String> page = new ArrayList<>(size);
+    String       entry;
+
+    while (page.size() < size && (entry = next()) != null) {
+      page.add(entry);
+    }
+
+    return page;
+  }
+
+  /**
+   * Writes every remaining entry to the stream as a UTF-8 line, for piping into compression or an
+   * upload. The stream is not closed.
+   *
+   * @return The number of bytes written.
+   */
+  public long writeTo(@NonNull OutputStream outputStream) throws IOException {
+    long   written = 0;
+    String entry;
+
+    while ((entry = next()) != null) {
+      byte[] line = (entry + '\n').getBytes(StandardCharsets.UTF_8);
+      outputStream.write(line);
+      written += line.length;
+    }
+
+    return written;
+  }
+
+  /**
+   * @return The bytes held between entries, which doesn't grow with the size of the log.
+   */
+  int getRetainedSize() {
+    return current != null ? current.getRetainedSize() : 0;
+  }
+
+  @Override
+  public void close() {
+    if (current != null) {
+      try {
+        current.close();
+      } catch (IOException e) {
+        Log.w(TAG, e);
+      }
+      current = null;
+    }
+
+    nextFile = files.size();
+  }
+
+  private boolean openNextFile() {
+    while (nextFile < files.size()) {
+      File file = files.get(nextFile++);
+
+      try {
+        current     = order == Order.NEWEST_FIRST ? new LogFile.ReverseReader(secret, file)
+                                                  : new LogFile.Reader(secret, file);
+        currentFile = file;
+        return true;
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to open log " + file.getName() + ". Skipping it.", e);
+        notifyUnreadable(file);
+      }
+    }
+
+    return false;
+  }
+
+  private void notifyUnreadable(@NonNull File file) {
+    if (unreadableFileListener != null) {
+      unreadableFileListener.onUnreadable(file);
+    }
+  }
+
+  interface UnreadableFileListener {
+    void onUnreadable(@NonNull File file);
+  }
+
+  public enum Order {
+    OLDEST_FIRST, NEWEST_FIRST
+  }
+
+  public enum Level {
+    VERBOSE("V"), DEBUG("D"), INFO("I"), WARN("W"), ERROR("E"), ASSERT("A");
+
+    private final String code;
+
+    Level(@NonNull String code) {
+      this.code = code;
+    }
+
+    static @Nullable Level fromCode(@NonNull String code) {
+      for (Level level : values()) {
+        if (level.code.equals(code)) return level;
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Selects entries by minimum level and, optionally, by tag.
+   */
+  public static class Filter {
+
+    public static final Filter ALL = new Filter(Level.VERBOSE, Collections.emptySet());
+
+    private final Level       minimumLevel;
+    private final Set<String> tags;
+
+    /**
+     * @param tags The tags to keep, or an empty set to keep every tag.
+     */
+    public Filter(@NonNull Level minimumLevel, @NonNull Set<String> tags) {
+      this.minimumLevel = minimumLevel;
+      this.tags         = new HashSet<>(tags);
+    }
+
+    /**
+     * Entries look like "yyyy-MM-dd HH:mm:ss.SSS zone L tag: message". Anything that doesn't
+     * parse is kept only when no filtering is asked for.
+     */
+    boolean matches(@NonNull String entry) {
+      if (minimumLevel == Level.VERBOSE && tags.isEmpty()) return true;
+
+      int levelStart = indexOfNth(entry, ' ', 3) + 1;
+      int levelEnd   = entry.indexOf(' ', levelStart);
+
+      if (levelStart == 0 || levelEnd == -1) return false;
+
+      Level level = Level.fromCode(entry.substring(levelStart, levelEnd));
+
+      if (level == null || level.ordinal() < minimumLevel.ordinal()) return false;
+      if (tags.isEmpty())                                            return true;
+
+      int tagEnd = entry.indexOf(": ", levelEnd + 1);
+
+      return tagEnd != -1 && tags.contains(entry.substring(levelEnd + 1, tagEnd));
+    }
+
+    private static int indexOfNth(@NonNull String value, char c, int n) {
+      int index = -1;
+
+      for (int i = 0; i < n; i++) {
+        index = value.indexOf(c, index + 1);
+        if (index == -1) return -1;
+      }
+
+      return index;
+    }
+  }
+}
@@ -2,10 +2,10 @@ package org.thoughtcrime.securesms.logging;
 
 import android.content.Context;
 import android.support.annotation.AnyThread;
+import android.support.annotation.NonNull;
 import android.support.annotation.WorkerThread;
 
 import org.thoughtcrime.securesms.database.NoExternalStorageException;
-import org.thoughtcrime.securesms.util.concurrent.ListenableFuture;
 import org.thoughtcrime.securesms.util.concurrent.SettableFuture;
 
 import java.io.ByteArrayOutputStream;
@@ -13,11 +13,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
@@ -99,32 +102,59 @@ public class PersistentLogger extends Log.Logger {
     }
   }
 
+  /**
+   * Opens a reader over everything logged so far. Nothing is decrypted until entries are read.
+   *
+   * The file list is taken on the logging executor, after every pending write and between
+   * rotations, so the reader never sees a half-rotated directory. Files that turn out to be
+   * unreadable are deleted on that executor too.
+   */
   @WorkerThread
-  public ListenableFuture<String> getLogs() {
-    final SettableFuture<String> future = new SettableFuture<>();
+  public @NonNull PersistentLogReader openReader(@NonNull PersistentLogReader.Order order, @NonNull PersistentLogReader.Filter filter)
+      throws NoExternalStorageException
+  {
+    SettableFuture<File[]> future = new SettableFuture<>();
 
     executor.execute(() -> {
-      StringBuilder builder = new StringBuilder();
-
       try {
-        File[] logs = getSortedLogFiles();
-        for (int i = logs.length - 1; i >= 0; i--) {
-          try {
-            LogFile.Reader reader = new LogFile.Reader(secret, logs[i]);
-            builder.append(reader.readAll());
-          } catch (IOException e) {
-            android.util.Log.w(TAG, "Failed to read log at index " + i + ". Removing reference.");
-            logs[i].delete();
-          }
-        }
-
-        future.set(builder.toString());
+        future.set(getSortedLogFiles());
       } catch (NoExternalStorageException e) {
         future.setException(e);
       }
     });
 
-    return future;
+    List<File> logs;
+
+    try {
+      logs = new ArrayList<>(Arrays.asList(future.get()));
+    } catch (InterruptedException e) {
+      throw new NoExternalStorageException("Interrupted while listing logs.", e);
+    } catch (ExecutionException e) {
+      throw new NoExternalStorageException(e.getCause());
+    }
+
+    Collections.reverse(logs);
+
+    return new PersistentLogReader(secret, logs, order, filter, this::deleteUnreadableLog);
+  }
+
+  @AnyThread
+  private void deleteUnreadableLog(@NonNull File file) {
+    executor.execute(() -> {
+      try {
+        File[]  logs     = getSortedLogFiles();
+        boolean isActive = logs.length > 0 && logs[0].equals(file);
+
+        if (!file.delete()) {
+          android.util.Log.w(TAG, "Failed to delete unreadable log " + file.getName());
+        } else if (isActive && writer != null) {
+          writer.close();
+          writer = new LogFile.Writer(secret, createNewLogFile());
+        }
+      } catch (NoExternalStorageException | IOException e) {
+        android.util.Log.w(TAG, "Failed to replace unreadable log.", e);
+      }
+    });
   }
 
   @WorkerThread
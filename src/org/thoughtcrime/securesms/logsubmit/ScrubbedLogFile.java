@@ -0,0 +1,231 @@
+package org.thoughtcrime.securesms.logsubmit;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.Pair;
+
+import org.thoughtcrime.securesms.crypto.AttachmentSecret;
+import org.thoughtcrime.securesms.crypto.AttachmentSecretProvider;
+import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
+import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.util.LRUCache;
+import org.thoughtcrime.securesms.util.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A scrubbed debug log kept in an encrypted cache file rather than in memory. Lines are read back
+ * a page at a time for the preview, and edits made in the preview are held separately and merged
+ * in when the log is streamed out for upload.
+ */
+class ScrubbedLogFile {
+
+  private static final String TAG = ScrubbedLogFile.class.getSimpleName();
+
+  private static final String DIRECTORY    = "submit_log";
+  private static final int    PAGE_SIZE    = 128;
+  private static final int    CACHED_PAGES = 4;
+
+  private final AttachmentSecret attachmentSecret;
+  private final File             file;
+  private final byte[]           random;
+  private final long[]           offsets;
+  private final int              lineCount;
+
+  private final Map<Integer, String>   edits = new HashMap<>();
+  private final Map<Integer, String[]> pages = new LRUCache<>(CACHED_PAGES);
+
+  private ScrubbedLogFile(@NonNull AttachmentSecret attachmentSecret, @NonNull File file, @NonNull byte[] random, @NonNull long[] offsets, int lineCount) {
+    this.attachmentSecret = attachmentSecret;
+    this.file             = file;
+    this.random           = random;
+    this.offsets          = offsets;
+    this.lineCount        = lineCount;
+  }
+
+  /**
+   * Starts a new log, deleting any left behind by an earlier submission.
+   */
+  @WorkerThread
+  static @NonNull Writer newWriter(@NonNull Context context) throws IOException {
+    File directory = new File(context.getCacheDir(), DIRECTORY);
+
+    if (!directory.exists() && !directory.mkdir()) {
+      throw new IOException("Unable to create " + directory);
+    }
+
+    File[] stale = directory.listFiles();
+
+    if (stale != null) {
+      for (File file : stale) {
+        file.delete();
+      }
+    }
+
+    AttachmentSecret attachmentSecret = AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret();
+    File             file             = File.createTempFile("log", ".tmp", directory);
+
+    return new Writer(attachmentSecret, file);
+  }
+
+  int getLineCount() {
+    return lineCount;
+  }
+
+  synchronized @NonNull String getLine(int index) throws IOException {
+    String edit = edits.get(index);
+    if (edit != null) return edit;
+
+    int      pageIndex = index / PAGE_SIZE;
+    String[] page      = pages.get(pageIndex);
+
+    if (page == null) {
+      page = decodePage(pageIndex, readPage(pageIndex));
+      pages.put(pageIndex, page);
+    }
+
+    return page[index - pageIndex * PAGE_SIZE];
+  }
+
+  synchronized void setLine(int index, @NonNull String text) {
+    edits.put(index, text);
+  }
+
+  /**
+   * @return The length in bytes of what {@link #writeTo(OutputStream)} will write.
+   */
+  synchronized long getByteLength() {
+    long length = offsets[lineCount];
+
+    for (Map.Entry<Integer, String> edit : edits.entrySet()) {
+      int index = edit.getKey();
+
+      length += edit.getValue().getBytes(StandardCharsets.UTF_8).length;
+      length -= offsets[index + 1] - offsets[index] - 1;
+    }
+
+    return length;
+  }
+
+  /**
+   * Writes the log, with any edits, as UTF-8 lines. The stream is not closed.
+   */
+  @WorkerThread
+  synchronized void writeTo(@NonNull OutputStream outputStream) throws IOException {
+    int pageCount = (lineCount + PAGE_SIZE - 1) / PAGE_SIZE;
+
+    for (int pageIndex = 0; pageIndex < pageCount; pageIndex++) {
+      byte[] page  = readPage(pageIndex);
+      long   start = offsets[pageIndex * PAGE_SIZE];
+      int    end   = Math.min(lineCount, (pageIndex + 1) * PAGE_SIZE);
+
+      for (int i = pageIndex * PAGE_SIZE; i < end; i++) {
+        String edit = edits.get(i);
+
+        if (edit != null) {
+          outputStream.write(edit.getBytes(StandardCharsets.UTF_8));
+          outputStream.write('\n');
+        } else {
+          outputStream.write(page, (int) (offsets[i] - start), (int) (offsets[i + 1] - offsets[i]));
+        }
+      }
+    }
+  }
+
+  void delete() {
+    if (!file.delete()) {
+      Log.w(TAG, "Failed to delete " + file.getName());
+    }
+  }
+
+  private @NonNull byte[] readPage(int pageIndex) throws IOException {
+    long   start = offsets[pageIndex * PAGE_SIZE];
+    long   end   = offsets[Math.min(lineCount, (pageIndex + 1) * PAGE_SIZE)];
+    byte[] page  = new byte[(int) (end - start)];
+
+    try (InputStream inputStream = ModernDecryptingPartInputStream.createFor(attachmentSecret, random, file, start)) {
+      Util.readFully(inputStream, page);
+    }
+
+    return page;
+  }
+
+  private @NonNull String[] decodePage(int pageIndex, @NonNull byte[] page) {
+    int      first = pageIndex * PAGE_SIZE;
+    int      end   = Math.min(lineCount, first + PAGE_SIZE);
+    long     start = offsets[first];
+    String[] lines = new String[end - first];
+
+    for (int i = first; i < end; i++) {
+      lines[i - first] = new String(page, (int) (offsets[i] - start), (int) (offsets[i + 1] - offsets[i] - 1), StandardCharsets.UTF_8);
+    }
+
+    return lines;
+  }
+
+  /**
+   * Appends lines to a new log, recording where each one starts.
+   */
+  static class Writer {
+
+    private final AttachmentSecret attachmentSecret;
+    private final File             file;
+    private final byte[]           random;
+    private final OutputStream     outputStream;
+
+    private long[] offsets = new long[1024];
+    private int    lineCount;
+
+    private Writer(@NonNull AttachmentSecret attachmentSecret, @NonNull File file) throws IOException {
+      Pair<byte[], OutputStream> out = ModernEncryptingPartOutputStream.createFor(attachmentSecret, file, false);
+
+      this.attachmentSecret = attachmentSecret;
+      this.file             = file;
+      this.random           = out.first;
+      this.outputStream     = new BufferedOutputStream(out.second);
+    }
+
+    /**
+     * Splits the text on newlines and appends each piece as a line.
+     */
+    void appendLines(@NonNull String text) throws IOException {
+      for (String line : text.split("\n", -1)) {
+        appendLine(line);
+      }
+    }
+
+    void appendLine(@NonNull String line) throws IOException {
+      byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+
+      outputStream.write(bytes);
+      outputStream.write('\n');
+
+      if (lineCount + 1 == offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+      }
+
+      offsets[lineCount + 1] = offsets[lineCount] + bytes.length + 1;
+      lineCount++;
+    }
+
+    @NonNull ScrubbedLogFile finish() throws IOException {
+      outputStream.close();
+      return new ScrubbedLogFile(attachmentSecret, file, random, offsets, lineCount);
+    }
+
+    void abort() {
+      Util.close(outputStream);
+      file.delete();
+    }
+  }
+}
@@ -32,6 +32,7 @@ import android.os.Build.VERSION;
 import android.os.Build.VERSION_CODES;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.v4.app.Fragment;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -53,7 +54,10 @@ import org.json.JSONObject;
 import org.thoughtcrime.securesms.ApplicationContext;
 import network.loki.messenger.R;
 import org.thoughtcrime.securesms.contactshare.SimpleTextWatcher;
+import org.thoughtcrime.securesms.database.NoExternalStorageException;
 import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.logging.PersistentLogReader;
+import org.thoughtcrime.securesms.logging.PersistentLogger;
 import org.thoughtcrime.securesms.logsubmit.util.Scrubber;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.task.ProgressDialogAsyncTask;
@@ -66,7 +70,6 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Locale;
-import java.util.concurrent.ExecutionException;
 
 import okhttp3.MediaType;
 import okhttp3.MultipartBody;
@@ -75,6 +78,7 @@ import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSink;
 
 /**
  * A helper {@link Fragment} to preview and submit logcat information to a public pastebin.
@@ -107,6 +111,7 @@ public class SubmitLogFragment extends Fragment {
 
   private RecyclerView           logPreview;
   private LogPreviewAdapter      logPreviewAdapter;
+  private ScrubbedLogFile        log;
   private OnLogSubmittedListener mListener;
 
   /**
@@ -175,6 +180,16 @@ public class SubmitLogFragment extends Fragment {
     mListener = null;
   }
 
+  @Override
+  public void onDestroy() {
+    super.onDestroy();
+
+    if (log != null) {
+      log.delete();
+      log = null;
+    }
+  }
+
   private void initializeResources() {
     okButton     = getView().findViewById(R.id.ok);
     cancelButton = getView().findViewById(R.id.cancel);
@@ -184,7 +199,7 @@ public class SubmitLogFragment extends Fragment {
     okButton.setOnClickListener(new View.OnClickListener() {
       @Override
       public void onClick(View view) {
-        new SubmitToPastebinAsyncTask(logPreviewAdapter.getText()).execute();
+        new SubmitToPastebinAsyncTask(log).execute();
       }
     });
 
@@ -216,22 +231,20 @@ public class SubmitLogFragment extends Fragment {
     new PopulateLogcatAsyncTask(getActivity()).execute();
   }
 
-  private static String grabLogcat() {
-    try {
-      final Process         process        = Runtime.getRuntime().exec("logcat -d");
-      final BufferedReader  bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
-      final StringBuilder   log            = new StringBuilder();
-      final String          separator      = System.getProperty("line.separator");
+  /**
+   * Scrubs logcat a line at a time as it is read.
+   */
+  private static void writeLogcat(@NonNull ScrubbedLogFile.Writer writer, @NonNull Scrubber scrubber) throws IOException {
+    Process        process        = Runtime.getRuntime().exec("logcat -d");
+    BufferedReader bufferedReader = new BufferedReader(new InputStreamReader(process.getInputStream()));
 
+    try {
       String line;
       while ((line = bufferedReader.readLine()) != null) {
-        log.append(line);
-        log.append(separator);
+        writer.appendLine(scrubber.scrub(line));
       }
-      return log.toString();
-    } catch (IOException ioe) {
-      Log.w(TAG, "IOException when trying to read logcat.", ioe);
-      return null;
+    } finally {
+      Util.close(bufferedReader);
     }
   }
 
@@ -335,7 +348,25 @@ public class SubmitLogFragment extends Fragment {
     hackSavedLogUrl = logUrl;
   }
 
-  private class PopulateLogcatAsyncTask extends AsyncTask<Void,Void,String> {
+  /**
+   * Scrubs entries one at a time as they are decrypted, so the only copy of the whole log is the
+   * scrubbed one on disk.
+   */
+  private static void writePersistentLogs(@NonNull Context context, @NonNull ScrubbedLogFile.Writer writer, @NonNull Scrubber scrubber)
+      throws IOException, NoExternalStorageException
+  {
+    PersistentLogger logger = ApplicationContext.getInstance(context).getPersistentLogger();
+
+    try (PersistentLogReader reader = logger.openReader(PersistentLogReader.Order.OLDEST_FIRST, PersistentLogReader.Filter.ALL)) {
+      String entry;
+
+      while ((entry = reader.next()) != null) {
+        writer.appendLines(scrubber.scrub(entry));
+      }
+    }
+  }
+
+  private class PopulateLogcatAsyncTask extends AsyncTask<Void,Void,ScrubbedLogFile> {
     private WeakReference<Context> weakContext;
 
     public PopulateLogcatAsyncTask(Context context) {
@@ -343,69 +374,113 @@ public class SubmitLogFragment extends Fragment {
     }
 
     @Override
-    protected String doInBackground(Void... voids) {
+    protected ScrubbedLogFile doInBackground(Void... voids) {
       Context context = weakContext.get();
       if (context == null) return null;
 
-      Scrubber scrubber = new Scrubber();
+      Scrubber               scrubber = new Scrubber();
+      ScrubbedLogFile.Writer writer;
+
+      try {
+        writer = ScrubbedLogFile.newWriter(context);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to create log file.", e);
+        return null;
+      }
 
-      String newLogs;
       try {
+        writer.appendLines(HEADER_SYSINFO + "\n\n" +
+                           buildDescription(context) + "\n\n\n" +
+                           HEADER_JOBS + "\n\n" +
+                           scrubber.scrub(ApplicationContext.getInstance(context).getJobManager().getDebugInfo()) + "\n\n" +
+                           HEADER_LOGCAT + "\n");
+
         long t1 = System.currentTimeMillis();
-        String logs = ApplicationContext.getInstance(context).getPersistentLogger().getLogs().get();
-        Log.i(TAG, "Fetch our logs : " + (System.currentTimeMillis() - t1) + " ms");
+        try {
+          writeLogcat(writer, scrubber);
+        } catch (IOException e) {
+          Log.w(TAG, "IOException when trying to read logcat.", e);
+        }
+        Log.i(TAG, "Fetch and scrub logcat: " + (System.currentTimeMillis() - t1) + " ms");
+
+        writer.appendLines("\n\n" + HEADER_LOGGER + "\n");
 
         long t2 = System.currentTimeMillis();
-        newLogs = scrubber.scrub(logs);
-        Log.i(TAG, "Scrub our logs: " + (System.currentTimeMillis() - t2) + " ms");
-      } catch (InterruptedException | ExecutionException e) {
-        Log.w(TAG, "Failed to retrieve new logs.", e);
-        newLogs = "Failed to retrieve logs.";
-      }
+        try {
+          writePersistentLogs(context, writer, scrubber);
+        } catch (NoExternalStorageException e) {
+          Log.w(TAG, "Failed to retrieve new logs.", e);
+          writer.appendLine("Failed to retrieve logs.");
+        }
+        Log.i(TAG, "Fetch and scrub our logs: " + (System.currentTimeMillis() - t2) + " ms");
 
-      long t3 = System.currentTimeMillis();
-      String logcat = grabLogcat();
-      Log.i(TAG, "Fetch logcat: " + (System.currentTimeMillis() - t3) + " ms");
-
-      long t4 = System.currentTimeMillis();
-      String scrubbedLogcat = scrubber.scrub(logcat);
-      Log.i(TAG, "Scrub logcat: " + (System.currentTimeMillis() - t4) + " ms");
-
-      return HEADER_SYSINFO + "\n\n" +
-             buildDescription(context) + "\n\n\n" +
-             HEADER_JOBS + "\n\n" +
-             scrubber.scrub(ApplicationContext.getInstance(context).getJobManager().getDebugInfo()) + "\n\n" +
-             HEADER_LOGCAT + "\n\n" +
-             scrubbedLogcat + "\n\n\n" +
-             HEADER_LOGGER + "\n\n" +
-             newLogs;
+        return writer.finish();
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to write log file.", e);
+        writer.abort();
+        return null;
+      }
     }
 
     @Override
     protected void onPreExecute() {
       super.onPreExecute();
-      logPreviewAdapter.setText(getString(R.string.log_submit_activity__loading_logs));
+      logPreviewAdapter.setPlaceholder(getString(R.string.log_submit_activity__loading_logs));
       okButton.setEnabled(false);
     }
 
     @Override
-    protected void onPostExecute(String logcat) {
-      super.onPostExecute(logcat);
-      if (TextUtils.isEmpty(logcat)) {
+    protected void onPostExecute(ScrubbedLogFile scrubbedLog) {
+      super.onPostExecute(scrubbedLog);
+      if (scrubbedLog == null) {
         if (mListener != null) mListener.onFailure();
         return;
       }
-      logPreviewAdapter.setText(logcat);
+      if (isRemoving() || getActivity() == null) {
+        scrubbedLog.delete();
+        return;
+      }
+      log = scrubbedLog;
+      logPreviewAdapter.setLog(scrubbedLog);
       okButton.setEnabled(true);
     }
   }
 
+  /**
+   * Streams the log from disk, so the upload never holds the whole log in memory.
+   */
+  private static final class LogRequestBody extends RequestBody {
+
+    private final ScrubbedLogFile log;
+    private final long            length;
+
+    private LogRequestBody(@NonNull ScrubbedLogFile log) {
+      this.log    = log;
+      this.length = log.getByteLength();
+    }
+
+    @Override
+    public MediaType contentType() {
+      return MediaType.parse("text/plain");
+    }
+
+    @Override
+    public long contentLength() {
+      return length;
+    }
+
+    @Override
+    public void writeTo(@NonNull BufferedSink sink) throws IOException {
+      log.writeTo(sink.outputStream());
+    }
+  }
+
   private class SubmitToPastebinAsyncTask extends ProgressDialogAsyncTask<Void,Void,String> {
-    private final String         paste;
+    private final ScrubbedLogFile log;
 
-    public SubmitToPastebinAsyncTask(String paste) {
+    public SubmitToPastebinAsyncTask(ScrubbedLogFile log) {
       super(getActivity(), R.string.log_submit_activity__submitting, R.string.log_submit_activity__uploading_logs);
-      this.paste = paste;
+      this.log = log;
     }
 
     @Override
@@ -433,7 +508,7 @@ public class SubmitLogFragment extends Fragment {
           post.addFormDataPart(key, fields.getString(key));
         }
 
-        post.addFormDataPart("file", "file", RequestBody.create(MediaType.parse("text/plain"), paste));
+        post.addFormDataPart("file", "file", new LogRequestBody(log));
 
         Response postResponse = client.newCall(new Request.Builder().url(url).post(post.build()).build()).execute();
 
@@ -545,9 +620,13 @@ public class SubmitLogFragment extends Fragment {
     public void onCancel();
   }
 
+  /**
+   * Shows the log a line at a time, reading lines from disk only as they are bound.
+   */
   private static final class LogPreviewAdapter extends RecyclerView.Adapter<LogPreviewViewHolder> {
 
-    private String[] lines = new String[0];
+    private ScrubbedLogFile log;
+    private String          placeholder;
 
     @Override
     public LogPreviewViewHolder onCreateViewHolder(ViewGroup parent, int viewType) {
@@ -556,7 +635,21 @@ public class SubmitLogFragment extends Fragment {
 
     @Override
     public void onBindViewHolder(LogPreviewViewHolder holder, int position) {
-      holder.bind(lines, position);
+      if (log == null) {
+        holder.bind(null, position, placeholder);
+        return;
+      }
+
+      String line;
+
+      try {
+        line = log.getLine(position);
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to read log line " + position, e);
+        line = "";
+      }
+
+      holder.bind(log, position, line);
     }
 
     @Override
@@ -566,35 +659,39 @@ public class SubmitLogFragment extends Fragment {
 
     @Override
     public int getItemCount() {
-      return lines.length;
+      if (log != null) return log.getLineCount();
+      return placeholder != null ? 1 : 0;
     }
 
-    void setText(@NonNull String text) {
-      lines = text.split("\n");
+    void setPlaceholder(@NonNull String placeholder) {
+      this.log         = null;
+      this.placeholder = placeholder;
       notifyDataSetChanged();
     }
 
-    String getText() {
-      return Util.join(lines, "\n");
+    void setLog(@NonNull ScrubbedLogFile log) {
+      this.log         = log;
+      this.placeholder = null;
+      notifyDataSetChanged();
     }
   }
 
   private static final class LogPreviewViewHolder extends RecyclerView.ViewHolder {
 
-    private EditText text;
-    private String[] lines;
-    private int      index;
+    private EditText        text;
+    private ScrubbedLogFile log;
+    private int             index;
 
     LogPreviewViewHolder(View itemView) {
       super(itemView);
       text = (EditText) itemView;
     }
 
-    void bind(String[] lines, int index) {
-      this.lines = lines;
+    void bind(@Nullable ScrubbedLogFile log, int index, String line) {
+      this.log   = log;
       this.index = index;
 
-      text.setText(lines[index]);
+      text.setText(line);
       text.addTextChangedListener(textWatcher);
     }
 
@@ -605,8 +702,8 @@ public class SubmitLogFragment extends Fragment {
     private final SimpleTextWatcher textWatcher = new SimpleTextWatcher() {
       @Override
       public void onTextChanged(String text) {
-        if (lines != null) {
-          lines[index] = text;
+        if (log != null) {
+          log.setLine(index, text);
         }
       }
     };
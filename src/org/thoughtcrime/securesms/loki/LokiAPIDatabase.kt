@@ -186,7 +186,7 @@ class LokiAPIDatabase(context: Context, helper: SQLCipherOpenHelper) : Database(
     }
 
     override fun removePairingAuthorisations(hexEncodedPublicKey: String) {
-        val database = databaseHelper.readableDatabase
+        val database = databaseHelper.writableDatabase
         database.delete(pairingAuthorisationCache, "$primaryDevicePublicKey = ? OR $secondaryDevicePublicKey = ?", arrayOf( hexEncodedPublicKey, hexEncodedPublicKey ))
     }
 }
@@ -29,6 +29,7 @@ import org.whispersystems.signalservice.loki.api.LokiPublicChatMessage
 class LokiPublicChatPoller(private val context: Context, private val group: LokiPublicChat) {
     private val handler = Handler()
     private var hasStarted = false
+    private val linkPreviewRepository by lazy { LinkPreviewRepository(context) }
 
     // region Convenience
     private val userHexEncodedPublicKey = TextSecurePreferences.getLocalNumber(context)
@@ -175,10 +176,9 @@ class LokiPublicChatPoller(private val context: Context, private val group: Loki
             val urls = LinkPreviewUtil.findWhitelistedUrls(message.body)
             val urlCount = urls.size
             if (urlCount != 0) {
-                val lpr = LinkPreviewRepository(context)
                 var count = 0
                 urls.forEach { url ->
-                    lpr.getLinkPreview(context, url.url) { lp ->
+                    linkPreviewRepository.getLinkPreview(context, url.url) { lp ->
                         Util.runOnMain {
                             count += 1
                             if (lp.isPresent) { signalMessage.linkPreviews.add(lp.get()) }
@@ -37,12 +37,20 @@ class LokiUserDatabase(context: Context, helper: SQLCipherOpenHelper) : Database
         }
     }
 
+    fun getDisplayNames(): Map<String, String> {
+        val database = databaseHelper.readableDatabase
+        return database.getAll(displayNameTable, "", arrayOf()) { cursor ->
+            Pair(cursor.getString(hexEncodedPublicKey), cursor.getString(displayName))
+        }.toMap()
+    }
+
     fun setDisplayName(hexEncodedPublicKey: String, displayName: String) {
         val database = databaseHelper.writableDatabase
         val row = ContentValues(2)
         row.put(Companion.hexEncodedPublicKey, hexEncodedPublicKey)
         row.put(Companion.displayName, displayName)
         database.insertOrUpdate(displayNameTable, row, "${Companion.hexEncodedPublicKey} = ?", arrayOf( hexEncodedPublicKey ))
+        MentionUtilities.onDisplayNameChanged(null, hexEncodedPublicKey, displayName)
         Recipient.from(context, Address.fromSerialized(hexEncodedPublicKey), false).notifyListeners()
     }
 
@@ -53,6 +61,13 @@ class LokiUserDatabase(context: Context, helper: SQLCipherOpenHelper) : Database
         }
     }
 
+    fun getServerDisplayNames(serverID: String): Map<String, String> {
+        val database = databaseHelper.readableDatabase
+        return database.getAll(serverDisplayNameTable, "${Companion.serverID} = ?", arrayOf( serverID )) { cursor ->
+            Pair(cursor.getString(hexEncodedPublicKey), cursor.getString(displayName))
+        }.toMap()
+    }
+
     fun setServerDisplayName(serverID: String, hexEncodedPublicKey: String, displayName: String) {
         val database = databaseHelper.writableDatabase
         val values = ContentValues(3)
@@ -61,6 +76,7 @@ class LokiUserDatabase(context: Context, helper: SQLCipherOpenHelper) : Database
         values.put(Companion.displayName, displayName)
         try {
             database.insertWithOnConflict(serverDisplayNameTable, null, values, SQLiteDatabase.CONFLICT_REPLACE)
+            MentionUtilities.onDisplayNameChanged(serverID, hexEncodedPublicKey, displayName)
             Recipient.from(context, Address.fromSerialized(hexEncodedPublicKey), false).notifyListeners()
         } catch (e: Exception) {
             Log.d("Loki", "Couldn't save server display name due to exception: $e.")
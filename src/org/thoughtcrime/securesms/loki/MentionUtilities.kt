@@ -7,10 +7,36 @@ import android.text.style.BackgroundColorSpan
 import android.util.Range
 import network.loki.messenger.R
 import org.thoughtcrime.securesms.database.DatabaseFactory
+import org.thoughtcrime.securesms.logging.Log
+import org.thoughtcrime.securesms.util.LRUCache
 import org.thoughtcrime.securesms.util.TextSecurePreferences
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors
 import java.util.regex.Pattern
 
 object MentionUtilities {
+    private val mentionPattern = Pattern.compile("@[0-9a-fA-F]*")
+    private const val maxRenderedMentionsCount = 500
+
+    /**
+     * The display names that can be mentioned in a thread, loaded in one go the first time a thread is rendered.
+     * Public chats use the server's display names and all other threads share the global ones.
+     */
+    private class ThreadDisplayNames(val displayNames: MutableMap<String, String>)
+
+    private data class RenderedMentionsKey(val threadID: Long, val text: String)
+
+    private class RenderedMentions(val text: String, val mentions: List<Range<Int>>)
+
+    private val threadDisplayNames = mutableMapOf<Long, ThreadDisplayNames>()
+    private val publicChatDisplayNames = mutableMapOf<String?, ThreadDisplayNames>()
+    /**
+     * Name changes seen while a public chat's names are being loaded outside the lock, applied when they're published.
+     */
+    private val pendingDisplayNameChanges = mutableMapOf<String?, MutableMap<String, String>>()
+    private val loadingThreadIDs = mutableSetOf<Long>()
+    private val renderedMentions = LRUCache<RenderedMentionsKey, RenderedMentions>(maxRenderedMentionsCount)
+    private var userHexEncodedPublicKey: String? = null
+    private var userDisplayName: String? = null
 
     @JvmStatic
     fun highlightMentions(text: CharSequence, threadID: Long, context: Context): String {
@@ -19,39 +45,140 @@ object MentionUtilities {
 
     @JvmStatic
     fun highlightMentions(text: CharSequence, isOutgoingMessage: Boolean, threadID: Long, context: Context): SpannableString {
-        var text = text
-        val pattern = Pattern.compile("@[0-9a-fA-F]*")
-        var matcher = pattern.matcher(text)
+        if (!mentionPattern.matcher(text).find()) { return SpannableString(text) }
+        val rendered = getRenderedMentions(text.toString(), threadID, context)
+        if (rendered.mentions.isEmpty()) { return SpannableString(text) }
+        val result = SpannableString(rendered.text)
+        val highlightColor = if (isOutgoingMessage) context.resources.getColor(R.color.loki_dark_green) else context.resources.getColor(R.color.loki_green)
+        for (range in rendered.mentions) {
+            result.setSpan(BackgroundColorSpan(highlightColor), range.lower, range.upper, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE)
+        }
+        return result
+    }
+
+    /**
+     * Keeps the cached display names in sync with the user database. Rendered mentions are only dropped if a cached
+     * name actually changed, since display names are re-saved for every incoming message.
+     */
+    @JvmStatic
+    fun onDisplayNameChanged(publicChatID: String?, hexEncodedPublicKey: String, displayName: String) {
+        synchronized(this) {
+            pendingDisplayNameChanges[publicChatID]?.put(hexEncodedPublicKey, displayName)
+            val thread = publicChatDisplayNames[publicChatID] ?: return
+            if (thread.displayNames.put(hexEncodedPublicKey, displayName) != displayName) { renderedMentions.clear() }
+        }
+    }
+
+    /**
+     * Starts loading a thread's display names in the background, so that its messages can be rendered with names
+     * as soon as they're bound. Meant to be called when a conversation is opened.
+     */
+    @JvmStatic
+    fun prefetchDisplayNames(threadID: Long, context: Context) {
+        synchronized(this) {
+            if (threadDisplayNames.containsKey(threadID)) { return }
+            loadThreadDisplayNamesAsync(threadID, context.applicationContext)
+        }
+    }
+
+    /**
+     * Never touches the database. If the thread's names aren't loaded yet, the text is returned with the raw
+     * public keys and the names are loaded in the background. The thread is re-bound once they're in.
+     */
+    private fun getRenderedMentions(text: String, threadID: Long, context: Context): RenderedMentions {
+        val key = RenderedMentionsKey(threadID, text)
+        val hexEncodedPublicKey = TextSecurePreferences.getLocalNumber(context)
+        val displayName = TextSecurePreferences.getProfileName(context)
+        synchronized(this) {
+            invalidateIfUserDisplayNameChanged(hexEncodedPublicKey, displayName)
+            val cached = renderedMentions[key]
+            if (cached != null) { return cached }
+            val thread = threadDisplayNames[threadID]
+            if (thread == null) {
+                loadThreadDisplayNamesAsync(threadID, context.applicationContext)
+                return RenderedMentions(text, listOf())
+            }
+            val rendered = renderMentions(text, thread)
+            renderedMentions[key] = rendered
+            return rendered
+        }
+    }
+
+    /**
+     * Must be called while holding the lock. Does nothing if a load for the thread is already running.
+     */
+    private fun loadThreadDisplayNamesAsync(threadID: Long, context: Context) {
+        if (!loadingThreadIDs.add(threadID)) { return }
+        SignalExecutors.BOUNDED.execute {
+            try {
+                loadThreadDisplayNames(threadID, context)
+                val changeNotifier = DatabaseFactory.getChangeNotifier(context)
+                changeNotifier.notifyThread(threadID)
+                changeNotifier.notifyConversationList()
+            } catch (e: Exception) {
+                Log.w("Loki", "Failed to load display names for thread $threadID.", e)
+            } finally {
+                synchronized(this) { loadingThreadIDs.remove(threadID) }
+            }
+        }
+    }
+
+    private fun renderMentions(text: String, thread: ThreadDisplayNames): RenderedMentions {
+        val result = StringBuilder(text.length)
         val mentions = mutableListOf<Range<Int>>()
-        var startIndex = 0
-        val publicChat = DatabaseFactory.getLokiThreadDatabase(context).getPublicChat(threadID)
-        if (matcher.find(startIndex)) {
-            while (true) {
-                val hexEncodedPublicKey = text.subSequence(matcher.start() + 1, matcher.end()).toString() // +1 to get rid of the @
-                val userDisplayName: String? = if (hexEncodedPublicKey.toLowerCase() == TextSecurePreferences.getLocalNumber(context).toLowerCase()) {
-                    TextSecurePreferences.getProfileName(context)
-                } else if (publicChat != null) {
-                    DatabaseFactory.getLokiUserDatabase(context).getServerDisplayName(publicChat.id, hexEncodedPublicKey)
-                } else {
-                    DatabaseFactory.getLokiUserDatabase(context).getDisplayName(hexEncodedPublicKey)
-                }
-                if (userDisplayName != null) {
-                    text = text.subSequence(0, matcher.start()).toString() + "@" + userDisplayName + text.subSequence(matcher.end(), text.length)
-                    val endIndex = matcher.start() + 1 + userDisplayName.length
-                    startIndex = endIndex
-                    mentions.add(Range.create(matcher.start(), endIndex))
-                } else {
-                    startIndex = matcher.end()
-                }
-                matcher = pattern.matcher(text)
-                if (!matcher.find(startIndex)) { break }
+        val matcher = mentionPattern.matcher(text)
+        var lastEnd = 0
+        while (matcher.find()) {
+            val hexEncodedPublicKey = text.substring(matcher.start() + 1, matcher.end()) // +1 to get rid of the @
+            val displayName = getDisplayName(hexEncodedPublicKey, thread) ?: continue
+            result.append(text, lastEnd, matcher.start())
+            val start = result.length
+            result.append("@").append(displayName)
+            mentions.add(Range.create(start, result.length))
+            lastEnd = matcher.end()
+        }
+        result.append(text, lastEnd, text.length)
+        return RenderedMentions(result.toString(), mentions)
+    }
+
+    private fun getDisplayName(hexEncodedPublicKey: String, thread: ThreadDisplayNames): String? {
+        if (hexEncodedPublicKey.equals(userHexEncodedPublicKey, ignoreCase = true)) { return userDisplayName }
+        return thread.displayNames[hexEncodedPublicKey]
+    }
+
+    /**
+     * Reads the thread's names without holding the lock, then publishes them under it. If another thread published
+     * names for the same chat in the meantime, those are kept so that every thread shares one map.
+     */
+    private fun loadThreadDisplayNames(threadID: Long, context: Context): ThreadDisplayNames {
+        val publicChatID = DatabaseFactory.getLokiThreadDatabase(context).getPublicChat(threadID)?.id
+        val cached = synchronized(this) {
+            val thread = publicChatDisplayNames[publicChatID]
+            if (thread == null) { pendingDisplayNameChanges.getOrPut(publicChatID) { mutableMapOf() } }
+            thread
+        }
+        val thread = cached ?: try {
+            val userDatabase = DatabaseFactory.getLokiUserDatabase(context)
+            val displayNames = if (publicChatID != null) userDatabase.getServerDisplayNames(publicChatID) else userDatabase.getDisplayNames()
+            val loaded = ThreadDisplayNames(displayNames.toMutableMap())
+            synchronized(this) {
+                val changes = pendingDisplayNameChanges[publicChatID]
+                if (changes != null) { loaded.displayNames.putAll(changes) }
+                publicChatDisplayNames.getOrPut(publicChatID) { loaded }
             }
+        } finally {
+            // Once published, later changes go straight into the shared map
+            synchronized(this) { pendingDisplayNameChanges.remove(publicChatID) }
         }
-        val result = SpannableString(text)
-        for (range in mentions) {
-            val highlightColor = if (isOutgoingMessage) context.resources.getColor(R.color.loki_dark_green) else context.resources.getColor(R.color.loki_green)
-            result.setSpan(BackgroundColorSpan(highlightColor), range.lower, range.upper, Spannable.SPAN_EXCLUSIVE_EXCLUSIVE)
+        synchronized(this) {
+            return threadDisplayNames.getOrPut(threadID) { thread }
         }
-        return result
     }
-}
\ No newline at end of file
+
+    private fun invalidateIfUserDisplayNameChanged(hexEncodedPublicKey: String?, displayName: String?) {
+        if (hexEncodedPublicKey == userHexEncodedPublicKey && displayName == userDisplayName) { return }
+        userHexEncodedPublicKey = hexEncodedPublicKey
+        userDisplayName = displayName
+        renderedMentions.clear()
+    }
+}
@@ -0,0 +1,327 @@
+package org.thoughtcrime.securesms.mediasend;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Environment;
+import android.provider.MediaStore.Images;
+import android.provider.MediaStore.Video;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.util.JsonUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A summary of the media folders on the device, kept on disk so the folder picker can be shown
+ * without reading every row of the image and video tables.
+ *
+ * The summary is brought up to date by reading only the rows added or changed since it was last
+ * refreshed, tracked by row id and by generation (API 30+) or modification time. If any row that
+ * was already counted changed or went away, or the summary is a day old, the table is rebuilt.
+ */
+final class MediaFolderIndex {
+
+  private static final String TAG = MediaFolderIndex.class.getSimpleName();
+
+  private static final String FILE_NAME = "media_folder_index.json";
+  private static final int    VERSION   = 1;
+  private static final long   MAX_AGE   = TimeUnit.DAYS.toMillis(1);
+
+  // MediaStore.MediaColumns.GENERATION_MODIFIED, which only exists from API 30
+  private static final String GENERATION_MODIFIED = "generation_modified";
+
+  private static MediaFolderIndex instance;
+
+  private final File file;
+
+  private Summary summary;
+  private boolean loaded;
+
+  static synchronized @NonNull MediaFolderIndex getInstance(@NonNull Context context) {
+    if (instance == null) {
+      instance = new MediaFolderIndex(new File(context.getCacheDir(), FILE_NAME));
+    }
+    return instance;
+  }
+
+  private MediaFolderIndex(@NonNull File file) {
+    this.file = file;
+  }
+
+  /**
+   * @return The last summary that was built, or null if there isn't one yet.
+   */
+  @WorkerThread
+  synchronized @Nullable Summary getCached() {
+    if (!loaded) {
+      summary = read();
+      loaded  = true;
+    }
+    return summary;
+  }
+
+  /**
+   * @return The summary brought up to date. It's the same instance as {@link #getCached()} if
+   *         nothing changed.
+   */
+  @WorkerThread
+  synchronized @NonNull Summary refresh(@NonNull Context context) {
+    Summary cached = getCached();
+    long    now    = System.currentTimeMillis();
+
+    if (cached != null && now - cached.builtAt < MAX_AGE) {
+      Table images = refresh(context, Images.Media.EXTERNAL_CONTENT_URI, cached.images);
+      Table videos = refresh(context, Video.Media.EXTERNAL_CONTENT_URI, cached.videos);
+
+      if (images == cached.images && videos == cached.videos) {
+        return cached;
+      }
+
+      summary = new Summary(cached.builtAt, images, videos);
+    } else {
+      summary = new Summary(now, build(context, Images.Media.EXTERNAL_CONTENT_URI), build(context, Video.Media.EXTERNAL_CONTENT_URI));
+    }
+
+    write(summary);
+    return summary;
+  }
+
+  @WorkerThread
+  private static @NonNull Table refresh(@NonNull Context context, @NonNull Uri contentUri, @NonNull Table table) {
+    Table    updated   = null;
+    String   selection = Images.Media.DATA + " NOT NULL AND (" + Images.Media._ID + " > ? OR " + getChangeColumn() + " > ?)";
+    String[] args      = new String[] { String.valueOf(table.maxId), String.valueOf(getChangeWatermark(table)) };
+
+    try (Cursor cursor = context.getContentResolver().query(contentUri, getProjection(), selection, args, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        if (cursor.getLong(cursor.getColumnIndexOrThrow(Images.Media._ID)) <= table.maxId) {
+          Log.i(TAG, "Existing media changed, rebuilding " + contentUri);
+          return build(context, contentUri);
+        }
+
+        if (updated == null) updated = table.copy();
+        updated.add(cursor);
+      }
+    }
+
+    Table result = updated != null ? updated : table;
+
+    if (count(context, contentUri) != result.count) {
+      Log.i(TAG, "Media was removed, rebuilding " + contentUri);
+      return build(context, contentUri);
+    }
+
+    return result;
+  }
+
+  @WorkerThread
+  private static @NonNull Table build(@NonNull Context context, @NonNull Uri contentUri) {
+    Table table = new Table();
+
+    try (Cursor cursor = context.getContentResolver().query(contentUri, getProjection(), Images.Media.DATA + " NOT NULL", null, null)) {
+      while (cursor != null && cursor.moveToNext()) {
+        table.add(cursor);
+      }
+    }
+
+    return table;
+  }
+
+  @WorkerThread
+  private static int count(@NonNull Context context, @NonNull Uri contentUri) {
+    try (Cursor cursor = context.getContentResolver().query(contentUri, new String[] { Images.Media._ID }, Images.Media.DATA + " NOT NULL", null, null)) {
+      return cursor != null ? cursor.getCount() : 0;
+    }
+  }
+
+  private static @NonNull String[] getProjection() {
+    return new String[] { Images.Media._ID, Images.Media.DATA, Images.Media.BUCKET_ID, Images.Media.BUCKET_DISPLAY_NAME, Images.Media.DATE_TAKEN, getChangeColumn() };
+  }
+
+  private static @NonNull String getChangeColumn() {
+    return Build.VERSION.SDK_INT >= 30 ? GENERATION_MODIFIED : Images.Media.DATE_MODIFIED;
+  }
+
+  private static long getChangeWatermark(@NonNull Table table) {
+    return Build.VERSION.SDK_INT >= 30 ? table.maxGeneration : table.maxModified;
+  }
+
+  private @Nullable Summary read() {
+    if (!file.exists()) return null;
+
+    try (InputStream in = new FileInputStream(file)) {
+      Summary summary = JsonUtils.fromJson(in, Summary.class);
+      return summary.version == VERSION && summary.images != null && summary.videos != null ? summary : null;
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to read the media folder index.", e);
+      return null;
+    }
+  }
+
+  private void write(@NonNull Summary summary) {
+    File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+    try (OutputStream out = new FileOutputStream(temp)) {
+      out.write(JsonUtils.toJson(summary).getBytes());
+    } catch (IOException e) {
+      Log.w(TAG, "Failed to write the media folder index.", e);
+      return;
+    }
+
+    if (!temp.renameTo(file)) {
+      Log.w(TAG, "Failed to replace the media folder index.");
+    }
+  }
+
+  static final class Summary {
+    @JsonProperty private int   version;
+    @JsonProperty private long  builtAt;
+    @JsonProperty private Table images;
+    @JsonProperty private Table videos;
+
+    Summary() {}
+
+    private Summary(long builtAt, @NonNull Table images, @NonNull Table videos) {
+      this.version = VERSION;
+      this.builtAt = builtAt;
+      this.images  = images;
+      this.videos  = videos;
+    }
+
+    @NonNull Table getImages() {
+      return images;
+    }
+
+    @NonNull Table getVideos() {
+      return videos;
+    }
+  }
+
+  static final class Table {
+    @JsonProperty private long                maxId;
+    @JsonProperty private long                maxGeneration;
+    @JsonProperty private long                maxModified;
+    @JsonProperty private int                 count;
+    @JsonProperty private String              cameraBucketId;
+    @JsonProperty private Map<String, Bucket> buckets = new HashMap<>();
+
+    Table() {}
+
+    @Nullable String getCameraBucketId() {
+      return cameraBucketId;
+    }
+
+    @NonNull Map<String, Bucket> getBuckets() {
+      return buckets;
+    }
+
+    private void add(@NonNull Cursor cursor) {
+      long   id        = cursor.getLong(cursor.getColumnIndexOrThrow(Images.Media._ID));
+      String path      = cursor.getString(cursor.getColumnIndexOrThrow(Images.Media.DATA));
+      String bucketId  = cursor.getString(cursor.getColumnIndexOrThrow(Images.Media.BUCKET_ID));
+      String title     = cursor.getString(cursor.getColumnIndexOrThrow(Images.Media.BUCKET_DISPLAY_NAME));
+      long   timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(Images.Media.DATE_TAKEN));
+      long   changed   = cursor.getLong(cursor.getColumnIndexOrThrow(getChangeColumn()));
+      Bucket bucket    = buckets.get(bucketId);
+
+      if (bucket == null) {
+        bucket = new Bucket(bucketId, title);
+        buckets.put(bucketId, bucket);
+      }
+
+      bucket.count++;
+
+      if (bucket.thumbnail == null || timestamp > bucket.thumbnailTimestamp) {
+        bucket.thumbnail          = Uri.fromFile(new File(path)).toString();
+        bucket.thumbnailTimestamp = timestamp;
+      }
+
+      if (cameraBucketId == null && path.startsWith(getCameraPath())) {
+        cameraBucketId = bucketId;
+      }
+
+      if (Build.VERSION.SDK_INT >= 30) maxGeneration = Math.max(maxGeneration, changed);
+      else                             maxModified   = Math.max(maxModified, changed);
+
+      maxId = Math.max(maxId, id);
+      count++;
+    }
+
+    private @NonNull Table copy() {
+      Table copy = new Table();
+      copy.maxId          = maxId;
+      copy.maxGeneration  = maxGeneration;
+      copy.maxModified    = maxModified;
+      copy.count          = count;
+      copy.cameraBucketId = cameraBucketId;
+
+      for (Bucket bucket : buckets.values()) {
+        copy.buckets.put(bucket.bucketId, bucket.copy());
+      }
+
+      return copy;
+    }
+
+    private static @NonNull String getCameraPath() {
+      return Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath() + File.separator + "Camera";
+    }
+  }
+
+  static final class Bucket {
+    @JsonProperty private String bucketId;
+    @JsonProperty private String title;
+    @JsonProperty private int    count;
+    @JsonProperty private String thumbnail;
+    @JsonProperty private long   thumbnailTimestamp;
+
+    Bucket() {}
+
+    private Bucket(@NonNull String bucketId, @Nullable String title) {
+      this.bucketId = bucketId;
+      this.title    = title;
+    }
+
+    @NonNull String getBucketId() {
+      return bucketId;
+    }
+
+    @Nullable String getTitle() {
+      return title;
+    }
+
+    int getCount() {
+      return count;
+    }
+
+    @NonNull Uri getThumbnail() {
+      return Uri.parse(thumbnail);
+    }
+
+    long getThumbnailTimestamp() {
+      return thumbnailTimestamp;
+    }
+
+    private @NonNull Bucket copy() {
+      Bucket copy = new Bucket(bucketId, title);
+      copy.count              = count;
+      copy.thumbnail          = thumbnail;
+      copy.thumbnailTimestamp = thumbnailTimestamp;
+      return copy;
+    }
+  }
+}
@@ -106,6 +106,15 @@ public class MediaPickerItemFragment extends Fragment implements MediaPickerItem
 
     viewModel.getMediaInBucket(requireContext(), bucketId).observe(this, adapter::setMedia);
 
+    imageList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+      @Override
+      public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - MediaRepository.PAGE_SIZE / 2) {
+          viewModel.onMoreBucketMediaNeeded(requireContext());
+        }
+      }
+    });
+
     initMediaObserver(viewModel);
   }
 
@@ -0,0 +1,128 @@
+package org.thoughtcrime.securesms.mediasend;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+
+import org.thoughtcrime.securesms.imageeditor.model.EditorModel;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.providers.BlobProvider;
+import org.thoughtcrime.securesms.util.MediaUtil;
+import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Renders the edited images of a send, a bounded number at a time.
+ * <p>
+ * The number of renders in flight is capped by how many full-size output bitmaps fit in the heap
+ * that is currently available. Output bitmaps are taken from and returned to Glide's
+ * {@link BitmapPool}, and the JPEG is compressed straight into a {@link BlobProvider} blob rather
+ * than through an in-memory buffer.
+ */
+class MediaRenderPipeline {
+
+  private static final String TAG = MediaRenderPipeline.class.getSimpleName();
+
+  private static final int   DEFAULT_MAX_CONCURRENCY = Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() - 1, 4));
+  private static final float HEAP_FRACTION           = 0.5f;
+  private static final int   JPEG_QUALITY            = 80;
+
+  private final Context    context;
+  private final BitmapPool bitmapPool;
+  private final int        maxConcurrency;
+
+  MediaRenderPipeline(@NonNull Context context) {
+    this(context, DEFAULT_MAX_CONCURRENCY);
+  }
+
+  MediaRenderPipeline(@NonNull Context context, int maxConcurrency) {
+    this.context        = context.getApplicationContext();
+    this.bitmapPool     = Glide.get(this.context).getBitmapPool();
+    this.maxConcurrency = maxConcurrency;
+  }
+
+  /**
+   * @return The rendered replacement for each media item that could be rendered. Items that fail to
+   *         render are left out, so callers can fall back to the original.
+   */
+  @WorkerThread
+  @NonNull Map<Media, Media> render(@NonNull Map<Media, EditorModel> models) {
+    Map<Media, Media> rendered = new LinkedHashMap<>();
+
+    if (models.isEmpty()) {
+      return rendered;
+    }
+
+    int                        concurrency = getConcurrency(models);
+    ExecutorService            executor    = SignalExecutors.newCachedBoundedExecutor("signal-media-render", concurrency);
+    Map<Media, Future<Media>>  futures     = new LinkedHashMap<>();
+
+    Log.i(TAG, "Rendering " + models.size() + " item(s), " + concurrency + " at a time.");
+
+    try {
+      for (Map.Entry<Media, EditorModel> entry : models.entrySet()) {
+        futures.put(entry.getKey(), executor.submit(() -> render(entry.getKey(), entry.getValue())));
+      }
+
+      for (Map.Entry<Media, Future<Media>> entry : futures.entrySet()) {
+        try {
+          rendered.put(entry.getKey(), entry.getValue().get());
+        } catch (InterruptedException | ExecutionException e) {
+          Log.w(TAG, "Failed to render image. Using base image.", e);
+        }
+      }
+    } finally {
+      executor.shutdown();
+    }
+
+    return rendered;
+  }
+
+  @WorkerThread
+  private @NonNull Media render(@NonNull Media media, @NonNull EditorModel model) throws IOException {
+    Bitmap bitmap = model.render(context, bitmapPool::get);
+
+    try {
+      Uri uri = BlobProvider.getInstance()
+                            .forWriter(outputStream -> {
+                              if (!bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, outputStream)) {
+                                throw new IOException("Failed to compress rendered image.");
+                              }
+                            })
+                            .withMimeType(MediaUtil.IMAGE_JPEG)
+                            .createForSingleSessionOnDisk(context);
+
+      Long size = BlobProvider.getFileSize(uri);
+
+      return new Media(uri, MediaUtil.IMAGE_JPEG, media.getDate(), bitmap.getWidth(), bitmap.getHeight(), size != null ? size : 0, media.getBucketId(), media.getCaption());
+    } finally {
+      bitmapPool.put(bitmap);
+    }
+  }
+
+  private int getConcurrency(@NonNull Map<Media, EditorModel> models) {
+    long largestRender = 1;
+
+    for (EditorModel model : models.values()) {
+      largestRender = Math.max(largestRender, model.getRenderByteCount());
+    }
+
+    Runtime runtime       = Runtime.getRuntime();
+    long    availableHeap = runtime.maxMemory() - (runtime.totalMemory() - runtime.freeMemory());
+    long    fits          = (long) (availableHeap * HEAP_FRACTION) / largestRender;
+
+    return Util.clamp((int) Math.min(fits, maxConcurrency), 1, Math.min(maxConcurrency, models.size()));
+  }
+}
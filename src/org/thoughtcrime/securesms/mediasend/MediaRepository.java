@@ -1,12 +1,12 @@
 package org.thoughtcrime.securesms.mediasend;
 
 import android.annotation.TargetApi;
+import android.content.ContentResolver;
 import android.content.Context;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Build;
-import android.os.Environment;
+import android.os.Bundle;
 import android.provider.MediaStore.Images;
 import android.provider.MediaStore.Video;
 import android.provider.OpenableColumns;
@@ -20,35 +20,53 @@ import com.annimon.stream.Stream;
 import network.loki.messenger.R;
 import org.thoughtcrime.securesms.mms.PartAuthority;
 import org.thoughtcrime.securesms.util.MediaUtil;
-import org.thoughtcrime.securesms.util.Util;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 import org.whispersystems.libsignal.util.guava.Optional;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
 
 /**
  * Handles the retrieval of media present on the user's device.
  */
 class MediaRepository {
 
+  static final int PAGE_SIZE = 120;
+
+  private static final Executor INDEX_EXECUTOR = SignalExecutors.newCachedSingleThreadExecutor("signal-media-index");
+
   /**
-   * Retrieves a list of folders that contain media.
+   * Retrieves a list of folders that contain media. If there's a saved summary of the folders it's
+   * returned right away, followed by the up to date list if anything changed since.
    */
   void getFolders(@NonNull Context context, @NonNull Callback<List<MediaFolder>> callback) {
-    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> callback.onComplete(getFolders(context)));
+    INDEX_EXECUTOR.execute(() -> {
+      MediaFolderIndex         index  = MediaFolderIndex.getInstance(context);
+      MediaFolderIndex.Summary cached = index.getCached();
+
+      if (cached != null) {
+        callback.onComplete(getFolders(context, cached));
+      }
+
+      MediaFolderIndex.Summary refreshed = index.refresh(context);
+
+      if (refreshed != cached) {
+        callback.onComplete(getFolders(context, refreshed));
+      }
+    });
   }
 
   /**
-   * Retrieves a list of media items (images and videos) that are present int he specified bucket.
+   * Retrieves a page of the media items (images and videos) in the specified bucket, newest first.
    */
-  void getMediaInBucket(@NonNull Context context, @NonNull String bucketId, @NonNull Callback<List<Media>> callback) {
-    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> callback.onComplete(getMediaInBucket(context, bucketId)));
+  void getMediaInBucket(@NonNull Context context, @NonNull String bucketId, @NonNull MediaPosition position, @NonNull Callback<MediaPage> callback) {
+    SignalExecutors.BOUNDED.execute(() -> callback.onComplete(getMediaInBucket(context, bucketId, position)));
   }
 
   /**
@@ -61,13 +79,13 @@ class MediaRepository {
       return;
     }
 
-    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> callback.onComplete(getPopulatedMedia(context, media)));
+    SignalExecutors.BOUNDED.execute(() -> callback.onComplete(getPopulatedMedia(context, media)));
   }
 
   @WorkerThread
-  private @NonNull List<MediaFolder> getFolders(@NonNull Context context) {
-    FolderResult imageFolders       = getFolders(context, Images.Media.EXTERNAL_CONTENT_URI);
-    FolderResult videoFolders       = getFolders(context, Video.Media.EXTERNAL_CONTENT_URI);
+  private @NonNull List<MediaFolder> getFolders(@NonNull Context context, @NonNull MediaFolderIndex.Summary summary) {
+    FolderResult imageFolders       = getFolders(summary.getImages());
+    FolderResult videoFolders       = getFolders(summary.getVideos());
     Map<String, FolderData> folders = new HashMap<>(imageFolders.getFolderData());
 
     for (Map.Entry<String, FolderData> entry : videoFolders.getFolderData().entrySet()) {
@@ -107,63 +125,60 @@ class MediaRepository {
     return mediaFolders;
   }
 
-  @WorkerThread
-  private @NonNull FolderResult getFolders(@NonNull Context context, @NonNull Uri contentUri) {
-    String                  cameraPath         = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_DCIM).getAbsolutePath() + File.separator + "Camera";
-    String                  cameraBucketId     = null;
+  private @NonNull FolderResult getFolders(@NonNull MediaFolderIndex.Table table) {
     Uri                     globalThumbnail    = null;
     long                    thumbnailTimestamp = 0;
     Map<String, FolderData> folders            = new HashMap<>();
 
-    String[] projection = new String[] { Images.Media.DATA, Images.Media.BUCKET_ID, Images.Media.BUCKET_DISPLAY_NAME, Images.Media.DATE_TAKEN };
-    String   selection  = Images.Media.DATA + " NOT NULL";
-    String   sortBy     = Images.Media.BUCKET_DISPLAY_NAME + " COLLATE NOCASE ASC, " + Images.Media.DATE_TAKEN + " DESC";
-
-    try (Cursor cursor = context.getContentResolver().query(contentUri, projection, selection, null, sortBy)) {
-      while (cursor != null && cursor.moveToNext()) {
-        String     path      = cursor.getString(cursor.getColumnIndexOrThrow(projection[0]));
-        Uri        thumbnail = Uri.fromFile(new File(path));
-        String     bucketId  = cursor.getString(cursor.getColumnIndexOrThrow(projection[1]));
-        String     title     = cursor.getString(cursor.getColumnIndexOrThrow(projection[2]));
-        long       timestamp = cursor.getLong(cursor.getColumnIndexOrThrow(projection[3]));
-        FolderData folder    = Util.getOrDefault(folders, bucketId, new FolderData(thumbnail, title, bucketId));
-
-        folder.incrementCount();
-        folders.put(bucketId, folder);
+    for (MediaFolderIndex.Bucket bucket : table.getBuckets().values()) {
+      FolderData folder = new FolderData(bucket.getThumbnail(), bucket.getTitle(), bucket.getBucketId());
+      folder.incrementCount(bucket.getCount());
+      folders.put(bucket.getBucketId(), folder);
 
-        if (cameraBucketId == null && path.startsWith(cameraPath)) {
-          cameraBucketId = bucketId;
-        }
-
-        if (timestamp > thumbnailTimestamp) {
-          globalThumbnail    = thumbnail;
-          thumbnailTimestamp = timestamp;
-        }
+      if (bucket.getThumbnailTimestamp() > thumbnailTimestamp) {
+        globalThumbnail    = bucket.getThumbnail();
+        thumbnailTimestamp = bucket.getThumbnailTimestamp();
       }
     }
 
-    return new FolderResult(cameraBucketId, globalThumbnail, thumbnailTimestamp, folders);
+    return new FolderResult(table.getCameraBucketId(), globalThumbnail, thumbnailTimestamp, folders);
   }
 
   @WorkerThread
-  private @NonNull List<Media> getMediaInBucket(@NonNull Context context, @NonNull String bucketId) {
-    List<Media> images = getMediaInBucket(context, bucketId, Images.Media.EXTERNAL_CONTENT_URI, true);
-    List<Media> videos = getMediaInBucket(context, bucketId, Video.Media.EXTERNAL_CONTENT_URI, false);
-    List<Media> media  = new ArrayList<>(images.size() + videos.size());
+  private @NonNull MediaPage getMediaInBucket(@NonNull Context context, @NonNull String bucketId, @NonNull MediaPosition position) {
+    List<Media> images = getMediaInBucket(context, bucketId, Images.Media.EXTERNAL_CONTENT_URI, true, position.imageOffset);
+    List<Media> videos = getMediaInBucket(context, bucketId, Video.Media.EXTERNAL_CONTENT_URI, false, position.videoOffset);
+    List<Media> media  = new ArrayList<>(PAGE_SIZE);
 
-    media.addAll(images);
-    media.addAll(videos);
-    Collections.sort(media, (o1, o2) -> Long.compare(o2.getDate(), o1.getDate()));
+    int imageIndex = 0;
+    int videoIndex = 0;
 
-    return media;
+    while (media.size() < PAGE_SIZE && (imageIndex < images.size() || videoIndex < videos.size())) {
+      boolean takeImage = videoIndex >= videos.size() ||
+                          (imageIndex < images.size() && images.get(imageIndex).getDate() >= videos.get(videoIndex).getDate());
+
+      if (takeImage) media.add(images.get(imageIndex++));
+      else           media.add(videos.get(videoIndex++));
+    }
+
+    boolean moreImages = images.size() == PAGE_SIZE || imageIndex < images.size();
+    boolean moreVideos = videos.size() == PAGE_SIZE || videoIndex < videos.size();
+
+    MediaPosition next = moreImages || moreVideos ? new MediaPosition(position.imageOffset + imageIndex, position.videoOffset + videoIndex)
+                                                  : null;
+
+    return new MediaPage(media, next);
   }
 
+  /**
+   * @return Up to a page of media from the table, starting at the offset.
+   */
   @WorkerThread
-  private @NonNull List<Media> getMediaInBucket(@NonNull Context context, @NonNull String bucketId, @NonNull Uri contentUri, boolean hasOrienation) {
-    List<Media> media         = new LinkedList<>();
+  private @NonNull List<Media> getMediaInBucket(@NonNull Context context, @NonNull String bucketId, @NonNull Uri contentUri, boolean hasOrienation, int offset) {
+    List<Media> media         = new ArrayList<>(PAGE_SIZE);
     String      selection     = Images.Media.BUCKET_ID + " = ? AND " + Images.Media.DATA + " NOT NULL";
     String[]    selectionArgs = new String[] { bucketId };
-    String      sortBy        = Images.Media.DATE_TAKEN + " DESC";
+    String      sortBy        = Images.Media.DATE_TAKEN + " DESC, " + Images.Media._ID + " DESC";
 
     String[] projection;
 
@@ -178,8 +193,12 @@ class MediaRepository {
       selectionArgs = null;
     }
 
-    try (Cursor cursor = context.getContentResolver().query(contentUri, projection, selection, selectionArgs, sortBy)) {
-      while (cursor != null && cursor.moveToNext()) {
+    try (Cursor cursor = queryPage(context, contentUri, projection, selection, selectionArgs, sortBy, offset)) {
+      if (cursor == null) {
+        return media;
+      }
+
+      while (media.size() < PAGE_SIZE && cursor.moveToNext()) {
         Uri    uri         = Uri.withAppendedPath(contentUri, cursor.getString(cursor.getColumnIndexOrThrow(Images.Media._ID)));
         String mimetype    = cursor.getString(cursor.getColumnIndexOrThrow(Images.Media.MIME_TYPE));
         long   dateTaken   = cursor.getLong(cursor.getColumnIndexOrThrow(Images.Media.DATE_TAKEN));
@@ -195,6 +214,58 @@ class MediaRepository {
     return media;
   }
 
+  /**
+   * @return A cursor over the rows from the offset on, positioned before the first of them. The
+   *         provider is asked to apply the limit and offset itself where the platform allows it.
+   *         Below API 26, or when the provider ignores them, the full result is read and skipped
+   *         through instead.
+   */
+  @WorkerThread
+  private @Nullable Cursor queryPage(@NonNull Context context,
+                                     @NonNull Uri contentUri,
+                                     @NonNull String[] projection,
+                                     @NonNull String selection,
+                                     @Nullable String[] selectionArgs,
+                                     @NonNull String sortBy,
+                                     int offset)
+  {
+    Cursor  cursor;
+    boolean offsetApplied = false;
+
+    if (Build.VERSION.SDK_INT >= 26) {
+      Bundle queryArgs = new Bundle();
+      queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+      queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+      queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortBy);
+      queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, PAGE_SIZE);
+      queryArgs.putInt(ContentResolver.QUERY_ARG_OFFSET, offset);
+
+      cursor = context.getContentResolver().query(contentUri, projection, queryArgs, null);
+
+      if (cursor != null) {
+        String[]     honoredArgs = cursor.getExtras().getStringArray(ContentResolver.EXTRA_HONORED_ARGS);
+        List<String> honored     = honoredArgs != null ? Arrays.asList(honoredArgs) : Collections.emptyList();
+
+        offsetApplied = honored.contains(ContentResolver.QUERY_ARG_OFFSET);
+
+        // A limit without the offset would cut the rows off before the ones we skip to
+        if (!offsetApplied && offset > 0 && honored.contains(ContentResolver.QUERY_ARG_LIMIT)) {
+          cursor.close();
+          cursor = context.getContentResolver().query(contentUri, projection, selection, selectionArgs, sortBy);
+        }
+      }
+    } else {
+      cursor = context.getContentResolver().query(contentUri, projection, selection, selectionArgs, sortBy);
+    }
+
+    if (cursor != null && !offsetApplied && offset > 0 && !cursor.moveToPosition(offset - 1)) {
+      cursor.close();
+      return null;
+    }
+
+    return cursor;
+  }
+
   @WorkerThread
   private List<Media> getPopulatedMedia(@NonNull Context context, @NonNull List<Media> media) {
     return Stream.of(media).map(m -> {
@@ -351,6 +422,42 @@ class MediaRepository {
     }
   }
 
+  /**
+   * Where a page of bucket media starts, as an offset into each of the image and video tables.
+   */
+  static final class MediaPosition {
+    static final MediaPosition START = new MediaPosition(0, 0);
+
+    private final int imageOffset;
+    private final int videoOffset;
+
+    private MediaPosition(int imageOffset, int videoOffset) {
+      this.imageOffset = imageOffset;
+      this.videoOffset = videoOffset;
+    }
+  }
+
+  static final class MediaPage {
+    private final List<Media>   media;
+    private final MediaPosition next;
+
+    private MediaPage(@NonNull List<Media> media, @Nullable MediaPosition next) {
+      this.media = media;
+      this.next  = next;
+    }
+
+    @NonNull List<Media> getMedia() {
+      return media;
+    }
+
+    /**
+     * @return Where the next page starts, or null if this is the last one.
+     */
+    @Nullable MediaPosition getNext() {
+      return next;
+    }
+  }
+
   interface Callback<E> {
     void onComplete(@NonNull E result);
   }
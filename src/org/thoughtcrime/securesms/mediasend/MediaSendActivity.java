@@ -304,7 +304,7 @@ public class MediaSendActivity extends PassphraseRequiredActionBarActivity imple
 
       Log.i(TAG, "Camera capture stored: " + media.getUri().toString());
 
-      viewModel.onImageCaptured(media);
+      viewModel.onImageCaptured(this, media);
       navigateToMediaSend(recipient, transport, dynamicLanguage.getCurrentLocale());
     });
   }
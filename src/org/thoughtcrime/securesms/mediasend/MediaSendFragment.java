@@ -3,7 +3,6 @@ package org.thoughtcrime.securesms.mediasend;
 import android.annotation.SuppressLint;
 import android.arch.lifecycle.ViewModelProviders;
 import android.content.Context;
-import android.graphics.Bitmap;
 import android.graphics.PorterDuff;
 import android.graphics.Rect;
 import android.net.Uri;
@@ -11,6 +10,7 @@ import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 import android.support.v4.app.Fragment;
 import android.support.v4.view.ViewPager;
 import android.support.v7.app.AlertDialog;
@@ -40,31 +40,25 @@ import org.thoughtcrime.securesms.components.emoji.EmojiToggle;
 import org.thoughtcrime.securesms.components.emoji.MediaKeyboard;
 import org.thoughtcrime.securesms.contactshare.SimpleTextWatcher;
 import org.thoughtcrime.securesms.imageeditor.model.EditorModel;
-import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.mediapreview.MediaRailAdapter;
 import org.thoughtcrime.securesms.mms.GlideApp;
-import org.thoughtcrime.securesms.providers.BlobProvider;
+import org.thoughtcrime.securesms.mms.MediaConstraints;
+import org.thoughtcrime.securesms.mms.MediaTranscoder;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.scribbles.ImageEditorFragment;
 import org.thoughtcrime.securesms.util.CharacterCalculator.CharacterState;
-import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.Stopwatch;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
 import org.thoughtcrime.securesms.util.ThemeUtil;
 import org.thoughtcrime.securesms.util.Util;
-import org.thoughtcrime.securesms.util.concurrent.ListenableFuture;
-import org.thoughtcrime.securesms.util.concurrent.SettableFuture;
 import org.thoughtcrime.securesms.util.views.Stub;
 import org.whispersystems.libsignal.util.guava.Optional;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.ExecutionException;
 
 /**
  * Allows the user to edit and caption a set of media items before choosing to send them.
@@ -425,7 +419,9 @@ public class MediaSendFragment extends Fragment implements ViewTreeObserver.OnGl
 
   @SuppressLint("StaticFieldLeak")
   private void processMedia(@NonNull List<Media> mediaList, @NonNull Map<Uri, Object> savedState) {
-    Map<Media, ListenableFuture<Bitmap>> futures = new HashMap<>();
+    Map<Media, EditorModel> models           = new HashMap<>();
+    MediaConstraints        mediaConstraints = viewModel.getMediaConstraints();
+    MediaRenderPipeline     renderPipeline   = new MediaRenderPipeline(requireContext());
 
     for (Media media : mediaList) {
       Object state = savedState.get(media.getUri());
@@ -433,7 +429,7 @@ public class MediaSendFragment extends Fragment implements ViewTreeObserver.OnGl
       if (state instanceof ImageEditorFragment.Data) {
         EditorModel model = ((ImageEditorFragment.Data) state).readModel();
         if (model != null && model.isChanged()) {
-          futures.put(media, render(requireContext(), model));
+          models.put(media, model);
         }
       }
     }
@@ -461,31 +457,19 @@ public class MediaSendFragment extends Fragment implements ViewTreeObserver.OnGl
 
       @Override
       protected List<Media> doInBackground(Void... voids) {
-        Context     context      = requireContext();
-        List<Media> updatedMedia = new ArrayList<>(mediaList.size());
+        Context           context      = requireContext();
+        Map<Media, Media> rendered     = renderPipeline.render(models);
+        List<Media>       updatedMedia = new ArrayList<>(mediaList.size());
+
+        renderTimer.split("render");
 
         for (Media media : mediaList) {
-          if (futures.containsKey(media)) {
-            try {
-              Bitmap                 bitmap   = futures.get(media).get();
-              ByteArrayOutputStream  baos     = new ByteArrayOutputStream();
-              bitmap.compress(Bitmap.CompressFormat.JPEG, 80, baos);
-
-              Uri uri = BlobProvider.getInstance()
-                                    .forData(baos.toByteArray())
-                                    .withMimeType(MediaUtil.IMAGE_JPEG)
-                                    .createForSingleSessionOnDisk(context, e -> Log.w(TAG, "Failed to write to disk.", e));
-
-              Media updated = new Media(uri, MediaUtil.IMAGE_JPEG, media.getDate(), bitmap.getWidth(), bitmap.getHeight(), baos.size(), media.getBucketId(), media.getCaption());
-
-              updatedMedia.add(updated);
-              renderTimer.split("item");
-            } catch (InterruptedException | ExecutionException | IOException e) {
-              Log.w(TAG, "Failed to render image. Using base image.");
-              updatedMedia.add(media);
-            }
-          } else {
+          if (rendered.containsKey(media)) {
+            updatedMedia.add(rendered.get(media));
+          } else if (models.containsKey(media)) {
             updatedMedia.add(media);
+          } else {
+            updatedMedia.add(getPreparedMediaOrDefault(context, media, mediaConstraints));
           }
         }
         return updatedMedia;
@@ -503,12 +487,15 @@ public class MediaSendFragment extends Fragment implements ViewTreeObserver.OnGl
     }.execute();
   }
 
-  private static ListenableFuture<Bitmap> render(@NonNull Context context, @NonNull EditorModel model) {
-    SettableFuture<Bitmap> future = new SettableFuture<>();
+  @WorkerThread
+  private static @NonNull Media getPreparedMediaOrDefault(@NonNull Context context, @NonNull Media media, @NonNull MediaConstraints mediaConstraints) {
+    MediaTranscoder.PreparedMedia prepared = MediaTranscoder.getInstance().getPrepared(context, media.getUri(), mediaConstraints);
 
-    AsyncTask.THREAD_POOL_EXECUTOR.execute(() -> future.set(model.render(context)));
+    if (prepared == null) {
+      return media;
+    }
 
-    return future;
+    return new Media(prepared.getUri(), prepared.getMimeType(), media.getDate(), prepared.getWidth(), prepared.getHeight(), prepared.getSize(), media.getBucketId(), media.getCaption());
   }
 
   public void onRequestFullScreen(boolean fullScreen) {
@@ -13,14 +13,17 @@ import android.text.TextUtils;
 import com.annimon.stream.Stream;
 
 import org.thoughtcrime.securesms.TransportOption;
+import org.thoughtcrime.securesms.mediasend.MediaRepository.MediaPosition;
 import org.thoughtcrime.securesms.logging.Log;
 import org.thoughtcrime.securesms.mms.MediaConstraints;
+import org.thoughtcrime.securesms.mms.MediaTranscoder;
 import org.thoughtcrime.securesms.providers.BlobProvider;
 import org.thoughtcrime.securesms.util.MediaUtil;
 import org.thoughtcrime.securesms.util.SingleLiveEvent;
 import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.util.guava.Optional;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedList;
@@ -55,6 +58,9 @@ class MediaSendViewModel extends ViewModel {
   private boolean                     sentMedia;
   private Optional<Media>             lastImageCapture;
   private int                         maxSelection;
+  private String                      pagedBucketId;
+  private MediaPosition               nextBucketPosition;
+  private boolean                     bucketPageLoading;
 
   private MediaSendViewModel(@NonNull Application application, @NonNull MediaRepository repository) {
     this.application            = application;
@@ -118,6 +124,7 @@ class MediaSendViewModel extends ViewModel {
 
         selectedMedia.setValue(filteredMedia);
         countButtonState.setValue(new CountButtonState(filteredMedia.size(), countButtonVisibility));
+        prepareMedia(context, filteredMedia);
       });
     });
   }
@@ -138,6 +145,7 @@ class MediaSendViewModel extends ViewModel {
 
         selectedMedia.setValue(filteredMedia);
         countButtonState.setValue(new CountButtonState(filteredMedia.size(), countButtonVisibility));
+        prepareMedia(context, filteredMedia);
       });
     });
   }
@@ -197,6 +205,10 @@ class MediaSendViewModel extends ViewModel {
 
     Media removed = getSelectedMediaOrDefault().remove(position);
 
+    if (removed != null) {
+      MediaTranscoder.getInstance().release(context, removed.getUri());
+    }
+
     if (removed != null && BlobProvider.isAuthority(removed.getUri())) {
       BlobProvider.getInstance().delete(context, removed.getUri());
     }
@@ -204,7 +216,7 @@ class MediaSendViewModel extends ViewModel {
     selectedMedia.setValue(selectedMedia.getValue());
   }
 
-  void onImageCaptured(@NonNull Media media) {
+  void onImageCaptured(@NonNull Context context, @NonNull Media media) {
     List<Media> selected = selectedMedia.getValue();
 
     if (selected == null) {
@@ -230,6 +242,7 @@ class MediaSendViewModel extends ViewModel {
     }
 
     countButtonState.setValue(new CountButtonState(selected.size(), countButtonVisibility));
+    prepareMedia(context, Collections.singletonList(media));
   }
 
   void onImageCaptureUndo(@NonNull Context context) {
@@ -239,6 +252,7 @@ class MediaSendViewModel extends ViewModel {
       selected.remove(lastImageCapture.get());
       selectedMedia.setValue(selected);
       countButtonState.setValue(new CountButtonState(selected.size(), countButtonVisibility));
+      MediaTranscoder.getInstance().release(context, lastImageCapture.get().getUri());
       BlobProvider.getInstance().delete(context, lastImageCapture.get().getUri());
     }
   }
@@ -268,10 +282,38 @@ class MediaSendViewModel extends ViewModel {
   }
 
   @NonNull LiveData<List<Media>> getMediaInBucket(@NonNull Context context, @NonNull String bucketId) {
-    repository.getMediaInBucket(context, bucketId, bucketMedia::postValue);
+    pagedBucketId      = bucketId;
+    nextBucketPosition = MediaPosition.START;
+    bucketPageLoading  = false;
+
+    bucketMedia.setValue(Collections.emptyList());
+    onMoreBucketMediaNeeded(context);
+
     return bucketMedia;
   }
 
+  /**
+   * Loads the next page of the bucket that was last requested, if there is one.
+   */
+  void onMoreBucketMediaNeeded(@NonNull Context context) {
+    if (bucketPageLoading || nextBucketPosition == null || pagedBucketId == null) return;
+
+    String requestedBucketId = pagedBucketId;
+
+    bucketPageLoading = true;
+
+    repository.getMediaInBucket(context, requestedBucketId, nextBucketPosition, page -> Util.runOnMain(() -> {
+      if (!requestedBucketId.equals(pagedBucketId)) return;
+
+      List<Media> media = new ArrayList<>(getBucketMediaOrDefault());
+      media.addAll(page.getMedia());
+
+      nextBucketPosition = page.getNext();
+      bucketPageLoading  = false;
+      bucketMedia.setValue(media);
+    }));
+  }
+
   @NonNull LiveData<List<MediaFolder>> getFolders(@NonNull Context context) {
     repository.getFolders(context, folders::postValue);
     return folders;
@@ -305,11 +347,28 @@ class MediaSendViewModel extends ViewModel {
     return maxSelection;
   }
 
+  @NonNull MediaConstraints getMediaConstraints() {
+    return mediaConstraints;
+  }
+
+  private void prepareMedia(@NonNull Context context, @NonNull List<Media> media) {
+    for (Media item : media) {
+      if (MediaTranscoder.shouldPrepare(context, item.getMimeType(), item.getWidth(), item.getHeight(), item.getSize(), mediaConstraints)) {
+        MediaTranscoder.getInstance().prepare(context, item.getUri(), mediaConstraints);
+      }
+    }
+  }
+
   private @NonNull List<Media> getSelectedMediaOrDefault() {
     return selectedMedia.getValue() == null ? Collections.emptyList()
                                             : selectedMedia.getValue();
   }
 
+  private @NonNull List<Media> getBucketMediaOrDefault() {
+    return bucketMedia.getValue() == null ? Collections.emptyList()
+                                          : bucketMedia.getValue();
+  }
+
   private @NonNull List<Media> getFilteredMedia(@NonNull Context context, @NonNull List<Media> media, @NonNull MediaConstraints mediaConstraints) {
     return Stream.of(media).filter(m -> MediaUtil.isGif(m.getMimeType())       ||
                                         MediaUtil.isImageType(m.getMimeType()) ||
@@ -325,6 +384,10 @@ class MediaSendViewModel extends ViewModel {
   @Override
   protected void onCleared() {
     if (!sentMedia) {
+      Stream.of(getSelectedMediaOrDefault())
+            .map(Media::getUri)
+            .forEach(uri -> MediaTranscoder.getInstance().release(application, uri));
+
       Stream.of(getSelectedMediaOrDefault())
             .map(Media::getUri)
             .filter(BlobProvider::isAuthority)
@@ -37,6 +37,14 @@ public abstract class MediaConstraints {
   public abstract int getAudioMaxSize(Context context);
   public abstract int getDocumentMaxSize(Context context);
 
+  /**
+   * Identifies the image limits of these constraints, so media prepared for one set of limits is
+   * never reused for another.
+   */
+  public @NonNull String getImageConstraintsKey(@NonNull Context context) {
+    return getImageMaxWidth(context) + "x" + getImageMaxHeight(context) + ":" + getImageMaxSize(context);
+  }
+
   public boolean isSatisfied(@NonNull Context context, @NonNull Attachment attachment) {
     try {
       return (MediaUtil.isGif(attachment)    && attachment.getSize() <= getGifMaxSize(context)   && isWithinBounds(context, attachment.getDataUri())) ||
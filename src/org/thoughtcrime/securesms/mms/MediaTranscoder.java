@@ -0,0 +1,262 @@
+package org.thoughtcrime.securesms.mms;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.mms.DecryptableStreamUriLoader.DecryptableUri;
+import org.thoughtcrime.securesms.providers.BlobProvider;
+import org.thoughtcrime.securesms.util.BitmapDecodingException;
+import org.thoughtcrime.securesms.util.BitmapUtil;
+import org.thoughtcrime.securesms.util.LRUCache;
+import org.thoughtcrime.securesms.util.MediaUtil;
+import org.thoughtcrime.securesms.util.concurrent.ListenableFuture;
+import org.thoughtcrime.securesms.util.concurrent.SettableFuture;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Resizes and re-encodes images ahead of time, as soon as they're picked for sending, so that the
+ * work is done while the user is still composing rather than inside the upload job.
+ *
+ * Results are written to single-session blobs and cached by (source {@link Uri}, constraints).
+ * Attachments created from a prepared blob are flagged as transcoded in the
+ * {@link org.thoughtcrime.securesms.database.AttachmentDatabase}, which lets the upload job send
+ * them as-is, including on retry.
+ */
+public class MediaTranscoder {
+
+  private static final String TAG = MediaTranscoder.class.getSimpleName();
+
+  private static final int MAX_CACHED_RESULTS = 64;
+
+  private static final MediaTranscoder INSTANCE = new MediaTranscoder();
+
+  private final Executor                                   executor;
+  private final Map<String, SettableFuture<PreparedMedia>> results;
+  private final Set<SettableFuture<PreparedMedia>>         sending;
+  private final Set<Uri>                                   transcodedUris;
+
+  private Context applicationContext;
+
+  public static MediaTranscoder getInstance() {
+    return INSTANCE;
+  }
+
+  private MediaTranscoder() {
+    this.executor       = SignalExecutors.newCachedSingleThreadExecutor("signal-media-transcoder");
+    this.sending        = new HashSet<>();
+    this.transcodedUris = Collections.synchronizedSet(new HashSet<>());
+    this.results        = new LRUCache<String, SettableFuture<PreparedMedia>>(MAX_CACHED_RESULTS) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, SettableFuture<PreparedMedia>> eldest) {
+        if (!super.removeEldestEntry(eldest)) {
+          return false;
+        }
+
+        discard(applicationContext, eldest.getValue());
+        return true;
+      }
+    };
+  }
+
+  /**
+   * @return True if the media should be prepared ahead of sending. Only still images that would
+   *         otherwise be re-encoded by the upload job qualify.
+   */
+  public static boolean shouldPrepare(@NonNull Context context,
+                                      @NonNull String mimeType,
+                                      int width,
+                                      int height,
+                                      long size,
+                                      @NonNull MediaConstraints constraints)
+  {
+    if (!MediaUtil.isImageType(mimeType) || MediaUtil.isGif(mimeType)) {
+      return false;
+    }
+
+    return MediaUtil.isJpegType(mimeType)                    ||
+           size   > constraints.getImageMaxSize(context)     ||
+           width  > constraints.getImageMaxWidth(context)    ||
+           height > constraints.getImageMaxHeight(context);
+  }
+
+  /**
+   * @return True if the uri points at media produced by this transcoder.
+   */
+  public static boolean isTranscoded(@Nullable Uri uri) {
+    return uri != null && INSTANCE.transcodedUris.contains(uri);
+  }
+
+  /**
+   * Starts preparing the media in the background. Does nothing if a result for the same source and
+   * constraints is already available or in progress.
+   */
+  public synchronized void prepare(@NonNull Context context, @NonNull Uri source, @NonNull MediaConstraints constraints) {
+    Context appContext = context.getApplicationContext();
+    String  key        = buildKey(appContext, source, constraints);
+
+    this.applicationContext = appContext;
+
+    if (results.containsKey(key)) {
+      return;
+    }
+
+    SettableFuture<PreparedMedia> future = new SettableFuture<>();
+    results.put(key, future);
+
+    executor.execute(() -> {
+      try {
+        future.set(transcode(appContext, source, constraints));
+      } catch (IOException e) {
+        Log.w(TAG, "Failed to prepare media, it will be processed at send time instead.", e);
+        future.set(null);
+      }
+    });
+  }
+
+  /**
+   * Retrieves the prepared version of the media, waiting for any in-progress work to finish. The
+   * result is being sent, so it is kept even if it's evicted from the cache before it's used.
+   *
+   * @return The prepared media, or null if it was never requested or couldn't be prepared.
+   */
+  @WorkerThread
+  public @Nullable PreparedMedia getPrepared(@NonNull Context context, @NonNull Uri source, @NonNull MediaConstraints constraints) {
+    SettableFuture<PreparedMedia> future;
+
+    synchronized (this) {
+      future = results.get(buildKey(context.getApplicationContext(), source, constraints));
+
+      if (future != null) {
+        sending.add(future);
+      }
+    }
+
+    if (future == null) {
+      return null;
+    }
+
+    try {
+      return future.get();
+    } catch (InterruptedException | ExecutionException e) {
+      Log.w(TAG, e);
+      return null;
+    }
+  }
+
+  /**
+   * Discards any prepared versions of the source, e.g. when it's removed from the selection.
+   */
+  public void release(@NonNull Context context, @NonNull Uri source) {
+    String prefix = source.toString() + "|";
+
+    synchronized (this) {
+      Iterator<Map.Entry<String, SettableFuture<PreparedMedia>>> iterator = results.entrySet().iterator();
+
+      while (iterator.hasNext()) {
+        Map.Entry<String, SettableFuture<PreparedMedia>> entry = iterator.next();
+
+        if (!entry.getKey().startsWith(prefix)) continue;
+
+        sending.remove(entry.getValue());
+        discard(context.getApplicationContext(), entry.getValue());
+        iterator.remove();
+      }
+    }
+  }
+
+  /**
+   * Deletes the result's blob once it's ready, unless it has been handed out for sending. A blob
+   * that is being sent is left for the send to read, and goes away with the session.
+   */
+  private void discard(@NonNull Context context, @NonNull SettableFuture<PreparedMedia> future) {
+    future.addListener(new ListenableFuture.Listener<PreparedMedia>() {
+      @Override
+      public void onSuccess(PreparedMedia result) {
+        synchronized (MediaTranscoder.this) {
+          if (sending.remove(future) || result == null) {
+            return;
+          }
+        }
+
+        transcodedUris.remove(result.getUri());
+        BlobProvider.getInstance().delete(context, result.getUri());
+      }
+
+      @Override
+      public void onFailure(ExecutionException e) { }
+    });
+  }
+
+  @WorkerThread
+  private @NonNull PreparedMedia transcode(@NonNull Context context, @NonNull Uri source, @NonNull MediaConstraints constraints)
+      throws IOException
+  {
+    try {
+      BitmapUtil.ScaleResult result = BitmapUtil.createScaledBytes(context, new DecryptableUri(source), constraints);
+      Uri                    uri    = BlobProvider.getInstance()
+                                                  .forData(result.getBitmap())
+                                                  .withMimeType(MediaUtil.IMAGE_JPEG)
+                                                  .createForSingleSessionOnDisk(context, e -> Log.w(TAG, "Failed to write to disk.", e));
+
+      transcodedUris.add(uri);
+
+      return new PreparedMedia(uri, MediaUtil.IMAGE_JPEG, result.getWidth(), result.getHeight(), result.getBitmap().length);
+    } catch (BitmapDecodingException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private static @NonNull String buildKey(@NonNull Context context, @NonNull Uri source, @NonNull MediaConstraints constraints) {
+    return source.toString() + "|" + constraints.getImageConstraintsKey(context);
+  }
+
+  public static class PreparedMedia {
+
+    private final Uri    uri;
+    private final String mimeType;
+    private final int    width;
+    private final int    height;
+    private final long   size;
+
+    private PreparedMedia(@NonNull Uri uri, @NonNull String mimeType, int width, int height, long size) {
+      this.uri      = uri;
+      this.mimeType = mimeType;
+      this.width    = width;
+      this.height   = height;
+      this.size     = size;
+    }
+
+    public @NonNull Uri getUri() {
+      return uri;
+    }
+
+    public @NonNull String getMimeType() {
+      return mimeType;
+    }
+
+    public int getWidth() {
+      return width;
+    }
+
+    public int getHeight() {
+      return height;
+    }
+
+    public long getSize() {
+      return size;
+    }
+  }
+}
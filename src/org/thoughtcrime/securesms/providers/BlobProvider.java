@@ -14,6 +14,7 @@ import org.thoughtcrime.securesms.crypto.AttachmentSecretProvider;
 import org.thoughtcrime.securesms.crypto.ModernDecryptingPartInputStream;
 import org.thoughtcrime.securesms.crypto.ModernEncryptingPartOutputStream;
 import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.util.CountingOutputStream;
 import org.thoughtcrime.securesms.util.Util;
 import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
@@ -74,6 +75,14 @@ public class BlobProvider {
     return new BlobBuilder(data, fileSize);
   }
 
+  /**
+   * Begin building a blob whose content is produced by a {@link BlobWriter}, for content that would
+   * otherwise have to be buffered in memory to learn its size. Only disk storage is supported.
+   */
+  public WriterBlobBuilder forWriter(@NonNull BlobWriter writer) {
+    return new WriterBlobBuilder(writer);
+  }
+
   /**
    * Retrieve a stream for the content with the specified URI.
    * @throws IOException If the stream fails to open or the spec of the URI doesn't match.
@@ -192,6 +201,32 @@ public class BlobProvider {
     return buildUri(blobSpec);
   }
 
+  @WorkerThread
+  private @NonNull Uri writeBlobToDisk(@NonNull Context context,
+                                       @NonNull StorageType storageType,
+                                       @NonNull String id,
+                                       @NonNull String mimeType,
+                                       @Nullable String fileName,
+                                       @NonNull BlobWriter writer)
+      throws IOException
+  {
+    AttachmentSecret attachmentSecret = AttachmentSecretProvider.getInstance(context).getOrCreateAttachmentSecret();
+    String           directory        = getDirectory(storageType);
+    File             outputFile       = new File(getOrCreateCacheDirectory(context, directory), buildFileName(id));
+
+    try (CountingOutputStream outputStream = new CountingOutputStream(ModernEncryptingPartOutputStream.createFor(attachmentSecret, outputFile, true).second)) {
+      writer.write(outputStream);
+      outputStream.flush();
+
+      return buildUri(storageType, mimeType, fileName, outputStream.getCount(), id);
+    } catch (IOException e) {
+      if (!outputFile.delete()) {
+        Log.w(TAG, "Failed to delete partially written blob.");
+      }
+      throw e;
+    }
+  }
+
   private synchronized @NonNull Uri writeBlobSpecToMemory(@NonNull BlobSpec blobSpec, @NonNull byte[] data) {
     Uri uri = buildUri(blobSpec);
     memoryBlobs.put(uri, data);
@@ -207,12 +242,21 @@ public class BlobProvider {
   }
 
   private static @NonNull Uri buildUri(@NonNull BlobSpec blobSpec) {
+    return buildUri(blobSpec.getStorageType(), blobSpec.getMimeType(), blobSpec.getFileName(), blobSpec.getFileSize(), blobSpec.getId());
+  }
+
+  private static @NonNull Uri buildUri(@NonNull StorageType storageType,
+                                       @NonNull String mimeType,
+                                       @Nullable String fileName,
+                                       long fileSize,
+                                       @NonNull String id)
+  {
     return CONTENT_URI.buildUpon()
-                      .appendPath(blobSpec.getStorageType().encode())
-                      .appendPath(blobSpec.getMimeType())
-                      .appendPath(blobSpec.getFileName())
-                      .appendEncodedPath(String.valueOf(blobSpec.getFileSize()))
-                      .appendPath(blobSpec.getId())
+                      .appendPath(storageType.encode())
+                      .appendPath(mimeType)
+                      .appendPath(fileName)
+                      .appendEncodedPath(String.valueOf(fileSize))
+                      .appendPath(id)
                       .build();
   }
 
@@ -311,6 +355,44 @@ public class BlobProvider {
     }
   }
 
+  public class WriterBlobBuilder {
+
+    private final BlobWriter writer;
+    private final String     id;
+
+    private String mimeType;
+    private String fileName;
+
+    private WriterBlobBuilder(@NonNull BlobWriter writer) {
+      this.id     = UUID.randomUUID().toString();
+      this.writer = writer;
+    }
+
+    public WriterBlobBuilder withMimeType(@NonNull String mimeType) {
+      this.mimeType = mimeType;
+      return this;
+    }
+
+    public WriterBlobBuilder withFileName(@NonNull String fileName) {
+      this.fileName = fileName;
+      return this;
+    }
+
+    /**
+     * Runs the writer on the calling thread and creates a blob that will exist for a single app
+     * session. Unlike {@link BlobBuilder}, the data is completely written when this returns.
+     */
+    @WorkerThread
+    public Uri createForSingleSessionOnDisk(@NonNull Context context) throws IOException {
+      return writeBlobToDisk(context, StorageType.SINGLE_SESSION_DISK, id, mimeType, fileName, writer);
+    }
+  }
+
+  public interface BlobWriter {
+    @WorkerThread
+    void write(@NonNull OutputStream outputStream) throws IOException;
+  }
+
   public interface ErrorListener {
     @WorkerThread
     void onError(IOException e);
@@ -170,6 +170,13 @@ public class SearchFragment extends Fragment implements SearchListAdapter.EventL
     }.execute();
   }
 
+  @Override
+  public void onMessagesEndReached() {
+    if (viewModel != null) {
+      viewModel.onMessagesEndReached();
+    }
+  }
+
   public void updateSearchQuery(@NonNull String query) {
     if (viewModel != null) {
       viewModel.updateQuery(query);
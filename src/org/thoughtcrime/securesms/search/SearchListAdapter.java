@@ -27,6 +27,8 @@ class SearchListAdapter extends    RecyclerView.Adapter<SearchListAdapter.Search
   private static final int TYPE_CONTACTS      = 2;
   private static final int TYPE_MESSAGES      = 3;
 
+  private static final int LOAD_MORE_THRESHOLD = 20;
+
   private final GlideRequests glideRequests;
   private final EventListener eventListener;
   private final Locale        locale;
@@ -69,6 +71,10 @@ class SearchListAdapter extends    RecyclerView.Adapter<SearchListAdapter.Search
 
     if (messageResult != null) {
       holder.bind(messageResult, glideRequests, eventListener, locale, searchResult.getQuery());
+
+      if (position >= getItemCount() - LOAD_MORE_THRESHOLD) {
+        eventListener.onMessagesEndReached();
+      }
     }
   }
 
@@ -145,6 +151,7 @@ class SearchListAdapter extends    RecyclerView.Adapter<SearchListAdapter.Search
     void onConversationClicked(@NonNull ThreadRecord threadRecord);
     void onContactClicked(@NonNull Recipient contact);
     void onMessageClicked(@NonNull MessageResult message);
+    void onMessagesEndReached();
   }
 
   static class SearchResultViewHolder extends RecyclerView.ViewHolder {
@@ -3,9 +3,12 @@ package org.thoughtcrime.securesms.search;
 import android.Manifest;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.DataSetObserver;
 import android.database.DatabaseUtils;
 import android.database.MergeCursor;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.text.TextUtils;
 
 import com.annimon.stream.Stream;
@@ -15,8 +18,12 @@ import org.thoughtcrime.securesms.contacts.ContactAccessor;
 import org.thoughtcrime.securesms.contacts.ContactsDatabase;
 import org.thoughtcrime.securesms.database.Address;
 import org.thoughtcrime.securesms.database.CursorList;
+import org.thoughtcrime.securesms.database.DatabaseChangeNotifier;
+import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.MmsSmsColumns;
 import org.thoughtcrime.securesms.database.SearchDatabase;
+import org.thoughtcrime.securesms.database.SearchDatabase.MessagePage;
+import org.thoughtcrime.securesms.database.SearchDatabase.MessagePosition;
 import org.thoughtcrime.securesms.database.ThreadDatabase;
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
 import org.thoughtcrime.securesms.logging.Log;
@@ -24,7 +31,10 @@ import org.thoughtcrime.securesms.permissions.Permissions;
 import org.thoughtcrime.securesms.recipients.Recipient;
 import org.thoughtcrime.securesms.search.model.MessageResult;
 import org.thoughtcrime.securesms.search.model.SearchResult;
+import org.thoughtcrime.securesms.util.SearchUtil;
 import org.thoughtcrime.securesms.util.Stopwatch;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
+import org.whispersystems.libsignal.util.Pair;
 
 import java.util.Collections;
 import java.util.HashSet;
@@ -61,7 +71,12 @@ public class SearchRepository {
   private final ContactsDatabase contactsDatabase;
   private final ThreadDatabase   threadDatabase;
   private final ContactAccessor  contactAccessor;
-  private final Executor         executor;
+  private final Executor               executor;
+  private final Executor               parallelExecutor;
+  private final DatabaseChangeNotifier changeNotifier;
+
+  private          ActiveQuery    activeQuery;
+  private volatile MessageMatches lastMessageMatches;
 
   public SearchRepository(@NonNull Context context,
                           @NonNull SearchDatabase searchDatabase,
@@ -69,6 +84,19 @@ public class SearchRepository {
                           @NonNull ThreadDatabase threadDatabase,
                           @NonNull ContactAccessor contactAccessor,
                           @NonNull Executor executor)
+  {
+    this(context, searchDatabase, contactsDatabase, threadDatabase, contactAccessor, executor, SignalExecutors.BOUNDED, DatabaseFactory.getChangeNotifier(context));
+  }
+
+  @VisibleForTesting
+  SearchRepository(@NonNull Context context,
+                   @NonNull SearchDatabase searchDatabase,
+                   @NonNull ContactsDatabase contactsDatabase,
+                   @NonNull ThreadDatabase threadDatabase,
+                   @NonNull ContactAccessor contactAccessor,
+                   @NonNull Executor executor,
+                   @NonNull Executor parallelExecutor,
+                   @NonNull DatabaseChangeNotifier changeNotifier)
   {
     this.context          = context.getApplicationContext();
     this.searchDatabase   = searchDatabase;
@@ -76,35 +104,101 @@ public class SearchRepository {
     this.threadDatabase   = threadDatabase;
     this.contactAccessor  = contactAccessor;
     this.executor         = executor;
+    this.parallelExecutor = parallelExecutor;
+    this.changeNotifier   = changeNotifier;
   }
 
+  /**
+   * Queries contacts, conversations and messages in parallel. The callback is invoked each time one
+   * of them completes, with a result containing everything found so far. Starting a new query
+   * cancels the previous one, and its remaining results are closed rather than delivered.
+   */
   public void query(@NonNull String query, @NonNull Callback<SearchResult> callback) {
     if (TextUtils.isEmpty(query)) {
+      cancelActiveQuery();
       callback.onResult(SearchResult.EMPTY);
       return;
     }
 
-    executor.execute(() -> {
-      Stopwatch timer = new Stopwatch("FtsQuery");
+    String      cleanQuery = sanitizeQuery(query);
+    ActiveQuery active     = new ActiveQuery(cleanQuery, callback);
 
-      String cleanQuery = sanitizeQuery(query);
-      timer.split("clean");
+    synchronized (this) {
+      if (activeQuery != null) {
+        activeQuery.cancel();
+      }
+      activeQuery = active;
+    }
 
-      CursorList<Recipient> contacts = queryContacts(cleanQuery);
-      timer.split("contacts");
+    parallelExecutor.execute(() -> {
+      if (active.isCanceled()) return;
+      active.setContacts(queryContacts(cleanQuery));
+    });
 
-      CursorList<ThreadRecord> conversations = queryConversations(cleanQuery);
-      timer.split("conversations");
+    parallelExecutor.execute(() -> {
+      if (active.isCanceled()) return;
+      active.setConversations(queryConversations(cleanQuery));
+    });
 
-      CursorList<MessageResult> messages = queryMessages(cleanQuery);
-      timer.split("messages");
+    parallelExecutor.execute(() -> {
+      if (active.isCanceled()) return;
+      queryMessagesIncrementally(active);
+    });
+  }
 
-      timer.stop(TAG);
+  /**
+   * Fetches the next page of message matches for the active query, if there is one, and delivers
+   * the result again with those messages appended.
+   */
+  public void loadMoreMessages() {
+    ActiveQuery active;
+
+    synchronized (this) {
+      active = activeQuery;
+    }
+
+    if (active == null) return;
+
+    MessagePosition next = active.startLoadingMore();
 
-      callback.onResult(new SearchResult(cleanQuery, contacts, conversations, messages));
+    if (next == null) return;
+
+    parallelExecutor.execute(() -> {
+      Stopwatch   timer = new Stopwatch("FtsPage");
+      MessagePage page  = searchDatabase.queryMessages(active.query, next);
+      timer.split("messages");
+      active.appendMessages(page.getCursor(), page.getNext());
+      timer.stop(TAG);
     });
   }
 
+  private synchronized void cancelActiveQuery() {
+    if (activeQuery != null) {
+      activeQuery.cancel();
+      activeQuery = null;
+    }
+
+    setLastMessageMatches(null);
+  }
+
+  /**
+   * Replaces the matches that later queries may refine. The matches are only watched for changes
+   * to the database while they're held here.
+   */
+  private synchronized void setLastMessageMatches(@Nullable MessageMatches matches) {
+    if (lastMessageMatches != null && lastMessageMatches != matches) {
+      changeNotifier.removeListener(lastMessageMatches.invalidationListener);
+    }
+
+    lastMessageMatches = matches;
+  }
+
+  private synchronized void clearLastMessageMatches(@NonNull MessageMatches matches) {
+    if (lastMessageMatches == matches) {
+      setLastMessageMatches(null);
+    }
+  }
+
   public void query(@NonNull String query, long threadId, @NonNull Callback<CursorList<MessageResult>> callback) {
     if (TextUtils.isEmpty(query)) {
       callback.onResult(CursorList.emptyList());
@@ -141,10 +235,60 @@ public class SearchRepository {
                                  : CursorList.emptyList();
   }
 
-  private CursorList<MessageResult> queryMessages(@NonNull String query) {
-    Cursor messages = searchDatabase.queryMessages(query);
-    return messages != null ? new CursorList<>(messages, new MessageModelBuilder(context))
-                            : CursorList.emptyList();
+  /**
+   * If the last complete set of message matches came from a prefix of this query, only those
+   * messages can match, so they are re-checked instead of searching the whole index again.
+   * Otherwise only the first page of matches is loaded.
+   */
+  private void queryMessagesIncrementally(@NonNull ActiveQuery active) {
+    Stopwatch            timer        = new Stopwatch("FtsQuery");
+    String               query        = active.query;
+    MessageMatches       previous     = lastMessageMatches;
+    InvalidationListener invalidation = new InvalidationListener();
+    Cursor               messages;
+    MessagePosition      next;
+
+    // Subscribed before querying, so a change that lands while the query runs isn't missed
+    changeNotifier.addListener(invalidation);
+
+    if (previous != null && previous.canRefine(query)) {
+      messages = searchDatabase.queryMessages(query, previous.smsIds, previous.mmsIds);
+      next     = null;
+      timer.split("refine");
+    } else {
+      MessagePage page = searchDatabase.queryMessages(query);
+      messages = page.getCursor();
+      next     = page.getNext();
+      timer.split("messages");
+    }
+
+    if (messages == null) {
+      changeNotifier.removeListener(invalidation);
+      setLastMessageMatches(null);
+      active.setMessages(CursorList.emptyList(), null);
+      return;
+    }
+
+    if (next == null) {
+      MessageMatches matches = MessageMatches.from(query, messages, invalidation);
+
+      messages.registerDataSetObserver(new DataSetObserver() {
+        @Override
+        public void onInvalidated() {
+          clearLastMessageMatches(matches);
+        }
+      });
+
+      setLastMessageMatches(matches);
+    } else {
+      changeNotifier.removeListener(invalidation);
+      setLastMessageMatches(null);
+    }
+
+    CursorList<MessageResult> results = new CursorList<>(messages, new MessageModelBuilder(context));
+
+    timer.stop(TAG);
+    active.setMessages(results, next);
   }
 
   private CursorList<MessageResult> queryMessages(@NonNull String query, long threadId) {
@@ -218,11 +362,167 @@ public class SearchRepository {
       Address   messageAddress        = Address.fromSerialized(cursor.getString(cursor.getColumnIndexOrThrow(SearchDatabase.MESSAGE_ADDRESS)));
       Recipient conversationRecipient = Recipient.from(context, conversationAddress, false);
       Recipient messageRecipient      = Recipient.from(context, messageAddress, false);
-      String    body                  = cursor.getString(cursor.getColumnIndexOrThrow(SearchDatabase.SNIPPET));
+      String    snippet               = cursor.getString(cursor.getColumnIndexOrThrow(SearchDatabase.SNIPPET));
       long      receivedMs            = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.NORMALIZED_DATE_RECEIVED));
       long      threadId              = cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.THREAD_ID));
 
-      return new MessageResult(conversationRecipient, messageRecipient, body, threadId, receivedMs);
+      Pair<String, List<Pair<Integer, Integer>>> highlighted = SearchUtil.stripHighlightMarkers(snippet, SearchDatabase.HIGHLIGHT_START, SearchDatabase.HIGHLIGHT_END);
+
+      return new MessageResult(conversationRecipient, messageRecipient, highlighted.first(), highlighted.second(), threadId, receivedMs);
+    }
+  }
+
+  private static class ActiveQuery {
+
+    private final String                 query;
+    private final Callback<SearchResult> callback;
+
+    private CursorList<Recipient>     contacts;
+    private CursorList<ThreadRecord>  conversations;
+    private CursorList<MessageResult> messages;
+    private MessagePosition           nextMessagePosition;
+    private boolean                   loadingMoreMessages;
+    private boolean                   canceled;
+
+    ActiveQuery(@NonNull String query, @NonNull Callback<SearchResult> callback) {
+      this.query    = query;
+      this.callback = callback;
+    }
+
+    synchronized boolean isCanceled() {
+      return canceled;
+    }
+
+    synchronized void cancel() {
+      canceled = true;
+    }
+
+    void setContacts(@NonNull CursorList<Recipient> contacts) {
+      synchronized (this) {
+        if (canceled) {
+          contacts.close();
+          return;
+        }
+        this.contacts = contacts;
+      }
+      deliver();
+    }
+
+    void setConversations(@NonNull CursorList<ThreadRecord> conversations) {
+      synchronized (this) {
+        if (canceled) {
+          conversations.close();
+          return;
+        }
+        this.conversations = conversations;
+      }
+      deliver();
+    }
+
+    void setMessages(@NonNull CursorList<MessageResult> messages, @Nullable MessagePosition next) {
+      synchronized (this) {
+        if (canceled) {
+          messages.close();
+          return;
+        }
+        this.messages            = messages;
+        this.nextMessagePosition = next;
+      }
+      deliver();
+    }
+
+    /**
+     * @return The position to load the next page of messages from, or null if there is nothing
+     *         more to load or a page is already being loaded.
+     */
+    synchronized @Nullable MessagePosition startLoadingMore() {
+      if (canceled || loadingMoreMessages || messages == null || nextMessagePosition == null) {
+        return null;
+      }
+
+      loadingMoreMessages = true;
+      return nextMessagePosition;
+    }
+
+    void appendMessages(@NonNull Cursor page, @Nullable MessagePosition next) {
+      synchronized (this) {
+        loadingMoreMessages = false;
+
+        if (canceled) {
+          page.close();
+          return;
+        }
+        this.messages            = messages.append(page);
+        this.nextMessagePosition = next;
+      }
+      deliver();
+    }
+
+    private void deliver() {
+      SearchResult result;
+
+      synchronized (this) {
+        result = new SearchResult(query,
+                                  contacts      != null ? contacts      : CursorList.emptyList(),
+                                  conversations != null ? conversations : CursorList.emptyList(),
+                                  messages      != null ? messages      : CursorList.emptyList());
+      }
+
+      callback.onResult(result);
+    }
+  }
+
+  /**
+   * The messages matched by a query whose results fit in a single page.
+   */
+  private static class MessageMatches {
+
+    private final String               query;
+    private final Set<Long>            smsIds;
+    private final Set<Long>            mmsIds;
+    private final InvalidationListener invalidationListener;
+
+    private MessageMatches(@NonNull String query, @NonNull Set<Long> smsIds, @NonNull Set<Long> mmsIds, @NonNull InvalidationListener invalidationListener) {
+      this.query                = query;
+      this.smsIds               = smsIds;
+      this.mmsIds               = mmsIds;
+      this.invalidationListener = invalidationListener;
+    }
+
+    static @NonNull MessageMatches from(@NonNull String query, @NonNull Cursor cursor, @NonNull InvalidationListener invalidationListener) {
+      Set<Long> smsIds = new HashSet<>();
+      Set<Long> mmsIds = new HashSet<>();
+
+      int idColumn    = cursor.getColumnIndexOrThrow(SearchDatabase.MESSAGE_ID);
+      int isMmsColumn = cursor.getColumnIndexOrThrow(SearchDatabase.IS_MMS);
+
+      for (int i = 0; i < cursor.getCount(); i++) {
+        cursor.moveToPosition(i);
+
+        if (cursor.getInt(isMmsColumn) == 1) mmsIds.add(cursor.getLong(idColumn));
+        else                                 smsIds.add(cursor.getLong(idColumn));
+      }
+
+      return new MessageMatches(query, smsIds, mmsIds, invalidationListener);
+    }
+
+    boolean canRefine(@NonNull String newQuery) {
+      return !invalidationListener.changed && !query.trim().isEmpty() && newQuery.startsWith(query);
+    }
+  }
+
+  /**
+   * Notes that a message may have been added, changed or removed since the matches were read.
+   */
+  private static class InvalidationListener implements DatabaseChangeNotifier.Listener {
+
+    private volatile boolean changed;
+
+    @Override
+    public void onChanged(@NonNull DatabaseChangeNotifier.ChangeSet changes) {
+      if (!changes.getThreadIds().isEmpty() || changes.isConversationListChanged()) {
+        changed = true;
+      }
     }
   }
 
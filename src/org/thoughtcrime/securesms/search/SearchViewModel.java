@@ -38,7 +38,14 @@ class SearchViewModel extends ViewModel {
       @Override
       public void onChange(boolean selfChange) {
         if (!TextUtils.isEmpty(getLastQuery())) {
-          searchRepository.query(getLastQuery(), searchResult::postValue);
+          String query = getLastQuery();
+          searchRepository.query(query, result -> Util.runOnMain(() -> {
+            if (query.equals(getLastQuery())) {
+              searchResult.setValue(result);
+            } else {
+              result.closeExcept(searchResult.getValue());
+            }
+          }));
         }
       }
     });
@@ -55,12 +62,16 @@ class SearchViewModel extends ViewModel {
         if (query.equals(lastQuery)) {
           searchResult.setValue(result);
         } else {
-          result.close();
+          result.closeExcept(searchResult.getValue());
         }
       });
     }));
   }
 
+  void onMessagesEndReached() {
+    searchRepository.loadMoreMessages();
+  }
+
   @NonNull
   String getLastQuery() {
     return lastQuery == null ? "" : lastQuery;
@@ -83,9 +94,13 @@ class SearchViewModel extends ViewModel {
     public void setValue(SearchResult value) {
       SearchResult previous = getValue();
 
+      if (previous == value) {
+        return;
+      }
+
       if (previous != null) {
         previous.unregisterContentObserver(observer);
-        previous.close();
+        previous.closeExcept(value);
       }
 
       value.registerContentObserver(observer);
@@ -3,6 +3,10 @@ package org.thoughtcrime.securesms.search.model;
 import android.support.annotation.NonNull;
 
 import org.thoughtcrime.securesms.recipients.Recipient;
+import org.whispersystems.libsignal.util.Pair;
+
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Represents a search result for a message.
@@ -15,15 +19,31 @@ public class MessageResult {
   public final long      threadId;
   public final long      receivedTimestampMs;
 
+  /**
+   * The ranges of {@link #bodySnippet} that matched the query, as reported by the search index.
+   */
+  public final List<Pair<Integer, Integer>> bodyHighlights;
+
+  public MessageResult(@NonNull Recipient conversationRecipient,
+                       @NonNull Recipient messageRecipient,
+                       @NonNull String bodySnippet,
+                       long threadId,
+                       long receivedTimestampMs)
+  {
+    this(conversationRecipient, messageRecipient, bodySnippet, Collections.emptyList(), threadId, receivedTimestampMs);
+  }
+
   public MessageResult(@NonNull Recipient conversationRecipient,
                        @NonNull Recipient messageRecipient,
                        @NonNull String bodySnippet,
+                       @NonNull List<Pair<Integer, Integer>> bodyHighlights,
                        long threadId,
                        long receivedTimestampMs)
   {
     this.conversationRecipient = conversationRecipient;
     this.messageRecipient      = messageRecipient;
     this.bodySnippet           = bodySnippet;
+    this.bodyHighlights        = bodyHighlights;
     this.threadId              = threadId;
     this.receivedTimestampMs   = receivedTimestampMs;
   }
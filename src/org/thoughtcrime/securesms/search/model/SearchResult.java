@@ -3,6 +3,7 @@ package org.thoughtcrime.securesms.search.model;
 import android.database.ContentObserver;
 import android.database.DataSetObserver;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 import org.thoughtcrime.securesms.database.CursorList;
 import org.thoughtcrime.securesms.database.model.ThreadRecord;
@@ -75,4 +76,14 @@ public class SearchResult {
     conversations.close();
     messages.close();
   }
+
+  /**
+   * Results are delivered incrementally and share lists with the results that came before them,
+   * so this closes only the lists that are not also part of {@code retained}.
+   */
+  public void closeExcept(@Nullable SearchResult retained) {
+    if (retained == null || contacts      != retained.contacts)      contacts.close();
+    if (retained == null || conversations != retained.conversations) conversations.close();
+    if (retained == null || messages      != retained.messages)      messages.close();
+  }
 }
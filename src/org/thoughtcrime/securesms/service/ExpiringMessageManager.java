@@ -1,33 +1,43 @@
 package org.thoughtcrime.securesms.service;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
 import org.thoughtcrime.securesms.logging.Log;
 
 import org.thoughtcrime.securesms.database.DatabaseFactory;
-import org.thoughtcrime.securesms.database.MmsDatabase;
-import org.thoughtcrime.securesms.database.SmsDatabase;
-import org.thoughtcrime.securesms.database.model.MessageRecord;
+import org.thoughtcrime.securesms.database.MmsSmsColumns;
+import org.thoughtcrime.securesms.database.MmsSmsDatabase;
 
-import java.util.Comparator;
-import java.util.TreeSet;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
 
+/**
+ * Deletes messages once their expiration timers run out.
+ *
+ * Expirations are grouped into slots of {@link #SLOT_MS}, keyed by the end of the slot, so
+ * messages that expire together (a chat with a short timer, or everything restored at startup) are
+ * deleted as one batch. A message is never deleted before it expires, and at most one slot late.
+ */
 public class ExpiringMessageManager {
 
   private static final String TAG = ExpiringMessageManager.class.getSimpleName();
 
-  private final TreeSet<ExpiringMessageReference> expiringMessageReferences = new TreeSet<>(new ExpiringMessageComparator());
-  private final Executor                          executor                  = Executors.newSingleThreadExecutor();
+  private static final long SLOT_MS = 500;
 
-  private final SmsDatabase smsDatabase;
-  private final MmsDatabase mmsDatabase;
-  private final Context     context;
+  private final TreeMap<Long, ExpirationSlot> slots    = new TreeMap<>();
+  private final Executor                      executor = Executors.newSingleThreadExecutor();
+
+  private final MmsSmsDatabase mmsSmsDatabase;
+  private final Context        context;
 
   public ExpiringMessageManager(Context context) {
-    this.context     = context.getApplicationContext();
-    this.smsDatabase = DatabaseFactory.getSmsDatabase(context);
-    this.mmsDatabase = DatabaseFactory.getMmsDatabase(context);
+    this.context        = context.getApplicationContext();
+    this.mmsSmsDatabase = DatabaseFactory.getMmsSmsDatabase(context);
 
     executor.execute(new LoadTask());
     executor.execute(new ProcessTask());
@@ -40,39 +50,42 @@ public class ExpiringMessageManager {
   public void scheduleDeletion(long id, boolean mms, long startedAtTimestamp, long expiresInMillis) {
     long expiresAtMillis = startedAtTimestamp + expiresInMillis;
 
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.add(new ExpiringMessageReference(id, mms, expiresAtMillis));
-      expiringMessageReferences.notifyAll();
+    synchronized (slots) {
+      add(id, mms, expiresAtMillis);
+      slots.notifyAll();
     }
   }
 
   public void checkSchedule() {
-    synchronized (expiringMessageReferences) {
-      expiringMessageReferences.notifyAll();
+    synchronized (slots) {
+      slots.notifyAll();
     }
   }
 
-  private class LoadTask implements Runnable {
-    public void run() {
-      SmsDatabase.Reader smsReader = smsDatabase.readerFor(smsDatabase.getExpirationStartedMessages());
-      MmsDatabase.Reader mmsReader = mmsDatabase.getExpireStartedMessages();
+  private void add(long id, boolean mms, long expiresAtMillis) {
+    long           slotEnd = ((expiresAtMillis + SLOT_MS - 1) / SLOT_MS) * SLOT_MS;
+    ExpirationSlot slot    = slots.get(slotEnd);
 
-      MessageRecord messageRecord;
+    if (slot == null) {
+      slot = new ExpirationSlot();
+      slots.put(slotEnd, slot);
+    }
 
-      while ((messageRecord = smsReader.getNext()) != null) {
-        expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(),
-                                                                   messageRecord.isMms(),
-                                                                   messageRecord.getExpireStarted() + messageRecord.getExpiresIn()));
-      }
+    if (mms) slot.mmsIds.add(id);
+    else     slot.smsIds.add(id);
+  }
 
-      while ((messageRecord = mmsReader.getNext()) != null) {
-        expiringMessageReferences.add(new ExpiringMessageReference(messageRecord.getId(),
-                                                                   messageRecord.isMms(),
-                                                                   messageRecord.getExpireStarted() + messageRecord.getExpiresIn()));
+  private class LoadTask implements Runnable {
+    public void run() {
+      try (Cursor cursor = mmsSmsDatabase.getExpirationStartedMessages()) {
+        synchronized (slots) {
+          while (cursor != null && cursor.moveToNext()) {
+            add(cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsColumns.ID)),
+                MmsSmsDatabase.MMS_TRANSPORT.equals(cursor.getString(cursor.getColumnIndexOrThrow(MmsSmsDatabase.TRANSPORT))),
+                cursor.getLong(cursor.getColumnIndexOrThrow(MmsSmsDatabase.EXPIRES_AT)));
+          }
+        }
       }
-
-      smsReader.close();
-      mmsReader.close();
     }
   }
 
@@ -80,73 +93,51 @@ public class ExpiringMessageManager {
   private class ProcessTask implements Runnable {
     public void run() {
       while (true) {
-        ExpiringMessageReference expiredMessage = null;
+        ExpirationSlot expired = null;
 
-        synchronized (expiringMessageReferences) {
+        synchronized (slots) {
           try {
-            while (expiringMessageReferences.isEmpty()) expiringMessageReferences.wait();
+            while (slots.isEmpty()) slots.wait();
 
-            ExpiringMessageReference nextReference = expiringMessageReferences.first();
-            long                     waitTime      = nextReference.expiresAtMillis - System.currentTimeMillis();
+            long waitTime = slots.firstKey() - System.currentTimeMillis();
 
             if (waitTime > 0) {
               ExpirationListener.setAlarm(context, waitTime);
-              expiringMessageReferences.wait(waitTime);
+              slots.wait(waitTime);
             } else {
-              expiredMessage = nextReference;
-              expiringMessageReferences.remove(nextReference);
+              expired = takeExpired();
             }
-
           } catch (InterruptedException e) {
             Log.w(TAG, e);
           }
         }
 
-        if (expiredMessage != null) {
-          if (expiredMessage.mms) mmsDatabase.delete(expiredMessage.id);
-          else                    smsDatabase.deleteMessage(expiredMessage.id);
+        if (expired != null) {
+          mmsSmsDatabase.deleteMessages(expired.smsIds, expired.mmsIds);
         }
       }
     }
-  }
-
-  private static class ExpiringMessageReference {
-    private final long    id;
-    private final boolean mms;
-    private final long    expiresAtMillis;
-
-    private ExpiringMessageReference(long id, boolean mms, long expiresAtMillis) {
-      this.id = id;
-      this.mms = mms;
-      this.expiresAtMillis = expiresAtMillis;
-    }
 
-    @Override
-    public boolean equals(Object other) {
-      if (other == null) return false;
-      if (!(other instanceof ExpiringMessageReference)) return false;
-
-      ExpiringMessageReference that = (ExpiringMessageReference)other;
-      return this.id == that.id && this.mms == that.mms && this.expiresAtMillis == that.expiresAtMillis;
-    }
+    /**
+     * Removes every slot that has already ended, which is more than one after a long sleep.
+     */
+    private @NonNull ExpirationSlot takeExpired() {
+      ExpirationSlot                  expired = new ExpirationSlot();
+      long                            now     = System.currentTimeMillis();
+      Map.Entry<Long, ExpirationSlot> entry;
+
+      while ((entry = slots.firstEntry()) != null && entry.getKey() <= now) {
+        slots.pollFirstEntry();
+        expired.smsIds.addAll(entry.getValue().smsIds);
+        expired.mmsIds.addAll(entry.getValue().mmsIds);
+      }
 
-    @Override
-    public int hashCode() {
-      return (int)this.id ^ (mms ? 1 : 0) ^ (int)expiresAtMillis;
+      return expired;
     }
   }
 
-  private static class ExpiringMessageComparator implements Comparator<ExpiringMessageReference> {
-    @Override
-    public int compare(ExpiringMessageReference lhs, ExpiringMessageReference rhs) {
-      if      (lhs.expiresAtMillis < rhs.expiresAtMillis) return -1;
-      else if (lhs.expiresAtMillis > rhs.expiresAtMillis) return 1;
-      else if (lhs.id < rhs.id)                           return -1;
-      else if (lhs.id > rhs.id)                           return 1;
-      else if (!lhs.mms && rhs.mms)                       return -1;
-      else if (lhs.mms && !rhs.mms)                       return 1;
-      else                                                return 0;
-    }
+  private static class ExpirationSlot {
+    private final Set<Long> smsIds = new HashSet<>();
+    private final Set<Long> mmsIds = new HashSet<>();
   }
-
 }
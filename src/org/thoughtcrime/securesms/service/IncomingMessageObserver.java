@@ -24,6 +24,7 @@ import org.thoughtcrime.securesms.jobs.PushContentReceiveJob;
 import org.thoughtcrime.securesms.notifications.NotificationChannels;
 import org.thoughtcrime.securesms.push.SignalServiceNetworkAccess;
 import org.thoughtcrime.securesms.util.TextSecurePreferences;
+import org.thoughtcrime.securesms.util.Util;
 import org.whispersystems.libsignal.InvalidVersionException;
 import org.whispersystems.signalservice.api.SignalServiceMessagePipe;
 import org.whispersystems.signalservice.api.SignalServiceMessageReceiver;
@@ -64,7 +65,8 @@ public class IncomingMessageObserver implements InjectableType, ConstraintObserv
       ContextCompat.startForegroundService(context, new Intent(context, ForegroundService.class));
     }
 
-    ProcessLifecycleOwner.get().getLifecycle().addObserver(new DefaultLifecycleObserver() {
+    // Created off the main thread during startup, but lifecycle observers must be added on it
+    Util.runOnMain(() -> ProcessLifecycleOwner.get().getLifecycle().addObserver(new DefaultLifecycleObserver() {
       @Override
       public void onStart(@NonNull LifecycleOwner owner) {
         onAppForegrounded();
@@ -74,7 +76,7 @@ public class IncomingMessageObserver implements InjectableType, ConstraintObserv
       public void onStop(@NonNull LifecycleOwner owner) {
         onAppBackgrounded();
       }
-    });
+    }));
   }
 
   @Override
@@ -0,0 +1,240 @@
+package org.thoughtcrime.securesms.startup;
+
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+
+import org.thoughtcrime.securesms.logging.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Runs the app's startup initializers in dependency order.
+ *
+ * {@link Phase#CRITICAL} tasks run on the calling thread before {@link #start(Executor)} returns,
+ * since the rest of the app relies on them. {@link Phase#BACKGROUND} tasks are handed to the
+ * executor as soon as their dependencies finish, so independent ones run in parallel. Deferred
+ * tasks wait for {@link #startDeferred()}, which is meant to be called once the first frame is up.
+ *
+ * Every task and phase is timed in a {@link StartupTrace}.
+ */
+public final class StartupGraph {
+
+  private static final String TAG = Log.tag(StartupGraph.class);
+
+  public enum Phase {
+    CRITICAL, BACKGROUND, DEFERRED
+  }
+
+  private final Map<String, Task>       tasks;
+  private final Map<String, List<Task>> dependents;
+  private final Map<Task, Integer>      remaining;
+  private final Set<Task>               scheduled;
+  private final StartupTrace            trace;
+
+  private Executor executor;
+  private boolean  backgroundStarted;
+  private boolean  deferredStarted;
+  private int      unfinished;
+
+  private StartupGraph(@NonNull Map<String, Task> tasks) {
+    this.tasks      = tasks;
+    this.dependents = new HashMap<>();
+    this.remaining  = new HashMap<>();
+    this.scheduled  = new HashSet<>();
+    this.trace      = new StartupTrace();
+    this.unfinished = tasks.size();
+
+    for (Task task : tasks.values()) {
+      remaining.put(task, task.dependencies.size());
+
+      for (String dependency : task.dependencies) {
+        List<Task> list = dependents.get(dependency);
+
+        if (list == null) {
+          list = new LinkedList<>();
+          dependents.put(dependency, list);
+        }
+
+        list.add(task);
+      }
+    }
+  }
+
+  /**
+   * Runs the critical tasks on this thread, then starts the background ones on the executor.
+   */
+  @MainThread
+  public void start(@NonNull Executor executor) {
+    synchronized (this) {
+      if (this.executor != null) throw new IllegalStateException("Already started.");
+      this.executor = executor;
+    }
+
+    trace.onPhaseStarted(Phase.CRITICAL);
+
+    // The builder only accepts tasks after their dependencies, so in order is always runnable
+    for (Task task : tasks.values()) {
+      if (task.phase == Phase.CRITICAL) {
+        run(task);
+      }
+    }
+
+    List<Task> ready;
+
+    synchronized (this) {
+      backgroundStarted = true;
+      ready             = takeReady(Phase.BACKGROUND);
+    }
+
+    trace.onPhaseStarted(Phase.BACKGROUND);
+    schedule(ready);
+  }
+
+  /**
+   * Starts the deferred tasks, whose dependencies may still be running in the background.
+   */
+  public void startDeferred() {
+    List<Task> ready;
+
+    synchronized (this) {
+      if (!backgroundStarted) throw new IllegalStateException("Not started.");
+      if (deferredStarted)    return;
+
+      deferredStarted = true;
+      ready           = takeReady(Phase.DEFERRED);
+    }
+
+    trace.onPhaseStarted(Phase.DEFERRED);
+    schedule(ready);
+  }
+
+  public @NonNull StartupTrace getTrace() {
+    return trace;
+  }
+
+  private @NonNull List<Task> takeReady(@NonNull Phase phase) {
+    List<Task> ready = new LinkedList<>();
+
+    for (Task task : tasks.values()) {
+      if (task.phase == phase && remaining.get(task) == 0 && scheduled.add(task)) {
+        ready.add(task);
+      }
+    }
+
+    return ready;
+  }
+
+  private void schedule(@NonNull List<Task> ready) {
+    for (Task task : ready) {
+      executor.execute(() -> run(task));
+    }
+  }
+
+  private void run(@NonNull Task task) {
+    long start = System.nanoTime();
+
+    try {
+      task.runnable.run();
+    } catch (RuntimeException e) {
+      if (task.phase == Phase.CRITICAL) throw e;
+      Log.w(TAG, "Startup task " + task.name + " failed.", e);
+    }
+
+    trace.onTaskFinished(task.name, task.phase, start, System.nanoTime());
+    onFinished(task);
+  }
+
+  private void onFinished(@NonNull Task task) {
+    List<Task> ready = new LinkedList<>();
+    boolean    done;
+
+    synchronized (this) {
+      List<Task> waiting = dependents.get(task.name);
+
+      if (waiting != null) {
+        for (Task dependent : waiting) {
+          int count = remaining.get(dependent) - 1;
+          remaining.put(dependent, count);
+
+          if (count == 0 && isStarted(dependent.phase) && scheduled.add(dependent)) {
+            ready.add(dependent);
+          }
+        }
+      }
+
+      done = --unfinished == 0;
+    }
+
+    schedule(ready);
+
+    if (done) {
+      Log.i(TAG, trace.toString());
+    }
+  }
+
+  private boolean isStarted(@NonNull Phase phase) {
+    switch (phase) {
+      case BACKGROUND: return backgroundStarted;
+      case DEFERRED:   return deferredStarted;
+      default:         return false;
+    }
+  }
+
+  private static final class Task {
+    private final String       name;
+    private final Phase        phase;
+    private final Runnable     runnable;
+    private final List<String> dependencies;
+
+    private Task(@NonNull String name, @NonNull Phase phase, @NonNull Runnable runnable, @NonNull List<String> dependencies) {
+      this.name         = name;
+      this.phase        = phase;
+      this.runnable     = runnable;
+      this.dependencies = dependencies;
+    }
+  }
+
+  public static final class Builder {
+
+    private final Map<String, Task> tasks = new LinkedHashMap<>();
+
+    /**
+     * Tasks must be added after everything they depend on, and can only depend on tasks in the same
+     * or an earlier phase.
+     */
+    public @NonNull Builder add(@NonNull String name, @NonNull Phase phase, @NonNull Runnable runnable, @NonNull String... dependencies) {
+      if (tasks.containsKey(name)) {
+        throw new IllegalArgumentException("Duplicate startup task: " + name);
+      }
+
+      for (String dependency : dependencies) {
+        Task existing = tasks.get(dependency);
+
+        if (existing == null) {
+          throw new IllegalArgumentException(name + " depends on " + dependency + ", which hasn't been added.");
+        }
+
+        if (existing.phase.ordinal() > phase.ordinal()) {
+          throw new IllegalArgumentException(name + " (" + phase + ") can't depend on " + dependency + " (" + existing.phase + ").");
+        }
+      }
+
+      tasks.put(name, new Task(name, phase, runnable, Collections.unmodifiableList(new ArrayList<>(Arrays.asList(dependencies)))));
+      return this;
+    }
+
+    public @NonNull StartupGraph build() {
+      return new StartupGraph(new LinkedHashMap<>(tasks));
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package org.thoughtcrime.securesms.startup;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import org.thoughtcrime.securesms.startup.StartupGraph.Phase;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timings for a {@link StartupGraph}, so a slow initializer or phase shows up in the logs and can
+ * be asserted on in tests.
+ *
+ * A phase lasts from when it starts until its last task finishes. Times are in nanoseconds.
+ */
+public final class StartupTrace {
+
+  private final Map<Phase, Long> phaseStarts = new EnumMap<>(Phase.class);
+  private final Map<Phase, Long> phaseEnds   = new EnumMap<>(Phase.class);
+  private final List<Entry>      entries     = new ArrayList<>();
+
+  synchronized void onPhaseStarted(@NonNull Phase phase) {
+    phaseStarts.put(phase, System.nanoTime());
+  }
+
+  synchronized void onTaskFinished(@NonNull String name, @NonNull Phase phase, long start, long end) {
+    entries.add(new Entry(name, phase, Thread.currentThread().getName(), start, end));
+
+    Long phaseEnd = phaseEnds.get(phase);
+    if (phaseEnd == null || phaseEnd < end) phaseEnds.put(phase, end);
+  }
+
+  public synchronized @NonNull List<Entry> getEntries() {
+    return Collections.unmodifiableList(new ArrayList<>(entries));
+  }
+
+  public synchronized @Nullable Entry getEntry(@NonNull String name) {
+    for (Entry entry : entries) {
+      if (entry.name.equals(name)) return entry;
+    }
+    return null;
+  }
+
+  /**
+   * @return How long the phase took, or -1 if it hasn't run any tasks.
+   */
+  public synchronized long getPhaseDuration(@NonNull Phase phase) {
+    Long start = phaseStarts.get(phase);
+    Long end   = phaseEnds.get(phase);
+
+    return start != null && end != null ? Math.max(0, end - start) : -1;
+  }
+
+  @Override
+  public synchronized @NonNull String toString() {
+    StringBuilder builder = new StringBuilder("Startup trace:");
+
+    for (Phase phase : Phase.values()) {
+      builder.append('\n').append(phase).append(": ").append(millis(getPhaseDuration(phase))).append(" ms");
+
+      for (Entry entry : entries) {
+        if (entry.phase == phase) {
+          builder.append("\n  ").append(entry.name).append(": ").append(millis(entry.getDuration())).append(" ms on ").append(entry.thread);
+        }
+      }
+    }
+
+    return builder.toString();
+  }
+
+  private static long millis(long nanos) {
+    return nanos < 0 ? nanos : TimeUnit.NANOSECONDS.toMillis(nanos);
+  }
+
+  public static final class Entry {
+    private final String name;
+    private final Phase  phase;
+    private final String thread;
+    private final long   start;
+    private final long   end;
+
+    private Entry(@NonNull String name, @NonNull Phase phase, @NonNull String thread, long start, long end) {
+      this.name   = name;
+      this.phase  = phase;
+      this.thread = thread;
+      this.start  = start;
+      this.end    = end;
+    }
+
+    public @NonNull String getName() {
+      return name;
+    }
+
+    public @NonNull Phase getPhase() {
+      return phase;
+    }
+
+    public @NonNull String getThread() {
+      return thread;
+    }
+
+    public long getStart() {
+      return start;
+    }
+
+    public long getEnd() {
+      return end;
+    }
+
+    public long getDuration() {
+      return end - start;
+    }
+  }
+}
@@ -0,0 +1,122 @@
+package org.thoughtcrime.securesms.stickers;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.annimon.stream.Stream;
+
+import org.thoughtcrime.securesms.database.DatabaseFactory;
+import org.thoughtcrime.securesms.database.StickerDatabase;
+import org.thoughtcrime.securesms.database.model.StickerRecord;
+import org.thoughtcrime.securesms.logging.Log;
+import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory copy of the sticker emoji index, so suggestions while typing are a map lookup no
+ * matter how many packs are installed.
+ *
+ * Nothing is loaded until the sticker keyboard is first opened. After that the copy is reloaded in
+ * the background whenever it's found to be stale, and lookups fall back to the database meanwhile.
+ */
+public final class StickerEmojiCache {
+
+  private static final String TAG = Log.tag(StickerEmojiCache.class);
+
+  private static volatile StickerEmojiCache instance;
+
+  private final StickerDatabase stickerDatabase;
+
+  private volatile Snapshot snapshot;
+  private          boolean  warmed;
+  private          boolean  loading;
+
+  public static @NonNull StickerEmojiCache getInstance(@NonNull Context context) {
+    if (instance == null) {
+      synchronized (StickerEmojiCache.class) {
+        if (instance == null) {
+          instance = new StickerEmojiCache(DatabaseFactory.getStickerDatabase(context));
+        }
+      }
+    }
+    return instance;
+  }
+
+  private StickerEmojiCache(@NonNull StickerDatabase stickerDatabase) {
+    this.stickerDatabase = stickerDatabase;
+  }
+
+  public synchronized void warm() {
+    warmed = true;
+    loadIfStale();
+  }
+
+  /**
+   * @return The stickers tagged with every one of the emoji, or null if the copy isn't loaded or
+   *         is stale, in which case the caller should ask the database.
+   */
+  @Nullable List<StickerRecord> get(@NonNull Set<String> emoji) {
+    Snapshot current = snapshot;
+
+    if (current == null || current.version != StickerDatabase.getEmojiIndexVersion()) {
+      synchronized (this) {
+        loadIfStale();
+      }
+      return null;
+    }
+
+    if (emoji.isEmpty()) return Collections.emptyList();
+
+    List<StickerRecord> stickers = current.index.get(emoji.iterator().next());
+
+    if (stickers == null)  return Collections.emptyList();
+    if (emoji.size() == 1) return Collections.unmodifiableList(stickers);
+
+    return Stream.of(stickers)
+                 .filter(sticker -> StickerEmojiTokenizer.tokenize(sticker.getEmoji()).containsAll(emoji))
+                 .toList();
+  }
+
+  private void loadIfStale() {
+    Snapshot current = snapshot;
+
+    if (!warmed || loading || (current != null && current.version == StickerDatabase.getEmojiIndexVersion())) {
+      return;
+    }
+
+    loading = true;
+    SignalExecutors.BOUNDED.execute(this::load);
+  }
+
+  @WorkerThread
+  private void load() {
+    try {
+      long                             version = StickerDatabase.getEmojiIndexVersion();
+      long                             start   = System.currentTimeMillis();
+      Map<String, List<StickerRecord>> index   = stickerDatabase.getEmojiIndex();
+
+      snapshot = new Snapshot(version, index);
+      Log.i(TAG, "Loaded " + index.size() + " emoji in " + (System.currentTimeMillis() - start) + " ms.");
+    } finally {
+      synchronized (this) {
+        loading = false;
+      }
+    }
+  }
+
+  private static final class Snapshot {
+    private final long                             version;
+    private final Map<String, List<StickerRecord>> index;
+
+    private Snapshot(long version, @NonNull Map<String, List<StickerRecord>> index) {
+      this.version = version;
+      this.index   = index;
+    }
+  }
+}
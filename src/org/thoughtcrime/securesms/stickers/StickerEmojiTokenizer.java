@@ -0,0 +1,83 @@
+package org.thoughtcrime.securesms.stickers;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Splits the emoji a sticker is tagged with, or that someone typed, into individual emoji.
+ *
+ * Variation selectors and skin tones are dropped, so a thumbs up in any skin tone finds a sticker
+ * tagged with the plain one. Zero width joiner sequences, keycaps, tag sequences and flags are
+ * kept together as one emoji.
+ */
+public final class StickerEmojiTokenizer {
+
+  private static final int ZERO_WIDTH_JOINER  = 0x200D;
+  private static final int TEXT_PRESENTATION  = 0xFE0E;
+  private static final int EMOJI_PRESENTATION = 0xFE0F;
+  private static final int COMBINING_KEYCAP   = 0x20E3;
+  private static final int SKIN_TONE_FIRST    = 0x1F3FB;
+  private static final int SKIN_TONE_LAST     = 0x1F3FF;
+  private static final int TAG_FIRST          = 0xE0020;
+  private static final int TAG_LAST           = 0xE007F;
+  private static final int REGIONAL_FIRST     = 0x1F1E6;
+  private static final int REGIONAL_LAST      = 0x1F1FF;
+
+  private StickerEmojiTokenizer() {}
+
+  public static @NonNull Set<String> tokenize(@Nullable CharSequence text) {
+    if (text == null || text.length() == 0) return Collections.emptySet();
+
+    Set<String>   tokens          = new LinkedHashSet<>();
+    StringBuilder token           = new StringBuilder();
+    boolean       joining         = false;
+    boolean       pendingRegional = false;
+
+    for (int i = 0; i < text.length(); ) {
+      int codePoint = Character.codePointAt(text, i);
+      i += Character.charCount(codePoint);
+
+      if (codePoint == TEXT_PRESENTATION || codePoint == EMOJI_PRESENTATION || isBetween(codePoint, SKIN_TONE_FIRST, SKIN_TONE_LAST)) {
+        continue;
+      }
+
+      if (codePoint == ZERO_WIDTH_JOINER) {
+        joining = token.length() > 0;
+      } else if (codePoint == COMBINING_KEYCAP || isBetween(codePoint, TAG_FIRST, TAG_LAST)) {
+        token.appendCodePoint(codePoint);
+      } else if (joining) {
+        token.appendCodePoint(ZERO_WIDTH_JOINER).appendCodePoint(codePoint);
+        joining = false;
+      } else if (pendingRegional && isBetween(codePoint, REGIONAL_FIRST, REGIONAL_LAST)) {
+        token.appendCodePoint(codePoint);
+        pendingRegional = false;
+      } else {
+        flush(token, tokens);
+        pendingRegional = isBetween(codePoint, REGIONAL_FIRST, REGIONAL_LAST);
+
+        if (!Character.isWhitespace(codePoint)) {
+          token.appendCodePoint(codePoint);
+        }
+      }
+    }
+
+    flush(token, tokens);
+
+    return tokens;
+  }
+
+  private static void flush(@NonNull StringBuilder token, @NonNull Set<String> tokens) {
+    if (token.length() > 0) {
+      tokens.add(token.toString());
+      token.setLength(0);
+    }
+  }
+
+  private static boolean isBetween(int codePoint, int first, int last) {
+    return codePoint >= first && codePoint <= last;
+  }
+}
@@ -74,6 +74,8 @@ public final class StickerKeyboardProvider implements MediaKeyboardProvider,
     this.presenter      = presenter;
     this.isSoloProvider = isSoloProvider;
 
+    StickerEmojiCache.getInstance(context).warm();
+
     PackListResult result = viewModel.getPacks().getValue();
 
     if (result != null) {
@@ -12,24 +12,49 @@ import org.thoughtcrime.securesms.database.model.StickerPackRecord;
 import org.thoughtcrime.securesms.database.model.StickerRecord;
 import org.thoughtcrime.securesms.util.concurrent.SignalExecutors;
 
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
 public final class StickerSearchRepository {
 
   private final StickerDatabase    stickerDatabase;
   private final AttachmentDatabase attachmentDatabase;
+  private final StickerEmojiCache  emojiCache;
+  private final AtomicLong         emojiSearchId = new AtomicLong();
 
   public StickerSearchRepository(@NonNull Context context) {
     this.stickerDatabase    = DatabaseFactory.getStickerDatabase(context);
     this.attachmentDatabase = DatabaseFactory.getAttachmentDatabase(context);
+    this.emojiCache         = StickerEmojiCache.getInstance(context);
   }
 
-  public void searchByEmoji(@NonNull String emoji, @NonNull Callback<CursorList<StickerRecord>> callback) {
+  /**
+   * A database search that finishes after a newer search has been made is dropped, so it can't
+   * replace the newer result.
+   */
+  public void searchByEmoji(@NonNull String emoji, @NonNull Callback<List<StickerRecord>> callback) {
+    long                searchId = emojiSearchId.incrementAndGet();
+    List<StickerRecord> cached   = emojiCache.get(StickerEmojiTokenizer.tokenize(emoji));
+
+    if (cached != null) {
+      callback.onResult(cached);
+      return;
+    }
+
     SignalExecutors.BOUNDED.execute(() -> {
-      Cursor cursor = stickerDatabase.getStickersByEmoji(emoji);
+      List<StickerRecord> stickers = new LinkedList<>();
+
+      try (StickerDatabase.StickerRecordReader reader = new StickerDatabase.StickerRecordReader(stickerDatabase.getStickersByEmoji(emoji))) {
+        StickerRecord sticker;
+
+        while ((sticker = reader.getNext()) != null) {
+          stickers.add(sticker);
+        }
+      }
 
-      if (cursor != null) {
-        callback.onResult(new CursorList<>(cursor, new StickerModelBuilder()));
-      } else {
-        callback.onResult(CursorList.emptyList());
+      if (searchId == emojiSearchId.get()) {
+        callback.onResult(stickers);
       }
     });
   }
@@ -46,13 +71,6 @@ public final class StickerSearchRepository {
     });
   }
 
-  private static class StickerModelBuilder implements CursorList.ModelBuilder<StickerRecord> {
-    @Override
-    public StickerRecord build(@NonNull Cursor cursor) {
-      return new StickerDatabase.StickerRecordReader(cursor).getCurrent();
-    }
-  }
-
   private static class StickerPackModelBuilder implements CursorList.ModelBuilder<StickerPackRecord> {
     @Override
     public StickerPackRecord build(@NonNull Cursor cursor) {
@@ -46,6 +46,8 @@ public class BitmapUtil {
   private static final int MIN_COMPRESSION_QUALITY_DECREASE = 5;
   private static final int MAX_IMAGE_HALF_SCALES            = 3;
 
+  private static final double[][] JPEG_BITS_PER_PIXEL = { { 90, 4.0 }, { 80, 2.6 }, { 70, 2.0 }, { 60, 1.6 }, { 50, 1.3 } };
+
   @WorkerThread
   public static <T> ScaleResult createScaledBytes(@NonNull Context context, @NonNull T model, @NonNull MediaConstraints constraints)
       throws BitmapDecodingException
@@ -79,6 +81,11 @@ public class BitmapUtil {
     return createScaledBytes(context, model, maxImageWidth, maxImageHeight, maxImageSize, format, 1, 0);
   }
 
+  /**
+   * Decodes the model a single time and then compresses it, starting from a quality estimated from
+   * the pixel budget so that most images fit on the first attempt. If the image can't be made to fit
+   * the dimensions are halved from the already-decoded bitmap rather than decoding the source again.
+   */
   @WorkerThread
   private static <T> ScaleResult createScaledBytes(@NonNull Context context,
                                                    @NonNull T model,
@@ -91,10 +98,6 @@ public class BitmapUtil {
       throws BitmapDecodingException
   {
     try {
-      int    quality  = MAX_COMPRESSION_QUALITY;
-      int    attempts = 0;
-      byte[] bytes;
-
       Bitmap scaledBitmap = GlideApp.with(context.getApplicationContext())
                                     .asBitmap()
                                     .load(model)
@@ -111,51 +114,82 @@ public class BitmapUtil {
       Log.i(TAG, String.format(Locale.US,"Initial scaled bitmap has size of %d bytes.", scaledBitmap.getByteCount()));
       Log.i(TAG, String.format(Locale.US, "Max dimensions %d x %d, %d bytes", maxImageWidth, maxImageHeight, maxImageSize));
 
+      int scaleAttempt = sizeAttempt;
+
       try {
-        do {
-          totalAttempts++;
-          ByteArrayOutputStream baos = new ByteArrayOutputStream();
-          scaledBitmap.compress(format, quality, baos);
-          bytes = baos.toByteArray();
-
-          Log.d(TAG, "iteration with quality " + quality + " size " + bytes.length + " bytes.");
-          if (quality == MIN_COMPRESSION_QUALITY) break;
-
-          int nextQuality = (int)Math.floor(quality * Math.sqrt((double)maxImageSize / bytes.length));
-          if (quality - nextQuality < MIN_COMPRESSION_QUALITY_DECREASE) {
-            nextQuality = quality - MIN_COMPRESSION_QUALITY_DECREASE;
+        while (true) {
+          int    quality  = estimateCompressionQuality(format, scaledBitmap.getWidth(), scaledBitmap.getHeight(), maxImageSize);
+          int    attempts = 0;
+          byte[] bytes;
+
+          do {
+            totalAttempts++;
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            scaledBitmap.compress(format, quality, baos);
+            bytes = baos.toByteArray();
+
+            Log.d(TAG, "iteration with quality " + quality + " size " + bytes.length + " bytes.");
+            if (quality == MIN_COMPRESSION_QUALITY) break;
+
+            int nextQuality = (int)Math.floor(quality * Math.sqrt((double)maxImageSize / bytes.length));
+            if (quality - nextQuality < MIN_COMPRESSION_QUALITY_DECREASE) {
+              nextQuality = quality - MIN_COMPRESSION_QUALITY_DECREASE;
+            }
+            quality = Math.max(nextQuality, MIN_COMPRESSION_QUALITY);
           }
-          quality = Math.max(nextQuality, MIN_COMPRESSION_QUALITY);
-        }
-        while (bytes.length > maxImageSize && attempts++ < MAX_COMPRESSION_ATTEMPTS);
+          while (bytes.length > maxImageSize && attempts++ < MAX_COMPRESSION_ATTEMPTS);
 
-        if (bytes.length > maxImageSize) {
-          if (sizeAttempt <= MAX_IMAGE_HALF_SCALES) {
-            scaledBitmap.recycle();
-            scaledBitmap = null;
+          if (bytes.length > maxImageSize) {
+            if (scaleAttempt <= MAX_IMAGE_HALF_SCALES) {
+              Bitmap halved = Bitmap.createScaledBitmap(scaledBitmap, Math.max(1, scaledBitmap.getWidth() / 2), Math.max(1, scaledBitmap.getHeight() / 2), true);
 
-            Log.i(TAG, "Halving dimensions and retrying.");
-            return createScaledBytes(context, model, maxImageWidth / 2, maxImageHeight / 2, maxImageSize, format, sizeAttempt + 1, totalAttempts);
-          } else {
-            throw new BitmapDecodingException("Unable to scale image below " + bytes.length + " bytes.");
+              scaledBitmap.recycle();
+              scaledBitmap = halved;
+              scaleAttempt++;
+
+              Log.i(TAG, "Halving dimensions and retrying.");
+              continue;
+            } else {
+              throw new BitmapDecodingException("Unable to scale image below " + bytes.length + " bytes.");
+            }
           }
-        }
 
-        if (bytes.length <= 0) {
-          throw new BitmapDecodingException("Decoding failed. Bitmap has a length of " + bytes.length + " bytes.");
-        }
+          if (bytes.length <= 0) {
+            throw new BitmapDecodingException("Decoding failed. Bitmap has a length of " + bytes.length + " bytes.");
+          }
 
-        Log.i(TAG, String.format(Locale.US, "createScaledBytes(%s) -> quality %d, %d attempt(s) over %d sizes.", model.getClass().getName(), quality, totalAttempts, sizeAttempt));
+          Log.i(TAG, String.format(Locale.US, "createScaledBytes(%s) -> quality %d, %d attempt(s) over %d sizes.", model.getClass().getName(), quality, totalAttempts, scaleAttempt));
 
-        return new ScaleResult(bytes, scaledBitmap.getWidth(), scaledBitmap.getHeight());
+          return new ScaleResult(bytes, scaledBitmap.getWidth(), scaledBitmap.getHeight());
+        }
       } finally {
-        if (scaledBitmap != null) scaledBitmap.recycle();
+        scaledBitmap.recycle();
       }
     } catch (InterruptedException | ExecutionException e) {
       throw new BitmapDecodingException(e);
     }
   }
 
+  /**
+   * Rough JPEG quality that should produce an image of at most maxImageSize bytes, based on typical
+   * bits-per-pixel figures for photographic content. Lossless formats always start at the maximum.
+   */
+  static int estimateCompressionQuality(@NonNull CompressFormat format, int width, int height, int maxImageSize) {
+    if (format != CompressFormat.JPEG || width <= 0 || height <= 0) {
+      return MAX_COMPRESSION_QUALITY;
+    }
+
+    double bitsPerPixel = (maxImageSize * 8d) / ((double) width * height);
+
+    for (int i = 0; i < JPEG_BITS_PER_PIXEL.length; i++) {
+      if (bitsPerPixel >= JPEG_BITS_PER_PIXEL[i][1]) {
+        return Math.min(MAX_COMPRESSION_QUALITY, (int) JPEG_BITS_PER_PIXEL[i][0]);
+      }
+    }
+
+    return MIN_COMPRESSION_QUALITY;
+  }
+
   @WorkerThread
   public static <T> Bitmap createScaledBitmap(Context context, T model, int maxWidth, int maxHeight)
       throws BitmapDecodingException
@@ -0,0 +1,170 @@
+package org.thoughtcrime.securesms.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a copy of the default {@link SharedPreferences} in memory, so reads are a map lookup
+ * instead of a trip through {@link PreferenceManager} on every call.
+ *
+ * Writes update the copy and go straight to the preferences with {@link SharedPreferences.Editor#apply()}.
+ * Changes made to the preferences directly are picked up one key at a time.
+ */
+public final class CachedSharedPreferences {
+
+  private static volatile CachedSharedPreferences instance;
+
+  private final SharedPreferences                                  preferences;
+  private final SharedPreferences.OnSharedPreferenceChangeListener listener;
+  private final Map<String, Object>                                values;
+
+  public static @NonNull CachedSharedPreferences getInstance(@NonNull Context context) {
+    if (instance == null) {
+      synchronized (CachedSharedPreferences.class) {
+        if (instance == null) {
+          instance = new CachedSharedPreferences(PreferenceManager.getDefaultSharedPreferences(context.getApplicationContext()));
+        }
+      }
+    }
+    return instance;
+  }
+
+  @VisibleForTesting
+  CachedSharedPreferences(@NonNull SharedPreferences preferences) {
+    this.preferences = preferences;
+    this.values      = new ConcurrentHashMap<>();
+    this.listener    = (sharedPreferences, key) -> onChanged(key);
+
+    // SharedPreferences only keeps a weak reference to its listeners
+    preferences.registerOnSharedPreferenceChangeListener(listener);
+    reloadAll();
+  }
+
+  public boolean getBoolean(@NonNull String key, boolean defaultValue) {
+    Object value = values.get(key);
+    return value != null ? (Boolean) value : defaultValue;
+  }
+
+  public @Nullable String getString(@NonNull String key, @Nullable String defaultValue) {
+    Object value = values.get(key);
+    return value != null ? (String) value : defaultValue;
+  }
+
+  public int getInt(@NonNull String key, int defaultValue) {
+    Object value = values.get(key);
+    return value != null ? (Integer) value : defaultValue;
+  }
+
+  public long getLong(@NonNull String key, long defaultValue) {
+    Object value = values.get(key);
+    return value != null ? (Long) value : defaultValue;
+  }
+
+  @SuppressWarnings("unchecked")
+  public @Nullable Set<String> getStringSet(@NonNull String key, @Nullable Set<String> defaultValues) {
+    Object value = values.get(key);
+    return value != null ? (Set<String>) value : defaultValues;
+  }
+
+  public synchronized void putBoolean(@NonNull String key, boolean value) {
+    values.put(key, value);
+    preferences.edit().putBoolean(key, value).apply();
+  }
+
+  public synchronized void putString(@NonNull String key, @Nullable String value) {
+    if (value != null) values.put(key, value);
+    else               values.remove(key);
+
+    preferences.edit().putString(key, value).apply();
+  }
+
+  public synchronized void putInt(@NonNull String key, int value) {
+    values.put(key, value);
+    preferences.edit().putInt(key, value).apply();
+  }
+
+  public synchronized void putLong(@NonNull String key, long value) {
+    values.put(key, value);
+    preferences.edit().putLong(key, value).apply();
+  }
+
+  public synchronized void remove(@NonNull String key) {
+    values.remove(key);
+    preferences.edit().remove(key).apply();
+  }
+
+  /**
+   * Writes the value and waits for it to reach disk.
+   */
+  public boolean commitInt(@NonNull String key, int value) {
+    SharedPreferences.Editor editor;
+
+    synchronized (this) {
+      values.put(key, value);
+      editor = preferences.edit().putInt(key, value);
+    }
+
+    return editor.commit();
+  }
+
+  /**
+   * Re-reads just the changed key, using the type it's cached with. Only a key that isn't cached
+   * yet, or a clear of the whole file, needs the full map.
+   */
+  private synchronized void onChanged(@Nullable String key) {
+    if (key == null) {
+      reloadAll();
+      return;
+    }
+
+    if (!preferences.contains(key)) {
+      values.remove(key);
+      return;
+    }
+
+    Object cached = values.get(key);
+    Object value;
+
+    try {
+      if      (cached instanceof Boolean) value = preferences.getBoolean(key, false);
+      else if (cached instanceof String)  value = preferences.getString(key, null);
+      else if (cached instanceof Integer) value = preferences.getInt(key, 0);
+      else if (cached instanceof Long)    value = preferences.getLong(key, 0);
+      else                                value = preferences.getAll().get(key);
+    } catch (ClassCastException e) {
+      value = preferences.getAll().get(key);
+    }
+
+    if (value != null) values.put(key, copy(value));
+    else               values.remove(key);
+  }
+
+  private synchronized void reloadAll() {
+    Map<String, ?> all = preferences.getAll();
+
+    values.keySet().retainAll(all.keySet());
+
+    for (Map.Entry<String, ?> entry : all.entrySet()) {
+      if (entry.getValue() != null) {
+        values.put(entry.getKey(), copy(entry.getValue()));
+      }
+    }
+  }
+
+  private static @NonNull Object copy(@NonNull Object value) {
+    if (value instanceof Set) {
+      return Collections.unmodifiableSet(new HashSet<>((Set<?>) value));
+    }
+    return value;
+  }
+}
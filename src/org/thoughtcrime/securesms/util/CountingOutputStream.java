@@ -0,0 +1,35 @@
+package org.thoughtcrime.securesms.util;
+
+import android.support.annotation.NonNull;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes writes through to the wrapped stream while keeping track of how many bytes were written.
+ */
+public class CountingOutputStream extends FilterOutputStream {
+
+  private long count;
+
+  public CountingOutputStream(@NonNull OutputStream out) {
+    super(out);
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    out.write(b);
+    count++;
+  }
+
+  @Override
+  public void write(@NonNull byte[] b, int off, int len) throws IOException {
+    out.write(b, off, len);
+    count += len;
+  }
+
+  public long getCount() {
+    return count;
+  }
+}
@@ -29,6 +29,7 @@ import org.thoughtcrime.securesms.database.DatabaseFactory;
 import org.thoughtcrime.securesms.database.MessagingDatabase.InsertResult;
 import org.thoughtcrime.securesms.database.RecipientDatabase;
 import org.thoughtcrime.securesms.database.RecipientDatabase.RegisteredState;
+import org.thoughtcrime.securesms.database.RecipientDatabase.SystemContactInfo;
 import org.thoughtcrime.securesms.jobs.MultiDeviceContactUpdateJob;
 import org.thoughtcrime.securesms.notifications.MessageNotifier;
 import org.thoughtcrime.securesms.notifications.NotificationChannels;
@@ -58,9 +59,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -190,34 +193,22 @@ public class DirectoryHelper {
         DatabaseFactory.getContactsDatabase(context).removeDeletedRawContacts(account.get().getAccount());
         DatabaseFactory.getContactsDatabase(context).setRegisteredUsers(account.get().getAccount(), activeAddresses, removeMissing);
 
-        Cursor                                 cursor = ContactAccessor.getInstance().getAllSystemContacts(context);
-        RecipientDatabase.BulkOperationsHandle handle = DatabaseFactory.getRecipientDatabase(context).resetAllSystemContactInfo();
+        Map<Address, SystemContactInfo> contacts    = getSystemContactInfo(context);
+        String                          fingerprint = SystemContactInfo.fingerprint(contacts);
 
-        try {
-          while (cursor != null && cursor.moveToNext()) {
-            String number = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.NUMBER));
+        if (fingerprint.equals(TextSecurePreferences.getSystemContactsFingerprint(context))) {
+          Log.i(TAG, "System contacts are unchanged since the last sync.");
+          return;
+        }
 
-            if (!TextUtils.isEmpty(number)) {
-              Address   address         = Address.fromExternal(context, number);
-              String    displayName     = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME));
-              String    contactPhotoUri = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.PHOTO_URI));
-              String    contactLabel    = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.LABEL));
-              Uri       contactUri      = ContactsContract.Contacts.getLookupUri(cursor.getLong(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone._ID)),
-                                                                                 cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY)));
+        Set<Address> changed = DatabaseFactory.getRecipientDatabase(context).setSystemContactInfo(contacts);
 
-              handle.setSystemContactInfo(address, displayName, contactPhotoUri, contactLabel, contactUri.toString());
-            }
-          }
-        } finally {
-          handle.finish();
-        }
+        TextSecurePreferences.setSystemContactsFingerprint(context, fingerprint);
+        Log.i(TAG, "Updated system contact info for " + changed.size() + " recipients.");
 
         if (NotificationChannels.supported()) {
-          try (RecipientDatabase.RecipientReader recipients = DatabaseFactory.getRecipientDatabase(context).getRecipientsWithNotificationChannels()) {
-            Recipient recipient;
-            while ((recipient = recipients.getNext()) != null) {
-              NotificationChannels.updateContactChannelName(context, recipient);
-            }
+          for (Address address : changed) {
+            NotificationChannels.updateContactChannelName(context, Recipient.from(context, address, false));
           }
         }
       } catch (RemoteException | OperationApplicationException e) {
@@ -226,6 +217,29 @@ public class DirectoryHelper {
     }
   }
 
+  private static @NonNull Map<Address, SystemContactInfo> getSystemContactInfo(@NonNull Context context) {
+    Map<Address, SystemContactInfo> contacts = new HashMap<>();
+
+    try (Cursor cursor = ContactAccessor.getInstance().getAllSystemContacts(context)) {
+      while (cursor != null && cursor.moveToNext()) {
+        String number = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.NUMBER));
+
+        if (!TextUtils.isEmpty(number)) {
+          Address   address         = Address.fromExternal(context, number);
+          String    displayName     = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.DISPLAY_NAME));
+          String    contactPhotoUri = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.PHOTO_URI));
+          String    contactLabel    = cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.LABEL));
+          Uri       contactUri      = ContactsContract.Contacts.getLookupUri(cursor.getLong(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone._ID)),
+                                                                             cursor.getString(cursor.getColumnIndexOrThrow(ContactsContract.CommonDataKinds.Phone.LOOKUP_KEY)));
+
+          contacts.put(address, new SystemContactInfo(displayName, contactPhotoUri, contactLabel, contactUri.toString()));
+        }
+      }
+    }
+
+    return contacts;
+  }
+
   private static void notifyNewUsers(@NonNull  Context context,
                                      @NonNull  List<Address> newUsers)
   {
@@ -69,12 +69,12 @@ public class IdentityUtil {
     long                 time          = System.currentTimeMillis();
     SmsDatabase          smsDatabase   = DatabaseFactory.getSmsDatabase(context);
     GroupDatabase        groupDatabase = DatabaseFactory.getGroupDatabase(context);
-    GroupDatabase.Reader reader        = groupDatabase.getGroups();
+    GroupDatabase.Reader reader        = groupDatabase.getGroupsContaining(recipient.getAddress());
 
     GroupDatabase.GroupRecord groupRecord;
 
     while ((groupRecord = reader.getNext()) != null) {
-      if (groupRecord.getMembers().contains(recipient.getAddress()) && groupRecord.isActive() && !groupRecord.isMms()) {
+      if (groupRecord.isActive() && !groupRecord.isMms()) {
         SignalServiceGroup group = new SignalServiceGroup(groupRecord.getId());
 
         if (remote) {
@@ -121,12 +121,12 @@ public class IdentityUtil {
     long                 time          = System.currentTimeMillis();
     SmsDatabase          smsDatabase   = DatabaseFactory.getSmsDatabase(context);
     GroupDatabase        groupDatabase = DatabaseFactory.getGroupDatabase(context);
-    GroupDatabase.Reader reader        = groupDatabase.getGroups();
+    GroupDatabase.Reader reader        = groupDatabase.getGroupsContaining(recipient.getAddress());
 
     GroupDatabase.GroupRecord groupRecord;
 
     while ((groupRecord = reader.getNext()) != null) {
-      if (groupRecord.getMembers().contains(recipient.getAddress()) && groupRecord.isActive()) {
+      if (groupRecord.isActive()) {
         SignalServiceGroup            group       = new SignalServiceGroup(groupRecord.getId());
         IncomingTextMessage           incoming    = new IncomingTextMessage(recipient.getAddress(), 1, time, null, Optional.of(group), 0, false);
         IncomingIdentityUpdateMessage groupUpdate = new IncomingIdentityUpdateMessage(incoming);
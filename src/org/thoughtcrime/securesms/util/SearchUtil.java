@@ -57,6 +57,62 @@ public class SearchUtil {
     return spanned;
   }
 
+  /**
+   * Highlights the given ranges, such as those found by {@link #stripHighlightMarkers}.
+   */
+  public static Spannable getHighlightedSpan(@NonNull StyleFactory styleFactory,
+                                             @Nullable String text,
+                                             @NonNull List<Pair<Integer, Integer>> ranges)
+  {
+    if (TextUtils.isEmpty(text)) {
+      return new SpannableString("");
+    }
+
+    SpannableString spanned = new SpannableString(text.replaceAll("\n", " "));
+
+    for (Pair<Integer, Integer> range : ranges) {
+      spanned.setSpan(styleFactory.create(), range.first(), range.second(), Spannable.SPAN_INCLUSIVE_EXCLUSIVE);
+    }
+
+    return spanned;
+  }
+
+  /**
+   * Removes the characters that surround each match in text highlighted by the search index.
+   *
+   * @return The plain text, and the ranges within it that were highlighted.
+   */
+  public static @NonNull Pair<String, List<Pair<Integer, Integer>>> stripHighlightMarkers(@Nullable String text, char start, char end) {
+    if (text == null) {
+      return new Pair<>("", Collections.emptyList());
+    }
+
+    if (text.indexOf(start) < 0 && text.indexOf(end) < 0) {
+      return new Pair<>(text, Collections.emptyList());
+    }
+
+    StringBuilder                out    = new StringBuilder(text.length());
+    List<Pair<Integer, Integer>> ranges = new LinkedList<>();
+    int                          open   = -1;
+
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+
+      if (c == start) {
+        open = out.length();
+      } else if (c == end) {
+        if (open >= 0 && open < out.length()) {
+          ranges.add(new Pair<>(open, out.length()));
+        }
+        open = -1;
+      } else {
+        out.append(c);
+      }
+    }
+
+    return new Pair<>(out.toString(), ranges);
+  }
+
   static List<Pair<Integer, Integer>> getHighlightRanges(@NonNull Locale locale,
                                                          @NonNull String text,
                                                          @NonNull String highlight)
@@ -1,11 +1,9 @@
 package org.thoughtcrime.securesms.util;
 
 import android.content.Context;
-import android.content.SharedPreferences;
 import android.hardware.Camera.CameraInfo;
 import android.net.Uri;
 import android.os.Build;
-import android.preference.PreferenceManager;
 import android.provider.Settings;
 import android.support.annotation.ArrayRes;
 import android.support.annotation.NonNull;
@@ -22,7 +20,6 @@ import org.whispersystems.libsignal.util.Medium;
 import java.io.IOException;
 import java.security.SecureRandom;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -125,6 +122,7 @@ public class TextSecurePreferences {
   public  static final String INCOGNITO_KEYBORAD_PREF          = "pref_incognito_keyboard";
   private static final String UNAUTHORIZED_RECEIVED            = "pref_unauthorized_received";
   private static final String SUCCESSFUL_DIRECTORY_PREF        = "pref_successful_directory";
+  private static final String SYSTEM_CONTACTS_FINGERPRINT_PREF = "pref_system_contacts_fingerprint";
 
   private static final String DATABASE_ENCRYPTED_SECRET     = "pref_database_encrypted_secret";
   private static final String DATABASE_UNENCRYPTED_SECRET   = "pref_database_unencrypted_secret";
@@ -337,6 +335,14 @@ public class TextSecurePreferences {
     return getBooleanPreference(context, SUCCESSFUL_DIRECTORY_PREF, false);
   }
 
+  public static void setSystemContactsFingerprint(Context context, @Nullable String fingerprint) {
+    setStringPreference(context, SYSTEM_CONTACTS_FINGERPRINT_PREF, fingerprint);
+  }
+
+  public static @Nullable String getSystemContactsFingerprint(Context context) {
+    return getStringPreference(context, SYSTEM_CONTACTS_FINGERPRINT_PREF, null);
+  }
+
   public static void setUnauthorizedReceived(Context context, boolean value) {
     setBooleanPreference(context, UNAUTHORIZED_RECEIVED, value);
   }
@@ -1108,52 +1114,47 @@ public class TextSecurePreferences {
   }
 
   public static void setBooleanPreference(Context context, String key, boolean value) {
-    PreferenceManager.getDefaultSharedPreferences(context).edit().putBoolean(key, value).apply();
+    CachedSharedPreferences.getInstance(context).putBoolean(key, value);
   }
 
   public static boolean getBooleanPreference(Context context, String key, boolean defaultValue) {
-    return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(key, defaultValue);
+    return CachedSharedPreferences.getInstance(context).getBoolean(key, defaultValue);
   }
 
   public static void setStringPreference(Context context, String key, String value) {
-    PreferenceManager.getDefaultSharedPreferences(context).edit().putString(key, value).apply();
+    CachedSharedPreferences.getInstance(context).putString(key, value);
   }
 
   public static String getStringPreference(Context context, String key, String defaultValue) {
-    return PreferenceManager.getDefaultSharedPreferences(context).getString(key, defaultValue);
+    return CachedSharedPreferences.getInstance(context).getString(key, defaultValue);
   }
 
   private static int getIntegerPreference(Context context, String key, int defaultValue) {
-    return PreferenceManager.getDefaultSharedPreferences(context).getInt(key, defaultValue);
+    return CachedSharedPreferences.getInstance(context).getInt(key, defaultValue);
   }
 
   private static void setIntegerPrefrence(Context context, String key, int value) {
-    PreferenceManager.getDefaultSharedPreferences(context).edit().putInt(key, value).apply();
+    CachedSharedPreferences.getInstance(context).putInt(key, value);
   }
 
   private static boolean setIntegerPrefrenceBlocking(Context context, String key, int value) {
-    return PreferenceManager.getDefaultSharedPreferences(context).edit().putInt(key, value).commit();
+    return CachedSharedPreferences.getInstance(context).commitInt(key, value);
   }
 
   private static long getLongPreference(Context context, String key, long defaultValue) {
-    return PreferenceManager.getDefaultSharedPreferences(context).getLong(key, defaultValue);
+    return CachedSharedPreferences.getInstance(context).getLong(key, defaultValue);
   }
 
   private static void setLongPreference(Context context, String key, long value) {
-    PreferenceManager.getDefaultSharedPreferences(context).edit().putLong(key, value).apply();
+    CachedSharedPreferences.getInstance(context).putLong(key, value);
   }
 
   private static void removePreference(Context context, String key) {
-    PreferenceManager.getDefaultSharedPreferences(context).edit().remove(key).apply();
+    CachedSharedPreferences.getInstance(context).remove(key);
   }
 
   private static Set<String> getStringSetPreference(Context context, String key, Set<String> defaultValues) {
-    final SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-    if (prefs.contains(key)) {
-      return prefs.getStringSet(key, Collections.<String>emptySet());
-    } else {
-      return defaultValues;
-    }
+    return CachedSharedPreferences.getInstance(context).getStringSet(key, defaultValues);
   }
 
   // NEVER rename these -- they're persisted by name
@@ -22,6 +22,12 @@ public class SignalExecutors {
     return executor;
   }
 
+  public static ExecutorService newCachedBoundedExecutor(final String name, int maxThreads) {
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(maxThreads, maxThreads, 15, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), new NumberedThreadFactory(name));
+    executor.allowCoreThreadTimeOut(true);
+    return executor;
+  }
+
   private static class NumberedThreadFactory implements ThreadFactory {
 
     private final String        baseName;
@@ -0,0 +1,102 @@
+package org.thoughtcrime.securesms;
+
+import android.util.Log;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Base for benchmarks. Sets up in-memory databases that are closed after each test, and times
+ * and logs the scenarios being compared.
+ */
+public abstract class BenchmarkTestCase extends TextSecureTestCase {
+
+  private final List<SQLiteDatabase> databases = new LinkedList<>();
+
+  @Override
+  public void setUp() {
+    super.setUp();
+    SQLiteDatabase.loadLibs(getInstrumentation().getTargetContext());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (SQLiteDatabase database : databases) {
+      database.close();
+    }
+    databases.clear();
+
+    super.tearDown();
+  }
+
+  /**
+   * @return A new in-memory database with the statements already run on it.
+   */
+  protected SQLiteDatabase createDatabase(String... statements) {
+    SQLiteDatabase database = SQLiteDatabase.create(null, "benchmark");
+
+    for (String statement : statements) {
+      database.execSQL(statement);
+    }
+
+    databases.add(database);
+    return database;
+  }
+
+  /**
+   * Runs the fixture setup in a single transaction, so inserting it doesn't dominate the test.
+   */
+  protected static void inTransaction(SQLiteDatabase database, Runnable runnable) {
+    database.beginTransaction();
+    try {
+      runnable.run();
+      database.setTransactionSuccessful();
+    } finally {
+      database.endTransaction();
+    }
+  }
+
+  /**
+   * @return How long one run took, in nanoseconds.
+   */
+  protected static long time(Runnable runnable) {
+    long start = System.nanoTime();
+    runnable.run();
+    return System.nanoTime() - start;
+  }
+
+  /**
+   * @return The average of several runs in nanoseconds, after the same number of warm-up runs.
+   */
+  protected static long averageTime(int iterations, Runnable runnable) {
+    for (int i = 0; i < iterations; i++) runnable.run();
+
+    long total = 0;
+    for (int i = 0; i < iterations; i++) total += time(runnable);
+
+    return total / iterations;
+  }
+
+  /**
+   * @return The Java heap in use after a collection, in bytes.
+   */
+  protected static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    runtime.gc();
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  protected static String millis(long nanos) {
+    return (nanos / 1_000_000) + " ms";
+  }
+
+  protected static String micros(long nanos) {
+    return (nanos / 1_000) + " us";
+  }
+
+  protected void logResult(String result) {
+    Log.i(getClass().getSimpleName(), result);
+  }
+}
@@ -0,0 +1,56 @@
+package org.thoughtcrime.securesms.components.emoji.parsing;
+
+import org.thoughtcrime.securesms.BenchmarkTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Measures the heap used by a tree the size of the real emoji set, and parse throughput over a
+ * message with 200 emoji in it.
+ */
+public class EmojiParserBenchmark extends BenchmarkTestCase {
+
+  private static final int EMOJI_IN_MESSAGE = 200;
+  private static final int ITERATIONS       = 2000;
+
+  private List<String> emoji;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+
+    emoji = new ArrayList<>();
+
+    for (int codePoint = 0x1F300; codePoint < 0x1FA00; codePoint++) {
+      emoji.add(new String(Character.toChars(codePoint)));
+      emoji.add(new String(Character.toChars(codePoint)) + "️");
+    }
+  }
+
+  public void testParse() {
+    long      heap = usedHeap();
+    EmojiTree tree = new EmojiTree();
+
+    for (int i = 0; i < emoji.size(); i++) {
+      tree.add(emoji.get(i), new EmojiDrawInfo(null, i));
+    }
+
+    long treeHeap = usedHeap() - heap;
+
+    StringBuilder message = new StringBuilder();
+    for (int i = 0; i < EMOJI_IN_MESSAGE; i++) {
+      message.append("Some text ").append(emoji.get(i * 7 % emoji.size())).append(' ');
+    }
+
+    EmojiParser parser = new EmojiParser(tree);
+    String      text   = message.toString();
+
+    assertEquals(EMOJI_IN_MESSAGE, parser.findCandidates(text).size());
+
+    long time = averageTime(ITERATIONS, () -> parser.findCandidates(text));
+
+    logResult("EmojiTree: " + emoji.size() + " emoji, ~" + (treeHeap / 1024) + " KB heap. " +
+              "EmojiParser: " + micros(time) + " per " + text.length() + " char message");
+  }
+}
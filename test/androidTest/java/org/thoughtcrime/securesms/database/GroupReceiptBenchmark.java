@@ -0,0 +1,129 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.thoughtcrime.securesms.BenchmarkTestCase;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compares writing the receipts for one message to a 100 member group row by row, each in its own
+ * transaction as before, with the bulk statements. The per-row side runs against the old single
+ * column index.
+ */
+public class GroupReceiptBenchmark extends BenchmarkTestCase {
+
+  private static final int MEMBER_COUNT  = 100;
+  private static final int MESSAGE_COUNT = 1_000;
+  private static final int ITERATIONS    = 5;
+
+  private SQLiteDatabase bulkDb;
+  private SQLiteDatabase perRowDb;
+  private List<Address>  members;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+
+    members = new ArrayList<>(MEMBER_COUNT);
+
+    for (int i = 0; i < MEMBER_COUNT; i++) {
+      members.add(Address.fromSerialized(String.format("05%064x", i)));
+    }
+
+    bulkDb = createDatabase(GroupReceiptDatabase.CREATE_TABLE);
+    for (String statement : GroupReceiptDatabase.CREATE_INDEXES) bulkDb.execSQL(statement);
+
+    perRowDb = createDatabase(GroupReceiptDatabase.CREATE_TABLE,
+                              "CREATE INDEX IF NOT EXISTS group_receipt_mms_id_index ON group_receipts (mms_id)");
+
+    for (long mmsId = 1; mmsId <= MESSAGE_COUNT; mmsId++) {
+      GroupReceiptDatabase.insert(bulkDb, members, mmsId, GroupReceiptDatabase.STATUS_DELIVERED, mmsId);
+      GroupReceiptDatabase.insert(perRowDb, members, mmsId, GroupReceiptDatabase.STATUS_DELIVERED, mmsId);
+    }
+  }
+
+  public void testBulkUpdateOnlyMovesReceiptsForward() {
+    long mmsId = MESSAGE_COUNT + 1;
+
+    GroupReceiptDatabase.insert(bulkDb, members, mmsId, GroupReceiptDatabase.STATUS_UNDELIVERED, 0);
+
+    assertEquals(MEMBER_COUNT, GroupReceiptDatabase.update(bulkDb, members, mmsId, GroupReceiptDatabase.STATUS_READ, 1));
+    assertEquals(0, GroupReceiptDatabase.update(bulkDb, members, mmsId, GroupReceiptDatabase.STATUS_DELIVERED, 2));
+    assertEquals(MEMBER_COUNT, countWithStatus(bulkDb, mmsId, GroupReceiptDatabase.STATUS_READ));
+  }
+
+  public void testWrites() {
+    long perRowInsert = 0;
+    long bulkInsert   = 0;
+    long perRowUpdate = 0;
+    long bulkUpdate   = 0;
+    int  perRowWrites = 0;
+    int  bulkWrites   = 0;
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      long mmsId   = MESSAGE_COUNT + 1 + i;
+      int  changes = totalChanges(perRowDb);
+
+      perRowInsert += time(() -> insertPerRow(perRowDb, mmsId));
+      perRowUpdate += time(() -> { for (Address member : members) updatePerRow(perRowDb, member, mmsId); });
+      perRowWrites += totalChanges(perRowDb) - changes;
+
+      changes = totalChanges(bulkDb);
+
+      bulkInsert += time(() -> GroupReceiptDatabase.insert(bulkDb, members, mmsId, GroupReceiptDatabase.STATUS_UNDELIVERED, mmsId));
+      bulkUpdate += time(() -> GroupReceiptDatabase.update(bulkDb, members, mmsId, GroupReceiptDatabase.STATUS_DELIVERED, mmsId));
+      bulkWrites += totalChanges(bulkDb) - changes;
+
+      assertEquals(MEMBER_COUNT, countWithStatus(perRowDb, mmsId, GroupReceiptDatabase.STATUS_DELIVERED));
+      assertEquals(MEMBER_COUNT, countWithStatus(bulkDb, mmsId, GroupReceiptDatabase.STATUS_DELIVERED));
+    }
+
+    assertEquals(perRowWrites, bulkWrites);
+
+    logResult(MEMBER_COUNT + " members, " + (bulkWrites / ITERATIONS) + " row writes per message. " +
+              "Per row (" + (MEMBER_COUNT * 2) + " transactions): insert " + micros(perRowInsert / ITERATIONS) + ", receipts " + micros(perRowUpdate / ITERATIONS) + "; " +
+              "bulk (2 transactions): insert " + micros(bulkInsert / ITERATIONS) + ", receipts " + micros(bulkUpdate / ITERATIONS));
+  }
+
+  private void insertPerRow(SQLiteDatabase db, long mmsId) {
+    for (Address member : members) {
+      ContentValues values = new ContentValues(4);
+      values.put("mms_id", mmsId);
+      values.put("address", member.serialize());
+      values.put("status", GroupReceiptDatabase.STATUS_UNDELIVERED);
+      values.put("timestamp", mmsId);
+
+      db.insert(GroupReceiptDatabase.TABLE_NAME, null, values);
+    }
+  }
+
+  private static void updatePerRow(SQLiteDatabase db, Address address, long mmsId) {
+    ContentValues values = new ContentValues(2);
+    values.put("status", GroupReceiptDatabase.STATUS_DELIVERED);
+    values.put("timestamp", mmsId);
+
+    db.update(GroupReceiptDatabase.TABLE_NAME, values, "mms_id = ? AND address = ? AND status < ?",
+              new String[] {String.valueOf(mmsId), address.serialize(), String.valueOf(GroupReceiptDatabase.STATUS_DELIVERED)});
+  }
+
+  private static int countWithStatus(SQLiteDatabase db, long mmsId, int status) {
+    try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + GroupReceiptDatabase.TABLE_NAME + " WHERE mms_id = ? AND status = ?",
+                                     new String[] {String.valueOf(mmsId), String.valueOf(status)}))
+    {
+      cursor.moveToFirst();
+      return cursor.getInt(0);
+    }
+  }
+
+  private static int totalChanges(SQLiteDatabase db) {
+    try (Cursor cursor = db.rawQuery("SELECT total_changes()", null)) {
+      cursor.moveToFirst();
+      return cursor.getInt(0);
+    }
+  }
+}
@@ -0,0 +1,88 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.thoughtcrime.securesms.BenchmarkTestCase;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Compares looking up the senders of a 50k message thread through the participant indexes with
+ * reading every message in the thread, which is what the sender cache used to do.
+ */
+public class ParticipantAddressesBenchmark extends BenchmarkTestCase {
+
+  private static final long THREAD_ID    = 1;
+  private static final int  SMS_COUNT    = 40_000;
+  private static final int  MMS_COUNT    = 10_000;
+  private static final int  SENDER_COUNT = 250;
+  private static final int  ITERATIONS   = 5;
+
+  private SQLiteDatabase db;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+
+    db = createDatabase(SmsDatabase.CREATE_TABLE, MmsDatabase.CREATE_TABLE);
+
+    for (String statement : SmsDatabase.CREATE_INDEXS) db.execSQL(statement);
+    for (String statement : MmsDatabase.CREATE_INDEXS) db.execSQL(statement);
+
+    inTransaction(db, () -> {
+      insertMessages(SmsDatabase.TABLE_NAME, SmsDatabase.DATE_RECEIVED, SMS_COUNT);
+      insertMessages(MmsDatabase.TABLE_NAME, MmsDatabase.DATE_RECEIVED, MMS_COUNT);
+    });
+  }
+
+  public void testParticipantAddresses() {
+    Set<String> expected = readAllMessages();
+    Set<String> actual   = MmsSmsDatabase.getParticipantAddresses(db, THREAD_ID);
+
+    assertEquals(SENDER_COUNT, expected.size());
+    assertEquals(expected, actual);
+
+    long fullScan = averageTime(ITERATIONS, this::readAllMessages);
+    long indexed  = averageTime(ITERATIONS, () -> MmsSmsDatabase.getParticipantAddresses(db, THREAD_ID));
+
+    logResult("Full scan: " + millis(fullScan) + ", indexed: " + millis(indexed));
+  }
+
+  private void insertMessages(String table, String dateColumn, int count) {
+    ContentValues values = new ContentValues();
+
+    for (int i = 0; i < count; i++) {
+      values.clear();
+      values.put(MmsSmsColumns.THREAD_ID, THREAD_ID);
+      values.put(MmsSmsColumns.ADDRESS, String.format("05%064x", i % SENDER_COUNT));
+      values.put(MmsSmsColumns.BODY, "Message body " + i + " with some padding to look like a real message.");
+      values.put(dateColumn, i);
+
+      db.insert(table, null, values);
+    }
+  }
+
+  private Set<String> readAllMessages() {
+    Set<String> addresses = new HashSet<>();
+
+    for (String table : new String[] { SmsDatabase.TABLE_NAME, MmsDatabase.TABLE_NAME }) {
+      try (Cursor cursor = db.query(table, null, MmsSmsColumns.THREAD_ID + " = ?", new String[] { String.valueOf(THREAD_ID) }, null, null, null)) {
+        int addressColumn = cursor.getColumnIndexOrThrow(MmsSmsColumns.ADDRESS);
+
+        while (cursor.moveToNext()) {
+          for (int column = 0; column < cursor.getColumnCount(); column++) {
+            cursor.getString(column);
+          }
+
+          addresses.add(cursor.getString(addressColumn));
+        }
+      }
+    }
+
+    return addresses;
+  }
+}
@@ -0,0 +1,154 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Debug;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.thoughtcrime.securesms.BenchmarkTestCase;
+import org.thoughtcrime.securesms.database.SearchDatabase.MessagePage;
+import org.thoughtcrime.securesms.database.SearchDatabase.MessagePosition;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Measures the time and cursor memory needed to show the first page of message search results
+ * over a large corpus, and checks that paging through the ranked results visits every match once.
+ */
+public class SearchBenchmark extends BenchmarkTestCase {
+
+  private static final int THREAD_COUNT = 50;
+  private static final int SMS_COUNT    = 80_000;
+  private static final int MMS_COUNT    = 20_000;
+  private static final int OLD_LIMIT    = 500;
+  private static final int ITERATIONS   = 5;
+
+  private static final String[] WORDS = { "meeting", "lunch", "tomorrow", "photo", "call", "later", "weekend", "train", "coffee", "thanks" };
+
+  private SQLiteDatabase db;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+
+    db = createDatabase(SmsDatabase.CREATE_TABLE, MmsDatabase.CREATE_TABLE, ThreadDatabase.CREATE_TABLE);
+
+    for (String statement : SearchDatabase.CREATE_TABLE) db.execSQL(statement);
+
+    inTransaction(db, () -> {
+      insertThreads();
+      insertMessages(SmsDatabase.TABLE_NAME, SmsDatabase.DATE_RECEIVED, SMS_COUNT);
+      insertMessages(MmsDatabase.TABLE_NAME, MmsDatabase.DATE_RECEIVED, MMS_COUNT);
+    });
+  }
+
+  public void testPagesVisitEveryMatchOnce() {
+    String    query    = SearchDatabase.adjustQuery("coffee");
+    Set<Long> seen     = new HashSet<>();
+    double    lastRank = -Double.MAX_VALUE;
+    int       total    = 0;
+
+    MessagePosition position = MessagePosition.START;
+
+    while (position != null) {
+      MessagePage page = SearchDatabase.queryMessages(db, query, position, SearchDatabase.PAGE_SIZE);
+
+      try (Cursor cursor = page.getCursor()) {
+        while (cursor.moveToNext()) {
+          double rank  = cursor.getDouble(cursor.getColumnIndexOrThrow(SearchDatabase.RANK));
+          long   id    = cursor.getLong(cursor.getColumnIndexOrThrow(SearchDatabase.MESSAGE_ID));
+          int    isMms = cursor.getInt(cursor.getColumnIndexOrThrow(SearchDatabase.IS_MMS));
+
+          assertTrue(rank >= lastRank);
+          assertTrue(seen.add(isMms == 1 ? -id : id));
+          assertTrue(cursor.getString(cursor.getColumnIndexOrThrow(SearchDatabase.SNIPPET)).indexOf(SearchDatabase.HIGHLIGHT_START) >= 0);
+
+          lastRank = rank;
+          total++;
+        }
+      }
+
+      position = page.getNext();
+    }
+
+    assertEquals(countMatches(query), total);
+  }
+
+  public void testFirstPage() {
+    String query = SearchDatabase.adjustQuery("lunch");
+
+    long pageTime   = averageTime(ITERATIONS, () -> readFirstPage(query, SearchDatabase.PAGE_SIZE));
+    long oldTime    = averageTime(ITERATIONS, () -> readFirstPage(query, OLD_LIMIT));
+    long pageMemory = firstPageMemory(query, SearchDatabase.PAGE_SIZE);
+    long oldMemory  = firstPageMemory(query, OLD_LIMIT);
+
+    logResult("First page of " + SearchDatabase.PAGE_SIZE + ": " + millis(pageTime) + ", " + (pageMemory / 1024) + " KiB; " +
+              "batch of " + OLD_LIMIT + ": " + millis(oldTime) + ", " + (oldMemory / 1024) + " KiB");
+  }
+
+  private void readFirstPage(String query, int limit) {
+    try (Cursor cursor = SearchDatabase.queryMessages(db, query, MessagePosition.START, limit).getCursor()) {
+      assertEquals(limit, cursor.getCount());
+    }
+  }
+
+  /**
+   * @return The native memory held by an open cursor over the first page, where the cursor window
+   *         lives.
+   */
+  private long firstPageMemory(String query, int limit) {
+    long memory = Debug.getNativeHeapAllocatedSize();
+
+    try (Cursor cursor = SearchDatabase.queryMessages(db, query, MessagePosition.START, limit).getCursor()) {
+      assertEquals(limit, cursor.getCount());
+      return Debug.getNativeHeapAllocatedSize() - memory;
+    }
+  }
+
+  private void insertThreads() {
+    ContentValues values = new ContentValues();
+
+    for (int i = 1; i <= THREAD_COUNT; i++) {
+      values.clear();
+      values.put(ThreadDatabase.ID, i);
+      values.put(ThreadDatabase.ADDRESS, String.format("05%064x", i));
+
+      db.insert(ThreadDatabase.TABLE_NAME, null, values);
+    }
+  }
+
+  private void insertMessages(String table, String dateColumn, int count) {
+    ContentValues values = new ContentValues();
+
+    for (int i = 0; i < count; i++) {
+      StringBuilder body = new StringBuilder("Message " + i);
+
+      for (int word = 0; word <= i % 7; word++) {
+        body.append(' ').append(WORDS[(i * 31 + word * 7) % WORDS.length]);
+      }
+
+      values.clear();
+      values.put(MmsSmsColumns.THREAD_ID, 1 + i % THREAD_COUNT);
+      values.put(MmsSmsColumns.ADDRESS, String.format("05%064x", i % THREAD_COUNT));
+      values.put(MmsSmsColumns.BODY, body.toString());
+      values.put(dateColumn, i);
+
+      db.insert(table, null, values);
+    }
+  }
+
+  private int countMatches(String query) {
+    int count = 0;
+
+    for (String table : new String[] { SearchDatabase.SMS_FTS_TABLE_NAME, SearchDatabase.MMS_FTS_TABLE_NAME }) {
+      try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table + " WHERE " + table + " MATCH ?", new String[] { query })) {
+        cursor.moveToFirst();
+        count += cursor.getInt(0);
+      }
+    }
+
+    return count;
+  }
+}
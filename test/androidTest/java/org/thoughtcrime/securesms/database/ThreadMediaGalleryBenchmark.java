@@ -0,0 +1,164 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.thoughtcrime.securesms.BenchmarkTestCase;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares opening the all media gallery of a thread with 10k attachments by reading every record,
+ * as the gallery used to, with reading the section counts and the first page of records.
+ */
+public class ThreadMediaGalleryBenchmark extends BenchmarkTestCase {
+
+  private static final long THREAD_ID        = 1;
+  private static final int  ATTACHMENT_COUNT = 10_000;
+  private static final int  PAGE_SIZE        = 60;
+  private static final int  ITERATIONS       = 5;
+  private static final long SPAN             = TimeUnit.DAYS.toMillis(730);
+
+  private Context        context;
+  private SQLiteDatabase db;
+  private long           now;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+
+    context = getInstrumentation().getTargetContext();
+    now     = System.currentTimeMillis();
+
+    db = createDatabase(MmsDatabase.CREATE_TABLE, AttachmentDatabase.CREATE_TABLE);
+    for (String statement : MmsDatabase.CREATE_INDEXS)       db.execSQL(statement);
+    for (String statement : AttachmentDatabase.CREATE_INDEXS) db.execSQL(statement);
+
+    inTransaction(db, () -> {
+      for (int i = 0; i < ATTACHMENT_COUNT; i++) {
+        long date = now - (SPAN * i / ATTACHMENT_COUNT);
+
+        ContentValues message = new ContentValues(4);
+        message.put(MmsDatabase.THREAD_ID, THREAD_ID);
+        message.put(MmsDatabase.DATE_SENT, date);
+        message.put(MmsDatabase.DATE_RECEIVED, date + 1_000);
+        message.put(MmsDatabase.MESSAGE_BOX, i % 2 == 0 ? MmsSmsColumns.Types.PUSH_MESSAGE_BIT : 0);
+
+        long mmsId = db.insert(MmsDatabase.TABLE_NAME, null, message);
+
+        ContentValues attachment = new ContentValues(4);
+        attachment.put(AttachmentDatabase.MMS_ID, mmsId);
+        attachment.put(AttachmentDatabase.UNIQUE_ID, i);
+        attachment.put(AttachmentDatabase.CONTENT_TYPE, i % 10 == 0 ? "video/mp4" : "image/jpeg");
+        attachment.put(AttachmentDatabase.DATA, "/benchmark/" + i);
+
+        db.insert(AttachmentDatabase.TABLE_NAME, null, attachment);
+      }
+    });
+  }
+
+  public void testSectionPagesCoverEveryAttachmentOnce() {
+    Set<Long> ids   = new HashSet<>();
+    int       total = 0;
+
+    try (Cursor sections = MediaDatabase.getGallerySections(db, THREAD_ID, now)) {
+      while (sections.moveToNext()) {
+        int range = sections.getInt(0);
+        int month = sections.getInt(1);
+        int count = sections.getInt(2);
+
+        long beforeDate = Long.MAX_VALUE;
+        long beforeId   = Long.MAX_VALUE;
+        int  read       = 0;
+        int  pageCount;
+
+        do {
+          try (Cursor page = MediaDatabase.getGallerySectionPage(db, THREAD_ID, now, range, month, beforeDate, beforeId, PAGE_SIZE)) {
+            pageCount = page.getCount();
+
+            while (page.moveToNext()) {
+              long date = page.getLong(page.getColumnIndexOrThrow(MediaDatabase.MEDIA_DATE_COLUMN));
+              long id   = page.getLong(page.getColumnIndexOrThrow(AttachmentDatabase.ROW_ID));
+
+              assertTrue(date < beforeDate || (date == beforeDate && id < beforeId));
+              assertTrue(ids.add(id));
+
+              beforeDate = date;
+              beforeId   = id;
+              read++;
+            }
+          }
+        } while (pageCount == PAGE_SIZE);
+
+        assertEquals(count, read);
+        total += count;
+      }
+    }
+
+    assertEquals(ATTACHMENT_COUNT, total);
+    assertEquals(ATTACHMENT_COUNT, ids.size());
+  }
+
+  public void testFirstPage() {
+    long allTime     = 0;
+    long pagedTime   = 0;
+    long allHeap     = 0;
+    long pagedHeap   = 0;
+    int  allCount    = 0;
+    int  pagedCount  = 0;
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      long heap  = usedHeap();
+      long start = System.nanoTime();
+
+      List<MediaDatabase.MediaRecord> all = new ArrayList<>();
+
+      try (Cursor cursor = MediaDatabase.getGalleryMedia(db, THREAD_ID)) {
+        while (cursor.moveToNext()) {
+          all.add(MediaDatabase.MediaRecord.from(context, cursor));
+        }
+      }
+
+      allTime  += System.nanoTime() - start;
+      allHeap  += usedHeap() - heap;
+      allCount  = all.size();
+      all       = null;
+
+      heap  = usedHeap();
+      start = System.nanoTime();
+
+      List<int[]>                     sections  = new ArrayList<>();
+      List<MediaDatabase.MediaRecord> firstPage = new ArrayList<>(PAGE_SIZE);
+
+      try (Cursor cursor = MediaDatabase.getGallerySections(db, THREAD_ID, now)) {
+        while (cursor.moveToNext()) {
+          sections.add(new int[] { cursor.getInt(0), cursor.getInt(1), cursor.getInt(2) });
+        }
+      }
+
+      try (Cursor cursor = MediaDatabase.getGallerySectionPage(db, THREAD_ID, now, sections.get(0)[0], sections.get(0)[1], Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE)) {
+        while (cursor.moveToNext()) {
+          firstPage.add(MediaDatabase.MediaRecord.from(context, cursor));
+        }
+      }
+
+      pagedTime  += System.nanoTime() - start;
+      pagedHeap  += usedHeap() - heap;
+      pagedCount  = firstPage.size();
+    }
+
+    assertEquals(ATTACHMENT_COUNT, allCount);
+    assertTrue(pagedCount > 0);
+
+    logResult(ATTACHMENT_COUNT + " attachments. " +
+              "Everything: " + millis(allTime / ITERATIONS) + ", " + (allHeap / ITERATIONS / 1024) + " KB retained; " +
+              "sections and first page (" + pagedCount + " records): " + millis(pagedTime / ITERATIONS) + ", " + (pagedHeap / ITERATIONS / 1024) + " KB retained");
+  }
+}
@@ -0,0 +1,102 @@
+package org.thoughtcrime.securesms.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+
+import org.thoughtcrime.securesms.BenchmarkTestCase;
+
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Measures a trimming pass over many busy threads, and checks that each thread is left with
+ * exactly its newest messages.
+ */
+public class ThreadTrimmerBenchmark extends BenchmarkTestCase {
+
+  private static final int THREAD_COUNT      = 200;
+  private static final int MESSAGES_PER_TYPE = 400;
+  private static final int LENGTH            = 100;
+
+  private SQLiteDatabase db;
+  private List<Long>     threadIds;
+  private int            mmsCleanups;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+
+    db = createDatabase(SmsDatabase.CREATE_TABLE, MmsDatabase.CREATE_TABLE);
+
+    for (String statement : SmsDatabase.CREATE_INDEXS) db.execSQL(statement);
+    for (String statement : MmsDatabase.CREATE_INDEXS) db.execSQL(statement);
+
+    threadIds = new LinkedList<>();
+
+    inTransaction(db, () -> {
+      for (long threadId = 1; threadId <= THREAD_COUNT; threadId++) {
+        threadIds.add(threadId);
+        insertMessages(SmsDatabase.TABLE_NAME, SmsDatabase.DATE_RECEIVED, threadId, 0);
+        insertMessages(MmsDatabase.TABLE_NAME, MmsDatabase.DATE_RECEIVED, threadId, 1);
+      }
+    });
+  }
+
+  public void testTrimPass() {
+    ThreadTrimmer          trimmer = new ThreadTrimmer(db, mmsId -> mmsCleanups++);
+    ThreadTrimmer.Result[] results = new ThreadTrimmer.Result[1];
+    long                   time    = time(() -> results[0] = trimmer.trim(threadIds, LENGTH, null));
+    ThreadTrimmer.Result   result  = results[0];
+
+    int expectedDeleted = THREAD_COUNT * (2 * MESSAGES_PER_TYPE - LENGTH);
+
+    assertEquals(THREAD_COUNT, result.getTrimmedThreadIds().size());
+    assertEquals(expectedDeleted, result.getDeletedCount());
+    assertEquals(THREAD_COUNT * (MESSAGES_PER_TYPE - LENGTH / 2), mmsCleanups);
+    assertEquals(mmsCleanups, result.getDeletedMmsCount());
+    assertTrue(result.getTransactionCount() <= expectedDeleted / ThreadTrimmer.BATCH_SIZE + 1);
+
+    for (long threadId : threadIds) {
+      assertEquals(LENGTH, count(threadId));
+      assertEquals(-1, trimmer.getCutoff(threadId, LENGTH));
+    }
+
+    logResult("Trimmed " + result.getDeletedCount() + " messages from " + THREAD_COUNT + " threads in " +
+              millis(time) + " and " + result.getTransactionCount() + " transactions");
+  }
+
+  public void testShortThreadsAreUntouched() {
+    ThreadTrimmer.Result result = new ThreadTrimmer(db, mmsId -> mmsCleanups++).trim(threadIds, 2 * MESSAGES_PER_TYPE, null);
+
+    assertTrue(result.getTrimmedThreadIds().isEmpty());
+    assertEquals(0, result.getTransactionCount());
+    assertEquals(2 * MESSAGES_PER_TYPE, count(1));
+  }
+
+  /**
+   * Interleaves sms and mms dates so the cutoff falls in the middle of both tables.
+   */
+  private void insertMessages(String table, String dateColumn, long threadId, int offset) {
+    ContentValues values = new ContentValues();
+
+    for (int i = 0; i < MESSAGES_PER_TYPE; i++) {
+      values.clear();
+      values.put(MmsSmsColumns.THREAD_ID, threadId);
+      values.put(dateColumn, 2 * i + offset);
+
+      db.insert(table, null, values);
+    }
+  }
+
+  private int count(long threadId) {
+    String   query = "SELECT (SELECT COUNT(*) FROM sms WHERE thread_id = ?) + (SELECT COUNT(*) FROM mms WHERE thread_id = ?)";
+    String[] args  = new String[] { String.valueOf(threadId), String.valueOf(threadId) };
+
+    try (Cursor cursor = db.rawQuery(query, args)) {
+      cursor.moveToFirst();
+      return cursor.getInt(0);
+    }
+  }
+}
@@ -0,0 +1,119 @@
+package org.thoughtcrime.securesms.database.helpers;
+
+import android.database.Cursor;
+
+import net.sqlcipher.database.SQLiteDatabase;
+import net.sqlcipher.database.SQLiteDatabaseHook;
+
+import org.thoughtcrime.securesms.TextSecureTestCase;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Checks that reads through the pool complete while another thread holds a long write transaction,
+ * where the same read on the writing connection has to wait for the transaction to end.
+ */
+public class ReaderConnectionPoolTest extends TextSecureTestCase {
+
+  private static final String PASSWORD = "password";
+
+  private static final SQLiteDatabaseHook HOOK = new SQLiteDatabaseHook() {
+    @Override
+    public void preKey(SQLiteDatabase db) {}
+
+    @Override
+    public void postKey(SQLiteDatabase db) {}
+  };
+
+  private File                 file;
+  private SQLiteDatabase       writer;
+  private ReaderConnectionPool readers;
+  private ExecutorService      executor;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+
+    SQLiteDatabase.loadLibs(getInstrumentation().getTargetContext());
+
+    file = new File(getInstrumentation().getTargetContext().getCacheDir(), "reader_pool_test.db");
+    deleteDatabase();
+
+    writer = SQLiteDatabase.openOrCreateDatabase(file, PASSWORD, null, HOOK);
+    writer.rawExecSQL("PRAGMA journal_mode = WAL;");
+    writer.execSQL("CREATE TABLE messages (_id INTEGER PRIMARY KEY, body TEXT)");
+    writer.execSQL("INSERT INTO messages (body) VALUES ('committed')");
+
+    readers  = new ReaderConnectionPool(file, PASSWORD, HOOK, 2);
+    executor = Executors.newCachedThreadPool();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    executor.shutdownNow();
+    readers.close();
+    writer.close();
+    deleteDatabase();
+    super.tearDown();
+  }
+
+  public void testReadsDoNotBlockBehindWriteTransaction() throws Exception {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+
+    Future<?> write = executor.submit(() -> {
+      writer.beginTransaction();
+      try {
+        writer.execSQL("INSERT INTO messages (body) VALUES ('uncommitted')");
+        writing.countDown();
+        release.await();
+        writer.setTransactionSuccessful();
+      } finally {
+        writer.endTransaction();
+      }
+      return null;
+    });
+
+    assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+    Future<Integer> pooledRead = executor.submit(count(readers.get()));
+    assertEquals(1, (int) pooledRead.get(1, TimeUnit.SECONDS));
+
+    Future<Integer> writerRead = executor.submit(count(writer));
+
+    try {
+      writerRead.get(1, TimeUnit.SECONDS);
+      fail("Read on the writing connection should wait for the transaction.");
+    } catch (TimeoutException e) {
+      // Expected
+    }
+
+    release.countDown();
+    write.get(5, TimeUnit.SECONDS);
+
+    assertEquals(2, (int) writerRead.get(5, TimeUnit.SECONDS));
+    assertEquals(2, (int) count(readers.get()).call());
+  }
+
+  private void deleteDatabase() {
+    for (String suffix : new String[] { "", "-wal", "-shm" }) {
+      new File(file.getPath() + suffix).delete();
+    }
+  }
+
+  private static Callable<Integer> count(SQLiteDatabase db) {
+    return () -> {
+      try (Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM messages", null)) {
+        cursor.moveToFirst();
+        return cursor.getInt(0);
+      }
+    };
+  }
+}
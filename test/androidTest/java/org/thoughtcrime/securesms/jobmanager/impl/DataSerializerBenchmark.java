@@ -0,0 +1,49 @@
+package org.thoughtcrime.securesms.jobmanager.impl;
+
+import org.thoughtcrime.securesms.BenchmarkTestCase;
+import org.thoughtcrime.securesms.jobmanager.Data;
+
+/**
+ * Compares the size and round trip time of the job data for a send to 500 recipients through the
+ * JSON and binary serializers.
+ */
+public class DataSerializerBenchmark extends BenchmarkTestCase {
+
+  private static final int RECIPIENT_COUNT = 500;
+  private static final int ITERATIONS      = 500;
+
+  private Data data;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+
+    String[] recipients = new String[RECIPIENT_COUNT];
+
+    for (int i = 0; i < recipients.length; i++) {
+      recipients[i] = String.format("05%064x", i);
+    }
+
+    data = new Data.Builder().putLong("message_id", 1234)
+                             .putStringArray("recipients", recipients)
+                             .putBoolean("is_media", true)
+                             .build();
+  }
+
+  public void testMultiRecipientSend() {
+    JsonDataSerializer   jsonSerializer   = new JsonDataSerializer();
+    BinaryDataSerializer binarySerializer = new BinaryDataSerializer();
+
+    String json   = jsonSerializer.serialize(data);
+    String binary = binarySerializer.serialize(data);
+
+    assertEquals(RECIPIENT_COUNT, binarySerializer.deserialize(binary).getStringArray("recipients").length);
+
+    long jsonTime   = averageTime(ITERATIONS, () -> jsonSerializer.deserialize(jsonSerializer.serialize(data)));
+    long binaryTime = averageTime(ITERATIONS, () -> binarySerializer.deserialize(binarySerializer.serialize(data)));
+
+    logResult(RECIPIENT_COUNT + " recipients. " +
+              "JSON: " + json.length() + " chars, " + micros(jsonTime) + " per round trip; " +
+              "binary: " + binary.length() + " chars, " + micros(binaryTime) + " per round trip");
+  }
+}
@@ -0,0 +1,59 @@
+package org.thoughtcrime.securesms.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+
+import org.thoughtcrime.securesms.BenchmarkTestCase;
+
+/**
+ * Compares reading preferences in a tight loop, as message binding and notifications do, through
+ * {@link PreferenceManager} on every call against reading them from the cached snapshot.
+ */
+public class PreferencesBenchmark extends BenchmarkTestCase {
+
+  private static final int    ITERATIONS = 100_000;
+  private static final String KEY        = "benchmark_preference";
+
+  private Context context;
+
+  @Override
+  public void setUp() {
+    super.setUp();
+    context = getInstrumentation().getTargetContext();
+    PreferenceManager.getDefaultSharedPreferences(context).edit().putBoolean(KEY, true).commit();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    PreferenceManager.getDefaultSharedPreferences(context).edit().remove(KEY).commit();
+    super.tearDown();
+  }
+
+  public void testReadsMatch() {
+    assertEquals(PreferenceManager.getDefaultSharedPreferences(context).getBoolean(KEY, false),
+                 TextSecurePreferences.getBooleanPreference(context, KEY, false));
+  }
+
+  public void testReads() {
+    int[] hits = new int[1];
+
+    long uncachedTime = time(() -> {
+      for (int i = 0; i < ITERATIONS; i++) {
+        SharedPreferences preferences = PreferenceManager.getDefaultSharedPreferences(context);
+        if (preferences.getBoolean(KEY, false)) hits[0]++;
+      }
+    });
+
+    long cachedTime = time(() -> {
+      for (int i = 0; i < ITERATIONS; i++) {
+        if (TextSecurePreferences.getBooleanPreference(context, KEY, false)) hits[0]++;
+      }
+    });
+
+    assertEquals(ITERATIONS * 2, hits[0]);
+
+    logResult(ITERATIONS + " reads through PreferenceManager: " + millis(uncachedTime) + "; " +
+              "from the snapshot: " + millis(cachedTime));
+  }
+}
@@ -0,0 +1,131 @@
+package org.thoughtcrime.securesms.components.emoji.parsing;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class EmojiParserTest {
+
+  private static final String GRINNING     = "😀";
+  private static final String THUMBS_UP    = "👍";
+  private static final String HEART        = "❤";
+  private static final String HEART_VS16   = "❤️";
+  private static final String FAMILY       = "👨‍👩‍👧";
+  private static final String MAN          = "👨";
+  private static final String SKIN_TONE_4  = "🏽";
+
+  private EmojiTree     tree;
+  private EmojiDrawInfo grinning;
+  private EmojiDrawInfo heart;
+  private EmojiDrawInfo family;
+  private EmojiDrawInfo man;
+
+  @Before
+  public void setUp() {
+    tree     = new EmojiTree();
+    grinning = new EmojiDrawInfo(null, 0);
+    heart    = new EmojiDrawInfo(null, 1);
+    family   = new EmojiDrawInfo(null, 2);
+    man      = new EmojiDrawInfo(null, 3);
+
+    tree.add(GRINNING, grinning);
+    tree.add(THUMBS_UP, new EmojiDrawInfo(null, 4));
+    tree.add(HEART_VS16, heart);
+    tree.add(FAMILY, family);
+    tree.add(MAN, man);
+  }
+
+  @Test
+  public void findCandidates_plainText() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates("hello there");
+
+    assertEquals(0, candidates.size());
+    assertFalse(candidates.allEmojis);
+  }
+
+  @Test
+  public void findCandidates_null() {
+    assertEquals(0, new EmojiParser(tree).findCandidates(null).size());
+  }
+
+  @Test
+  public void findCandidates_mixedText() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates("hi " + GRINNING + " there");
+
+    assertEquals(1, candidates.size());
+    assertFalse(candidates.allEmojis);
+    assertEquals(3, candidates.list.get(0).getStartIndex());
+    assertEquals(5, candidates.list.get(0).getEndIndex());
+    assertSame(grinning, candidates.list.get(0).getDrawInfo());
+  }
+
+  @Test
+  public void findCandidates_allEmojis() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(GRINNING + THUMBS_UP);
+
+    assertEquals(2, candidates.size());
+    assertTrue(candidates.allEmojis);
+  }
+
+  @Test
+  public void findCandidates_prefersLongestMatch() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(FAMILY);
+
+    assertEquals(1, candidates.size());
+    assertEquals(FAMILY.length(), candidates.list.get(0).getEndIndex());
+    assertSame(family, candidates.list.get(0).getDrawInfo());
+  }
+
+  @Test
+  public void findCandidates_fallsBackToShorterMatch() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(MAN + "‍");
+
+    assertEquals(1, candidates.size());
+    assertEquals(MAN.length(), candidates.list.get(0).getEndIndex());
+    assertSame(man, candidates.list.get(0).getDrawInfo());
+  }
+
+  @Test
+  public void findCandidates_missingVariationSelector() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(HEART);
+
+    assertEquals(1, candidates.size());
+    assertSame(heart, candidates.list.get(0).getDrawInfo());
+  }
+
+  @Test
+  public void findCandidates_skinToneIsIncluded() {
+    EmojiParser.CandidateList candidates = new EmojiParser(tree).findCandidates(MAN + SKIN_TONE_4);
+
+    assertEquals(1, candidates.size());
+    assertEquals(4, candidates.list.get(0).getEndIndex());
+  }
+
+  @Test
+  public void isEmoji_matchesFindEmojiEnd() {
+    String text = "a" + FAMILY + HEART + " " + GRINNING;
+
+    for (int start = 0; start < text.length(); start++) {
+      int expected = -1;
+
+      for (int end = start + 1; end <= text.length(); end++) {
+        EmojiTree.Matches status = tree.isEmoji(text, start, end);
+
+        if      (status.exactMatch())      expected = end;
+        else if (status.impossibleMatch()) break;
+      }
+
+      assertEquals(expected, tree.findEmojiEnd(text, start));
+    }
+  }
+
+  @Test
+  public void getEmoji_unknown() {
+    assertNull(tree.getEmoji("x", 0, 1));
+  }
+}
@@ -0,0 +1,103 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.database.DatabaseChangeNotifier.ChangeSet;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DatabaseChangeNotifierTest {
+
+  private Queue<Runnable>        scheduled;
+  private List<ChangeSet>        delivered;
+  private boolean                writing;
+  private DatabaseChangeNotifier notifier;
+
+  @Before
+  public void setup() {
+    scheduled = new LinkedList<>();
+    delivered = new LinkedList<>();
+    writing   = false;
+    notifier  = new DatabaseChangeNotifier((runnable, delayMs) -> scheduled.add(runnable), () -> writing);
+
+    notifier.addListener(delivered::add);
+  }
+
+  @Test
+  public void testBurstIsDeliveredOnce() {
+    for (int i = 0; i < 200; i++) {
+      notifier.notifyThread(i % 3);
+      notifier.notifyConversationList();
+    }
+
+    assertEquals(1, scheduled.size());
+
+    runScheduled();
+
+    assertEquals(1, delivered.size());
+    assertEquals(new HashSet<>(Arrays.asList(0L, 1L, 2L)), delivered.get(0).getThreadIds());
+    assertTrue(delivered.get(0).isConversationListChanged());
+    assertFalse(delivered.get(0).isAttachmentsChanged());
+  }
+
+  @Test
+  public void testChangesAfterDeliveryStartNewBatch() {
+    notifier.notifyThread(1);
+    runScheduled();
+
+    notifier.notifyAttachments();
+    runScheduled();
+
+    assertEquals(2, delivered.size());
+    assertTrue(delivered.get(1).getThreadIds().isEmpty());
+    assertTrue(delivered.get(1).isAttachmentsChanged());
+  }
+
+  @Test
+  public void testDeliveryWaitsForOpenTransaction() {
+    writing = true;
+
+    notifier.notifyThread(1);
+    runScheduled();
+    notifier.notifyThread(2);
+    runScheduled();
+
+    assertTrue(delivered.isEmpty());
+
+    writing = false;
+    runScheduled();
+
+    assertEquals(1, delivered.size());
+    assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), delivered.get(0).getThreadIds());
+  }
+
+  @Test
+  public void testDeliveryIsNotDeferredForever() {
+    writing = true;
+
+    notifier.notifyStickers();
+
+    for (int i = 0; i < 100 && delivered.isEmpty(); i++) {
+      runScheduled();
+    }
+
+    assertEquals(1, delivered.size());
+  }
+
+  private void runScheduled() {
+    List<Runnable> runnables = new LinkedList<>(scheduled);
+    scheduled.clear();
+
+    for (Runnable runnable : runnables) {
+      runnable.run();
+    }
+  }
+}
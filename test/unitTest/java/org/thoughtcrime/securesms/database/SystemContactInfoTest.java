@@ -0,0 +1,76 @@
+package org.thoughtcrime.securesms.database;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.database.RecipientDatabase.SystemContactInfo;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SystemContactInfoTest {
+
+  private static final Address ALICE = Address.fromSerialized("+15550000001");
+  private static final Address BOB   = Address.fromSerialized("+15550000002");
+  private static final Address CAROL = Address.fromSerialized("+15550000003");
+
+  @Test
+  public void testUnchangedSnapshotHasNoChanges() {
+    Map<Address, SystemContactInfo> snapshot = snapshot();
+
+    assertTrue(RecipientDatabase.diffSystemContactInfo(snapshot, snapshot()).isEmpty());
+  }
+
+  @Test
+  public void testOnlyChangedAndRemovedContactsAreWritten() {
+    Map<Address, SystemContactInfo> latest = snapshot();
+    latest.put(BOB, new SystemContactInfo("Robert", null, "Mobile", "content://contacts/2"));
+    latest.remove(CAROL);
+
+    Map<Address, SystemContactInfo> changes = RecipientDatabase.diffSystemContactInfo(snapshot(), latest);
+
+    assertEquals(2, changes.size());
+    assertEquals(latest.get(BOB), changes.get(BOB));
+    assertEquals(SystemContactInfo.EMPTY, changes.get(CAROL));
+  }
+
+  @Test
+  public void testNewContactIsWritten() {
+    Map<Address, SystemContactInfo> current = snapshot();
+    current.remove(ALICE);
+
+    Map<Address, SystemContactInfo> changes = RecipientDatabase.diffSystemContactInfo(current, snapshot());
+
+    assertEquals(1, changes.size());
+    assertEquals(snapshot().get(ALICE), changes.get(ALICE));
+  }
+
+  @Test
+  public void testFingerprintIgnoresOrder() {
+    Map<Address, SystemContactInfo> reversed = new LinkedHashMap<>();
+    reversed.put(CAROL, snapshot().get(CAROL));
+    reversed.put(BOB, snapshot().get(BOB));
+    reversed.put(ALICE, snapshot().get(ALICE));
+
+    assertEquals(SystemContactInfo.fingerprint(snapshot()), SystemContactInfo.fingerprint(reversed));
+  }
+
+  @Test
+  public void testFingerprintSeesFieldChanges() {
+    Map<Address, SystemContactInfo> moved = snapshot();
+    moved.put(ALICE, new SystemContactInfo("Alic", "e", null, "content://contacts/1"));
+
+    assertNotEquals(SystemContactInfo.fingerprint(snapshot()), SystemContactInfo.fingerprint(moved));
+  }
+
+  private static Map<Address, SystemContactInfo> snapshot() {
+    Map<Address, SystemContactInfo> contacts = new HashMap<>();
+    contacts.put(ALICE, new SystemContactInfo("Alice", null, null, "content://contacts/1"));
+    contacts.put(BOB, new SystemContactInfo("Bob", "content://photos/2", "Mobile", "content://contacts/2"));
+    contacts.put(CAROL, new SystemContactInfo("Carol", null, "Work", "content://contacts/3"));
+    return contacts;
+  }
+}
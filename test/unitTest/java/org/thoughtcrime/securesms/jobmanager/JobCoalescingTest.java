@@ -0,0 +1,179 @@
+package org.thoughtcrime.securesms.jobmanager;
+
+import android.app.Application;
+
+import com.annimon.stream.Stream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.thoughtcrime.securesms.database.Address;
+import org.thoughtcrime.securesms.database.JobDatabase;
+import org.thoughtcrime.securesms.jobmanager.impl.BinaryDataSerializer;
+import org.thoughtcrime.securesms.jobmanager.persistence.JobSpec;
+import org.thoughtcrime.securesms.jobs.FastJobStorage;
+import org.thoughtcrime.securesms.jobs.MultiDeviceBlockedUpdateJob;
+import org.thoughtcrime.securesms.jobs.MultiDeviceContactUpdateJob;
+import org.thoughtcrime.securesms.jobs.MultiDeviceGroupUpdateJob;
+import org.thoughtcrime.securesms.util.Debouncer;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public final class JobCoalescingTest {
+
+  private static final int BURST_SIZE      = 200;
+  private static final int RECIPIENT_COUNT = 25;
+
+  private Application          application;
+  private BinaryDataSerializer serializer;
+  private FastJobStorage       storage;
+  private JobController        controller;
+
+  @Before
+  public void setUp() {
+    application = mock(Application.class);
+    serializer  = new BinaryDataSerializer();
+    storage     = new FastJobStorage(mock(JobDatabase.class));
+    controller  = newController(storage);
+  }
+
+  @Test
+  public void burstOfRecipientChanges_queuesOneJobPerKind() {
+    List<String> triggered = new LinkedList<>();
+
+    for (int i = 0; i < BURST_SIZE; i++) {
+      Address address = address(i % RECIPIENT_COUNT);
+
+      triggered.add(address.serialize());
+      submit(new MultiDeviceContactUpdateJob(application, address));
+      submit(new MultiDeviceBlockedUpdateJob());
+      submit(new MultiDeviceGroupUpdateJob());
+    }
+
+    List<JobSpec> contactJobs = jobs(MultiDeviceContactUpdateJob.KEY);
+
+    assertEquals(1, contactJobs.size());
+    assertEquals(1, jobs(MultiDeviceBlockedUpdateJob.KEY).size());
+    assertEquals(1, jobs(MultiDeviceGroupUpdateJob.KEY).size());
+
+    Data         data      = serializer.deserialize(contactJobs.get(0).getSerializedData());
+    List<String> addresses = Arrays.asList(data.getStringArray("addresses"));
+
+    assertEquals(new HashSet<>(triggered), new HashSet<>(addresses));
+    assertEquals(RECIPIENT_COUNT, addresses.size());
+
+    FastJobStorage uncoalescedStorage    = new FastJobStorage(mock(JobDatabase.class));
+    JobController  uncoalescedController = newController(uncoalescedStorage);
+
+    for (String address : triggered) {
+      submit(uncoalescedController, new MultiDeviceContactUpdateJob(application, Address.fromSerialized(address)));
+
+      for (JobSpec job : jobs(uncoalescedStorage, MultiDeviceContactUpdateJob.KEY)) {
+        uncoalescedStorage.updateJobRunningState(job.getId(), true);
+      }
+    }
+
+    List<JobSpec> uncoalescedJobs = jobs(uncoalescedStorage, MultiDeviceContactUpdateJob.KEY);
+
+    assertEquals(BURST_SIZE, uncoalescedJobs.size());
+    assertTrue(storedBytes(contactJobs) * BURST_SIZE <= storedBytes(uncoalescedJobs) * RECIPIENT_COUNT);
+  }
+
+  @Test
+  public void burstOfFullSyncs_queuesOneForcedJob() {
+    for (int i = 0; i < BURST_SIZE; i++) {
+      submit(new MultiDeviceContactUpdateJob(application, i == BURST_SIZE / 2));
+    }
+
+    List<JobSpec> contactJobs = jobs(MultiDeviceContactUpdateJob.KEY);
+    Data          data        = serializer.deserialize(contactJobs.get(0).getSerializedData());
+
+    assertEquals(1, contactJobs.size());
+    assertEquals(0, data.getStringArray("addresses").length);
+    assertTrue(data.getBoolean("force_sync"));
+  }
+
+  @Test
+  public void fullSyncAndAddressUpdates_areQueuedSeparately() {
+    submit(new MultiDeviceContactUpdateJob(application, address(1)));
+    submit(new MultiDeviceContactUpdateJob(application, true));
+    submit(new MultiDeviceContactUpdateJob(application, address(2)));
+    submit(new MultiDeviceContactUpdateJob(application, false));
+
+    assertEquals(2, jobs(MultiDeviceContactUpdateJob.KEY).size());
+  }
+
+  @Test
+  public void runningJob_doesNotAbsorbNewChanges() {
+    submit(new MultiDeviceContactUpdateJob(application, address(1)));
+
+    JobSpec running = jobs(MultiDeviceContactUpdateJob.KEY).get(0);
+    storage.updateJobRunningState(running.getId(), true);
+
+    submit(new MultiDeviceContactUpdateJob(application, address(2)));
+    submit(new MultiDeviceContactUpdateJob(application, address(3)));
+
+    List<JobSpec> contactJobs = jobs(MultiDeviceContactUpdateJob.KEY);
+    Data          queued      = serializer.deserialize(contactJobs.get(1).getSerializedData());
+
+    assertEquals(2, contactJobs.size());
+    assertEquals(Arrays.asList(address(2).serialize(), address(3).serialize()), Arrays.asList(queued.getStringArray("addresses")));
+  }
+
+  private JobController newController(FastJobStorage storage) {
+    return new JobController(application,
+                             storage,
+                             mock(JobInstantiator.class),
+                             mock(ConstraintInstantiator.class),
+                             serializer,
+                             mock(DependencyInjector.class),
+                             mock(Scheduler.class),
+                             mock(Debouncer.class),
+                             mock(JobController.Callback.class));
+  }
+
+  private void submit(Job job) {
+    submit(controller, job);
+  }
+
+  private static void submit(JobController controller, Job job) {
+    controller.submitNewJobChain(Collections.singletonList(Collections.singletonList(job)));
+  }
+
+  private List<JobSpec> jobs(String factoryKey) {
+    return jobs(storage, factoryKey);
+  }
+
+  private static List<JobSpec> jobs(FastJobStorage storage, String factoryKey) {
+    return Stream.of(storage.getAllJobSpecs()).filter(j -> j.getFactoryKey().equals(factoryKey)).toList();
+  }
+
+  private static Address address(int i) {
+    return Address.fromSerialized("+1555000" + String.format("%04d", i));
+  }
+
+  /**
+   * The size of the job data that is persisted for these jobs.
+   */
+  private static long storedBytes(List<JobSpec> jobs) {
+    long bytes = 0;
+
+    for (JobSpec job : jobs) {
+      bytes += job.getSerializedData().length();
+    }
+
+    return bytes;
+  }
+}
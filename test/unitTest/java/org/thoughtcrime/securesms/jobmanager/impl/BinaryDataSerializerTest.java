@@ -0,0 +1,105 @@
+package org.thoughtcrime.securesms.jobmanager.impl;
+
+import org.junit.Test;
+import org.thoughtcrime.securesms.jobmanager.Data;
+import org.thoughtcrime.securesms.util.Util;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public final class BinaryDataSerializerTest {
+
+  private static final float FloatDelta = 0.00001f;
+
+  private final BinaryDataSerializer serializer = new BinaryDataSerializer();
+
+  @Test
+  public void serialize_roundTripsAllTypes() throws IOException {
+    Data original = new JsonDataSerializer().deserialize(readJson());
+    Data data     = serializer.deserialize(serializer.serialize(original));
+
+    assertEquals("s1 value", data.getString("s1"));
+    assertEquals("s2 value", data.getString("s2"));
+    assertArrayEquals(new String[]{ "a", "b", "c" }, data.getStringArray("s_array_1"));
+
+    assertEquals(1, data.getInt("i1"));
+    assertEquals(2, data.getInt("i2"));
+    assertEquals(Integer.MAX_VALUE, data.getInt("max"));
+    assertEquals(Integer.MIN_VALUE, data.getInt("min"));
+    assertArrayEquals(new int[]{ 1, 2, 3, Integer.MAX_VALUE, Integer.MIN_VALUE }, data.getIntegerArray("i_array_1"));
+
+    assertEquals(10, data.getLong("l1"));
+    assertEquals(20, data.getLong("l2"));
+    assertEquals(Long.MAX_VALUE, data.getLong("max"));
+    assertEquals(Long.MIN_VALUE, data.getLong("min"));
+    assertArrayEquals(new long[]{ 1, 2, 3, Long.MAX_VALUE, Long.MIN_VALUE }, data.getLongArray("l_array_1"));
+
+    assertEquals(1.2f, data.getFloat("f1"), FloatDelta);
+    assertEquals(3.4f, data.getFloat("f2"), FloatDelta);
+    assertArrayEquals(new float[]{ 5.6f, 7.8f }, data.getFloatArray("f_array_1"), FloatDelta);
+
+    assertEquals(10.2, data.getDouble("d1"), FloatDelta);
+    assertEquals(30.4, data.getDouble("d2"), FloatDelta);
+    assertArrayEquals(new double[]{ 50.6, 70.8 }, data.getDoubleArray("d_array_1"), FloatDelta);
+
+    assertTrue(data.getBoolean("b1"));
+    assertFalse(data.getBoolean("b2"));
+    assertArrayEquals(new boolean[]{ false, true }, data.getBooleanArray("b_array_1"));
+  }
+
+  @Test
+  public void serialize_roundTripsNullsAndUnicode() {
+    Data original = new Data.Builder().putString("null", null)
+                                      .putString("unicode", "héllo 😀")
+                                      .putStringArray("array", new String[] { "x", null, "" })
+                                      .build();
+
+    Data data = serializer.deserialize(serializer.serialize(original));
+
+    assertTrue(data.hasString("null"));
+    assertNull(data.getString("null"));
+    assertEquals("héllo 😀", data.getString("unicode"));
+    assertArrayEquals(new String[] { "x", null, "" }, data.getStringArray("array"));
+  }
+
+  @Test
+  public void serialize_empty() {
+    String serialized = serializer.serialize(Data.EMPTY);
+
+    assertFalse(BinaryDataSerializer.isJson(serialized));
+    assertTrue(serializer.deserialize(serialized).getStrings().isEmpty());
+  }
+
+  @Test
+  public void deserialize_readsLegacyJson() throws IOException {
+    String json = readJson();
+
+    assertTrue(BinaryDataSerializer.isJson(json));
+    assertEquals("s1 value", serializer.deserialize(json).getString("s1"));
+  }
+
+  @Test(expected = AssertionError.class)
+  public void deserialize_rejectsUnknownVersion() {
+    serializer.deserialize("AgA=");
+  }
+
+  @Test
+  public void serialize_roundTripsManyRecipients() {
+    String[] recipients = new String[500];
+
+    for (int i = 0; i < recipients.length; i++) {
+      recipients[i] = String.format("05%064x", i);
+    }
+
+    Data data = new Data.Builder().putLong("message_id", 1234)
+                                  .putStringArray("recipients", recipients)
+                                  .build();
+
+    assertArrayEquals(recipients, serializer.deserialize(serializer.serialize(data)).getStringArray("recipients"));
+  }
+
+  private static String readJson() throws IOException {
+    return Util.readFullyAsString(ClassLoader.getSystemClassLoader().getResourceAsStream("data/data_serialized.json"));
+  }
+}
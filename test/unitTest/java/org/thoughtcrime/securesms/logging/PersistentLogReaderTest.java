@@ -0,0 +1,154 @@
+package org.thoughtcrime.securesms.logging;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.thoughtcrime.securesms.logging.PersistentLogReader.Filter;
+import org.thoughtcrime.securesms.logging.PersistentLogReader.Level;
+import org.thoughtcrime.securesms.logging.PersistentLogReader.Order;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class PersistentLogReaderTest {
+
+  private static final byte[] SECRET = new byte[32];
+
+  private static final int    FILE_COUNT       = 10;
+  private static final int    ENTRIES_PER_FILE = 3000;
+  private static final String PADDING          = "Some reasonably long log message that looks like what the app writes";
+  private static final int    MAX_RETAINED     = 64 * 1024;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private List<File> files;
+
+  @Before
+  public void setUp() throws IOException {
+    files = new LinkedList<>();
+
+    for (int i = 0; i < FILE_COUNT; i++) {
+      File           file   = folder.newFile("log-" + i);
+      LogFile.Writer writer = new LogFile.Writer(SECRET, file);
+
+      for (int j = 0; j < ENTRIES_PER_FILE; j++) {
+        int n = i * ENTRIES_PER_FILE + j;
+        writer.writeEntry(entry(n));
+      }
+
+      writer.close();
+      files.add(file);
+    }
+  }
+
+  @Test
+  public void next_readsOldestFirst() throws IOException {
+    try (PersistentLogReader reader = new PersistentLogReader(SECRET, files, Order.OLDEST_FIRST, Filter.ALL)) {
+      for (int n = 0; n < FILE_COUNT * ENTRIES_PER_FILE; n++) {
+        assertEquals(entry(n), reader.next());
+      }
+      assertNull(reader.next());
+    }
+  }
+
+  @Test
+  public void nextPage_readsNewestFirst() throws IOException {
+    int last = FILE_COUNT * ENTRIES_PER_FILE - 1;
+
+    try (PersistentLogReader reader = new PersistentLogReader(SECRET, files, Order.NEWEST_FIRST, Filter.ALL)) {
+      assertEquals(Arrays.asList(entry(last), entry(last - 1), entry(last - 2)), reader.nextPage(3));
+
+      List<String> page = reader.nextPage(ENTRIES_PER_FILE);
+      assertEquals(entry(last - 3), page.get(0));
+      assertEquals(entry(last - 2 - ENTRIES_PER_FILE), page.get(ENTRIES_PER_FILE - 1));
+    }
+  }
+
+  @Test
+  public void next_filtersByLevelAndTag() throws IOException {
+    Filter filter = new Filter(Level.WARN, new HashSet<>(Collections.singletonList("Tag1")));
+
+    try (PersistentLogReader reader = new PersistentLogReader(SECRET, files, Order.OLDEST_FIRST, filter)) {
+      String entry;
+      int    count = 0;
+
+      while ((entry = reader.next()) != null) {
+        assertTrue(entry, entry.contains(" E Tag1: "));
+        count++;
+      }
+
+      assertEquals(FILE_COUNT * ENTRIES_PER_FILE / 10, count);
+    }
+  }
+
+  @Test
+  public void next_reportsUnreadableFilesAndSkipsThem() throws IOException {
+    File       missing    = files.get(0);
+    List<File> unreadable = new LinkedList<>();
+
+    assertTrue(missing.delete());
+
+    try (PersistentLogReader reader = new PersistentLogReader(SECRET, files, Order.OLDEST_FIRST, Filter.ALL, unreadable::add)) {
+      assertEquals(entry(ENTRIES_PER_FILE), reader.next());
+    }
+
+    assertEquals(Collections.singletonList(missing), unreadable);
+  }
+
+  @Test
+  public void writeTo_retainedMemoryDoesNotGrowWithLog() throws IOException {
+    for (Order order : Order.values()) {
+      try (PersistentLogReader reader = new PersistentLogReader(SECRET, files, order, Filter.ALL)) {
+        RetainedSizeSink sink    = new RetainedSizeSink(reader);
+        long             written = reader.writeTo(sink);
+
+        assertEquals(written, sink.written);
+        assertTrue("Exported " + written + " bytes", written > 10 * MAX_RETAINED);
+        assertTrue(order + " retained " + sink.maxRetained + " bytes", sink.maxRetained < MAX_RETAINED);
+      }
+    }
+  }
+
+  /**
+   * Every fifth entry is an error, and odd entries are tagged Tag1.
+   */
+  private static String entry(int n) {
+    String level = n % 5 == 0 ? "E" : "I";
+    return "2019-10-01 12:00:00.000 GMT+00:00 " + level + " Tag" + (n % 2) + ": " + PADDING + " " + n;
+  }
+
+  private static class RetainedSizeSink extends OutputStream {
+
+    private final PersistentLogReader reader;
+
+    private long written;
+    private int  maxRetained;
+
+    private RetainedSizeSink(PersistentLogReader reader) {
+      this.reader = reader;
+    }
+
+    @Override
+    public void write(int b) {
+      write(new byte[] { (byte) b }, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+      written    += len;
+      maxRetained = Math.max(maxRetained, reader.getRetainedSize());
+    }
+  }
+}
@@ -0,0 +1,148 @@
+package org.thoughtcrime.securesms.search;
+
+import android.app.Application;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.thoughtcrime.securesms.contacts.ContactAccessor;
+import org.thoughtcrime.securesms.contacts.ContactsDatabase;
+import org.thoughtcrime.securesms.database.DatabaseChangeNotifier;
+import org.thoughtcrime.securesms.database.SearchDatabase;
+import org.thoughtcrime.securesms.database.ThreadDatabase;
+import org.thoughtcrime.securesms.search.model.SearchResult;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public final class SearchRepositoryTest {
+
+  private SearchDatabase                        searchDatabase;
+  private List<DatabaseChangeNotifier.Listener> listeners;
+  private SearchRepository                      repository;
+  private SearchResult                          result;
+
+  @Before
+  public void setUp() {
+    ThreadDatabase         threadDatabase  = mock(ThreadDatabase.class);
+    ContactAccessor        contactAccessor = mock(ContactAccessor.class);
+    DatabaseChangeNotifier changeNotifier  = mock(DatabaseChangeNotifier.class);
+
+    searchDatabase = mock(SearchDatabase.class);
+    listeners      = new CopyOnWriteArrayList<>();
+
+    when(contactAccessor.getNumbersForThreadSearchFilter(any(Context.class), anyString())).thenReturn(Collections.emptyList());
+
+    doAnswer(invocation -> listeners.add((DatabaseChangeNotifier.Listener) invocation.getArguments()[0]))
+        .when(changeNotifier).addListener(any(DatabaseChangeNotifier.Listener.class));
+    doAnswer(invocation -> listeners.remove((DatabaseChangeNotifier.Listener) invocation.getArguments()[0]))
+        .when(changeNotifier).removeListener(any(DatabaseChangeNotifier.Listener.class));
+
+    repository = new SearchRepository(RuntimeEnvironment.application,
+                                      searchDatabase,
+                                      mock(ContactsDatabase.class),
+                                      threadDatabase,
+                                      contactAccessor,
+                                      Runnable::run,
+                                      Runnable::run,
+                                      changeNotifier);
+  }
+
+  @Test
+  public void query_refinesLastMatchesWhenNothingChanged() {
+    stubPage("hel", messages(1));
+    stubRefine("hell", messages(1));
+
+    query("hel");
+    query("hell");
+
+    assertEquals(1, result.getMessages().size());
+    verify(searchDatabase, never()).queryMessages("hell");
+  }
+
+  @Test
+  public void query_findsMessageInsertedBetweenRefinements() {
+    stubPage("hel", messages(1));
+    stubRefine("hell", messages(1));
+    stubPage("hello", messages(1, 2));
+    stubRefine("hello", messages(1));
+
+    query("hel");
+    query("hell");
+
+    insertMessage();
+
+    query("hello");
+
+    assertEquals(2, result.getMessages().size());
+    verify(searchDatabase, never()).queryMessages(eq("hello"), anyCollectionOf(Long.class), anyCollectionOf(Long.class));
+  }
+
+  @Test
+  public void query_emptyQueryDropsLastMatches() {
+    stubPage("hel", messages(1));
+    stubPage("hell", messages(1, 2));
+    stubRefine("hell", messages(1));
+
+    query("hel");
+    query("");
+    query("hell");
+
+    assertEquals(2, result.getMessages().size());
+    assertEquals(1, listeners.size());
+    verify(searchDatabase, never()).queryMessages(eq("hell"), anyCollectionOf(Long.class), anyCollectionOf(Long.class));
+  }
+
+  private void query(String query) {
+    repository.query(query, result -> this.result = result);
+  }
+
+  private void insertMessage() {
+    DatabaseChangeNotifier.ChangeSet changes = mock(DatabaseChangeNotifier.ChangeSet.class);
+    when(changes.getThreadIds()).thenReturn(Collections.singleton(1L));
+
+    for (DatabaseChangeNotifier.Listener listener : listeners) {
+      listener.onChanged(changes);
+    }
+  }
+
+  private void stubPage(String query, Cursor cursor) {
+    SearchDatabase.MessagePage page = mock(SearchDatabase.MessagePage.class);
+    when(page.getCursor()).thenReturn(cursor);
+    when(searchDatabase.queryMessages(query)).thenReturn(page);
+  }
+
+  private void stubRefine(String query, Cursor cursor) {
+    when(searchDatabase.queryMessages(eq(query), anyCollectionOf(Long.class), anyCollectionOf(Long.class))).thenReturn(cursor);
+  }
+
+  private static Cursor messages(long... ids) {
+    MatrixCursor cursor = new MatrixCursor(new String[] { SearchDatabase.MESSAGE_ID, SearchDatabase.IS_MMS });
+
+    for (long id : ids) {
+      cursor.addRow(new Object[] { id, 0 });
+    }
+
+    return cursor;
+  }
+}
@@ -0,0 +1,185 @@
+package org.thoughtcrime.securesms.startup;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.thoughtcrime.securesms.startup.StartupGraph.Phase;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public final class StartupGraphTest {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void start_runsCriticalTasksBeforeReturning() {
+    List<String> order = new CopyOnWriteArrayList<>();
+
+    StartupGraph graph = new StartupGraph.Builder()
+        .add("a", Phase.CRITICAL, () -> order.add("a"))
+        .add("b", Phase.CRITICAL, () -> order.add("b"), "a")
+        .build();
+
+    graph.start(executor);
+
+    assertEquals(2, order.size());
+    assertEquals("a", order.get(0));
+    assertEquals(Thread.currentThread().getName(), graph.getTrace().getEntry("a").getThread());
+    assertTrue(graph.getTrace().getPhaseDuration(Phase.CRITICAL) >= 0);
+  }
+
+  @Test
+  public void start_runsIndependentBackgroundTasksInParallel() throws Exception {
+    CountDownLatch bothRunning = new CountDownLatch(2);
+    CountDownLatch finished    = new CountDownLatch(2);
+
+    StartupGraph graph = new StartupGraph.Builder()
+        .add("one", Phase.BACKGROUND, () -> awaitTogether(bothRunning, finished))
+        .add("two", Phase.BACKGROUND, () -> awaitTogether(bothRunning, finished))
+        .build();
+
+    graph.start(executor);
+
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+    assertNotEquals(graph.getTrace().getEntry("one").getThread(), graph.getTrace().getEntry("two").getThread());
+  }
+
+  @Test
+  public void start_runsDependentsAfterDependencies() throws Exception {
+    CountDownLatch finished = new CountDownLatch(1);
+
+    StartupGraph graph = new StartupGraph.Builder()
+        .add("critical", Phase.CRITICAL, () -> {})
+        .add("first", Phase.BACKGROUND, () -> sleep(20), "critical")
+        .add("second", Phase.BACKGROUND, () -> sleep(20), "critical")
+        .add("last", Phase.BACKGROUND, finished::countDown, "first", "second")
+        .build();
+
+    graph.start(executor);
+
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+    waitForEntry(graph.getTrace(), "last");
+
+    StartupTrace trace = graph.getTrace();
+    long         start = trace.getEntry("last").getStart();
+
+    assertTrue(trace.getEntry("critical").getEnd() <= trace.getEntry("first").getStart());
+    assertTrue(trace.getEntry("first").getEnd() <= start);
+    assertTrue(trace.getEntry("second").getEnd() <= start);
+    assertTrue(trace.getPhaseDuration(Phase.BACKGROUND) >= 0);
+  }
+
+  @Test
+  public void startDeferred_holdsDeferredTasksUntilCalled() throws Exception {
+    CountDownLatch background = new CountDownLatch(1);
+    CountDownLatch deferred   = new CountDownLatch(1);
+
+    StartupGraph graph = new StartupGraph.Builder()
+        .add("background", Phase.BACKGROUND, background::countDown)
+        .add("deferred", Phase.DEFERRED, deferred::countDown, "background")
+        .build();
+
+    graph.start(executor);
+
+    assertTrue(background.await(5, TimeUnit.SECONDS));
+    assertFalse(deferred.await(100, TimeUnit.MILLISECONDS));
+    assertNull(graph.getTrace().getEntry("deferred"));
+    assertEquals(-1, graph.getTrace().getPhaseDuration(Phase.DEFERRED));
+
+    graph.startDeferred();
+    graph.startDeferred();
+
+    assertTrue(deferred.await(5, TimeUnit.SECONDS));
+    waitForEntry(graph.getTrace(), "deferred");
+    assertEquals(1, countEntries(graph.getTrace(), "deferred"));
+    assertTrue(graph.getTrace().getPhaseDuration(Phase.DEFERRED) >= 0);
+  }
+
+  @Test
+  public void start_backgroundFailureDoesNotBlockDependents() throws Exception {
+    CountDownLatch finished = new CountDownLatch(1);
+
+    StartupGraph graph = new StartupGraph.Builder()
+        .add("broken", Phase.BACKGROUND, () -> { throw new IllegalStateException(); })
+        .add("after", Phase.BACKGROUND, finished::countDown, "broken")
+        .build();
+
+    graph.start(executor);
+
+    assertTrue(finished.await(5, TimeUnit.SECONDS));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void add_unknownDependency() {
+    new StartupGraph.Builder().add("a", Phase.CRITICAL, () -> {}, "b");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void add_dependencyInLaterPhase() {
+    new StartupGraph.Builder()
+        .add("a", Phase.BACKGROUND, () -> {})
+        .add("b", Phase.CRITICAL, () -> {}, "a");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void startDeferred_beforeStart() {
+    new StartupGraph.Builder().build().startDeferred();
+  }
+
+  private static void awaitTogether(CountDownLatch bothRunning, CountDownLatch finished) {
+    bothRunning.countDown();
+
+    try {
+      if (bothRunning.await(5, TimeUnit.SECONDS)) {
+        finished.countDown();
+      }
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      throw new AssertionError(e);
+    }
+  }
+
+  private static void waitForEntry(StartupTrace trace, String name) throws InterruptedException {
+    for (int i = 0; i < 100 && trace.getEntry(name) == null; i++) {
+      Thread.sleep(10);
+    }
+    assertNotNull(trace.getEntry(name));
+  }
+
+  private static int countEntries(StartupTrace trace, String name) {
+    int count = 0;
+    for (StartupTrace.Entry entry : trace.getEntries()) {
+      if (entry.getName().equals(name)) count++;
+    }
+    return count;
+  }
+}
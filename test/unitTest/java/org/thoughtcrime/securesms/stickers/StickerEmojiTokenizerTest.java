@@ -0,0 +1,60 @@
+package org.thoughtcrime.securesms.stickers;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public final class StickerEmojiTokenizerTest {
+
+  private static final String THUMBS_UP    = "\uD83D\uDC4D";
+  private static final String MEDIUM_SKIN  = "\uD83C\uDFFD";
+  private static final String HEART        = "\u2764";
+  private static final String VARIATION    = "\uFE0F";
+  private static final String WOMAN        = "\uD83D\uDC69";
+  private static final String LAPTOP       = "\uD83D\uDCBB";
+  private static final String JOINER       = "\u200D";
+  private static final String FLAG_CANADA  = "\uD83C\uDDE8\uD83C\uDDE6";
+  private static final String FLAG_GERMANY = "\uD83C\uDDE9\uD83C\uDDEA";
+  private static final String KEYCAP       = "\u20E3";
+
+  @Test
+  public void tokenize_empty() {
+    assertTrue(StickerEmojiTokenizer.tokenize(null).isEmpty());
+    assertTrue(StickerEmojiTokenizer.tokenize("").isEmpty());
+    assertTrue(StickerEmojiTokenizer.tokenize("  ").isEmpty());
+  }
+
+  @Test
+  public void tokenize_splitsEachEmojiOnce() {
+    assertEquals(tokens(THUMBS_UP, HEART), StickerEmojiTokenizer.tokenize(THUMBS_UP + HEART + VARIATION + THUMBS_UP));
+  }
+
+  @Test
+  public void tokenize_dropsSkinTonesAndVariationSelectors() {
+    assertEquals(tokens(THUMBS_UP), StickerEmojiTokenizer.tokenize(THUMBS_UP + MEDIUM_SKIN));
+    assertEquals(tokens(HEART), StickerEmojiTokenizer.tokenize(HEART + VARIATION));
+  }
+
+  @Test
+  public void tokenize_keepsSequencesTogether() {
+    String technologist = WOMAN + JOINER + LAPTOP;
+
+    assertEquals(tokens(technologist, THUMBS_UP), StickerEmojiTokenizer.tokenize(WOMAN + MEDIUM_SKIN + JOINER + LAPTOP + THUMBS_UP));
+    assertEquals(tokens(FLAG_CANADA, FLAG_GERMANY), StickerEmojiTokenizer.tokenize(FLAG_CANADA + FLAG_GERMANY));
+    assertEquals(tokens("1" + KEYCAP), StickerEmojiTokenizer.tokenize("1" + VARIATION + KEYCAP));
+  }
+
+  @Test
+  public void tokenize_ignoresWhitespace() {
+    assertEquals(tokens(THUMBS_UP, HEART), StickerEmojiTokenizer.tokenize(" " + THUMBS_UP + " " + HEART + " "));
+  }
+
+  private static Set<String> tokens(String... tokens) {
+    return new LinkedHashSet<>(Arrays.asList(tokens));
+  }
+}
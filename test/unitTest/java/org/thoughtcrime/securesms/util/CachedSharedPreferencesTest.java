@@ -0,0 +1,92 @@
+package org.thoughtcrime.securesms.util;
+
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, application = Application.class)
+public final class CachedSharedPreferencesTest {
+
+  private SharedPreferences       preferences;
+  private CachedSharedPreferences cached;
+
+  @Before
+  public void setUp() {
+    preferences = RuntimeEnvironment.application.getSharedPreferences("test", Context.MODE_PRIVATE);
+    preferences.edit().putBoolean("boolean", true).putString("string", "value").commit();
+
+    cached = new CachedSharedPreferences(preferences);
+  }
+
+  @Test
+  public void get_readsExistingValues() {
+    assertTrue(cached.getBoolean("boolean", false));
+    assertEquals("value", cached.getString("string", null));
+    assertEquals(5, cached.getInt("missing", 5));
+  }
+
+  @Test
+  public void put_isVisibleImmediatelyAndWrittenThrough() {
+    cached.putInt("int", 1);
+    cached.putLong("long", 2L);
+    cached.putString("string", null);
+    cached.remove("boolean");
+
+    assertEquals(1, cached.getInt("int", 0));
+    assertEquals(2L, cached.getLong("long", 0L));
+    assertNull(cached.getString("string", null));
+    assertFalse(cached.getBoolean("boolean", false));
+
+    assertEquals(1, preferences.getInt("int", 0));
+    assertEquals(2L, preferences.getLong("long", 0L));
+    assertFalse(preferences.contains("string"));
+    assertFalse(preferences.contains("boolean"));
+  }
+
+  @Test
+  public void commitInt_writesImmediately() {
+    assertTrue(cached.commitInt("int", 3));
+    assertEquals(3, preferences.getInt("int", 0));
+    assertEquals(3, cached.getInt("int", 0));
+  }
+
+  @Test
+  public void directWrites_areNotOverwrittenByEarlierPuts() {
+    cached.putString("string", "cached");
+    preferences.edit().putString("string", "direct").commit();
+
+    ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
+    assertEquals("direct", preferences.getString("string", null));
+    assertEquals("direct", cached.getString("string", null));
+  }
+
+  @Test
+  public void externalChanges_replaceTheSnapshot() {
+    preferences.edit().putString("string", "changed").remove("boolean").commit();
+
+    assertEquals("changed", cached.getString("string", null));
+    assertFalse(cached.getBoolean("boolean", false));
+  }
+
+  @Test
+  public void externalChanges_addNewKeys() {
+    preferences.edit().putLong("new", 7L).commit();
+
+    assertEquals(7L, cached.getLong("new", 0L));
+  }
+}
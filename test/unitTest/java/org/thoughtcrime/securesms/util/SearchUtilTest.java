@@ -71,4 +71,20 @@ public class SearchUtilTest {
 
     assertEquals(Arrays.asList(new Pair<>(8, 10)), result);
   }
+
+  @Test
+  public void stripHighlightMarkers_multipleMatches() {
+    Pair<String, List<Pair<Integer, Integer>>> result = SearchUtil.stripHighlightMarkers("...see [you] at [lunch]", '[', ']');
+
+    assertEquals("...see you at lunch", result.first());
+    assertEquals(Arrays.asList(new Pair<>(7, 10), new Pair<>(14, 19)), result.second());
+  }
+
+  @Test
+  public void stripHighlightMarkers_noMarkers() {
+    Pair<String, List<Pair<Integer, Integer>>> result = SearchUtil.stripHighlightMarkers("abc", '[', ']');
+
+    assertEquals("abc", result.first());
+    assertTrue(result.second().isEmpty());
+  }
 }